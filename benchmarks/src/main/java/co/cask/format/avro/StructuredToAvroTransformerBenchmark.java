@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.format.avro;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.hydrator.benchmark.RecordBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link StructuredToAvroTransformer} converting every record to an Avro record.
+ */
+public class StructuredToAvroTransformerBenchmark extends RecordBenchmark {
+  private StructuredToAvroTransformer transformer;
+
+  @Override
+  protected void prepare() {
+    transformer = new StructuredToAvroTransformer(schema);
+  }
+
+  @Benchmark
+  public void transform(Blackhole blackhole) throws Exception {
+    for (StructuredRecord record : records) {
+      blackhole.consume(transformer.transform(record));
+    }
+  }
+}
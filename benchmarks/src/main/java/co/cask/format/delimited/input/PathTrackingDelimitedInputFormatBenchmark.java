@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.format.delimited.input;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.hydrator.benchmark.RecordBenchmark;
+import com.google.common.base.Charsets;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+/**
+ * Measures the {@link PathTrackingDelimitedInputFormat} reading a local comma separated file that contains the
+ * records, with empty values for nulls.
+ */
+public class PathTrackingDelimitedInputFormatBenchmark extends RecordBenchmark {
+  private File file;
+  private TaskAttemptContext context;
+  private FileSplit split;
+  private PathTrackingDelimitedInputFormat inputFormat;
+
+  @Override
+  protected void prepare() throws IOException {
+    file = File.createTempFile("records", ".csv");
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()),
+                                                                   Charsets.UTF_8))) {
+      for (StructuredRecord record : records) {
+        String separator = "";
+        for (Schema.Field field : schema.getFields()) {
+          Object value = record.get(field.getName());
+          writer.write(separator);
+          writer.write(value == null ? "" : value.toString());
+          separator = ",";
+        }
+        writer.write('\n');
+      }
+    }
+
+    Configuration conf = new Configuration();
+    conf.set(PathTrackingDelimitedInputFormat.DELIMITER, ",");
+    conf.set("schema", schema.toString());
+    context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    split = new FileSplit(new Path(file.toURI()), 0, file.length(), new String[0]);
+    inputFormat = new PathTrackingDelimitedInputFormat();
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file.toPath());
+  }
+
+  @Benchmark
+  public void read(Blackhole blackhole) throws Exception {
+    try (RecordReader<NullWritable, StructuredRecord> reader = inputFormat.createRecordReader(split, context)) {
+      reader.initialize(split, context);
+      while (reader.nextKeyValue()) {
+        blackhole.consume(reader.getCurrentValue());
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.format.json.input;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.format.StructuredRecordStringConverter;
+import com.google.common.base.Charsets;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link JsonRecordDecoder} with {@link StructuredRecordStringConverter#fromJsonString(String, Schema)},
+ * which the json format used before, for a JSON line with 150 keys and a schema with 20 (narrow) or all 150 (wide)
+ * of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonRecordDecoderBenchmark {
+  private static final int NUM_KEYS = 150;
+
+  @Param({"narrow", "wide"})
+  public String projection;
+
+  private Schema schema;
+  private JsonRecordDecoder decoder;
+  private Text line;
+
+  @Setup
+  public void setup() {
+    int numFields = "narrow".equals(projection) ? 20 : NUM_KEYS;
+    List<Schema.Field> fields = new ArrayList<>();
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < NUM_KEYS; i++) {
+      String name = "key" + i;
+      Schema fieldSchema;
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append('"').append(name).append("\":");
+      switch (i % 5) {
+        case 0:
+          fieldSchema = Schema.of(Schema.Type.LONG);
+          json.append(1000000L * i);
+          break;
+        case 1:
+          fieldSchema = Schema.of(Schema.Type.DOUBLE);
+          json.append(i * 0.25d);
+          break;
+        case 2:
+          fieldSchema = Schema.of(Schema.Type.BOOLEAN);
+          json.append(i % 2 == 0);
+          break;
+        case 3:
+          fieldSchema = Schema.arrayOf(Schema.of(Schema.Type.STRING));
+          json.append("[\"a").append(i).append("\",\"b").append(i).append("\"]");
+          break;
+        default:
+          fieldSchema = Schema.of(Schema.Type.STRING);
+          json.append("\"https://example.com/page/").append(i).append("?ref=campaign\"");
+          break;
+      }
+      // spread the projected fields over the whole line
+      if (i % (NUM_KEYS / numFields) == 0 && fields.size() < numFields) {
+        fields.add(Schema.Field.of(name, Schema.nullableOf(fieldSchema)));
+      }
+    }
+    json.append('}');
+    schema = Schema.recordOf("event", fields);
+    decoder = new JsonRecordDecoder(schema);
+    line = new Text(json.toString().getBytes(Charsets.UTF_8));
+  }
+
+  @Benchmark
+  public StructuredRecord decoder() throws IOException {
+    return decoder.decode(line.getBytes(), 0, line.getLength()).build();
+  }
+
+  @Benchmark
+  public StructuredRecord converter() throws IOException {
+    return StructuredRecordStringConverter.fromJsonString(line.toString(), schema);
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.format.orc;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.hydrator.benchmark.RecordBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link StructuredToOrcTransformer} converting every record to an ORC struct.
+ */
+public class StructuredToOrcTransformerBenchmark extends RecordBenchmark {
+  private StructuredToOrcTransformer transformer;
+
+  @Override
+  protected void prepare() {
+    transformer = new StructuredToOrcTransformer();
+  }
+
+  @Benchmark
+  public void transform(Blackhole blackhole) {
+    for (StructuredRecord record : records) {
+      blackhole.consume(transformer.transform(record));
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.benchmark;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+
+/**
+ * Compares two JMH result files written with '-rf json', for example the results of two versions.
+ * Prints one tab separated line per benchmark and parameter combination, with the scores of both files and the
+ * relative change. Changes that are larger than the sum of the score errors are marked as a regression or an
+ * improvement.
+ */
+public final class BenchmarkComparison {
+
+  private BenchmarkComparison() {
+    // no-op
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: BenchmarkComparison <before.json> <after.json>");
+      System.exit(1);
+    }
+    Map<String, Result> before = readResults(new File(args[0]));
+    Map<String, Result> after = readResults(new File(args[1]));
+
+    System.out.println("benchmark\tunit\tbefore\terror\tafter\terror\tchange\tverdict");
+    TreeSet<String> names = new TreeSet<>(before.keySet());
+    names.addAll(after.keySet());
+    for (String name : names) {
+      Result first = before.get(name);
+      Result second = after.get(name);
+      if (first == null || second == null) {
+        System.out.println(String.format("%s\t%s\t%s\t%s\t\t%s", name, first == null ? second.unit : first.unit,
+                                         format(first), format(second), first == null ? "added" : "removed"));
+        continue;
+      }
+      double change = first.score == 0 ? 0 : (second.score - first.score) / first.score * 100;
+      String verdict = "";
+      if (Math.abs(second.score - first.score) > first.error + second.error) {
+        // higher is better for throughput, lower is better for the time based modes
+        boolean better = "thrpt".equals(first.mode) ? second.score > first.score : second.score < first.score;
+        verdict = better ? "improvement" : "regression";
+      }
+      System.out.println(String.format("%s\t%s\t%s\t%s\t%+.1f%%\t%s", name, first.unit,
+                                       format(first), format(second), change, verdict));
+    }
+  }
+
+  private static String format(@Nullable Result result) {
+    return result == null ? "\t" : String.format("%.3f\t%.3f", result.score, result.error);
+  }
+
+  private static Map<String, Result> readResults(File file) throws IOException {
+    JsonArray results;
+    try (Reader reader = new InputStreamReader(Files.newInputStream(file.toPath()), Charsets.UTF_8)) {
+      results = new JsonParser().parse(reader).getAsJsonArray();
+    }
+    Map<String, Result> resultMap = new TreeMap<>();
+    for (JsonElement element : results) {
+      JsonObject result = element.getAsJsonObject();
+      StringBuilder name = new StringBuilder(result.get("benchmark").getAsString());
+      JsonObject params = result.getAsJsonObject("params");
+      if (params != null) {
+        // sort the parameters, so that the names are the same no matter how the parameters were ordered
+        Map<String, String> sortedParams = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> param : params.entrySet()) {
+          sortedParams.put(param.getKey(), param.getValue().getAsString());
+        }
+        name.append(sortedParams);
+      }
+      JsonObject metric = result.getAsJsonObject("primaryMetric");
+      JsonElement error = metric.get("scoreError");
+      resultMap.put(name.toString(), new Result(
+        result.get("mode").getAsString(), metric.get("score").getAsDouble(),
+        // the error is NaN if there were too few iterations to compute it
+        error == null || !error.isJsonPrimitive() || Double.isNaN(error.getAsDouble()) ? 0 : error.getAsDouble(),
+        metric.get("scoreUnit").getAsString()));
+    }
+    return resultMap;
+  }
+
+  /**
+   * Score of a single benchmark and parameter combination.
+   */
+  private static final class Result {
+    private final String mode;
+    private final double score;
+    private final double error;
+    private final String unit;
+
+    private Result(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+  }
+}
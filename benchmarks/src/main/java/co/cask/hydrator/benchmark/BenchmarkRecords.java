@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.benchmark;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic records for the benchmarks. A schema has a non-nullable long 'id' field followed by nullable
+ * fields 'f1', 'f2', ... whose types cycle through string, int, long, double and boolean, so 'f1' is a string,
+ * 'f2' an int, 'f3' a long, 'f4' a double and 'f5' a boolean in every schema.
+ */
+public final class BenchmarkRecords {
+  public static final String NARROW = "narrow";
+  public static final String WIDE = "wide";
+  private static final int NARROW_FIELDS = 8;
+  private static final int WIDE_FIELDS = 100;
+  private static final Schema.Type[] TYPES = {
+    Schema.Type.STRING, Schema.Type.INT, Schema.Type.LONG, Schema.Type.DOUBLE, Schema.Type.BOOLEAN
+  };
+  private static final char[] CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+  // the same seed is used for every run, so that results of different versions are comparable
+  private static final long SEED = 0L;
+
+  private BenchmarkRecords() {
+    // no-op
+  }
+
+  /**
+   * Returns the schema of the given width.
+   *
+   * @param width either {@link #NARROW} or {@link #WIDE}
+   */
+  public static Schema getSchema(String width) {
+    int numFields;
+    if (NARROW.equals(width)) {
+      numFields = NARROW_FIELDS;
+    } else if (WIDE.equals(width)) {
+      numFields = WIDE_FIELDS;
+    } else {
+      throw new IllegalArgumentException(String.format("Invalid width '%s'. It must be '%s' or '%s'.",
+                                                       width, NARROW, WIDE));
+    }
+    List<Schema.Field> fields = new ArrayList<>(numFields);
+    fields.add(Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+    for (int i = 1; i < numFields; i++) {
+      fields.add(Schema.Field.of("f" + i, Schema.nullableOf(Schema.of(TYPES[(i - 1) % TYPES.length]))));
+    }
+    return Schema.recordOf(width, fields);
+  }
+
+  /**
+   * Generates records of the given schema.
+   *
+   * @param schema the schema returned by {@link #getSchema(String)}
+   * @param numRecords the number of records to generate
+   * @param nullRatio the fraction of the nullable values that are null
+   */
+  public static List<StructuredRecord> generate(Schema schema, int numRecords, double nullRatio) {
+    Random random = new Random(SEED);
+    List<StructuredRecord> records = new ArrayList<>(numRecords);
+    for (int i = 0; i < numRecords; i++) {
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      for (Schema.Field field : schema.getFields()) {
+        Schema fieldSchema = field.getSchema();
+        if (!fieldSchema.isNullable()) {
+          builder.set(field.getName(), (long) i);
+        } else if (random.nextDouble() >= nullRatio) {
+          builder.set(field.getName(), generateValue(fieldSchema.getNonNullable().getType(), random));
+        }
+      }
+      records.add(builder.build());
+    }
+    return records;
+  }
+
+  private static Object generateValue(Schema.Type type, Random random) {
+    switch (type) {
+      case STRING:
+        char[] chars = new char[8 + random.nextInt(17)];
+        for (int i = 0; i < chars.length; i++) {
+          chars[i] = CHARS[random.nextInt(CHARS.length)];
+        }
+        return new String(chars);
+      case INT:
+        // a small range, so that grouping and joining on int fields see repeated keys
+        return random.nextInt(1000);
+      case LONG:
+        return random.nextLong();
+      case DOUBLE:
+        return random.nextDouble() * 1000;
+      case BOOLEAN:
+        return random.nextBoolean();
+      default:
+        throw new IllegalArgumentException("Unsupported type " + type);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.benchmark;
+
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.InvalidEntry;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+
+/**
+ * Emitter that hands everything to a JMH {@link Blackhole}, so that emitted values are not optimized away
+ * and are not kept in memory.
+ *
+ * @param <T> type of emitted values
+ */
+public class BlackholeEmitter<T> implements Emitter<T> {
+  private final Blackhole blackhole;
+
+  public BlackholeEmitter(Blackhole blackhole) {
+    this.blackhole = blackhole;
+  }
+
+  @Override
+  public void emit(T value) {
+    blackhole.consume(value);
+  }
+
+  @Override
+  public void emitError(InvalidEntry<T> invalidEntry) {
+    blackhole.consume(invalidEntry);
+  }
+
+  @Override
+  public void emitAlert(Map<String, String> payload) {
+    blackhole.consume(payload);
+  }
+}
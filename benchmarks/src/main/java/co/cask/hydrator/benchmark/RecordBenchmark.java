@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.benchmark;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class of the benchmarks that process a batch of generated records. Every benchmark method processes all
+ * of the records once, so scores are the average time for a batch of {@link #numRecords} records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class RecordBenchmark {
+
+  @Param({BenchmarkRecords.NARROW, BenchmarkRecords.WIDE})
+  public String width;
+
+  @Param({"1000", "10000"})
+  public int numRecords;
+
+  @Param({"0.0", "0.5"})
+  public double nullRatio;
+
+  protected Schema schema;
+  protected List<StructuredRecord> records;
+
+  @Setup(Level.Trial)
+  public void generateRecords() throws Exception {
+    schema = BenchmarkRecords.getSchema(width);
+    records = BenchmarkRecords.generate(schema, numRecords, nullRatio);
+    prepare();
+  }
+
+  /**
+   * Override this to set up the benchmarked objects once the records are generated.
+   */
+  protected void prepare() throws Exception {
+    // no-op
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link CSVLineCodec} with the commons-csv printer and parser used per record, for plain values and for
+ * values that need quoting.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVLineCodecBenchmark {
+
+  @Param({"plain", "quoted"})
+  public String input;
+
+  private CSVFormat format;
+  private CSVLineCodec codec;
+  private Object[] values;
+  private String line;
+
+  @Setup
+  public void setup() throws IOException {
+    format = CSVFormat.DEFAULT;
+    codec = new CSVLineCodec(format);
+    values = new Object[20];
+    for (int i = 0; i < values.length; i++) {
+      if ("plain".equals(input)) {
+        values[i] = i % 2 == 0 ? "value" + i : i * 1000L;
+      } else {
+        values[i] = "value \"" + i + "\", with \"quotes\" and, commas";
+      }
+    }
+    line = codec.format(values);
+  }
+
+  @Benchmark
+  public String formatCodec() {
+    return codec.format(values);
+  }
+
+  @Benchmark
+  public String formatPrinter() throws IOException {
+    CSVPrinter printer = new CSVPrinter(new StringWriter(), format);
+    printer.printRecord(values);
+    String result = printer.getOut().toString();
+    printer.close();
+    return result;
+  }
+
+  @Benchmark
+  public void parseCodec(Blackhole blackhole) throws IOException {
+    codec.reset(line);
+    while (codec.nextRecord()) {
+      for (int i = 0; i < codec.size(); i++) {
+        blackhole.consume(codec.get(i));
+      }
+    }
+  }
+
+  @Benchmark
+  public void parseParser(Blackhole blackhole) throws IOException {
+    for (CSVRecord record : org.apache.commons.csv.CSVParser.parse(line, format).getRecords()) {
+      for (int i = 0; i < record.size(); i++) {
+        blackhole.consume(record.get(i));
+      }
+    }
+  }
+}
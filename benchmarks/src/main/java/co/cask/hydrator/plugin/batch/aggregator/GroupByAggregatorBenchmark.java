@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.InvalidEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link GroupByAggregator} computing 10 numeric aggregates over a group of a million records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupByAggregatorBenchmark {
+  private static final int GROUP_SIZE = 1000000;
+  private static final int NUM_RECORDS = 1024;
+  private static final Schema SCHEMA = Schema.recordOf(
+    "purchase",
+    Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("quantity", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("timestamp", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("price", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))));
+
+  private final StructuredRecord[] records = new StructuredRecord[NUM_RECORDS];
+  private final ResultEmitter emitter = new ResultEmitter();
+  private GroupByAggregator aggregator;
+  private StructuredRecord groupKey;
+
+  @Setup
+  public void setup() throws Exception {
+    for (int i = 0; i < NUM_RECORDS; i++) {
+      records[i] = StructuredRecord.builder(SCHEMA)
+        .set("user", "alice")
+        .set("quantity", i % 17)
+        .set("timestamp", 1500000000000L + i)
+        .set("price", i % 10 == 0 ? null : i * 0.75d)
+        .build();
+    }
+    aggregator = new GroupByAggregator(new GroupByConfig(
+      "user",
+      "totalQuantity:sum(quantity), avgQuantity:avg(quantity), minQuantity:min(quantity), " +
+        "maxQuantity:max(quantity), first:min(timestamp), last:max(timestamp), maxPrice:max(price), " +
+        "numPrices:count(price), stddevPrice:stddev(price), varPrice:variance(price)"));
+    aggregator.initialize(null);
+    groupKey = StructuredRecord.builder(Schema.recordOf("purchase.key", SCHEMA.getField("user")))
+      .set("user", "alice")
+      .build();
+  }
+
+  @Benchmark
+  public StructuredRecord aggregate() throws Exception {
+    aggregator.aggregate(groupKey, new Iterator<StructuredRecord>() {
+      private int count;
+
+      @Override
+      public boolean hasNext() {
+        return count < GROUP_SIZE;
+      }
+
+      @Override
+      public StructuredRecord next() {
+        return records[count++ % NUM_RECORDS];
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }, emitter);
+    return emitter.result;
+  }
+
+  /**
+   * Keeps the last aggregate, so the benchmark can return it.
+   */
+  private static class ResultEmitter implements Emitter<StructuredRecord> {
+    private StructuredRecord result;
+
+    @Override
+    public void emit(StructuredRecord value) {
+      result = value;
+    }
+
+    @Override
+    public void emitError(InvalidEntry<StructuredRecord> invalidEntry) {
+      // no-op
+    }
+
+    @Override
+    public void emitAlert(Map<String, String> payload) {
+      // no-op
+    }
+  }
+}
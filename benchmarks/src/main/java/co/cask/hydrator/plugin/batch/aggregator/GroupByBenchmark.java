@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.hydrator.benchmark.BlackholeEmitter;
+import co.cask.hydrator.benchmark.RecordBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link GroupByAggregator#groupBy(StructuredRecord, Emitter)} creating the group key of every record.
+ */
+public class GroupByBenchmark extends RecordBenchmark {
+  private GroupByAggregator aggregator;
+
+  @Override
+  protected void prepare() throws Exception {
+    aggregator = new GroupByAggregator(new GroupByConfig("f2, f5", "count:count(id), total:sum(f3)"));
+    aggregator.initialize(null);
+  }
+
+  @Benchmark
+  public void groupBy(Blackhole blackhole) throws Exception {
+    Emitter<StructuredRecord> emitter = new BlackholeEmitter<>(blackhole);
+    for (StructuredRecord record : records) {
+      aggregator.groupBy(record, emitter);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.joiner;
+
+import co.cask.cdap.api.data.DatasetInstantiationException;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.Dataset;
+import co.cask.cdap.etl.api.JoinElement;
+import co.cask.cdap.etl.api.batch.BatchJoinerRuntimeContext;
+import co.cask.cdap.etl.mock.transform.MockTransformContext;
+import co.cask.hydrator.benchmark.RecordBenchmark;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures {@link Joiner#joinOn(String, StructuredRecord)} and {@link Joiner#merge(StructuredRecord, Iterable)}
+ * for an inner join of two inputs on their id, which selects every field of one input and two fields of the other.
+ */
+public class JoinerBenchmark extends RecordBenchmark {
+  private static final String LEFT = "left";
+  private static final String RIGHT = "right";
+
+  private Joiner joiner;
+  private List<StructuredRecord> joinKeys;
+  private List<List<JoinElement<StructuredRecord>>> joinRows;
+
+  @Override
+  protected void prepare() throws Exception {
+    StringBuilder selectedFields = new StringBuilder();
+    List<Schema.Field> outputFields = new ArrayList<>();
+    for (Schema.Field field : schema.getFields()) {
+      selectedFields.append(String.format("%s.%s as %s, ", LEFT, field.getName(), field.getName()));
+      outputFields.add(field);
+    }
+    for (String field : new String[] { "f1", "f2" }) {
+      selectedFields.append(String.format("%s.%s as %s_%s, ", RIGHT, field, RIGHT, field));
+      outputFields.add(Schema.Field.of(RIGHT + "_" + field, schema.getField(field).getSchema()));
+    }
+    selectedFields.setLength(selectedFields.length() - 2);
+
+    joiner = new Joiner(new JoinerConfig(String.format("%s.id=%s.id", LEFT, RIGHT), selectedFields.toString(),
+                                         LEFT + "," + RIGHT));
+    joiner.initialize(new JoinerContext(ImmutableMap.of(LEFT, schema, RIGHT, schema),
+                                        Schema.recordOf("joined", outputFields)));
+
+    joinKeys = new ArrayList<>(records.size());
+    joinRows = new ArrayList<>(records.size());
+    for (StructuredRecord record : records) {
+      joinKeys.add(joiner.joinOn(LEFT, record));
+      joinRows.add(ImmutableList.of(new JoinElement<>(LEFT, record), new JoinElement<>(RIGHT, record)));
+    }
+  }
+
+  @Benchmark
+  public void joinOn(Blackhole blackhole) throws Exception {
+    for (StructuredRecord record : records) {
+      blackhole.consume(joiner.joinOn(LEFT, record));
+    }
+  }
+
+  @Benchmark
+  public void merge(Blackhole blackhole) {
+    for (int i = 0; i < joinRows.size(); i++) {
+      blackhole.consume(joiner.merge(joinKeys.get(i), joinRows.get(i)));
+    }
+  }
+
+  /**
+   * Runtime context that only provides the input and output schemas of the joiner.
+   */
+  private static final class JoinerContext extends MockTransformContext implements BatchJoinerRuntimeContext {
+    private final Map<String, Schema> inputSchemas;
+    private final Schema outputSchema;
+
+    private JoinerContext(Map<String, Schema> inputSchemas, Schema outputSchema) {
+      this.inputSchemas = inputSchemas;
+      this.outputSchema = outputSchema;
+    }
+
+    @Override
+    public Map<String, Schema> getInputSchemas() {
+      return inputSchemas;
+    }
+
+    @Override
+    public Schema getOutputSchema() {
+      return outputSchema;
+    }
+
+    @Override
+    public <T extends Dataset> T getDataset(String name) throws DatasetInstantiationException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends Dataset> T getDataset(String namespace, String name) throws DatasetInstantiationException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends Dataset> T getDataset(String name,
+                                            Map<String, String> arguments) throws DatasetInstantiationException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends Dataset> T getDataset(String namespace, String name,
+                                            Map<String, String> arguments) throws DatasetInstantiationException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void releaseDataset(Dataset dataset) {
+      // no-op
+    }
+
+    @Override
+    public void discardDataset(Dataset dataset) {
+      // no-op
+    }
+  }
+}
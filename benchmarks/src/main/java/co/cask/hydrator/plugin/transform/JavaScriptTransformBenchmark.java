@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.transform;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.mock.transform.MockTransformContext;
+import co.cask.hydrator.benchmark.BlackholeEmitter;
+import co.cask.hydrator.benchmark.RecordBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link JavaScriptTransform} running a script that changes a field of every record.
+ */
+public class JavaScriptTransformBenchmark extends RecordBenchmark {
+  private static final String SCRIPT =
+    "function transform(input, emitter, context) {\n" +
+    "  if (input.f1 != null) {\n" +
+    "    input.f1 = input.f1.toUpperCase();\n" +
+    "  }\n" +
+    "  emitter.emit(input);\n" +
+    "}";
+
+  private JavaScriptTransform transform;
+
+  @Override
+  protected void prepare() throws Exception {
+    transform = new JavaScriptTransform(new JavaScriptTransform.Config(SCRIPT, null, null));
+    transform.initialize(new MockTransformContext());
+  }
+
+  @Benchmark
+  public void transform(Blackhole blackhole) {
+    Emitter<StructuredRecord> emitter = new BlackholeEmitter<>(blackhole);
+    for (StructuredRecord record : records) {
+      transform.transform(record, emitter);
+    }
+  }
+}
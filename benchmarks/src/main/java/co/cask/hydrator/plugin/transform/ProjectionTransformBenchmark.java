@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.transform;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.mock.transform.MockTransformContext;
+import co.cask.hydrator.benchmark.BlackholeEmitter;
+import co.cask.hydrator.benchmark.RecordBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link ProjectionTransform} dropping, renaming and converting a field of every record.
+ */
+public class ProjectionTransformBenchmark extends RecordBenchmark {
+  private ProjectionTransform transform;
+
+  @Override
+  protected void prepare() throws Exception {
+    transform = new ProjectionTransform(
+      new ProjectionTransform.ProjectionTransformConfig("f1", "f2:renamed", "f3:string", null));
+    transform.initialize(new MockTransformContext());
+  }
+
+  @Benchmark
+  public void transform(Blackhole blackhole) {
+    Emitter<StructuredRecord> emitter = new BlackholeEmitter<>(blackhole);
+    for (StructuredRecord record : records) {
+      transform.transform(record, emitter);
+    }
+  }
+}
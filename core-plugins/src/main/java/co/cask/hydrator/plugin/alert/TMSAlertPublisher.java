@@ -28,11 +28,20 @@ import co.cask.cdap.etl.api.Alert;
 import co.cask.cdap.etl.api.AlertPublisher;
 import co.cask.cdap.etl.api.AlertPublisherContext;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -45,9 +54,14 @@ import javax.annotation.Nullable;
 public class TMSAlertPublisher extends AlertPublisher {
   public static final Gson GSON = new Gson();
   private static final Logger LOG = LoggerFactory.getLogger(TMSAlertPublisher.class);
+  // upper bound on the number of distinct alerts remembered for deduplication
+  private static final int MAX_DEDUP_ALERTS = 100000;
   private final Conf conf;
   private MessagePublisher messagePublisher;
   private String publishNamespace;
+  private StageMetrics metrics;
+  private RateLimiter rateLimiter;
+  private Cache<Alert, Boolean> recentAlerts;
 
   public TMSAlertPublisher(Conf conf) {
     this.conf = conf;
@@ -84,25 +98,70 @@ public class TMSAlertPublisher extends AlertPublisher {
     messagePublisher = context.getDirectMessagePublisher();
     // TODO: use pipeline namespace instead of 'default' once namespace is available through context
     publishNamespace = conf.namespace == null ? context.getNamespace() : conf.namespace;
+    metrics = context.getMetrics();
+    rateLimiter = RateLimiter.create(conf.maxAlertsPerSecond);
+    if (conf.dedupWindowSeconds != null && conf.dedupWindowSeconds > 0) {
+      recentAlerts = CacheBuilder.newBuilder()
+        .expireAfterWrite(conf.dedupWindowSeconds, TimeUnit.SECONDS)
+        .maximumSize(MAX_DEDUP_ALERTS)
+        .build();
+    }
   }
 
   @Override
   public void publish(Iterator<Alert> iterator) throws Exception {
-    long tickTime = System.currentTimeMillis();
-    int publishedSinceLastTick = 0;
+    List<String> batch = new ArrayList<>(conf.batchSize);
+    // the alerts of the current batch, which are only remembered for deduplication once the batch is published
+    Set<Alert> batchAlerts = new HashSet<>();
+    int coalesced = 0;
     while (iterator.hasNext()) {
-      messagePublisher.publish(publishNamespace, conf.topic, GSON.toJson(iterator.next()));
-      publishedSinceLastTick++;
-      long currentTime = System.currentTimeMillis();
-      if (currentTime - tickTime > 1000) {
-        tickTime = currentTime;
-        publishedSinceLastTick = 0;
-      } else if (publishedSinceLastTick >= conf.maxAlertsPerSecond) {
-        long sleepTime = tickTime + 1000 - currentTime;
-        LOG.info("Hit maximum of {} published alerts in the past second, sleeping for {} millis.",
-                 publishedSinceLastTick, sleepTime);
-        TimeUnit.MILLISECONDS.sleep(tickTime + 1000 - currentTime);
+      Alert alert = iterator.next();
+      if (recentAlerts != null) {
+        // an identical alert was already published within the dedup window or is about to be published
+        if (batchAlerts.contains(alert) || recentAlerts.getIfPresent(alert) != null) {
+          coalesced++;
+          continue;
+        }
+        batchAlerts.add(alert);
+      }
+      batch.add(GSON.toJson(alert));
+      if (batch.size() >= conf.batchSize) {
+        publishBatch(batch, batchAlerts);
+      }
+    }
+    if (!batch.isEmpty()) {
+      publishBatch(batch, batchAlerts);
+    }
+    if (coalesced > 0) {
+      metrics.count("alerts.coalesced", coalesced);
+    }
+  }
+
+  /**
+   * Publishes a batch of alerts in a single call, once the rate limiter allows it, and clears the batch. If a
+   * maximum wait time is configured and the rate limiter can't allow the batch within that time, the batch is
+   * dropped instead. The alerts of a dropped batch are not remembered for deduplication, so that identical alerts
+   * can still be published later.
+   */
+  private void publishBatch(List<String> batch, Set<Alert> batchAlerts) throws Exception {
+    try {
+      int size = batch.size();
+      if (conf.maxWaitSeconds == null) {
+        rateLimiter.acquire(size);
+      } else if (!rateLimiter.tryAcquire(size, conf.maxWaitSeconds, TimeUnit.SECONDS)) {
+        LOG.debug("Dropping {} alerts since the rate limit of {} alerts per second was exceeded for more than {} " +
+                    "seconds.", size, conf.maxAlertsPerSecond, conf.maxWaitSeconds);
+        metrics.count("alerts.dropped", size);
+        return;
+      }
+      messagePublisher.publish(publishNamespace, conf.topic, StandardCharsets.UTF_8, batch.iterator());
+      metrics.count("alerts.published", size);
+      for (Alert alert : batchAlerts) {
+        recentAlerts.put(alert, Boolean.TRUE);
       }
+    } finally {
+      batch.clear();
+      batchAlerts.clear();
     }
   }
 
@@ -129,11 +188,28 @@ public class TMSAlertPublisher extends AlertPublisher {
     @Description("The maximum number of alerts to publish per second. Defaults to 100.")
     private Integer maxAlertsPerSecond;
 
+    @Nullable
+    @Description("The maximum number of alerts to publish in a single call. Defaults to 100.")
+    private Integer batchSize;
+
+    @Nullable
+    @Description("If set to a positive number of seconds, an alert that is identical to an alert published within " +
+      "that many seconds is not published again. Defaults to 0, which publishes every alert.")
+    private Integer dedupWindowSeconds;
+
+    @Nullable
+    @Description("The maximum number of seconds to wait for the rate limit before dropping alerts. " +
+      "If none is specified, alerts are never dropped.")
+    private Integer maxWaitSeconds;
+
     private Conf() {
       topic = null;
       namespace = null;
       autoCreateTopic = false;
       maxAlertsPerSecond = 100;
+      batchSize = 100;
+      dedupWindowSeconds = 0;
+      maxWaitSeconds = null;
     }
 
     private void validate() {
@@ -144,6 +220,18 @@ public class TMSAlertPublisher extends AlertPublisher {
         throw new IllegalArgumentException(
           String.format("Invalid maxAlertsPerSecond %d. Must be at least 1.", maxAlertsPerSecond));
       }
+      if (batchSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid batchSize %d. Must be at least 1.", batchSize));
+      }
+      if (dedupWindowSeconds != null && dedupWindowSeconds < 0) {
+        throw new IllegalArgumentException(
+          String.format("Invalid dedupWindowSeconds %d. Must be at least 0.", dedupWindowSeconds));
+      }
+      if (maxWaitSeconds != null && maxWaitSeconds < 0) {
+        throw new IllegalArgumentException(
+          String.format("Invalid maxWaitSeconds %d. Must be at least 0.", maxWaitSeconds));
+      }
     }
   }
 }
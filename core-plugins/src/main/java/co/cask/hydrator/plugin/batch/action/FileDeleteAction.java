@@ -24,16 +24,16 @@ import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.action.Action;
 import co.cask.cdap.etl.api.action.ActionContext;
+import co.cask.hydrator.plugin.batch.action.ParallelFileOperation.ListedFile;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.PathFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
@@ -45,9 +45,10 @@ import javax.annotation.Nullable;
 @Description("Deletes files.")
 public class FileDeleteAction extends Action {
   private static final Logger LOG = LoggerFactory.getLogger(FileDeleteAction.class);
+  private static final int MIN_NUM_THREADS = 1;
+  static final String DELETED_METRIC = "files.deleted";
 
   private Conf config;
-  private PathFilter filter;
 
   public FileDeleteAction(Conf config) {
     this.config = config;
@@ -57,33 +58,37 @@ public class FileDeleteAction extends Action {
   public void run(ActionContext context) throws Exception {
     Path path = new Path(config.path);
 
-    FileSystem fileSystem = path.getFileSystem(new Configuration());
+    final FileSystem fileSystem = path.getFileSystem(new Configuration());
 
-    FileStatus[] listFiles;
-    if (config.fileRegex != null) {
-      PathFilter filter = new PathFilter() {
-        private final Pattern pattern = Pattern.compile(config.fileRegex);
-
-        @Override
-        public boolean accept(Path path) {
-          return pattern.matcher(path.getName()).matches();
-        }
-      };
-      listFiles = fileSystem.listStatus(path, filter);
-    } else {
-      listFiles = fileSystem.listStatus(path);
-    }
-
-    for (FileStatus file: listFiles) {
-      Path currPath = file.getPath();
-      removePath(fileSystem, currPath);
+    // A directory without a regex is removed with all of its contents by a single recursive delete
+    if (config.fileRegex == null && !ParallelFileOperation.isGlob(path) && fileSystem.isDirectory(path)) {
+      if (config.isDryRun()) {
+        LOG.info("Dry run: directory {} would be removed with all of its contents", path);
+        return;
+      }
+      removePath(fileSystem, path);
+      return;
     }
 
+    Pattern pattern = config.fileRegex == null ? null : Pattern.compile(config.fileRegex);
+    List<ListedFile> listFiles = ParallelFileOperation.list(fileSystem, path, pattern, config.isRecursive());
 
-    if (fileSystem.isDirectory(path) && config.fileRegex == null) {
-      removePath(fileSystem, path);
+    if (config.isDryRun()) {
+      for (ListedFile file : listFiles) {
+        LOG.info("Dry run: {} would be removed", file);
+      }
+      LOG.info("Dry run: {} files would be removed from {}", listFiles.size(), path);
+      return;
     }
 
+    ParallelFileOperation delete = new ParallelFileOperation("delete", config.getNumThreads(), config.continueOnError,
+                                                             context.getMetrics(), DELETED_METRIC);
+    delete.run(listFiles, new ParallelFileOperation.Operation() {
+      @Override
+      public boolean apply(ListedFile file) throws IOException {
+        return fileSystem.delete(file.getPath(), true);
+      }
+    });
   }
 
   public void removePath(FileSystem fileSystem, Path currPath) throws Exception {
@@ -110,10 +115,11 @@ public class FileDeleteAction extends Action {
   /**
    * Config class that contains all properties necessary to execute a file delete command.
    */
-  public class Conf extends PluginConfig {
+  public static class Conf extends PluginConfig {
     @Description("The full path of the file or files that need to be deleted. If path points to a file, " +
       "the file will be removed. If path points to a directory with no regex specified, the directory and all of " +
       "its contents will be removed. If a regex is specified, only the files and directories matching that regex " +
+      "will be removed. The path can also be a glob pattern, in which case the matching files and directories " +
       "will be removed")
     @Macro
     private String path;
@@ -126,6 +132,20 @@ public class FileDeleteAction extends Action {
     @Description("Indicates if the pipeline should continue if the delete fails")
     private boolean continueOnError;
 
+    @Description("Whether the regex is also applied to the files in subdirectories, so that only the matching files " +
+      "in the directory and its subdirectories are removed; defaults to false.")
+    @Nullable
+    private Boolean recursive;
+
+    @Description("Specifies the number of files that are deleted in parallel; defaults to 1.")
+    @Nullable
+    @Macro
+    private Integer numThreads;
+
+    @Description("Whether to only log the files that would be deleted, without deleting them; defaults to false.")
+    @Nullable
+    private Boolean dryRun;
+
     public void validate() {
       if (!containsMacro("fileRegex") && fileRegex != null) {
         try {
@@ -135,13 +155,38 @@ public class FileDeleteAction extends Action {
                                                            fileRegex, e.getMessage()), e);
         }
       }
+      if (!containsMacro("numThreads") && numThreads != null && numThreads < MIN_NUM_THREADS) {
+        throw new IllegalArgumentException(String.format("Invalid number of threads %d. The number of threads must " +
+                                                           "be at least %d.", numThreads, MIN_NUM_THREADS));
+      }
+    }
+
+    boolean isRecursive() {
+      return recursive != null && recursive;
+    }
+
+    boolean isDryRun() {
+      return dryRun != null && dryRun;
+    }
+
+    int getNumThreads() {
+      return numThreads == null ? MIN_NUM_THREADS : Math.max(MIN_NUM_THREADS, numThreads);
     }
 
     @VisibleForTesting
     Conf(String path, String fileRegex, boolean continueOnError) {
+      this(path, fileRegex, continueOnError, null, null, null);
+    }
+
+    @VisibleForTesting
+    Conf(String path, @Nullable String fileRegex, boolean continueOnError, @Nullable Boolean recursive,
+         @Nullable Integer numThreads, @Nullable Boolean dryRun) {
       this.path = path;
       this.fileRegex = fileRegex;
       this.continueOnError = continueOnError;
+      this.recursive = recursive;
+      this.numThreads = numThreads;
+      this.dryRun = dryRun;
     }
   }
 }
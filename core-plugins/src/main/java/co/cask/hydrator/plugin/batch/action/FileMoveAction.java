@@ -24,29 +24,35 @@ import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.action.Action;
 import co.cask.cdap.etl.api.action.ActionContext;
+import co.cask.hydrator.plugin.batch.action.ParallelFileOperation.ListedFile;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.PathFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 /**
  * Action that moves file(s).
  * A user must specify file/directory path and destination file/directory path
- * Optionals include fileRegex
+ * Optionals include fileRegex, recursive, numThreads and dryRun
  */
 @Plugin(type = Action.PLUGIN_TYPE)
 @Name("FileMove")
 @Description("Action to move files.")
 public class FileMoveAction extends Action {
   private static final Logger LOG = LoggerFactory.getLogger(FileMoveAction.class);
+  private static final int MIN_NUM_THREADS = 1;
+  static final String MOVED_METRIC = "files.moved";
 
   private Conf config;
 
@@ -61,9 +67,13 @@ public class FileMoveAction extends Action {
     Path dest = new Path(config.destPath);
 
     FileSystem fileSystem = source.getFileSystem(new Configuration());
-    fileSystem.mkdirs(dest.getParent());
 
-    if (fileSystem.getFileStatus(source).isFile()) { //moving single file
+    if (!ParallelFileOperation.isGlob(source) && fileSystem.getFileStatus(source).isFile()) { //moving single file
+      if (config.isDryRun()) {
+        LOG.info("Dry run: file {} would be moved to {}", source, dest);
+        return;
+      }
+      fileSystem.mkdirs(dest.getParent());
 
       try {
         if (!fileSystem.rename(source, dest)) {
@@ -81,24 +91,11 @@ public class FileMoveAction extends Action {
       return;
     }
 
-    // Moving contents of directory
-    FileStatus[] listFiles;
-    if (config.fileRegex != null) {
-      PathFilter filter = new PathFilter() {
-        private final Pattern pattern = Pattern.compile(config.fileRegex);
-
-        @Override
-        public boolean accept(Path path) {
-          return pattern.matcher(path.getName()).matches();
-        }
-      };
-
-      listFiles = fileSystem.listStatus(source, filter);
-    } else {
-      listFiles = fileSystem.listStatus(source);
-    }
+    // Moving contents of directory, or the files matching the glob
+    Pattern pattern = config.fileRegex == null ? null : Pattern.compile(config.fileRegex);
+    List<ListedFile> listFiles = ParallelFileOperation.list(fileSystem, source, pattern, config.isRecursive());
 
-    if (listFiles.length == 0) {
+    if (listFiles.isEmpty()) {
       if (config.fileRegex != null) {
         LOG.warn("Not moving any files of type {} from source {}", config.fileRegex, source.toString());
       } else {
@@ -110,25 +107,42 @@ public class FileMoveAction extends Action {
       throw new IllegalArgumentException(String.format("destPath %s needs to be a directory since sourcePath is a " +
                                                          "directory", config.destPath));
     }
-    fileSystem.mkdirs(dest); //create destination directory if necessary
 
-    for (FileStatus file: listFiles) {
-      source = file.getPath();
+    // Files in subdirectories are moved to the same subdirectories of the destination.
+    final Map<Path, Path> targetDirs = new HashMap<>();
+    Set<Path> subDirs = new LinkedHashSet<>();
+    for (ListedFile file : listFiles) {
+      String relativePath = file.getRelativePath();
+      int index = relativePath.lastIndexOf(Path.SEPARATOR);
+      Path targetDir = index < 0 ? dest : new Path(dest, relativePath.substring(0, index));
+      targetDirs.put(file.getPath(), targetDir);
+      if (index >= 0) {
+        subDirs.add(targetDir);
+      }
+    }
 
-      try {
-        if (!fileSystem.rename(source, dest)) {
-          if (!config.continueOnError) {
-            throw new IOException(String.format("Failed to rename file %s to %s", source, dest));
-          }
-          LOG.error("Failed to move file {} to {}", source, dest);
-        }
-      } catch (IOException e) {
-        if (!config.continueOnError) {
-          throw e;
-        }
-        LOG.error("Failed to move file {} to {}", source, dest, e);
+    if (config.isDryRun()) {
+      for (ListedFile file : listFiles) {
+        LOG.info("Dry run: {} would be moved to {}", file, targetDirs.get(file.getPath()));
       }
+      LOG.info("Dry run: {} files would be moved from {} to {}", listFiles.size(), source, dest);
+      return;
     }
+
+    fileSystem.mkdirs(dest); //create destination directory if necessary
+    for (Path subDir : subDirs) {
+      fileSystem.mkdirs(subDir);
+    }
+
+    final FileSystem fs = fileSystem;
+    ParallelFileOperation move = new ParallelFileOperation("move", config.getNumThreads(), config.continueOnError,
+                                                           context.getMetrics(), MOVED_METRIC);
+    move.run(listFiles, new ParallelFileOperation.Operation() {
+      @Override
+      public boolean apply(ListedFile file) throws IOException {
+        return fs.rename(file.getPath(), targetDirs.get(file.getPath()));
+      }
+    });
   }
 
   @Override
@@ -139,10 +153,11 @@ public class FileMoveAction extends Action {
   /**
    * Config class that contains all properties necessary to execute a file move command.
    */
-  public class Conf extends PluginConfig {
+  public static class Conf extends PluginConfig {
     @Description("The full HDFS path of the file or directory that is to be moved. In the case of a directory, if " +
       "fileRegex is set, then only files in the source directory matching the wildcard regex will be moved. " +
-      "Otherwise, all files in the directory will be moved. For example: hdfs://hostname/tmp")
+      "Otherwise, all files in the directory will be moved. The path can also be a glob pattern, in which case " +
+      "the matching files and directories are moved. For example: hdfs://hostname/tmp")
     @Macro
     private String sourcePath;
 
@@ -160,6 +175,20 @@ public class FileMoveAction extends Action {
     @Description("Indicates if the pipeline should continue if the move process fails")
     private boolean continueOnError;
 
+    @Description("Whether files in subdirectories of the source directory are also moved. Files in subdirectories " +
+      "are moved to the same subdirectories of the destination; defaults to false.")
+    @Nullable
+    private Boolean recursive;
+
+    @Description("Specifies the number of files that are moved in parallel; defaults to 1.")
+    @Nullable
+    @Macro
+    private Integer numThreads;
+
+    @Description("Whether to only log the files that would be moved, without moving them; defaults to false.")
+    @Nullable
+    private Boolean dryRun;
+
     public void validate() {
       if (!containsMacro("fileRegex") && fileRegex != null) {
         try {
@@ -169,14 +198,39 @@ public class FileMoveAction extends Action {
                                                            fileRegex, e.getMessage()), e);
         }
       }
+      if (!containsMacro("numThreads") && numThreads != null && numThreads < MIN_NUM_THREADS) {
+        throw new IllegalArgumentException(String.format("Invalid number of threads %d. The number of threads must " +
+                                                           "be at least %d.", numThreads, MIN_NUM_THREADS));
+      }
+    }
+
+    boolean isRecursive() {
+      return recursive != null && recursive;
+    }
+
+    boolean isDryRun() {
+      return dryRun != null && dryRun;
+    }
+
+    int getNumThreads() {
+      return numThreads == null ? MIN_NUM_THREADS : Math.max(MIN_NUM_THREADS, numThreads);
     }
 
     @VisibleForTesting
     Conf(String sourcePath, String destPath, String fileRegex, boolean continueOnError) {
+      this(sourcePath, destPath, fileRegex, continueOnError, null, null, null);
+    }
+
+    @VisibleForTesting
+    Conf(String sourcePath, String destPath, @Nullable String fileRegex, boolean continueOnError,
+         @Nullable Boolean recursive, @Nullable Integer numThreads, @Nullable Boolean dryRun) {
       this.sourcePath = sourcePath;
       this.destPath = destPath;
       this.fileRegex = fileRegex;
       this.continueOnError = continueOnError;
+      this.recursive = recursive;
+      this.numThreads = numThreads;
+      this.dryRun = dryRun;
     }
   }
 }
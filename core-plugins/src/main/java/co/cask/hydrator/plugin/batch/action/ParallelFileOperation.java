@@ -0,0 +1,292 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.action;
+
+import co.cask.cdap.etl.api.StageMetrics;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Applies an operation such as a rename or a delete to many files with a bounded number of threads, so that the
+ * file system calls for the files are not made one at a time. Progress is logged and the metrics are emitted
+ * once for every {@link #PROGRESS_INTERVAL} files rather than once for every file.
+ */
+final class ParallelFileOperation {
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelFileOperation.class);
+  static final int PROGRESS_INTERVAL = 1000;
+  static final String FAILED_METRIC = "files.failed";
+
+  /**
+   * An operation on a single file or directory.
+   */
+  interface Operation {
+
+    /**
+     * @return false if the operation was not successful
+     */
+    boolean apply(ListedFile file) throws IOException;
+  }
+
+  /**
+   * A file or directory returned by {@link #list(FileSystem, Path, Pattern, boolean)}, with its path relative to the
+   * listed directory.
+   */
+  static final class ListedFile {
+    private final FileStatus status;
+    private final String relativePath;
+
+    private ListedFile(FileStatus status, String relativePath) {
+      this.status = status;
+      this.relativePath = relativePath;
+    }
+
+    Path getPath() {
+      return status.getPath();
+    }
+
+    /**
+     * @return the path relative to the listed directory. For files matched by a glob, this is the name of the
+     *         file, or the path relative to the parent of the matched directory for a recursive listing.
+     */
+    String getRelativePath() {
+      return relativePath;
+    }
+
+    @Override
+    public String toString() {
+      return status.getPath().toString();
+    }
+  }
+
+  private final String description;
+  private final int numThreads;
+  private final boolean continueOnError;
+  private final StageMetrics metrics;
+  private final String successMetric;
+
+  /**
+   * @param description verb describing the operation in log messages, for example 'move'
+   * @param numThreads maximum number of operations run in parallel
+   * @param continueOnError whether to continue with the remaining files if the operation fails on a file
+   * @param metrics metrics to count the files the operation succeeded and failed on, or null
+   * @param successMetric name of the metric for the files the operation succeeded on
+   */
+  ParallelFileOperation(String description, int numThreads, boolean continueOnError,
+                        @Nullable StageMetrics metrics, String successMetric) {
+    this.description = description;
+    this.numThreads = numThreads;
+    this.continueOnError = continueOnError;
+    this.metrics = metrics;
+    this.successMetric = successMetric;
+  }
+
+  /**
+   * Applies the operation to all files, with at most numThreads operations in parallel. If continueOnError is false,
+   * the first failure cancels the operations that have not started yet and is rethrown.
+   *
+   * @return the number of files the operation succeeded on
+   */
+  int run(List<ListedFile> files, final Operation operation) throws Exception {
+    if (files.isEmpty()) {
+      return 0;
+    }
+
+    CountDownLatch executorTerminateLatch = new CountDownLatch(1);
+    ExecutorService executorService = createExecutor(Math.min(numThreads, files.size()), executorTerminateLatch);
+    CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executorService);
+
+    int succeeded = 0;
+    int failed = 0;
+    int reportedSucceeded = 0;
+    int reportedFailed = 0;
+    try {
+      for (final ListedFile file : files) {
+        completionService.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return apply(operation, file);
+          }
+        });
+      }
+
+      for (int count = 1; count <= files.size(); count++) {
+        boolean success;
+        try {
+          success = completionService.take().get();
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause(), Exception.class);
+          throw Throwables.propagate(e.getCause());
+        }
+        if (success) {
+          succeeded++;
+        } else {
+          failed++;
+        }
+        if (count % PROGRESS_INTERVAL == 0) {
+          LOG.info("Completed {} of {} files to {}, {} failed.", count, files.size(), description, failed);
+          emitMetrics(succeeded - reportedSucceeded, failed - reportedFailed);
+          reportedSucceeded = succeeded;
+          reportedFailed = failed;
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+      executorTerminateLatch.await();
+      emitMetrics(succeeded - reportedSucceeded, failed - reportedFailed);
+    }
+    LOG.info("Completed {} files to {}, {} failed.", files.size(), description, failed);
+    return succeeded;
+  }
+
+  private boolean apply(Operation operation, ListedFile file) throws IOException {
+    try {
+      if (operation.apply(file)) {
+        return true;
+      }
+      if (!continueOnError) {
+        throw new IOException(String.format("Failed to %s %s.", description, file));
+      }
+      LOG.error("Failed to {} {}.", description, file);
+    } catch (IOException e) {
+      if (!continueOnError) {
+        throw e;
+      }
+      LOG.error("Failed to {} {}.", description, file, e);
+    }
+    return false;
+  }
+
+  private void emitMetrics(int succeeded, int failed) {
+    if (metrics == null) {
+      return;
+    }
+    if (succeeded > 0) {
+      metrics.count(successMetric, succeeded);
+    }
+    if (failed > 0) {
+      metrics.count(FAILED_METRIC, failed);
+    }
+  }
+
+  /**
+   * Creates an {@link ExecutorService} that has the given number of threads.
+   *
+   * @param threads number of core threads in the executor
+   * @param terminationLatch a {@link CountDownLatch} that will be counted down when the executor terminated
+   * @return a new {@link ExecutorService}.
+   */
+  private ExecutorService createExecutor(int threads, final CountDownLatch terminationLatch) {
+    return new ThreadPoolExecutor(
+      threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactoryBuilder().setNameFormat("file-" + description + "-%d").setDaemon(true).build()) {
+      @Override
+      protected void terminated() {
+        terminationLatch.countDown();
+      }
+    };
+  }
+
+  /**
+   * Returns whether the path contains glob pattern characters.
+   */
+  static boolean isGlob(Path path) {
+    String pathString = path.toUri().getPath();
+    for (char c : new char[] {'*', '?', '[', '{'}) {
+      if (pathString.indexOf(c) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Lists the files and directories to operate on.
+   *
+   * <ul>
+   *   <li>If the path is a glob, the files and directories matching the glob are returned.</li>
+   *   <li>Otherwise, if the path is a directory, the files and directories in the directory are returned.</li>
+   *   <li>Otherwise, the file itself is returned.</li>
+   * </ul>
+   * If recursive is true, the directories that would be returned are replaced by all files in them and their
+   * subdirectories. Only files and directories with a name matching the regex are returned.
+   *
+   * @return the listed files
+   * @throws java.io.FileNotFoundException if the path is not a glob and does not exist
+   */
+  static List<ListedFile> list(FileSystem fileSystem, Path path, @Nullable Pattern regex,
+                               boolean recursive) throws IOException {
+    List<FileStatus> roots = new ArrayList<>();
+    if (isGlob(path)) {
+      FileStatus[] matched = fileSystem.globStatus(path);
+      if (matched != null) {
+        Collections.addAll(roots, matched);
+      }
+    } else {
+      Collections.addAll(roots, fileSystem.listStatus(path));
+    }
+
+    List<ListedFile> files = new ArrayList<>();
+    for (FileStatus root : roots) {
+      String rootName = root.getPath().getName();
+      if (!recursive || !root.isDirectory()) {
+        if (matches(regex, root.getPath())) {
+          files.add(new ListedFile(root, rootName));
+        }
+        continue;
+      }
+      // Paths under a root directory are made relative to the parent of the root.
+      String parent = root.getPath().getParent().toUri().getPath();
+      int prefixLength = parent.endsWith(Path.SEPARATOR) ? parent.length() : parent.length() + 1;
+      RemoteIterator<LocatedFileStatus> iterator = fileSystem.listFiles(root.getPath(), true);
+      while (iterator.hasNext()) {
+        LocatedFileStatus file = iterator.next();
+        if (matches(regex, file.getPath())) {
+          String filePath = file.getPath().toUri().getPath();
+          files.add(new ListedFile(file, filePath.substring(prefixLength)));
+        }
+      }
+    }
+    return files;
+  }
+
+  private static boolean matches(@Nullable Pattern regex, Path path) {
+    return regex == null || regex.matcher(path.getName()).matches();
+  }
+}
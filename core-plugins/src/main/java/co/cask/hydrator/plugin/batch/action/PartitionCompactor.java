@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.action;
+
+import co.cask.cdap.api.data.batch.InputFormatProvider;
+import co.cask.cdap.api.data.batch.OutputFormatProvider;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Rewrites the files of a partition into as few files as possible, each containing input files of up to a target
+ * size in total, using the input and output formats of the partition's file format. The rewritten files are read
+ * back to verify that they contain as many records as the original files.
+ */
+final class PartitionCompactor {
+  private final Configuration inputConf;
+  private final Configuration outputConf;
+  private final long targetFileSize;
+
+  /**
+   * @param conf the Hadoop configuration to start from
+   * @param inputFormatProvider provides the input format that reads the partition files
+   * @param outputFormatProvider provides the output format that writes the partition files
+   * @param targetFileSize size in bytes of the input files combined into one output file
+   */
+  PartitionCompactor(Configuration conf, InputFormatProvider inputFormatProvider,
+                     OutputFormatProvider outputFormatProvider, long targetFileSize) {
+    // the format classes are only visible to the class loaders of the format plugins
+    this.inputConf = new Configuration(conf);
+    inputConf.setClassLoader(inputFormatProvider.getClass().getClassLoader());
+    for (Map.Entry<String, String> property : inputFormatProvider.getInputFormatConfiguration().entrySet()) {
+      inputConf.set(property.getKey(), property.getValue());
+    }
+    inputConf.set(JobContext.INPUT_FORMAT_CLASS_ATTR, inputFormatProvider.getInputFormatClassName());
+    this.outputConf = new Configuration(conf);
+    outputConf.setClassLoader(outputFormatProvider.getClass().getClassLoader());
+    for (Map.Entry<String, String> property : outputFormatProvider.getOutputFormatConfiguration().entrySet()) {
+      outputConf.set(property.getKey(), property.getValue());
+    }
+    outputConf.set(JobContext.OUTPUT_FORMAT_CLASS_ATTR, outputFormatProvider.getOutputFormatClassName());
+    this.targetFileSize = targetFileSize;
+  }
+
+  /**
+   * @return the data files of the given directory, which excludes hidden files such as '_SUCCESS'
+   */
+  List<FileStatus> listFiles(Path dir) throws IOException {
+    FileSystem fs = dir.getFileSystem(inputConf);
+    List<FileStatus> files = new ArrayList<>();
+    RemoteIterator<LocatedFileStatus> iter = fs.listFiles(dir, true);
+    while (iter.hasNext()) {
+      LocatedFileStatus status = iter.next();
+      String name = status.getPath().getName();
+      if (!name.startsWith("_") && !name.startsWith(".")) {
+        files.add(status);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Writes the records of the given files to the output directory, which must not exist yet. If the rewritten files
+   * do not contain the same number of records, the output directory is deleted again.
+   *
+   * @return the number of records that were rewritten
+   * @throws IOException if the files could not be rewritten, or if the number of records does not match
+   */
+  long compact(List<FileStatus> files, Path outputDir) throws IOException, InterruptedException {
+    JobID jobId = new JobID("compaction", 0);
+    Configuration jobConf = new Configuration(outputConf);
+    jobConf.set(FileOutputFormat.OUTDIR, outputDir.toString());
+    JobContext jobContext = new JobContextImpl(jobConf, jobId);
+
+    long written = 0L;
+    boolean succeeded = false;
+    try {
+      // like in a MapReduce job, every task uses its own output format, since formats may cache per task state
+      OutputCommitter jobCommitter = null;
+      List<List<FileStatus>> groups = group(files);
+      for (int i = 0; i < groups.size(); i++) {
+        TaskAttemptContext taskContext =
+          new TaskAttemptContextImpl(jobConf, new TaskAttemptID(jobId.getJtIdentifier(), jobId.getId(),
+                                                                TaskType.MAP, i, 0));
+        OutputFormat<NullWritable, StructuredRecord> outputFormat = createOutputFormat();
+        OutputCommitter committer = outputFormat.getOutputCommitter(taskContext);
+        if (jobCommitter == null) {
+          jobCommitter = committer;
+          jobCommitter.setupJob(jobContext);
+        }
+        committer.setupTask(taskContext);
+        RecordWriter<NullWritable, StructuredRecord> writer = outputFormat.getRecordWriter(taskContext);
+        try {
+          for (FileStatus file : groups.get(i)) {
+            written += read(file.getPath(), writer);
+          }
+        } finally {
+          writer.close(taskContext);
+        }
+        committer.commitTask(taskContext);
+      }
+      if (jobCommitter != null) {
+        jobCommitter.commitJob(jobContext);
+      }
+
+      long verified = read(outputDir, null);
+      if (verified != written) {
+        throw new IOException(String.format("Compacted files in '%s' contain %d records instead of %d.",
+                                            outputDir, verified, written));
+      }
+      succeeded = true;
+      return written;
+    } finally {
+      if (!succeeded) {
+        outputDir.getFileSystem(jobConf).delete(outputDir, true);
+      }
+    }
+  }
+
+  /**
+   * Groups the files in order, so that each group is at most the target size, unless it only has a single file.
+   */
+  private List<List<FileStatus>> group(List<FileStatus> files) {
+    List<List<FileStatus>> groups = new ArrayList<>();
+    List<FileStatus> group = new ArrayList<>();
+    long groupSize = 0L;
+    for (FileStatus file : files) {
+      if (!group.isEmpty() && groupSize + file.getLen() > targetFileSize) {
+        groups.add(group);
+        group = new ArrayList<>();
+        groupSize = 0L;
+      }
+      group.add(file);
+      groupSize += file.getLen();
+    }
+    if (!group.isEmpty()) {
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  /**
+   * Reads all records of a path, writing them to the given writer if there is one.
+   *
+   * @return the number of records read
+   */
+  private long read(Path path, @Nullable RecordWriter<NullWritable, StructuredRecord> writer)
+    throws IOException, InterruptedException {
+    Configuration conf = new Configuration(inputConf);
+    conf.set(FileInputFormat.INPUT_DIR, StringUtils.escapeString(path.toString()));
+    InputFormat<NullWritable, StructuredRecord> inputFormat = createInputFormat(conf);
+    long count = 0L;
+    JobID jobId = new JobID("compaction", 0);
+    for (InputSplit split : inputFormat.getSplits(new JobContextImpl(conf, jobId))) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(
+        conf, new TaskAttemptID(jobId.getJtIdentifier(), jobId.getId(), TaskType.MAP, 0, 0));
+      try (RecordReader<NullWritable, StructuredRecord> reader = inputFormat.createRecordReader(split, context)) {
+        reader.initialize(split, context);
+        while (reader.nextKeyValue()) {
+          if (writer != null) {
+            writer.write(NullWritable.get(), reader.getCurrentValue());
+          }
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  @SuppressWarnings("unchecked")
+  private InputFormat<NullWritable, StructuredRecord> createInputFormat(Configuration conf) throws IOException {
+    try {
+      return (InputFormat<NullWritable, StructuredRecord>)
+        ReflectionUtils.newInstance(conf.getClassByName(conf.get(JobContext.INPUT_FORMAT_CLASS_ATTR)), conf);
+    } catch (ClassNotFoundException e) {
+      throw new IOException(String.format("Could not load the input format '%s'.",
+                                          conf.get(JobContext.INPUT_FORMAT_CLASS_ATTR)), e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private OutputFormat<NullWritable, StructuredRecord> createOutputFormat() throws IOException {
+    try {
+      return (OutputFormat<NullWritable, StructuredRecord>)
+        ReflectionUtils.newInstance(outputConf.getClassByName(outputConf.get(JobContext.OUTPUT_FORMAT_CLASS_ATTR)),
+                                    outputConf);
+    } catch (ClassNotFoundException e) {
+      throw new IOException(String.format("Could not load the output format '%s'.",
+                                          outputConf.get(JobContext.OUTPUT_FORMAT_CLASS_ATTR)), e);
+    }
+  }
+}
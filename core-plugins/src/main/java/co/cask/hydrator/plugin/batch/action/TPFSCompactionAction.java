@@ -0,0 +1,358 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.action;
+
+import co.cask.cdap.api.annotation.Description;
+import co.cask.cdap.api.annotation.Macro;
+import co.cask.cdap.api.annotation.Name;
+import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.data.batch.InputFormatProvider;
+import co.cask.cdap.api.data.batch.OutputFormatProvider;
+import co.cask.cdap.api.dataset.lib.TimePartitionDetail;
+import co.cask.cdap.api.dataset.lib.TimePartitionedFileSet;
+import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.batch.BatchActionContext;
+import co.cask.cdap.etl.api.batch.PostAction;
+import co.cask.hydrator.common.TimeParser;
+import co.cask.hydrator.common.batch.action.ConditionConfig;
+import co.cask.hydrator.format.FileFormat;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+
+/**
+ * Merges the many small files that pipelines writing frequently to a {@link TimePartitionedFileSet} leave behind into
+ * files of a target size. The partitions in the configured time range are compacted in parallel into new
+ * directories, each of which is read back to verify its record count. Only once all partitions have been compacted,
+ * each partition is switched to its new directory by dropping and re-adding it, which also removes the old files.
+ */
+@Plugin(type = PostAction.PLUGIN_TYPE)
+@Name("TPFSCompaction")
+@Description("Compacts the files of the partitions of a TimePartitionedFileSet into files of a target size.")
+public class TPFSCompactionAction extends PostAction {
+  private static final Logger LOG = LoggerFactory.getLogger(TPFSCompactionAction.class);
+  private static final String INPUT_FORMAT_PLUGIN_ID = "inputformat";
+  private static final String OUTPUT_FORMAT_PLUGIN_ID = "outputformat";
+  private static final String COMPACTED_SUFFIX = "-compacted-";
+  static final String PARTITIONS_METRIC = "partitions.compacted";
+  static final String FILES_METRIC = "files.compacted";
+
+  private final Conf config;
+
+  public TPFSCompactionAction(Conf config) {
+    this.config = config;
+  }
+
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+    config.validate();
+    if (config.containsMacro("format")) {
+      // the format is only known at runtime, so the format plugins of every format that can be compacted and
+      // are available are registered
+      for (FileFormat format : Conf.FORMATS) {
+        String formatName = format.name().toLowerCase();
+        pipelineConfigurer.usePlugin("inputformat", formatName, getPluginId(INPUT_FORMAT_PLUGIN_ID, format),
+                                     config.getProperties());
+        pipelineConfigurer.usePlugin("outputformat", formatName, getPluginId(OUTPUT_FORMAT_PLUGIN_ID, format),
+                                     config.getProperties());
+      }
+      return;
+    }
+    FileFormat format = config.getFormat();
+    String formatName = format.name().toLowerCase();
+    InputFormatProvider inputFormatProvider =
+      pipelineConfigurer.usePlugin("inputformat", formatName, getPluginId(INPUT_FORMAT_PLUGIN_ID, format),
+                                   config.getProperties());
+    OutputFormatProvider outputFormatProvider =
+      pipelineConfigurer.usePlugin("outputformat", formatName, getPluginId(OUTPUT_FORMAT_PLUGIN_ID, format),
+                                   config.getProperties());
+    if (inputFormatProvider == null || outputFormatProvider == null) {
+      throw new IllegalArgumentException(
+        String.format("Could not find the '%s' input and output format plugins. "
+                        + "Please ensure the '%s' format plugins are installed.", formatName, formatName));
+    }
+  }
+
+  @Override
+  public void run(BatchActionContext context) throws Exception {
+    if (!config.shouldRun(context)) {
+      return;
+    }
+    config.validate();
+
+    FileFormat format = config.getFormat();
+    InputFormatProvider inputFormatProvider = newPluginInstance(context, INPUT_FORMAT_PLUGIN_ID, format);
+    OutputFormatProvider outputFormatProvider = newPluginInstance(context, OUTPUT_FORMAT_PLUGIN_ID, format);
+    PartitionCompactor compactor = new PartitionCompactor(new Configuration(), inputFormatProvider,
+                                                          outputFormatProvider, config.getTargetFileSize());
+    TimePartitionedFileSet tpfs = context.getDataset(config.name);
+
+    long delay = Strings.isNullOrEmpty(config.delay) ? 0 : TimeParser.parseDuration(config.delay);
+    long endTime = context.getLogicalStartTime() - delay;
+    long startTime = endTime - TimeParser.parseDuration(config.duration);
+
+    List<Compaction> compactions = new ArrayList<>();
+    for (TimePartitionDetail partition : tpfs.getPartitionsByTime(startTime, endTime)) {
+      Path path = new Path(partition.getLocation().toURI());
+      List<FileStatus> files = compactor.listFiles(path);
+      if (files.size() < config.getMinFiles()) {
+        continue;
+      }
+      String relativePath = getCompactedPath(partition.getRelativePath(), context.getLogicalStartTime());
+      Path compactedPath = new Path(tpfs.getEmbeddedFileSet().getLocation(relativePath).toURI());
+      compactions.add(new Compaction(partition, files, relativePath, compactedPath));
+    }
+    if (compactions.isEmpty()) {
+      LOG.info("No partitions of {} between {} and {} have at least {} files to compact.",
+               config.name, startTime, endTime, config.getMinFiles());
+      return;
+    }
+
+    compact(compactor, compactions);
+
+    // all partitions were compacted and verified, so switch them over. Both happen in the same transaction,
+    // so readers either see the old or the new files of a partition, and the old files are removed on commit.
+    int numFiles = 0;
+    for (Compaction compaction : compactions) {
+      TimePartitionDetail partition = compaction.partition;
+      tpfs.dropPartition(partition.getTime());
+      tpfs.addPartition(partition.getTime(), compaction.relativePath, partition.getMetadata().asMap());
+      numFiles += compaction.files.size();
+      LOG.debug("Compacted {} files of partition {} into {}.",
+                compaction.files.size(), partition.getRelativePath(), compaction.relativePath);
+    }
+    context.getMetrics().count(PARTITIONS_METRIC, compactions.size());
+    context.getMetrics().count(FILES_METRIC, numFiles);
+    LOG.info("Compacted {} files of {} partitions of {}.", numFiles, compactions.size(), config.name);
+  }
+
+  private static String getPluginId(String prefix, FileFormat format) {
+    return prefix + "." + format.name().toLowerCase();
+  }
+
+  private static <T> T newPluginInstance(BatchActionContext context, String prefix,
+                                         FileFormat format) throws InstantiationException {
+    try {
+      return context.newPluginInstance(getPluginId(prefix, format));
+    } catch (IllegalArgumentException e) {
+      // the plugin was not registered because it was not available when the pipeline was deployed
+      String formatName = format.name().toLowerCase();
+      throw new IllegalArgumentException(
+        String.format("Could not find the '%s' input and output format plugins. "
+                        + "Please ensure the '%s' format plugins are installed.", formatName, formatName), e);
+    }
+  }
+
+  /**
+   * Compacts the partitions with up to the configured number of threads. If any of them fails, the output of all
+   * of them is removed again, leaving the dataset as it was.
+   */
+  private void compact(PartitionCompactor compactor, List<Compaction> compactions) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min(config.getParallelism(), compactions.size()),
+      new ThreadFactoryBuilder().setNameFormat("tpfs-compaction-%d").setDaemon(true).build());
+    boolean succeeded = false;
+    try {
+      List<Future<Long>> futures = new ArrayList<>(compactions.size());
+      for (Compaction compaction : compactions) {
+        futures.add(executor.submit(() -> compactor.compact(compaction.files, compaction.compactedPath)));
+      }
+      for (Future<Long> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause(), Exception.class);
+          throw new IOException("Failed to compact a partition.", e.getCause());
+        }
+      }
+      succeeded = true;
+    } finally {
+      executor.shutdownNow();
+      if (!succeeded) {
+        for (Compaction compaction : compactions) {
+          try {
+            compaction.compactedPath.getFileSystem(new Configuration()).delete(compaction.compactedPath, true);
+          } catch (IOException e) {
+            LOG.warn("Failed to remove the compacted files in {}.", compaction.compactedPath, e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the relative path a partition is compacted into, which is kept next to the original path so that
+   * compacting the same partition again does not keep growing it.
+   */
+  @VisibleForTesting
+  static String getCompactedPath(String relativePath, long logicalStartTime) {
+    String path = relativePath.endsWith("/") ? relativePath.substring(0, relativePath.length() - 1) : relativePath;
+    int index = path.lastIndexOf(COMPACTED_SUFFIX);
+    if (index >= 0 && path.indexOf('/', index) < 0) {
+      path = path.substring(0, index);
+    }
+    return path + COMPACTED_SUFFIX + logicalStartTime;
+  }
+
+  /**
+   * A partition to compact, with its current files and the path they are compacted into.
+   */
+  private static final class Compaction {
+    private final TimePartitionDetail partition;
+    private final List<FileStatus> files;
+    private final String relativePath;
+    private final Path compactedPath;
+
+    private Compaction(TimePartitionDetail partition, List<FileStatus> files, String relativePath,
+                       Path compactedPath) {
+      this.partition = partition;
+      this.files = files;
+      this.relativePath = relativePath;
+      this.compactedPath = compactedPath;
+    }
+  }
+
+  /**
+   * Config for the TimePartitionedFileSet compaction action.
+   */
+  public static class Conf extends ConditionConfig {
+    private static final long MB = 1024L * 1024L;
+    // orc can only be written, so its partitions cannot be read back for compaction
+    private static final Set<FileFormat> FORMATS = EnumSet.of(FileFormat.AVRO, FileFormat.PARQUET);
+
+    @Macro
+    @Description("Name of the TimePartitionedFileSet to compact.")
+    private String name;
+
+    @Macro
+    @Description("Format of the files of the TimePartitionedFileSet. Must be 'avro' or 'parquet'.")
+    private String format;
+
+    @Description("Schema of the records in the TimePartitionedFileSet.")
+    private String schema;
+
+    @Nullable
+    @Description("Compression codec of the compacted files, such as 'Snappy'. Defaults to no compression.")
+    private String compressionCodec;
+
+    @Macro
+    @Description("Size of the time window of partitions to compact with each run of the pipeline. " +
+      "The format is expected to be a number followed by an 's', 'm', 'h', or 'd' specifying the time unit, with " +
+      "'s' for seconds, 'm' for minutes, 'h' for hours, and 'd' for days.")
+    private String duration;
+
+    @Macro
+    @Nullable
+    @Description("Optional delay of the time window of partitions to compact. The value must be of the same format " +
+      "as the duration value. For example, a duration of '1d' and a delay of '1h' means each run compacts the " +
+      "partitions from 25 hours before its logical start time to 1 hour before its logical start time. " +
+      "The default value is 0.")
+    private String delay;
+
+    @Macro
+    @Nullable
+    @Description("Size in megabytes of the input files that are combined into one compacted file. Defaults to 128.")
+    private Integer targetFileSize;
+
+    @Macro
+    @Nullable
+    @Description("Number of partitions that are compacted in parallel. Defaults to 4.")
+    private Integer parallelism;
+
+    @Macro
+    @Nullable
+    @Description("Minimum number of files a partition must have to be compacted. Defaults to 2.")
+    private Integer minFiles;
+
+    public Conf() {
+      super("success");
+    }
+
+    @VisibleForTesting
+    Conf(String name, String format, String schema, String duration, @Nullable String delay,
+         @Nullable Integer targetFileSize, @Nullable Integer parallelism, @Nullable Integer minFiles) {
+      super("success");
+      this.name = name;
+      this.format = format;
+      this.schema = schema;
+      this.duration = duration;
+      this.delay = delay;
+      this.targetFileSize = targetFileSize;
+      this.parallelism = parallelism;
+      this.minFiles = minFiles;
+    }
+
+    FileFormat getFormat() {
+      return FileFormat.from(format, FORMATS::contains);
+    }
+
+    long getTargetFileSize() {
+      return (targetFileSize == null ? 128 : targetFileSize) * MB;
+    }
+
+    int getParallelism() {
+      return parallelism == null ? 4 : parallelism;
+    }
+
+    int getMinFiles() {
+      return minFiles == null ? 2 : minFiles;
+    }
+
+    public void validate() {
+      super.validate();
+      if (!containsMacro("format")) {
+        getFormat();
+      }
+      if (!containsMacro("duration") && TimeParser.parseDuration(duration) <= 0) {
+        throw new IllegalArgumentException("Duration must be greater than 0.");
+      }
+      if (!containsMacro("delay") && !Strings.isNullOrEmpty(delay)) {
+        TimeParser.parseDuration(delay);
+      }
+      if (!containsMacro("targetFileSize") && targetFileSize != null && targetFileSize < 1) {
+        throw new IllegalArgumentException(String.format("Invalid target file size %d. The target file size must " +
+                                                           "be at least 1 megabyte.", targetFileSize));
+      }
+      if (!containsMacro("parallelism") && parallelism != null && parallelism < 1) {
+        throw new IllegalArgumentException(String.format("Invalid parallelism %d. The parallelism must be at least 1.",
+                                                         parallelism));
+      }
+      if (!containsMacro("minFiles") && minFiles != null && minFiles < 1) {
+        throw new IllegalArgumentException(String.format("Invalid minimum number of files %d. The minimum number " +
+                                                           "of files must be at least 1.", minFiles));
+      }
+    }
+  }
+}
@@ -34,11 +34,9 @@ import co.cask.hydrator.plugin.batch.aggregator.function.AggregateFunction;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import javax.ws.rs.Path;
 
 /**
@@ -47,13 +45,19 @@ import javax.ws.rs.Path;
 @Plugin(type = BatchAggregator.PLUGIN_TYPE)
 @Name("GroupByAggregate")
 @Description("Groups by one or more fields, then performs one or more aggregate functions on each group. " +
-  "Supports avg, count, count(*), first, last, max, min, and sum as aggregate functions.")
+  "Supports avg, count, count(*), countDistinct, approxCountDistinct, first, last, max, min, percentile, stddev, " +
+  "sum, topK and variance as aggregate functions.")
 public class GroupByAggregator extends RecordAggregator {
   private final GroupByConfig conf;
   private List<String> groupByFields;
   private List<GroupByConfig.FunctionInfo> functionInfos;
   private Schema outputSchema;
-  private Map<String, AggregateFunction> aggregateFunctions;
+  // the functions and the schemas are created once for each input schema, and reused for all the groups
+  private Schema valueSchema;
+  private String[] aggregateNames;
+  private AggregateFunction[] aggregateFunctions;
+  private Schema groupKeyInputSchema;
+  private Schema groupKeySchema;
 
   public GroupByAggregator(GroupByConfig conf) {
     super(conf.numPartitions);
@@ -111,8 +115,13 @@ public class GroupByAggregator extends RecordAggregator {
   public void groupBy(StructuredRecord record, Emitter<StructuredRecord> emitter) throws Exception {
     // app should provide some way to make some data calculated in configurePipeline available here.
     // then we wouldn't have to calculate schema here
-    StructuredRecord.Builder builder = StructuredRecord.builder(getGroupKeySchema(record.getSchema()));
-    for (String groupByField : conf.getGroupByFields()) {
+    Schema inputSchema = record.getSchema();
+    if (groupKeySchema == null || !sameSchema(inputSchema, groupKeyInputSchema)) {
+      groupKeySchema = getGroupKeySchema(inputSchema);
+      groupKeyInputSchema = inputSchema;
+    }
+    StructuredRecord.Builder builder = StructuredRecord.builder(groupKeySchema);
+    for (String groupByField : groupByFields) {
       builder.set(groupByField, record.get(groupByField));
     }
     emitter.emit(builder.build());
@@ -126,7 +135,12 @@ public class GroupByAggregator extends RecordAggregator {
     }
 
     StructuredRecord firstVal = iterator.next();
-    initAggregates(firstVal.getSchema());
+    if (aggregateFunctions == null || !sameSchema(firstVal.getSchema(), valueSchema)) {
+      initAggregates(firstVal.getSchema());
+    }
+    for (AggregateFunction aggregateFunction : aggregateFunctions) {
+      aggregateFunction.beginFunction();
+    }
     StructuredRecord.Builder builder = StructuredRecord.builder(outputSchema);
     for (String groupByField : groupByFields) {
       builder.set(groupByField, groupKey.get(groupByField));
@@ -137,8 +151,8 @@ public class GroupByAggregator extends RecordAggregator {
       updateAggregates(iterator.next());
     }
 
-    for (Map.Entry<String, AggregateFunction> aggregateFunction : aggregateFunctions.entrySet()) {
-      builder.set(aggregateFunction.getKey(), aggregateFunction.getValue().getAggregate());
+    for (int i = 0; i < aggregateFunctions.length; i++) {
+      builder.set(aggregateNames[i], aggregateFunctions[i].getAggregate());
     }
     emitter.emit(builder.build());
   }
@@ -170,11 +184,16 @@ public class GroupByAggregator extends RecordAggregator {
   }
 
   private void updateAggregates(StructuredRecord groupVal) {
-    for (AggregateFunction aggregateFunction : aggregateFunctions.values()) {
+    for (AggregateFunction aggregateFunction : aggregateFunctions) {
       aggregateFunction.operateOn(groupVal);
     }
   }
 
+  private static boolean sameSchema(Schema schema, Schema other) {
+    // records of a stage usually share the same schema instance
+    return schema == other || schema.equals(other);
+  }
+
   private Schema.Field getOutputSchemaField(GroupByConfig.FunctionInfo functionInfo, Schema inputSchema) {
     // special case count(*) because we don't have to check that the input field exists
     if (functionInfo.getField().equals("*")) {
@@ -202,21 +221,24 @@ public class GroupByAggregator extends RecordAggregator {
       outputFields.add(valueSchema.getField(groupByField));
     }
 
-    aggregateFunctions = new HashMap<>();
-    for (GroupByConfig.FunctionInfo functionInfo : functionInfos) {
+    aggregateNames = new String[functionInfos.size()];
+    aggregateFunctions = new AggregateFunction[functionInfos.size()];
+    for (int i = 0; i < aggregateFunctions.length; i++) {
+      GroupByConfig.FunctionInfo functionInfo = functionInfos.get(i);
       Schema.Field inputField = valueSchema.getField(functionInfo.getField());
       Schema fieldSchema = inputField == null ? null : inputField.getSchema();
       AggregateFunction aggregateFunction = functionInfo.getAggregateFunction(fieldSchema);
-      aggregateFunction.beginFunction();
       outputFields.add(Schema.Field.of(functionInfo.getName(), aggregateFunction.getOutputSchema()));
-      aggregateFunctions.put(functionInfo.getName(), aggregateFunction);
+      aggregateNames[i] = functionInfo.getName();
+      aggregateFunctions[i] = aggregateFunction;
     }
     outputSchema = Schema.recordOf(valueSchema.getRecordName() + ".agg", outputFields);
+    this.valueSchema = valueSchema;
   }
 
   private Schema getGroupKeySchema(Schema inputSchema) {
     List<Schema.Field> fields = new ArrayList<>();
-    for (String groupByField : conf.getGroupByFields()) {
+    for (String groupByField : groupByFields) {
       Schema.Field fieldSchema = inputSchema.getField(groupByField);
       if (fieldSchema == null) {
         throw new IllegalArgumentException(String.format(
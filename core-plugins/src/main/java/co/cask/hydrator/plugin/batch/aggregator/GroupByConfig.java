@@ -20,25 +20,34 @@ import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.hydrator.plugin.batch.aggregator.function.AggregateFunction;
+import co.cask.hydrator.plugin.batch.aggregator.function.ApproxCountDistinct;
 import co.cask.hydrator.plugin.batch.aggregator.function.Avg;
 import co.cask.hydrator.plugin.batch.aggregator.function.Count;
 import co.cask.hydrator.plugin.batch.aggregator.function.CountAll;
+import co.cask.hydrator.plugin.batch.aggregator.function.CountDistinct;
 import co.cask.hydrator.plugin.batch.aggregator.function.First;
+import co.cask.hydrator.plugin.batch.aggregator.function.HyperLogLog;
 import co.cask.hydrator.plugin.batch.aggregator.function.Last;
 import co.cask.hydrator.plugin.batch.aggregator.function.Max;
 import co.cask.hydrator.plugin.batch.aggregator.function.Min;
+import co.cask.hydrator.plugin.batch.aggregator.function.Percentile;
 import co.cask.hydrator.plugin.batch.aggregator.function.Stddev;
 import co.cask.hydrator.plugin.batch.aggregator.function.Sum;
+import co.cask.hydrator.plugin.batch.aggregator.function.TopK;
 import co.cask.hydrator.plugin.batch.aggregator.function.Variance;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * Config for group by types of plugins.
@@ -47,12 +56,17 @@ public class GroupByConfig extends AggregatorConfig {
 
   @Macro
   @Description("Aggregates to compute on grouped records. " +
-    "Supported aggregate functions are count, count(*), sum, avg, min, max, first, last. " +
+    "Supported aggregate functions are count, count(*), sum, avg, min, max, first, last, stddev, variance, " +
+    "countDistinct, approxCountDistinct, percentile and topK. " +
     "A function must specify the field it should be applied on, as well as the name it should be called. " +
     "Aggregates are specified using syntax: \"name:function(field)[, other aggregates]\"." +
     "For example, 'avgPrice:avg(price),cheapest:min(price)' will calculate two aggregates. " +
     "The first will create a field called 'avgPrice' that is the average of all 'price' fields in the group. " +
-    "The second will create a field called 'cheapest' that contains the minimum 'price' field in the group")
+    "The second will create a field called 'cheapest' that contains the minimum 'price' field in the group. " +
+    "countDistinct takes the maximum number of distinct values in a group as an optional argument, " +
+    "as in 'visitors:countDistinct(user, 100000)', and approxCountDistinct the precision of its sketch, " +
+    "between 4 and 18, as in 'visitors:approxCountDistinct(user, 14)'. percentile takes the percentile between " +
+    "0 and 1, as in 'p95:percentile(latency, 0.95)', and topK the number of values, as in 'topUrls:topK(url, 10)'.")
   private final String aggregates;
 
   @Macro
@@ -102,7 +116,7 @@ public class GroupByConfig extends AggregatorConfig {
       return functionInfos;
     }
     Set<String> aggregateNames = new HashSet<>();
-    for (String aggregate : Splitter.on(',').trimResults().split(aggregates)) {
+    for (String aggregate : splitAggregates(aggregates)) {
       int colonIdx = aggregate.indexOf(':');
       if (colonIdx < 0) {
         throw new IllegalArgumentException(String.format(
@@ -135,13 +149,21 @@ public class GroupByConfig extends AggregatorConfig {
           "Could not find closing ')' in function '%s'. Functions must be specified as function(field).",
           functionAndField));
       }
-      String field = functionAndField.substring(leftParanIdx + 1, functionAndField.length() - 1).trim();
+      List<String> arguments = new ArrayList<>();
+      Iterables.addAll(arguments, Splitter.on(',').trimResults().split(
+        functionAndField.substring(leftParanIdx + 1, functionAndField.length() - 1)));
+      String field = arguments.remove(0);
       if (field.isEmpty()) {
         throw new IllegalArgumentException(String.format(
           "Invalid function '%s'. A field must be given as an argument.", functionAndField));
       }
+      if (arguments.size() > function.maxArguments) {
+        throw new IllegalArgumentException(String.format(
+          "Invalid function '%s'. Function '%s' takes at most %d arguments after the field.",
+          functionAndField, functionStr, function.maxArguments));
+      }
 
-      functionInfos.add(new FunctionInfo(name, field, function));
+      functionInfos.add(new FunctionInfo(name, field, function, arguments));
     }
 
     if (functionInfos.isEmpty()) {
@@ -150,6 +172,28 @@ public class GroupByConfig extends AggregatorConfig {
     return functionInfos;
   }
 
+  /**
+   * Splits the aggregates on the commas that are not within the parentheses of a function.
+   */
+  private static List<String> splitAggregates(String aggregates) {
+    List<String> splits = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < aggregates.length(); i++) {
+      char c = aggregates.charAt(i);
+      if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        splits.add(aggregates.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    splits.add(aggregates.substring(start).trim());
+    return splits;
+  }
+
   /**
    * Class to hold information for an aggregate function.
    */
@@ -157,11 +201,17 @@ public class GroupByConfig extends AggregatorConfig {
     private final String name;
     private final String field;
     private final Function function;
+    private final List<String> arguments;
 
     FunctionInfo(String name, String field, Function function) {
+      this(name, field, function, Collections.<String>emptyList());
+    }
+
+    FunctionInfo(String name, String field, Function function, List<String> arguments) {
       this.name = name;
       this.field = field;
       this.function = function;
+      this.arguments = ImmutableList.copyOf(arguments);
     }
 
     public String getName() {
@@ -176,6 +226,13 @@ public class GroupByConfig extends AggregatorConfig {
       return function;
     }
 
+    /**
+     * @return the arguments given to the function after the field.
+     */
+    public List<String> getArguments() {
+      return arguments;
+    }
+
     public AggregateFunction getAggregateFunction(Schema fieldSchema) {
       switch (function) {
         case COUNT:
@@ -199,11 +256,50 @@ public class GroupByConfig extends AggregatorConfig {
           return new Stddev(field, fieldSchema);
         case VARIANCE:
           return new Variance(field, fieldSchema);
+        case COUNTDISTINCT:
+          return new CountDistinct(field, fieldSchema, getIntArgument(0, CountDistinct.DEFAULT_LIMIT));
+        case APPROXCOUNTDISTINCT:
+          return new ApproxCountDistinct(field, fieldSchema, getIntArgument(0, HyperLogLog.DEFAULT_PRECISION));
+        case PERCENTILE:
+          return new Percentile(field, fieldSchema, getDoubleArgument(0));
+        case TOPK:
+          return new TopK(name, field, fieldSchema, getIntArgument(0, null));
       }
       // should never happen
       throw new IllegalStateException("Unknown function type " + function);
     }
 
+    private int getIntArgument(int index, @Nullable Integer defaultValue) {
+      if (arguments.size() <= index && defaultValue != null) {
+        return defaultValue;
+      }
+      String argument = getArgument(index);
+      try {
+        return Integer.parseInt(argument);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(String.format(
+          "Invalid argument '%s' of aggregate '%s'. It must be an integer.", argument, name));
+      }
+    }
+
+    private double getDoubleArgument(int index) {
+      String argument = getArgument(index);
+      try {
+        return Double.parseDouble(argument);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(String.format(
+          "Invalid argument '%s' of aggregate '%s'. It must be a number.", argument, name));
+      }
+    }
+
+    private String getArgument(int index) {
+      if (arguments.size() <= index) {
+        throw new IllegalArgumentException(String.format(
+          "Aggregate '%s' is missing argument %d of function '%s'.", name, index + 1, function));
+      }
+      return arguments.get(index);
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) {
@@ -217,12 +313,13 @@ public class GroupByConfig extends AggregatorConfig {
 
       return Objects.equals(name, that.name) &&
         Objects.equals(field, that.field) &&
-        Objects.equals(function, that.function);
+        Objects.equals(function, that.function) &&
+        Objects.equals(arguments, that.arguments);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(name, field, function);
+      return Objects.hash(name, field, function, arguments);
     }
 
     @Override
@@ -231,6 +328,7 @@ public class GroupByConfig extends AggregatorConfig {
         "name='" + name + '\'' +
         ", field='" + field + '\'' +
         ", function=" + function +
+        ", arguments=" + arguments +
         '}';
     }
   }
@@ -244,6 +342,21 @@ public class GroupByConfig extends AggregatorConfig {
     FIRST,
     LAST,
     STDDEV,
-    VARIANCE
+    VARIANCE,
+    COUNTDISTINCT(1),
+    APPROXCOUNTDISTINCT(1),
+    PERCENTILE(1),
+    TOPK(1);
+
+    // number of arguments the function takes after the field
+    private final int maxArguments;
+
+    Function() {
+      this(0);
+    }
+
+    Function(int maxArguments) {
+      this.maxArguments = maxArguments;
+    }
   }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the number of distinct non-null values of a field in a group with a {@link HyperLogLog} sketch, which
+ * takes 2^precision bytes per group however many distinct values there are.
+ */
+public class ApproxCountDistinct implements AggregateFunction<Long> {
+  private final String fieldName;
+  private final HyperLogLog sketch;
+
+  public ApproxCountDistinct(String fieldName, @Nullable Schema fieldSchema, int precision) {
+    CountDistinct.checkDistinctType(fieldName, fieldSchema, "approxCountDistinct");
+    this.fieldName = fieldName;
+    this.sketch = new HyperLogLog(precision);
+  }
+
+  @Override
+  public void beginFunction() {
+    sketch.clear();
+  }
+
+  @Override
+  public void operateOn(StructuredRecord record) {
+    Object val = record.get(fieldName);
+    if (val != null) {
+      sketch.offer(val);
+    }
+  }
+
+  @Override
+  public Long getAggregate() {
+    return sketch.cardinality();
+  }
+
+  @Override
+  public Schema getOutputSchema() {
+    return Schema.of(Schema.Type.LONG);
+  }
+
+  /**
+   * @return the sketch of the values of the current group, which can be merged with the sketches of other groups.
+   */
+  public HyperLogLog getSketch() {
+    return sketch;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Counts the number of distinct non-null values of a field in a group. The distinct values are kept in memory, up
+ * to a limit, above which the function fails instead of running out of memory. For groups with more distinct
+ * values, use {@link ApproxCountDistinct}.
+ */
+public class CountDistinct implements AggregateFunction<Long> {
+  public static final int DEFAULT_LIMIT = 1000000;
+  private final String fieldName;
+  private final int limit;
+  private final Set<Object> values = new HashSet<>();
+
+  public CountDistinct(String fieldName, @Nullable Schema fieldSchema, int limit) {
+    checkDistinctType(fieldName, fieldSchema, "countDistinct");
+    if (limit < 1) {
+      throw new IllegalArgumentException(String.format(
+        "Invalid limit %d for countDistinct on field %s. It must be at least 1.", limit, fieldName));
+    }
+    this.fieldName = fieldName;
+    this.limit = limit;
+  }
+
+  @Override
+  public void beginFunction() {
+    values.clear();
+  }
+
+  @Override
+  public void operateOn(StructuredRecord record) {
+    Object val = record.get(fieldName);
+    if (val == null) {
+      return;
+    }
+    // byte arrays are not equal by content
+    values.add(val instanceof byte[] ? ByteBuffer.wrap((byte[]) val) : val);
+    if (values.size() > limit) {
+      throw new IllegalStateException(String.format(
+        "Field %s has more than %d distinct values in a group. Increase the limit of countDistinct, " +
+          "or use approxCountDistinct instead.", fieldName, limit));
+    }
+  }
+
+  @Override
+  public Long getAggregate() {
+    return (long) values.size();
+  }
+
+  @Override
+  public Schema getOutputSchema() {
+    return Schema.of(Schema.Type.LONG);
+  }
+
+  /**
+   * Checks that the distinct values of a field can be counted, which requires a simple type.
+   */
+  static void checkDistinctType(String fieldName, @Nullable Schema fieldSchema, String function) {
+    if (fieldSchema == null) {
+      return;
+    }
+    Schema schema = fieldSchema.isNullable() ? fieldSchema.getNonNullable() : fieldSchema;
+    if (!schema.getType().isSimpleType() && schema.getType() != Schema.Type.ENUM) {
+      throw new IllegalArgumentException(String.format(
+        "Cannot compute %s on field %s because its type %s is not a simple type.", function, fieldName,
+        schema.getType()));
+    }
+  }
+}
@@ -21,13 +21,14 @@ import co.cask.cdap.api.data.schema.Schema;
 import javax.annotation.Nullable;
 
 /**
- * Calculates max values of a field in a group.
+ * Calculates max values of a field in a group. The max is kept as a primitive, so updates do not box values.
  */
 public class Max extends NumberFunction {
-  private Integer maxInt;
-  private Long maxLong;
-  private Float maxFloat;
-  private Double maxDouble;
+  private boolean empty;
+  private int maxInt;
+  private long maxLong;
+  private float maxFloat;
+  private double maxDouble;
 
   public Max(String fieldName, @Nullable Schema fieldSchema) {
     super(fieldName, fieldSchema);
@@ -35,61 +36,65 @@ public class Max extends NumberFunction {
 
   @Override
   protected void startInt() {
-    maxInt = null;
+    empty = true;
   }
 
   @Override
   protected void startLong() {
-    maxLong = null;
+    empty = true;
   }
 
   @Override
   protected void startFloat() {
-    maxFloat = null;
+    empty = true;
   }
 
   @Override
   protected void startDouble() {
-    maxDouble = null;
+    empty = true;
   }
 
   @Override
   protected void updateInt(int val) {
-    maxInt = maxInt == null ? val : Math.max(maxInt, val);
+    maxInt = empty ? val : Math.max(maxInt, val);
+    empty = false;
   }
 
   @Override
   protected void updateLong(long val) {
-    maxLong = maxLong == null ? val : Math.max(maxLong, val);
+    maxLong = empty ? val : Math.max(maxLong, val);
+    empty = false;
   }
 
   @Override
   protected void updateFloat(float val) {
-    maxFloat = maxFloat == null ? val : Math.max(maxFloat, val);
+    maxFloat = empty ? val : Math.max(maxFloat, val);
+    empty = false;
   }
 
   @Override
   protected void updateDouble(double val) {
-    maxDouble = maxDouble == null ? val : Math.max(maxDouble, val);
+    maxDouble = empty ? val : Math.max(maxDouble, val);
+    empty = false;
   }
 
   @Override
   protected Integer getInt() {
-    return maxInt;
+    return empty ? null : maxInt;
   }
 
   @Override
   protected Long getLong() {
-    return maxLong;
+    return empty ? null : maxLong;
   }
 
   @Override
   protected Float getFloat() {
-    return maxFloat;
+    return empty ? null : maxFloat;
   }
 
   @Override
   protected Double getDouble() {
-    return maxDouble;
+    return empty ? null : maxDouble;
   }
 }
@@ -21,17 +21,17 @@ import co.cask.cdap.api.data.schema.Schema;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * A {@link SelectionFunction} that can be used to select the record with the max value of a given field.
+ * If several records have the max value, the last one is selected.
  */
 public class MaxSelection extends NumberSelection {
   private StructuredRecord maxRecord;
-  private Integer maxInt;
-  private Long maxLong;
-  private Float maxFloat;
-  private Double maxDouble;
+  private int maxInt;
+  private long maxLong;
+  private float maxFloat;
+  private double maxDouble;
 
   public MaxSelection(String fieldName, Schema fieldSchema) {
     super(fieldName, fieldSchema);
@@ -40,52 +40,52 @@ public class MaxSelection extends NumberSelection {
 
   @Override
   protected void startInt() {
-    maxInt = null;
+    maxRecord = null;
   }
 
   @Override
   protected void startLong() {
-    maxLong = null;
+    maxRecord = null;
   }
 
   @Override
   protected void startFloat() {
-    maxFloat = null;
+    maxRecord = null;
   }
 
   @Override
   protected void startDouble() {
-    maxDouble = null;
+    maxRecord = null;
   }
 
   @Override
   protected void operateOnInt(int current, StructuredRecord record) {
-    maxInt = maxInt == null ? current : Math.max(maxInt, current);
-    if (Objects.equals(maxInt, current)) {
+    maxInt = maxRecord == null ? current : Math.max(maxInt, current);
+    if (maxInt == current) {
       maxRecord = record;
     }
   }
 
   @Override
   protected void operateOnLong(long current, StructuredRecord record) {
-    maxLong = maxLong == null ? current : Math.max(maxLong, current);
-    if (Objects.equals(maxLong, current)) {
+    maxLong = maxRecord == null ? current : Math.max(maxLong, current);
+    if (maxLong == current) {
       maxRecord = record;
     }
   }
 
   @Override
   protected void operateOnFloat(float current, StructuredRecord record) {
-    maxFloat = maxFloat == null ? current : Math.max(maxFloat, current);
-    if (Objects.equals(maxFloat, current)) {
+    maxFloat = maxRecord == null ? current : Math.max(maxFloat, current);
+    if (Float.compare(maxFloat, current) == 0) {
       maxRecord = record;
     }
   }
 
   @Override
   protected void operateOnDouble(double current, StructuredRecord record) {
-    maxDouble = maxDouble == null ? current : Math.max(maxDouble, current);
-    if (Objects.equals(maxDouble, current)) {
+    maxDouble = maxRecord == null ? current : Math.max(maxDouble, current);
+    if (Double.compare(maxDouble, current) == 0) {
       maxRecord = record;
     }
   }
@@ -21,13 +21,14 @@ import co.cask.cdap.api.data.schema.Schema;
 import javax.annotation.Nullable;
 
 /**
- * Calculates minimum values of a field in a group.
+ * Calculates minimum values of a field in a group. The minimum is kept as a primitive, so updates do not box values.
  */
 public class Min extends NumberFunction {
-  private Integer minInt;
-  private Long minLong;
-  private Float minFloat;
-  private Double minDouble;
+  private boolean empty;
+  private int minInt;
+  private long minLong;
+  private float minFloat;
+  private double minDouble;
 
   public Min(String fieldName, @Nullable Schema fieldSchema) {
     super(fieldName, fieldSchema);
@@ -35,61 +36,65 @@ public class Min extends NumberFunction {
 
   @Override
   protected void startInt() {
-    minInt = null;
+    empty = true;
   }
 
   @Override
   protected void startLong() {
-    minLong = null;
+    empty = true;
   }
 
   @Override
   protected void startFloat() {
-    minFloat = null;
+    empty = true;
   }
 
   @Override
   protected void startDouble() {
-    minDouble = null;
+    empty = true;
   }
 
   @Override
   protected void updateInt(int val) {
-    minInt = minInt == null ? val : Math.min(minInt, val);
+    minInt = empty ? val : Math.min(minInt, val);
+    empty = false;
   }
 
   @Override
   protected void updateLong(long val) {
-    minLong = minLong == null ? val : Math.min(minLong, val);
+    minLong = empty ? val : Math.min(minLong, val);
+    empty = false;
   }
 
   @Override
   protected void updateFloat(float val) {
-    minFloat = minFloat == null ? val : Math.min(minFloat, val);
+    minFloat = empty ? val : Math.min(minFloat, val);
+    empty = false;
   }
 
   @Override
   protected void updateDouble(double val) {
-    minDouble = minDouble == null ? val : Math.min(minDouble, val);
+    minDouble = empty ? val : Math.min(minDouble, val);
+    empty = false;
   }
 
   @Override
   protected Integer getInt() {
-    return minInt;
+    return empty ? null : minInt;
   }
 
   @Override
   protected Long getLong() {
-    return minLong;
+    return empty ? null : minLong;
   }
 
   @Override
   protected Float getFloat() {
-    return minFloat;
+    return empty ? null : minFloat;
   }
 
   @Override
   protected Double getDouble() {
-    return minDouble;
+    return empty ? null : minDouble;
   }
 }
@@ -21,17 +21,17 @@ import co.cask.cdap.api.data.schema.Schema;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 
 /**
- * A {@link StructuredRecord} that can be used to select the record with the min value of a given field.
+ * A {@link SelectionFunction} that can be used to select the record with the min value of a given field.
+ * If several records have the min value, the last one is selected.
  */
 public class MinSelection extends NumberSelection {
   private StructuredRecord minRecord;
-  private Integer minInt;
-  private Long minLong;
-  private Float minFloat;
-  private Double minDouble;
+  private int minInt;
+  private long minLong;
+  private float minFloat;
+  private double minDouble;
 
   public MinSelection(String fieldName, Schema fieldSchema) {
     super(fieldName, fieldSchema);
@@ -40,52 +40,52 @@ public class MinSelection extends NumberSelection {
 
   @Override
   protected void startInt() {
-    minInt = null;
+    minRecord = null;
   }
 
   @Override
   protected void startLong() {
-    minLong = null;
+    minRecord = null;
   }
 
   @Override
   protected void startFloat() {
-    minFloat = null;
+    minRecord = null;
   }
 
   @Override
   protected void startDouble() {
-    minDouble = null;
+    minRecord = null;
   }
 
   @Override
   protected void operateOnInt(int current, StructuredRecord record) {
-    minInt = minInt == null ? current : Math.min(minInt, current);
-    if (Objects.equals(minInt, current)) {
+    minInt = minRecord == null ? current : Math.min(minInt, current);
+    if (minInt == current) {
       minRecord = record;
     }
   }
 
   @Override
   protected void operateOnLong(long current, StructuredRecord record) {
-    minLong = minLong == null ? current : Math.min(minLong, current);
-    if (Objects.equals(minLong, current)) {
+    minLong = minRecord == null ? current : Math.min(minLong, current);
+    if (minLong == current) {
       minRecord = record;
     }
   }
 
   @Override
   protected void operateOnFloat(float current, StructuredRecord record) {
-    minFloat = minFloat == null ? current : Math.min(minFloat, current);
-    if (Objects.equals(minFloat, current)) {
+    minFloat = minRecord == null ? current : Math.min(minFloat, current);
+    if (Float.compare(minFloat, current) == 0) {
       minRecord = record;
     }
   }
 
   @Override
   protected void operateOnDouble(double current, StructuredRecord record) {
-    minDouble = minDouble == null ? current : Math.min(minDouble, current);
-    if (Objects.equals(minDouble, current)) {
+    minDouble = minRecord == null ? current : Math.min(minDouble, current);
+    if (Double.compare(minDouble, current) == 0) {
       minRecord = record;
     }
   }
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.hydrator.plugin.batch.aggregator.AggregationUtils;
+
+import javax.annotation.Nullable;
+
+/**
+ * Estimates a percentile of a numeric field in a group with a {@link TDigest}. The aggregate is null if the field
+ * is null in all the records of the group.
+ */
+public class Percentile implements AggregateFunction<Double> {
+  private final String fieldName;
+  private final double quantile;
+  private final TDigest digest;
+
+  public Percentile(String fieldName, @Nullable Schema fieldSchema, double quantile) {
+    if (fieldSchema != null) {
+      Schema.Type fieldType = fieldSchema.isNullable() ? fieldSchema.getNonNullable().getType() : fieldSchema.getType();
+      if (!AggregationUtils.isNumericType(fieldType)) {
+        throw new IllegalArgumentException(String.format(
+          "Cannot compute percentile on field %s because its type %s is not numeric", fieldName, fieldType));
+      }
+    }
+    if (quantile < 0d || quantile > 1d) {
+      throw new IllegalArgumentException(String.format(
+        "Invalid percentile %s for field %s. It must be between 0 and 1, such as 0.95 for p95.", quantile, fieldName));
+    }
+    this.fieldName = fieldName;
+    this.quantile = quantile;
+    this.digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+  }
+
+  @Override
+  public void beginFunction() {
+    digest.clear();
+  }
+
+  @Override
+  public void operateOn(StructuredRecord record) {
+    Number val = record.get(fieldName);
+    if (val != null) {
+      digest.add(val.doubleValue());
+    }
+  }
+
+  @Override
+  public Double getAggregate() {
+    return digest.count() == 0 ? null : digest.quantile(quantile);
+  }
+
+  @Override
+  public Schema getOutputSchema() {
+    return Schema.nullableOf(Schema.of(Schema.Type.DOUBLE));
+  }
+
+  /**
+   * @return the digest of the values of the current group, which can be merged with the digests of other groups.
+   */
+  public TDigest getDigest() {
+    return digest;
+  }
+}
@@ -25,6 +25,14 @@ public final class RunningStats  {
   private long entries = 0L;
   private double mean1, mean2, mean3, mean4 = 0d;
 
+  /**
+   * Clears the statistics, so the instance can be reused for another set of numbers.
+   */
+  public void reset() {
+    entries = 0L;
+    mean1 = mean2 = mean3 = mean4 = 0d;
+  }
+
   /**
    * Pushes a number into machinary that computes a lot of statistics.
    * @param x number to be added to computing statistics.
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-saving summary of the most frequent values of a stream, which keeps a counter for at most {@code capacity}
+ * values. When a value without a counter is offered and all counters are taken, it replaces the value with the
+ * smallest count and inherits that count, so the counts are upper bounds that overestimate by at most the smallest
+ * count. Every value that occurs more than n / capacity times in a stream of n values is guaranteed to be kept.
+ *
+ * The counters are kept in a Stream-Summary: a list of buckets in increasing order of count, each holding the
+ * counters with that count. Offering a value moves its counter to the next bucket and the counter to replace is
+ * taken from the first bucket, so {@link #offer(Object)} takes constant time.
+ *
+ * Summaries can be merged, so partial summaries computed over parts of a group can be combined into the summary
+ * of the whole group.
+ *
+ * See Metwally et al., "Efficient computation of frequent and top-k elements in data streams".
+ *
+ * @param <T> type of the values
+ */
+public final class SpaceSaving<T> {
+  private final int capacity;
+  private final Map<T, Counter<T>> counters;
+  // bucket with the smallest count, which is the head of the list of buckets
+  private Bucket<T> min;
+
+  public SpaceSaving(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(String.format("Invalid capacity %d. It must be at least 1.", capacity));
+    }
+    this.capacity = capacity;
+    this.counters = new HashMap<>(capacity * 2);
+  }
+
+  /**
+   * Counts one occurrence of the given value.
+   */
+  public void offer(T value) {
+    Counter<T> counter = counters.get(value);
+    if (counter != null) {
+      increment(counter);
+      return;
+    }
+    if (counters.size() < capacity) {
+      counter = new Counter<>(value, 0L);
+      counters.put(value, counter);
+      if (min == null || min.count != 1L) {
+        Bucket<T> bucket = new Bucket<>(1L);
+        bucket.next = min;
+        if (min != null) {
+          min.prev = bucket;
+        }
+        min = bucket;
+      }
+      min.add(counter);
+      return;
+    }
+    counter = min.first;
+    counters.remove(counter.value);
+    counter.value = value;
+    counter.error = min.count;
+    counters.put(value, counter);
+    increment(counter);
+  }
+
+  /**
+   * Merges another summary into this one, after which this summary counts the values offered to either.
+   */
+  public void merge(SpaceSaving<T> other) {
+    // values that are not kept by the other summary occurred at most as often as its smallest count
+    long otherMin = other.counters.size() < other.capacity ? 0L : other.getMinCount();
+    long thisMin = counters.size() < capacity ? 0L : getMinCount();
+    Map<T, long[]> merged = new HashMap<>();
+    for (Map.Entry<T, Counter<T>> entry : counters.entrySet()) {
+      Counter<T> counter = entry.getValue();
+      Counter<T> otherCounter = other.counters.get(entry.getKey());
+      if (otherCounter == null) {
+        merged.put(entry.getKey(), new long[] { counter.bucket.count + otherMin, counter.error + otherMin });
+      } else {
+        merged.put(entry.getKey(), new long[] { counter.bucket.count + otherCounter.bucket.count,
+          counter.error + otherCounter.error });
+      }
+    }
+    for (Map.Entry<T, Counter<T>> entry : other.counters.entrySet()) {
+      if (!merged.containsKey(entry.getKey())) {
+        Counter<T> counter = entry.getValue();
+        merged.put(entry.getKey(), new long[] { counter.bucket.count + thisMin, counter.error + thisMin });
+      }
+    }
+
+    List<Map.Entry<T, long[]>> entries = new ArrayList<>(merged.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<T, long[]>>() {
+      @Override
+      public int compare(Map.Entry<T, long[]> left, Map.Entry<T, long[]> right) {
+        return Long.compare(right.getValue()[0], left.getValue()[0]);
+      }
+    });
+    clear();
+    // rebuild the buckets from the largest count down, keeping the values with the largest counts
+    for (Map.Entry<T, long[]> entry : entries.subList(0, Math.min(capacity, entries.size()))) {
+      long count = entry.getValue()[0];
+      if (min == null || min.count != count) {
+        Bucket<T> bucket = new Bucket<>(count);
+        bucket.next = min;
+        if (min != null) {
+          min.prev = bucket;
+        }
+        min = bucket;
+      }
+      Counter<T> counter = new Counter<>(entry.getKey(), entry.getValue()[1]);
+      counters.put(entry.getKey(), counter);
+      min.add(counter);
+    }
+  }
+
+  /**
+   * Returns the values with the largest counts, most frequent first, with at most {@code k} values.
+   */
+  public List<Map.Entry<T, Long>> top(int k) {
+    List<Map.Entry<T, Long>> entries = new ArrayList<>(counters.size());
+    for (Bucket<T> bucket = min; bucket != null; bucket = bucket.next) {
+      for (Counter<T> counter = bucket.first; counter != null; counter = counter.next) {
+        entries.add(new AbstractMap.SimpleImmutableEntry<>(counter.value, bucket.count));
+      }
+    }
+    Collections.reverse(entries);
+    return entries.size() > k ? new ArrayList<>(entries.subList(0, k)) : entries;
+  }
+
+  /**
+   * Returns the largest possible overestimate of the count of a value.
+   */
+  public long getError(T value) {
+    Counter<T> counter = counters.get(value);
+    return counter == null ? getMinCount() : counter.error;
+  }
+
+  public void clear() {
+    counters.clear();
+    min = null;
+  }
+
+  private long getMinCount() {
+    return min == null ? 0L : min.count;
+  }
+
+  /**
+   * Moves a counter to the bucket of the next count, creating the bucket if it does not exist.
+   */
+  private void increment(Counter<T> counter) {
+    Bucket<T> bucket = counter.bucket;
+    long count = bucket.count + 1;
+    Bucket<T> next = bucket.next;
+    if (next == null || next.count != count) {
+      next = new Bucket<>(count);
+      next.prev = bucket;
+      next.next = bucket.next;
+      if (bucket.next != null) {
+        bucket.next.prev = next;
+      }
+      bucket.next = next;
+    }
+    bucket.remove(counter);
+    next.add(counter);
+    if (bucket.first == null) {
+      // unlink the empty bucket
+      if (bucket.prev == null) {
+        min = bucket.next;
+      } else {
+        bucket.prev.next = bucket.next;
+      }
+      bucket.next.prev = bucket.prev;
+    }
+  }
+
+  /**
+   * Counters with the same count, as a doubly linked list.
+   */
+  private static final class Bucket<T> {
+    private final long count;
+    private Bucket<T> prev;
+    private Bucket<T> next;
+    private Counter<T> first;
+
+    Bucket(long count) {
+      this.count = count;
+    }
+
+    void add(Counter<T> counter) {
+      counter.bucket = this;
+      counter.prev = null;
+      counter.next = first;
+      if (first != null) {
+        first.prev = counter;
+      }
+      first = counter;
+    }
+
+    void remove(Counter<T> counter) {
+      if (counter.prev == null) {
+        first = counter.next;
+      } else {
+        counter.prev.next = counter.next;
+      }
+      if (counter.next != null) {
+        counter.next.prev = counter.prev;
+      }
+    }
+  }
+
+  /**
+   * Counter of a value, with the count it may have inherited from the value it replaced. Its count is the count of
+   * its bucket.
+   */
+  private static final class Counter<T> {
+    private T value;
+    private long error;
+    private Bucket<T> bucket;
+    private Counter<T> prev;
+    private Counter<T> next;
+
+    Counter(T value, long error) {
+      this.value = value;
+      this.error = error;
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Merging t-digest that estimates the quantiles of the values it was offered. Values are buffered and merged into
+ * at most about {@code compression} weighted centroids, which are small near the extreme quantiles, so that
+ * p99 and p999 are accurate, and large around the median.
+ *
+ * Digests with the same compression can be merged, and serialized with {@link #toBytes()}, so partial digests
+ * computed over parts of a group can be combined into the digest of the whole group.
+ *
+ * See Dunning and Ertl, "Computing extremely accurate quantiles using t-digests".
+ */
+public final class TDigest {
+  public static final double DEFAULT_COMPRESSION = 100d;
+
+  private final double compression;
+  // centroids, sorted by mean, followed by the buffered values that were not merged yet
+  private double[] means;
+  private double[] weights;
+  private int centroids;
+  private int size;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  public TDigest(double compression) {
+    if (compression < 10d) {
+      throw new IllegalArgumentException(
+        String.format("Invalid compression %s. It must be at least 10.", compression));
+    }
+    this.compression = compression;
+    // the buffer is a few times the number of centroids, so that merges are amortized over many values
+    int capacity = (int) Math.ceil(compression) * 6;
+    this.means = new double[capacity];
+    this.weights = new double[capacity];
+  }
+
+  /**
+   * Returns the digest serialized with {@link #toBytes()}.
+   */
+  public static TDigest fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    TDigest digest = new TDigest(buffer.getDouble());
+    double min = buffer.getDouble();
+    double max = buffer.getDouble();
+    int count = buffer.getInt();
+    for (int i = 0; i < count; i++) {
+      digest.add(buffer.getDouble(), buffer.getDouble());
+    }
+    digest.min = min;
+    digest.max = max;
+    return digest;
+  }
+
+  /**
+   * Adds a value to the digest. NaN values are ignored.
+   */
+  public void add(double value) {
+    if (!Double.isNaN(value)) {
+      add(value, 1d);
+    }
+  }
+
+  /**
+   * Merges another digest into this one, after which this digest estimates the quantiles of the values offered
+   * to either.
+   */
+  public void merge(TDigest other) {
+    other.compress();
+    for (int i = 0; i < other.centroids; i++) {
+      add(other.means[i], other.weights[i]);
+    }
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Returns the estimated value at the given quantile, between 0 and 1, or NaN if no value was added.
+   */
+  public double quantile(double q) {
+    if (q < 0d || q > 1d) {
+      throw new IllegalArgumentException(String.format("Invalid quantile %s. It must be between 0 and 1.", q));
+    }
+    compress();
+    if (centroids == 0) {
+      return Double.NaN;
+    }
+    if (centroids == 1) {
+      return means[0];
+    }
+    double total = getTotalWeight();
+    double index = q * total;
+    // the values of a centroid are assumed to be spread evenly around its mean
+    if (index < weights[0] / 2) {
+      return min + (means[0] - min) * index / (weights[0] / 2);
+    }
+    double center = weights[0] / 2;
+    for (int i = 0; i < centroids - 1; i++) {
+      double nextCenter = center + (weights[i] + weights[i + 1]) / 2;
+      if (index <= nextCenter) {
+        return means[i] + (means[i + 1] - means[i]) * (index - center) / (nextCenter - center);
+      }
+      center = nextCenter;
+    }
+    double lastHalf = weights[centroids - 1] / 2;
+    return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(1d, (index - center) / lastHalf);
+  }
+
+  /**
+   * Returns the number of values added to the digest.
+   */
+  public long count() {
+    return Math.round(getTotalWeight());
+  }
+
+  /**
+   * Returns the compression, the minimum, the maximum and the centroids of the digest.
+   */
+  public byte[] toBytes() {
+    compress();
+    ByteBuffer buffer = ByteBuffer.allocate(3 * Double.SIZE / Byte.SIZE + Integer.SIZE / Byte.SIZE
+                                              + centroids * 2 * Double.SIZE / Byte.SIZE);
+    buffer.putDouble(compression).putDouble(min).putDouble(max).putInt(centroids);
+    for (int i = 0; i < centroids; i++) {
+      buffer.putDouble(means[i]).putDouble(weights[i]);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Clears all the values added to the digest.
+   */
+  public void clear() {
+    centroids = 0;
+    size = 0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  private void add(double mean, double weight) {
+    if (size == means.length) {
+      compress();
+      if (size == means.length) {
+        // the centroids alone fill the buffer, which the size bound should prevent
+        means = Arrays.copyOf(means, size * 2);
+        weights = Arrays.copyOf(weights, size * 2);
+      }
+    }
+    means[size] = mean;
+    weights[size] = weight;
+    size++;
+    min = Math.min(min, mean);
+    max = Math.max(max, mean);
+  }
+
+  private double getTotalWeight() {
+    double total = 0d;
+    for (int i = 0; i < size; i++) {
+      total += weights[i];
+    }
+    return total;
+  }
+
+  /**
+   * Merges the buffered values into the centroids.
+   */
+  private void compress() {
+    if (size == centroids) {
+      return;
+    }
+    sortByMean();
+    double total = getTotalWeight();
+    double mergedWeight = 0d;
+    int last = 0;
+    for (int i = 1; i < size; i++) {
+      double proposed = weights[last] + weights[i];
+      double q0 = mergedWeight / total;
+      double q2 = (mergedWeight + proposed) / total;
+      // the size bound of a centroid is proportional to q(1 - q), which keeps the tails accurate
+      if (proposed <= total * Math.min(q0 * (1 - q0), q2 * (1 - q2)) * 4 / compression) {
+        means[last] += (means[i] - means[last]) * weights[i] / proposed;
+        weights[last] = proposed;
+      } else {
+        mergedWeight += weights[last];
+        last++;
+        means[last] = means[i];
+        weights[last] = weights[i];
+      }
+    }
+    centroids = last + 1;
+    size = centroids;
+  }
+
+  /**
+   * Sorts the buffered values by mean, and merges them with the centroids, which are already sorted.
+   */
+  private void sortByMean() {
+    heapSort(means, weights, centroids, size);
+    double[] sortedMeans = new double[means.length];
+    double[] sortedWeights = new double[weights.length];
+    int centroid = 0;
+    int buffered = centroids;
+    for (int i = 0; i < size; i++) {
+      int next = buffered == size || (centroid < centroids && means[centroid] <= means[buffered])
+        ? centroid++ : buffered++;
+      sortedMeans[i] = means[next];
+      sortedWeights[i] = weights[next];
+    }
+    means = sortedMeans;
+    weights = sortedWeights;
+  }
+
+  /**
+   * Sorts the keys between {@code from}, inclusive, and {@code to}, exclusive, moving the values along with them.
+   */
+  private static void heapSort(double[] keys, double[] values, int from, int to) {
+    int length = to - from;
+    for (int root = length / 2 - 1; root >= 0; root--) {
+      siftDown(keys, values, from, root, length);
+    }
+    for (int end = length - 1; end > 0; end--) {
+      swap(keys, values, from, from + end);
+      siftDown(keys, values, from, 0, end);
+    }
+  }
+
+  private static void siftDown(double[] keys, double[] values, int offset, int root, int length) {
+    int child = 2 * root + 1;
+    while (child < length) {
+      if (child + 1 < length && keys[offset + child + 1] > keys[offset + child]) {
+        child++;
+      }
+      if (keys[offset + root] >= keys[offset + child]) {
+        return;
+      }
+      swap(keys, values, offset + root, offset + child);
+      root = child;
+      child = 2 * root + 1;
+    }
+  }
+
+  private static void swap(double[] keys, double[] values, int i, int j) {
+    double key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    double value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Finds the most frequent non-null values of a field in a group with a {@link SpaceSaving} summary. The aggregate
+ * is an array of up to k records with the value and its count, most frequent first. The summary keeps
+ * {@link #CAPACITY_FACTOR} times k counters, so counts are exact unless a group has more distinct values than that,
+ * in which case they may be overestimated by the count of the least frequent value kept. The records are named
+ * after the aggregate, so that the schemas of several topK aggregates of the same field don't collide.
+ */
+public class TopK implements AggregateFunction<List<StructuredRecord>> {
+  public static final int CAPACITY_FACTOR = 10;
+  private final String fieldName;
+  private final int k;
+  private final Schema valueSchema;
+  private final Schema entrySchema;
+  private final SpaceSaving<Object> summary;
+
+  public TopK(String name, String fieldName, @Nullable Schema fieldSchema, int k) {
+    CountDistinct.checkDistinctType(fieldName, fieldSchema, "topK");
+    if (k < 1) {
+      throw new IllegalArgumentException(String.format(
+        "Invalid k %d for topK on field %s. It must be at least 1.", k, fieldName));
+    }
+    this.fieldName = fieldName;
+    this.k = k;
+    if (fieldSchema == null) {
+      valueSchema = Schema.of(Schema.Type.STRING);
+    } else {
+      valueSchema = fieldSchema.isNullable() ? fieldSchema.getNonNullable() : fieldSchema;
+    }
+    this.entrySchema = Schema.recordOf(name + ".topK",
+                                       Schema.Field.of("value", valueSchema),
+                                       Schema.Field.of("count", Schema.of(Schema.Type.LONG)));
+    this.summary = new SpaceSaving<>(k * CAPACITY_FACTOR);
+  }
+
+  @Override
+  public void beginFunction() {
+    summary.clear();
+  }
+
+  @Override
+  public void operateOn(StructuredRecord record) {
+    Object val = record.get(fieldName);
+    if (val == null) {
+      return;
+    }
+    if (val instanceof byte[]) {
+      // byte arrays are not equal by content
+      val = ByteBuffer.wrap((byte[]) val);
+    } else if (valueSchema.getType() == Schema.Type.STRING) {
+      // strings may be read as Utf8, or as any other type if the schema is not known
+      val = val.toString();
+    }
+    summary.offer(val);
+  }
+
+  @Override
+  public List<StructuredRecord> getAggregate() {
+    List<StructuredRecord> top = new ArrayList<>(k);
+    for (Map.Entry<Object, Long> entry : summary.top(k)) {
+      top.add(StructuredRecord.builder(entrySchema)
+                .set("value", entry.getKey())
+                .set("count", entry.getValue())
+                .build());
+    }
+    return top;
+  }
+
+  @Override
+  public Schema getOutputSchema() {
+    return Schema.arrayOf(entrySchema);
+  }
+
+  /**
+   * @return the summary of the values of the current group, which can be merged with the summaries of other groups.
+   */
+  public SpaceSaving<Object> getSummary() {
+    return summary;
+  }
+}
@@ -26,7 +26,7 @@ import co.cask.hydrator.plugin.batch.aggregator.AggregationUtils;
 public class Variance implements AggregateFunction<Double> {
   private final String fieldName;
   private final Schema outputSchema;
-  private RunningStats stats;
+  private final RunningStats stats = new RunningStats();
 
   public Variance(String fieldName, Schema fieldSchema) {
     this.fieldName = fieldName;
@@ -41,7 +41,7 @@ public class Variance implements AggregateFunction<Double> {
 
   @Override
   public void beginFunction() {
-    stats = new RunningStats();
+    stats.reset();
   }
 
   @Override
@@ -25,6 +25,8 @@ import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
 import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.Engine;
+import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.batch.BatchRuntimeContext;
 import co.cask.cdap.etl.api.batch.BatchSink;
 import co.cask.hydrator.plugin.common.CubeSinkConfig;
@@ -33,10 +35,15 @@ import co.cask.hydrator.plugin.common.Properties;
 import co.cask.hydrator.plugin.common.StructuredRecordToCubeFact;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link BatchSink} that writes data to a {@link Cube} dataset.
@@ -50,6 +57,12 @@ import java.util.Map;
  * <p/>
  * To configure transformation from {@link StructuredRecord} to a {@link CubeFact} the
  * mapping configuration is required, following {@link StructuredRecordToCubeFact} documentation.
+ * <p/>
+ * If a buffer size is configured, facts with the same dimension values and time bucket are merged in memory and
+ * emitted to the output when the buffer is full or when the flush interval has passed. The facts still buffered at
+ * the end of the task are emitted when the sink is destroyed, before the task closes its outputs. Buffering is only
+ * supported with MapReduce: Spark never destroys the sink at the end of a partition, and the Cube dataset is only
+ * written through the output that CDAP creates for it, so there is no writer whose close could flush the buffer.
  */
 // todo: add unit-test once CDAP-2156 is resolved
 @Plugin(type = "batchsink")
@@ -65,11 +78,46 @@ public class BatchCubeSink extends BatchWritableSink<StructuredRecord, byte[], C
   }
 
   private StructuredRecordToCubeFact transform;
+  private CubeFactBuffer buffer;
+  private Emitter<KeyValue<byte[], CubeFact>> bufferEmitter;
+  private long flushIntervalMillis;
+  private long lastFlushTime;
+
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+    super.configurePipeline(pipelineConfigurer);
+    if (config.getBufferSize() < 0) {
+      throw new IllegalArgumentException(
+        String.format("Invalid buffer size %d. Must be at least 0.", config.getBufferSize()));
+    }
+    if (config.getBufferFlushInterval() < 1) {
+      throw new IllegalArgumentException(
+        String.format("Invalid buffer flush interval %d. Must be at least 1.", config.getBufferFlushInterval()));
+    }
+    if (config.getBufferSize() > 0 && pipelineConfigurer.getEngine() == Engine.SPARK) {
+      throw new IllegalArgumentException(String.format(
+        "Buffering facts with '%s' is only supported with the MapReduce engine. With Spark, the facts still " +
+          "buffered when a partition ends would be lost.", Properties.Cube.BUFFER_SIZE));
+    }
+  }
 
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
     transform = new StructuredRecordToCubeFact(getProperties());
+    if (config.getBufferSize() > 0) {
+      buffer = new CubeFactBuffer(CubeFactBuffer.getBucketSeconds(getResolutions()));
+      flushIntervalMillis = TimeUnit.SECONDS.toMillis(config.getBufferFlushInterval());
+      lastFlushTime = System.currentTimeMillis();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (bufferEmitter != null) {
+      flush(bufferEmitter);
+    }
+    super.destroy();
   }
 
   @VisibleForTesting
@@ -110,6 +158,37 @@ public class BatchCubeSink extends BatchWritableSink<StructuredRecord, byte[], C
 
   @Override
   public void transform(StructuredRecord input, Emitter<KeyValue<byte[], CubeFact>> emitter) throws Exception {
-    emitter.emit(new KeyValue<byte[], CubeFact>(null, transform.transform(input)));
+    if (buffer == null) {
+      emitter.emit(new KeyValue<byte[], CubeFact>(null, transform.transform(input)));
+      return;
+    }
+    // keep the emitter so that the last, partially filled buffer is written through the same output
+    bufferEmitter = emitter;
+    if (buffer.add(transform.transform(input)) >= config.getBufferSize()
+      || System.currentTimeMillis() - lastFlushTime >= flushIntervalMillis) {
+      flush(emitter);
+    }
+  }
+
+  private void flush(Emitter<KeyValue<byte[], CubeFact>> emitter) {
+    for (CubeFact fact : buffer.drain()) {
+      emitter.emit(new KeyValue<byte[], CubeFact>(null, fact));
+    }
+    lastFlushTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Returns the resolutions of the cube, which are used to create it if it doesn't exist.
+   */
+  private int[] getResolutions() {
+    String resolutions = config.getResolutions();
+    if (Strings.isNullOrEmpty(resolutions)) {
+      return new int[] { 1 };
+    }
+    List<Integer> values = new ArrayList<>();
+    for (String resolution : Splitter.on(',').trimResults().omitEmptyStrings().split(resolutions)) {
+      values.add(Integer.parseInt(resolution));
+    }
+    return Ints.toArray(values);
   }
 }
@@ -19,6 +19,7 @@ package co.cask.hydrator.plugin.batch.sink;
 import co.cask.cdap.api.data.batch.Output;
 import co.cask.cdap.api.dataset.DatasetManagementException;
 import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.batch.BatchSink;
 import co.cask.cdap.etl.api.batch.BatchSinkContext;
@@ -27,7 +28,9 @@ import co.cask.hydrator.plugin.common.Properties;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 
+import java.util.Arrays;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * An abstract Sink for CDAP Datasets that are batch writable, which means they can be used as output of a
@@ -39,6 +42,10 @@ import java.util.Map;
  * @param <VAL_OUT> the type of value the sink outputs
  */
 public abstract class BatchWritableSink<IN, KEY_OUT, VAL_OUT> extends BatchSink<IN, KEY_OUT, VAL_OUT> {
+  /**
+   * Metric for the number of key and value bytes written, to track the write throughput of a sink.
+   */
+  protected static final String BYTES_WRITTEN_METRIC = "bytes.written";
   private final BatchReadableWritableConfig batchReadableWritableConfig;
 
   protected BatchWritableSink(BatchReadableWritableConfig batchReadableWritableConfig) {
@@ -69,6 +76,22 @@ public abstract class BatchWritableSink<IN, KEY_OUT, VAL_OUT> extends BatchSink<
     return false;
   }
 
+  /**
+   * Validates the conflict detection level to create a table with.
+   */
+  protected static void validateConflictDetection(@Nullable String conflictDetection) {
+    if (conflictDetection == null) {
+      return;
+    }
+    try {
+      ConflictDetection.valueOf(conflictDetection);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+        String.format("Invalid conflict detection level '%s'. Must be one of %s.",
+                      conflictDetection, Arrays.toString(ConflictDetection.values())));
+    }
+  }
+
   /**
    * An abstract method which the subclass should override to provide their dataset types
    */
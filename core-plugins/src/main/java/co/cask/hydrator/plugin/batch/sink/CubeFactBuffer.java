@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.sink;
+
+import co.cask.cdap.api.dataset.lib.cube.CubeFact;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.Measurement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Merges {@link CubeFact CubeFacts} with the same dimension values and time bucket, so that they can be written to
+ * a cube as a single fact. Counters of merged facts are added up, and for gauges the last value is kept, which is
+ * the same as what the cube does when the facts are written one by one.
+ *
+ * The time bucket must divide every resolution of the cube, so that merged facts are in the same bucket for every
+ * resolution.
+ */
+final class CubeFactBuffer {
+  private final long bucketSeconds;
+  private final Map<FactKey, Map<String, Measurement>> facts;
+
+  CubeFactBuffer(long bucketSeconds) {
+    this.bucketSeconds = bucketSeconds;
+    this.facts = new LinkedHashMap<>();
+  }
+
+  /**
+   * Adds a fact to the buffer.
+   *
+   * @return the number of distinct facts in the buffer
+   */
+  int add(CubeFact fact) {
+    long timestamp = fact.getTimestamp() / bucketSeconds * bucketSeconds;
+    FactKey key = new FactKey(timestamp, fact.getDimensionValues());
+    Map<String, Measurement> measurements = facts.get(key);
+    if (measurements == null) {
+      measurements = new LinkedHashMap<>();
+      facts.put(key, measurements);
+    }
+    for (Measurement measurement : fact.getMeasurements()) {
+      Measurement existing = measurements.get(measurement.getName());
+      if (existing != null && existing.getType() == MeasureType.COUNTER
+        && measurement.getType() == MeasureType.COUNTER) {
+        measurement = new Measurement(measurement.getName(), MeasureType.COUNTER,
+                                      existing.getValue() + measurement.getValue());
+      }
+      measurements.put(measurement.getName(), measurement);
+    }
+    return facts.size();
+  }
+
+  int size() {
+    return facts.size();
+  }
+
+  /**
+   * Removes all merged facts from the buffer and returns them, in the order they were first added.
+   */
+  List<CubeFact> drain() {
+    List<CubeFact> drained = new ArrayList<>(facts.size());
+    for (Map.Entry<FactKey, Map<String, Measurement>> entry : facts.entrySet()) {
+      CubeFact fact = new CubeFact(entry.getKey().timestamp);
+      fact.addDimensionValues(entry.getKey().dimensionValues);
+      fact.addMeasurements(entry.getValue().values());
+      drained.add(fact);
+    }
+    facts.clear();
+    return drained;
+  }
+
+  /**
+   * Returns the largest time bucket in seconds that divides all the given cube resolutions.
+   */
+  static long getBucketSeconds(int[] resolutions) {
+    long bucket = 0;
+    for (int resolution : resolutions) {
+      long a = bucket;
+      long b = resolution;
+      while (b != 0) {
+        long remainder = a % b;
+        a = b;
+        b = remainder;
+      }
+      bucket = a;
+    }
+    return Math.max(1, bucket);
+  }
+
+  /**
+   * Dimension values and time bucket of a fact.
+   */
+  private static final class FactKey {
+    private final long timestamp;
+    private final Map<String, String> dimensionValues;
+    private final int hashCode;
+
+    FactKey(long timestamp, Map<String, String> dimensionValues) {
+      this.timestamp = timestamp;
+      this.dimensionValues = dimensionValues;
+      this.hashCode = Objects.hash(timestamp, dimensionValues);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      FactKey that = (FactKey) o;
+      return timestamp == that.timestamp && dimensionValues.equals(that.dimensionValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -27,6 +27,8 @@ import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.batch.BatchRuntimeContext;
 import co.cask.hydrator.common.SchemaValidator;
 import co.cask.hydrator.plugin.common.BatchReadableWritableConfig;
 import co.cask.hydrator.plugin.common.Properties;
@@ -64,18 +66,29 @@ public class KVTableSink extends BatchWritableSink<StructuredRecord, byte[], byt
     @Nullable
     private String valueField;
 
+    @Name(Properties.Table.PROPERTY_CONFLICT_LEVEL)
+    @Description(Properties.Table.CONFLICT_LEVEL_DESC)
+    @Nullable
+    private String conflictDetection;
+
     public KVTableConfig() {
       this(null, Properties.KeyValueTable.DEFAULT_KEY_FIELD, Properties.KeyValueTable.DEFAULT_VALUE_FIELD);
     }
 
     public KVTableConfig(String name, String keyField, String valueField) {
+      this(name, keyField, valueField, null);
+    }
+
+    public KVTableConfig(String name, String keyField, String valueField, @Nullable String conflictDetection) {
       super(name);
       this.keyField = keyField;
       this.valueField = valueField;
+      this.conflictDetection = conflictDetection;
     }
   }
 
   private final KVTableConfig kvTableConfig;
+  private StageMetrics metrics;
 
   public KVTableSink(KVTableConfig kvTableConfig) {
     super(kvTableConfig);
@@ -85,6 +98,7 @@ public class KVTableSink extends BatchWritableSink<StructuredRecord, byte[], byt
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
+    validateConflictDetection(kvTableConfig.conflictDetection);
     Schema inputSchema = pipelineConfigurer.getStageConfigurer().getInputSchema();
     // validate that input and output fields are present
     if (inputSchema != null) {
@@ -110,6 +124,12 @@ public class KVTableSink extends BatchWritableSink<StructuredRecord, byte[], byt
     }
   }
 
+  @Override
+  public void initialize(BatchRuntimeContext context) throws Exception {
+    super.initialize(context);
+    metrics = context.getMetrics();
+  }
+
   @Override
   protected Map<String, String> getProperties() {
     Map<String, String> properties;
@@ -161,6 +181,7 @@ public class KVTableSink extends BatchWritableSink<StructuredRecord, byte[], byt
                         kvTableConfig.valueField, valueFieldSchema));
       }
     }
+    metrics.count(BYTES_WRITTEN_METRIC, keyBytes.length + (valBytes == null ? 0 : valBytes.length));
     emitter.emit(new KeyValue<>(keyBytes, valBytes));
   }
 }
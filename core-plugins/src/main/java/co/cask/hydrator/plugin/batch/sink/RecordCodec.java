@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.sink;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.hadoop.io.Text;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Writes and reads the values of {@link StructuredRecord StructuredRecords} in a compact binary form, for records
+ * that are temporarily kept on local disk by the same task. Values are read back as the types they were written as,
+ * except that arrays are read as lists and ints of smaller types are read as integers.
+ */
+final class RecordCodec {
+  private static final byte BYTE_ARRAY = 0;
+  private static final byte BYTE_BUFFER = 1;
+
+  private RecordCodec() {
+    // no-op
+  }
+
+  static void write(DataOutput out, Schema schema, @Nullable Object value) throws IOException {
+    switch (schema.getType()) {
+      case NULL:
+        break;
+      case BOOLEAN:
+        out.writeBoolean((Boolean) value);
+        break;
+      case INT:
+        out.writeInt(((Number) value).intValue());
+        break;
+      case LONG:
+        out.writeLong(((Number) value).longValue());
+        break;
+      case FLOAT:
+        out.writeFloat(((Number) value).floatValue());
+        break;
+      case DOUBLE:
+        out.writeDouble(((Number) value).doubleValue());
+        break;
+      case STRING:
+      case ENUM:
+        Text.writeString(out, value.toString());
+        break;
+      case BYTES:
+        writeBytes(out, value);
+        break;
+      case ARRAY:
+        writeArray(out, schema.getComponentSchema(), value);
+        break;
+      case MAP:
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          write(out, schema.getMapSchema().getKey(), entry.getKey());
+          write(out, schema.getMapSchema().getValue(), entry.getValue());
+        }
+        break;
+      case RECORD:
+        StructuredRecord record = (StructuredRecord) value;
+        for (Schema.Field field : schema.getFields()) {
+          write(out, field.getSchema(), record.get(field.getName()));
+        }
+        break;
+      case UNION:
+        int index = getUnionIndex(schema, value);
+        out.writeByte(index);
+        write(out, schema.getUnionSchema(index), value);
+        break;
+      default:
+        throw new IOException(String.format("Cannot write a value of type '%s'.", schema.getType()));
+    }
+  }
+
+  @Nullable
+  static Object read(DataInput in, Schema schema) throws IOException {
+    switch (schema.getType()) {
+      case NULL:
+        return null;
+      case BOOLEAN:
+        return in.readBoolean();
+      case INT:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case FLOAT:
+        return in.readFloat();
+      case DOUBLE:
+        return in.readDouble();
+      case STRING:
+      case ENUM:
+        return Text.readString(in);
+      case BYTES:
+        byte kind = in.readByte();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return kind == BYTE_BUFFER ? ByteBuffer.wrap(bytes) : bytes;
+      case ARRAY:
+        int length = in.readInt();
+        List<Object> list = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+          list.add(read(in, schema.getComponentSchema()));
+        }
+        return list;
+      case MAP:
+        int size = in.readInt();
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          map.put(read(in, schema.getMapSchema().getKey()), read(in, schema.getMapSchema().getValue()));
+        }
+        return map;
+      case RECORD:
+        StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+        for (Schema.Field field : schema.getFields()) {
+          builder.set(field.getName(), read(in, field.getSchema()));
+        }
+        return builder.build();
+      case UNION:
+        return read(in, schema.getUnionSchema(in.readByte()));
+      default:
+        throw new IOException(String.format("Cannot read a value of type '%s'.", schema.getType()));
+    }
+  }
+
+  private static void writeBytes(DataOutput out, Object value) throws IOException {
+    if (value instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+      out.writeByte(BYTE_BUFFER);
+      out.writeInt(buffer.remaining());
+      if (buffer.hasArray()) {
+        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      } else {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.write(bytes);
+      }
+    } else {
+      byte[] bytes = (byte[]) value;
+      out.writeByte(BYTE_ARRAY);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static void writeArray(DataOutput out, Schema componentSchema, Object value) throws IOException {
+    if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      out.writeInt(collection.size());
+      for (Object element : collection) {
+        write(out, componentSchema, element);
+      }
+    } else {
+      int length = Array.getLength(value);
+      out.writeInt(length);
+      for (int i = 0; i < length; i++) {
+        write(out, componentSchema, Array.get(value, i));
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the first schema of the union that the value can be written with.
+   */
+  private static int getUnionIndex(Schema union, @Nullable Object value) throws IOException {
+    List<Schema> schemas = union.getUnionSchemas();
+    for (int i = 0; i < schemas.size(); i++) {
+      if (matches(schemas.get(i), value)) {
+        return i;
+      }
+    }
+    throw new IOException(String.format("Value of type '%s' does not match any schema of the union '%s'.",
+                                        value == null ? null : value.getClass().getName(), union));
+  }
+
+  private static boolean matches(Schema schema, @Nullable Object value) {
+    switch (schema.getType()) {
+      case NULL:
+        return value == null;
+      case BOOLEAN:
+        return value instanceof Boolean;
+      case INT:
+        return value instanceof Integer || value instanceof Short || value instanceof Byte;
+      case LONG:
+        return value instanceof Long;
+      case FLOAT:
+        return value instanceof Float;
+      case DOUBLE:
+        return value instanceof Double;
+      case STRING:
+        return value instanceof String;
+      case ENUM:
+        return value instanceof String && schema.getEnumIndex((String) value) >= 0;
+      case BYTES:
+        return value instanceof ByteBuffer || value instanceof byte[];
+      case ARRAY:
+        return value instanceof Collection || (value != null && value.getClass().isArray());
+      case MAP:
+        return value instanceof Map;
+      case RECORD:
+        return value instanceof StructuredRecord && ((StructuredRecord) value).getSchema().equals(schema);
+      default:
+        return false;
+    }
+  }
+}
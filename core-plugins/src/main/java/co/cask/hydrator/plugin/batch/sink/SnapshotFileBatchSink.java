@@ -83,7 +83,8 @@ public abstract class SnapshotFileBatchSink<T extends SnapshotFileSetBatchSinkCo
   }
 
   @Override
-  public void prepareRun(BatchSinkContext context) throws DatasetManagementException, InstantiationException {
+  public void prepareRun(BatchSinkContext context) throws DatasetManagementException, InstantiationException,
+    IOException, InterruptedException {
     // if macros were provided, the dataset still needs to be created
     config.validate();
     OutputFormatProvider outputFormatProvider = context.newPluginInstance(FORMAT_PLUGIN_ID);
@@ -94,6 +95,9 @@ public abstract class SnapshotFileBatchSink<T extends SnapshotFileSetBatchSinkCo
 
     PartitionedFileSet files = context.getDataset(config.getName());
     snapshotFileSet = new SnapshotFileSet(files);
+    if (config.isDelta()) {
+      snapshotFileSet.validateDelta(config.getKeyFields());
+    }
 
     // need to use all the dataset properties as arguments in case the dataset already exists,
     // created by the previous version of this plugin before output format plugins were used.
@@ -118,7 +122,12 @@ public abstract class SnapshotFileBatchSink<T extends SnapshotFileSetBatchSinkCo
     super.onRunFinish(succeeded, context);
     if (succeeded) {
       try {
-        snapshotFileSet.onSuccess(context.getLogicalStartTime());
+        if (config.isDelta()) {
+          snapshotFileSet.onDeltaSuccess(context.getLogicalStartTime(), config.getKeyFields(),
+                                         config.getDeleteField());
+        } else {
+          snapshotFileSet.onSuccess(context.getLogicalStartTime());
+        }
       } catch (Exception e) {
         LOG.error("Exception updating state file with value of latest snapshot, ", e);
       }
@@ -130,7 +139,7 @@ public abstract class SnapshotFileBatchSink<T extends SnapshotFileSetBatchSinkCo
           snapshotFileSet.deleteMatchingPartitionsByTime(cutoffTime);
           LOG.debug("Cleaned up snapshots older than {}", config.getCleanPartitionsOlderThan());
         }
-      } catch (IOException e) {
+      } catch (IOException | InterruptedException e) {
         LOG.error("Exception occurred while cleaning up older snapshots", e);
       }
     }
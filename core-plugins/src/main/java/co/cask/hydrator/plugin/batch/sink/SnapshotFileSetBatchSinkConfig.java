@@ -20,13 +20,21 @@ import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
 import co.cask.hydrator.common.TimeParser;
 import co.cask.hydrator.plugin.common.SnapshotFileSetConfig;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
  * Config for SnapshotFileBatchSink
  */
 public class SnapshotFileSetBatchSinkConfig extends SnapshotFileSetConfig {
+  private static final String FULL = "full";
+  private static final String DELTA = "delta";
+
   @Description("Optional property that configures the sink to delete old partitions after successful runs. " +
     "If set, when a run successfully finishes, the sink will subtract this amount of time from the runtime and " +
     "delete any partitions older than that time. " +
@@ -38,6 +46,26 @@ public class SnapshotFileSetBatchSinkConfig extends SnapshotFileSetConfig {
   @Macro
   protected String cleanPartitionsOlderThan;
 
+  @Description("Whether each run writes a full snapshot or a delta. A full snapshot replaces the previous snapshot. " +
+    "A delta only contains the records that changed since the previous run, and is merged with the previous " +
+    "snapshot and its deltas by key when the snapshot is read. Writing a full snapshot compacts the deltas. " +
+    "Defaults to 'full'.")
+  @Nullable
+  @Macro
+  protected String snapshotMode;
+
+  @Description("Comma separated list of the fields that identify a record, used to merge deltas. " +
+    "Required when writing deltas.")
+  @Nullable
+  @Macro
+  protected String keyFields;
+
+  @Description("Boolean field that marks a record of a delta as deleted. Deleted records, and any older version of " +
+    "them, are skipped when the snapshot is read.")
+  @Nullable
+  @Macro
+  protected String deleteField;
+
   public SnapshotFileSetBatchSinkConfig() {
 
   }
@@ -52,9 +80,34 @@ public class SnapshotFileSetBatchSinkConfig extends SnapshotFileSetConfig {
     return cleanPartitionsOlderThan;
   }
 
+  public boolean isDelta() {
+    return DELTA.equalsIgnoreCase(snapshotMode);
+  }
+
+  public List<String> getKeyFields() {
+    List<String> fields = new ArrayList<>();
+    if (keyFields != null) {
+      Iterables.addAll(fields, Splitter.on(',').trimResults().omitEmptyStrings().split(keyFields));
+    }
+    return fields;
+  }
+
+  @Nullable
+  public String getDeleteField() {
+    return Strings.isNullOrEmpty(deleteField) ? null : deleteField;
+  }
+
   public void validate() {
     if (cleanPartitionsOlderThan != null) {
       TimeParser.parseDuration(cleanPartitionsOlderThan);
     }
+    if (!containsMacro("snapshotMode") && snapshotMode != null && !FULL.equalsIgnoreCase(snapshotMode)
+      && !DELTA.equalsIgnoreCase(snapshotMode)) {
+      throw new IllegalArgumentException(String.format("Invalid snapshot mode '%s'. It must be '%s' or '%s'.",
+                                                       snapshotMode, FULL, DELTA));
+    }
+    if (isDelta() && !containsMacro("keyFields") && getKeyFields().isEmpty()) {
+      throw new IllegalArgumentException("Key fields must be given when writing deltas.");
+    }
   }
 }
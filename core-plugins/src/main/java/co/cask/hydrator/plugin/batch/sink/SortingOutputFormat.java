@@ -0,0 +1,463 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.sink;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.lib.FileSetProperties;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import javax.annotation.Nullable;
+
+/**
+ * Wraps the output format of a file set to write the records of each task sorted by a number of fields, so that the
+ * per block statistics of columnar formats become selective for those fields. Records are buffered in memory and
+ * sorted buffers are spilled to local files, which are merged when the task finishes. At most a fixed number of spill
+ * files are merged at once, so a task with more spills merges them in several passes.
+ *
+ * If bucket fields are given, each task writes one file per bucket, with the bucket determined by the hash of the
+ * bucket fields, so that a reader looking for a single key only has to read the files of one bucket.
+ */
+public class SortingOutputFormat extends OutputFormat<NullWritable, StructuredRecord> {
+  static final String DELEGATE = "sort.delegate.output.format";
+  static final String SORT_FIELDS = "sort.fields";
+  static final String BUCKET_FIELDS = "sort.bucket.fields";
+  static final String NUM_BUCKETS = "sort.num.buckets";
+  static final String BUFFER_SIZE = "sort.buffer.records";
+  static final String MERGE_FACTOR = "sort.merge.factor";
+  static final int DEFAULT_BUFFER_SIZE = 100000;
+  // every spill file that is merged is open with its own read buffer
+  static final int DEFAULT_MERGE_FACTOR = 64;
+  // the name FileOutputFormat uses as the prefix of the files it writes
+  private static final String BASE_OUTPUT_NAME = "mapreduce.output.basename";
+  private static final Logger LOG = LoggerFactory.getLogger(SortingOutputFormat.class);
+
+  private OutputFormat<NullWritable, StructuredRecord> delegate;
+
+  /**
+   * Replaces the output format in the given file set arguments with this format, which then writes through the
+   * output format that was configured.
+   *
+   * @param arguments the file set arguments, which must contain the output format
+   * @param sortFields the fields to sort the records by
+   * @param bucketFields the fields to bucket the records by, if any
+   * @param numBuckets the number of buckets, if the records are bucketed
+   * @param bufferSize the number of records that are sorted in memory before they are spilled to disk
+   */
+  static void configure(Map<String, String> arguments, List<String> sortFields, List<String> bucketFields,
+                        int numBuckets, int bufferSize) {
+    String delegate = arguments.get(FileSetProperties.OUTPUT_FORMAT);
+    arguments.put(FileSetProperties.OUTPUT_FORMAT, SortingOutputFormat.class.getName());
+    arguments.put(FileSetProperties.OUTPUT_PROPERTIES_PREFIX + DELEGATE, delegate);
+    arguments.put(FileSetProperties.OUTPUT_PROPERTIES_PREFIX + SORT_FIELDS, Joiner.on(',').join(sortFields));
+    if (!bucketFields.isEmpty()) {
+      arguments.put(FileSetProperties.OUTPUT_PROPERTIES_PREFIX + BUCKET_FIELDS, Joiner.on(',').join(bucketFields));
+      arguments.put(FileSetProperties.OUTPUT_PROPERTIES_PREFIX + NUM_BUCKETS, String.valueOf(numBuckets));
+    }
+    arguments.put(FileSetProperties.OUTPUT_PROPERTIES_PREFIX + BUFFER_SIZE, String.valueOf(bufferSize));
+  }
+
+  @Override
+  public RecordWriter<NullWritable, StructuredRecord> getRecordWriter(TaskAttemptContext context)
+    throws IOException, InterruptedException {
+    Configuration conf = context.getConfiguration();
+    List<String> sortFields = getFields(conf, SORT_FIELDS);
+    List<String> bucketFields = getFields(conf, BUCKET_FIELDS);
+    int numBuckets = bucketFields.isEmpty() ? 1 : conf.getInt(NUM_BUCKETS, 1);
+    return new SortingRecordWriter(getDelegate(conf), context, new RecordComparator(sortFields, bucketFields,
+                                                                                    numBuckets),
+                                   conf.getInt(BUFFER_SIZE, DEFAULT_BUFFER_SIZE),
+                                   Math.max(2, conf.getInt(MERGE_FACTOR, DEFAULT_MERGE_FACTOR)));
+  }
+
+  @Override
+  public void checkOutputSpecs(JobContext context) throws IOException, InterruptedException {
+    getDelegate(context.getConfiguration()).checkOutputSpecs(context);
+  }
+
+  @Override
+  public OutputCommitter getOutputCommitter(TaskAttemptContext context) throws IOException, InterruptedException {
+    return getDelegate(context.getConfiguration()).getOutputCommitter(context);
+  }
+
+  @SuppressWarnings("unchecked")
+  private OutputFormat<NullWritable, StructuredRecord> getDelegate(Configuration conf) throws IOException {
+    // output formats such as FileOutputFormat keep their committer, so the same delegate has to be used throughout
+    if (delegate == null) {
+      try {
+        delegate = (OutputFormat<NullWritable, StructuredRecord>)
+          ReflectionUtils.newInstance(conf.getClassByName(conf.get(DELEGATE)), conf);
+      } catch (ClassNotFoundException e) {
+        throw new IOException(String.format("Could not load the output format '%s'.", conf.get(DELEGATE)), e);
+      }
+    }
+    return delegate;
+  }
+
+  private static List<String> getFields(Configuration conf, String key) {
+    List<String> fields = new ArrayList<>();
+    Iterables.addAll(fields, Splitter.on(',').trimResults().omitEmptyStrings().split(conf.get(key, "")));
+    return fields;
+  }
+
+  /**
+   * Orders records by bucket first and then by the sort fields, with nulls first.
+   */
+  static final class RecordComparator implements Comparator<StructuredRecord> {
+    private final List<String> sortFields;
+    private final List<String> bucketFields;
+    private final int numBuckets;
+
+    RecordComparator(List<String> sortFields, List<String> bucketFields, int numBuckets) {
+      this.sortFields = sortFields;
+      this.bucketFields = bucketFields;
+      this.numBuckets = numBuckets;
+    }
+
+    int getBucket(StructuredRecord record) {
+      if (numBuckets <= 1) {
+        return 0;
+      }
+      int hash = 0;
+      for (String field : bucketFields) {
+        hash = 31 * hash + hashCode(record.get(field));
+      }
+      return (hash & Integer.MAX_VALUE) % numBuckets;
+    }
+
+    @Override
+    public int compare(StructuredRecord first, StructuredRecord second) {
+      return compare(getBucket(first), first, getBucket(second), second);
+    }
+
+    /**
+     * Compares two records whose buckets were already computed with {@link #getBucket(StructuredRecord)}.
+     */
+    int compare(int firstBucket, StructuredRecord first, int secondBucket, StructuredRecord second) {
+      int result = Integer.compare(firstBucket, secondBucket);
+      for (int i = 0; result == 0 && i < sortFields.size(); i++) {
+        result = compareValues(first.get(sortFields.get(i)), second.get(sortFields.get(i)));
+      }
+      return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(@Nullable Object first, @Nullable Object second) {
+      if (first == null || second == null) {
+        return first == null ? (second == null ? 0 : -1) : 1;
+      }
+      if (first instanceof byte[]) {
+        first = ByteBuffer.wrap((byte[]) first);
+      }
+      if (second instanceof byte[]) {
+        second = ByteBuffer.wrap((byte[]) second);
+      }
+      return ((Comparable<Object>) first).compareTo(second);
+    }
+
+    // byte arrays and strings hash the same in every JVM, so the bucket of a key does not change between runs
+    private static int hashCode(@Nullable Object value) {
+      if (value == null) {
+        return 0;
+      }
+      if (value instanceof byte[]) {
+        return ByteBuffer.wrap((byte[]) value).hashCode();
+      }
+      return value.hashCode();
+    }
+  }
+
+  /**
+   * A record with its bucket, which is computed once when the record is buffered rather than with every comparison.
+   */
+  private static final class BucketedRecord {
+    private final int bucket;
+    private final StructuredRecord record;
+
+    BucketedRecord(int bucket, StructuredRecord record) {
+      this.bucket = bucket;
+      this.record = record;
+    }
+  }
+
+  /**
+   * Buffers and sorts the records of a task, and writes them to the delegate on close. Each bucket is written
+   * through its own delegate record writer, which only has to be open while the records of that bucket are written.
+   */
+  private static final class SortingRecordWriter extends RecordWriter<NullWritable, StructuredRecord> {
+    private final OutputFormat<NullWritable, StructuredRecord> delegate;
+    private final TaskAttemptContext context;
+    private final RecordComparator comparator;
+    private final Comparator<BucketedRecord> bucketedComparator;
+    private final int bufferSize;
+    private final int mergeFactor;
+    private final List<BucketedRecord> buffer;
+    private final List<File> spills;
+    private final Map<Schema, Integer> schemaIds;
+    private final List<Schema> schemas;
+
+    SortingRecordWriter(OutputFormat<NullWritable, StructuredRecord> delegate, TaskAttemptContext context,
+                        RecordComparator comparator, int bufferSize, int mergeFactor) {
+      this.delegate = delegate;
+      this.context = context;
+      this.comparator = comparator;
+      this.bucketedComparator = (r1, r2) -> comparator.compare(r1.bucket, r1.record, r2.bucket, r2.record);
+      this.bufferSize = bufferSize;
+      this.mergeFactor = mergeFactor;
+      this.buffer = new ArrayList<>();
+      this.spills = new ArrayList<>();
+      this.schemaIds = new HashMap<>();
+      this.schemas = new ArrayList<>();
+    }
+
+    @Override
+    public void write(NullWritable key, StructuredRecord value) throws IOException {
+      buffer.add(new BucketedRecord(comparator.getBucket(value), value));
+      if (buffer.size() >= bufferSize) {
+        spill();
+      }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+      try {
+        if (spills.isEmpty()) {
+          buffer.sort(bucketedComparator);
+          writeSorted(new BufferIterator(buffer));
+        } else {
+          if (!buffer.isEmpty()) {
+            spill();
+          }
+          // merge the oldest spills into a new one until few enough are left to merge them all at once
+          while (spills.size() > mergeFactor) {
+            List<File> merged = new ArrayList<>(spills.subList(0, mergeFactor));
+            merge(merged, true);
+            spills.removeAll(merged);
+            deleteSpills(merged);
+          }
+          merge(spills, false);
+        }
+      } finally {
+        deleteSpills(spills);
+      }
+    }
+
+    private void spill() throws IOException {
+      buffer.sort(bucketedComparator);
+      writeSpill(new BufferIterator(buffer));
+      buffer.clear();
+    }
+
+    /**
+     * Merges the given spill files, either into a new spill file or into the delegate.
+     */
+    private void merge(List<File> files, boolean intermediate) throws IOException, InterruptedException {
+      List<SpillReader> readers = new ArrayList<>(files.size());
+      try {
+        for (File spill : files) {
+          readers.add(new SpillReader(spill, schemas));
+        }
+        RecordIterator records = new MergingIterator(readers, bucketedComparator);
+        if (intermediate) {
+          writeSpill(records);
+        } else {
+          writeSorted(records);
+        }
+      } finally {
+        for (SpillReader reader : readers) {
+          reader.close();
+        }
+      }
+    }
+
+    private void writeSpill(RecordIterator records) throws IOException {
+      File file = File.createTempFile("sort-spill-", ".bin");
+      spills.add(file);
+      int count = 0;
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+        BucketedRecord bucketed;
+        while ((bucketed = records.next()) != null) {
+          StructuredRecord record = bucketed.record;
+          Integer schemaId = schemaIds.get(record.getSchema());
+          if (schemaId == null) {
+            schemaId = schemas.size();
+            schemas.add(record.getSchema());
+            schemaIds.put(record.getSchema(), schemaId);
+          }
+          out.writeInt(bucketed.bucket);
+          out.writeInt(schemaId);
+          RecordCodec.write(out, record.getSchema(), record);
+          count++;
+        }
+      }
+      LOG.debug("Spilled {} sorted records to {}.", count, file);
+    }
+
+    private void deleteSpills(List<File> files) {
+      for (File spill : files) {
+        if (!spill.delete()) {
+          LOG.warn("Failed to delete the sort spill file {}.", spill);
+        }
+      }
+    }
+
+    private void writeSorted(RecordIterator records) throws IOException, InterruptedException {
+      RecordWriter<NullWritable, StructuredRecord> writer = null;
+      TaskAttemptContext writerContext = null;
+      int currentBucket = -1;
+      try {
+        BucketedRecord record;
+        while ((record = records.next()) != null) {
+          int bucket = record.bucket;
+          if (writer == null || bucket != currentBucket) {
+            if (writer != null) {
+              writer.close(writerContext);
+            }
+            writerContext = getBucketContext(bucket);
+            writer = delegate.getRecordWriter(writerContext);
+            currentBucket = bucket;
+          }
+          writer.write(NullWritable.get(), record.record);
+        }
+      } finally {
+        if (writer != null) {
+          writer.close(writerContext);
+        }
+      }
+    }
+
+    private TaskAttemptContext getBucketContext(int bucket) {
+      if (comparator.numBuckets <= 1) {
+        return context;
+      }
+      Configuration conf = new Configuration(context.getConfiguration());
+      conf.set(BASE_OUTPUT_NAME, String.format("%s-b%05d", conf.get(BASE_OUTPUT_NAME, "part"), bucket));
+      return new TaskAttemptContextImpl(conf, context.getTaskAttemptID());
+    }
+  }
+
+  /**
+   * Returns records in order, or null once there are no more records.
+   */
+  private interface RecordIterator {
+    @Nullable
+    BucketedRecord next() throws IOException;
+  }
+
+  private static final class BufferIterator implements RecordIterator {
+    private final List<BucketedRecord> buffer;
+    private int index;
+
+    BufferIterator(List<BucketedRecord> buffer) {
+      this.buffer = buffer;
+    }
+
+    @Nullable
+    @Override
+    public BucketedRecord next() {
+      return index < buffer.size() ? buffer.get(index++) : null;
+    }
+  }
+
+  /**
+   * Merges the sorted spill files by always returning the smallest of their next records.
+   */
+  private static final class MergingIterator implements RecordIterator {
+    private final PriorityQueue<SpillReader> queue;
+
+    MergingIterator(List<SpillReader> readers, Comparator<BucketedRecord> comparator) throws IOException {
+      this.queue = new PriorityQueue<>(readers.size(), (r1, r2) -> comparator.compare(r1.current, r2.current));
+      for (SpillReader reader : readers) {
+        if (reader.advance()) {
+          queue.add(reader);
+        }
+      }
+    }
+
+    @Nullable
+    @Override
+    public BucketedRecord next() throws IOException {
+      SpillReader reader = queue.poll();
+      if (reader == null) {
+        return null;
+      }
+      BucketedRecord record = reader.current;
+      if (reader.advance()) {
+        queue.add(reader);
+      }
+      return record;
+    }
+  }
+
+  private static final class SpillReader {
+    private final DataInputStream in;
+    private final List<Schema> schemas;
+    private BucketedRecord current;
+
+    SpillReader(File file, List<Schema> schemas) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      this.schemas = schemas;
+    }
+
+    boolean advance() throws IOException {
+      int bucket;
+      try {
+        bucket = in.readInt();
+      } catch (EOFException e) {
+        current = null;
+        return false;
+      }
+      int schemaId = in.readInt();
+      current = new BucketedRecord(bucket, (StructuredRecord) RecordCodec.read(in, schemas.get(schemaId)));
+      return true;
+    }
+
+    void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -21,9 +21,13 @@ import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.hydrator.common.TimeParser;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -84,6 +88,32 @@ public abstract class TPFSSinkConfig extends PluginConfig {
   @Macro
   protected String cleanPartitionsOlderThan;
 
+  @Description("Optional comma-separated list of fields to sort the records of each output file by. " +
+    "Sorting by the fields that readers filter on makes the statistics that columnar formats keep per block " +
+    "selective, so that readers can skip the blocks that cannot match. Records that do not fit in memory are " +
+    "spilled to local disk and merged.")
+  @Nullable
+  @Macro
+  protected String sortFields;
+
+  @Description("Optional comma-separated list of fields to bucket the records by. If set, each task writes one " +
+    "file per bucket, determined by the hash of these fields, and the records of each file are sorted by the " +
+    "sort fields. Requires the sort fields and the number of buckets to be set.")
+  @Nullable
+  @Macro
+  protected String bucketFields;
+
+  @Description("Number of buckets to write if the bucket fields are set.")
+  @Nullable
+  @Macro
+  protected Integer numBuckets;
+
+  @Description("Number of records that are sorted in memory before they are spilled to local disk. " +
+    "Defaults to 100000.")
+  @Nullable
+  @Macro
+  protected Integer sortBufferSize;
+
   public TPFSSinkConfig(String name, @Nullable String basePath,
                         @Nullable String filePathFormat, @Nullable String timeZone) {
     this.name = name;
@@ -107,9 +137,68 @@ public abstract class TPFSSinkConfig extends PluginConfig {
         throw new IllegalArgumentException("Cannot clean partitions from less than 1 minute ago.");
       }
     }
-    if (schema != null) {
-      getSchema();
+    Schema parsedSchema = schema == null ? null : getSchema();
+
+    List<String> sortFieldList = getSortFields();
+    List<String> bucketFieldList = getBucketFields();
+    if (!containsMacro("bucketFields") && !bucketFieldList.isEmpty()) {
+      if (!containsMacro("sortFields") && sortFieldList.isEmpty()) {
+        throw new IllegalArgumentException("The sortFields setting must be set in order to set bucketFields.");
+      }
+      if (!containsMacro("numBuckets") && (numBuckets == null || numBuckets < 1)) {
+        throw new IllegalArgumentException("The numBuckets setting must be at least 1 if bucketFields are set.");
+      }
+    }
+    if (!containsMacro("sortBufferSize") && sortBufferSize != null && sortBufferSize < 1) {
+      throw new IllegalArgumentException(String.format("Invalid sort buffer size %d. The sort buffer size must be " +
+                                                         "at least 1.", sortBufferSize));
+    }
+    if (parsedSchema != null) {
+      List<String> fields = new ArrayList<>(sortFieldList);
+      fields.addAll(bucketFieldList);
+      for (String fieldName : fields) {
+        Schema.Field field = parsedSchema.getField(fieldName);
+        if (field == null) {
+          throw new IllegalArgumentException(String.format("Sort or bucket field '%s' does not exist in the schema.",
+                                                           fieldName));
+        }
+        Schema fieldSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+        if (!fieldSchema.getType().isSimpleType()) {
+          throw new IllegalArgumentException(String.format("Sort or bucket field '%s' is of type '%s'. Only simple " +
+                                                             "types are supported.", fieldName, fieldSchema.getType()));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the fields to sort by, which is empty if the records should not be sorted
+   */
+  public List<String> getSortFields() {
+    return splitFields(sortFields);
+  }
+
+  /**
+   * @return the fields to bucket by, which is empty if the records should not be bucketed
+   */
+  public List<String> getBucketFields() {
+    return splitFields(bucketFields);
+  }
+
+  public int getNumBuckets() {
+    return numBuckets == null ? 1 : numBuckets;
+  }
+
+  public int getSortBufferSize() {
+    return sortBufferSize == null ? SortingOutputFormat.DEFAULT_BUFFER_SIZE : sortBufferSize;
+  }
+
+  private static List<String> splitFields(@Nullable String fields) {
+    List<String> fieldList = new ArrayList<>();
+    if (fields != null) {
+      Iterables.addAll(fieldList, Splitter.on(',').trimResults().omitEmptyStrings().split(fields));
     }
+    return fieldList;
   }
 
   public Schema getSchema() {
@@ -29,6 +29,7 @@ import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.lineage.field.EndPoint;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.batch.BatchRuntimeContext;
 import co.cask.cdap.etl.api.batch.BatchSinkContext;
 import co.cask.cdap.etl.api.lineage.field.FieldOperation;
@@ -58,6 +59,7 @@ public class TableSink extends BatchWritableSink<StructuredRecord, byte[], Put>
 
   private final TableSinkConfig tableSinkConfig;
   private RecordPutTransformer recordPutTransformer;
+  private StageMetrics metrics;
 
   public TableSink(TableSinkConfig tableSinkConfig) {
     super(tableSinkConfig);
@@ -70,6 +72,7 @@ public class TableSink extends BatchWritableSink<StructuredRecord, byte[], Put>
     Preconditions.checkArgument(tableSinkConfig.containsMacro(Properties.Table.PROPERTY_SCHEMA_ROW_FIELD) ||
                                   !Strings.isNullOrEmpty(tableSinkConfig.getRowField()),
                                 "Row field must be given as a property.");
+    validateConflictDetection(tableSinkConfig.getConflictDetection());
     Schema outputSchema =
       SchemaValidator.validateOutputSchemaAndInputSchemaIfPresent(tableSinkConfig.getSchemaStr(),
                                                                   tableSinkConfig.getRowField(), pipelineConfigurer);
@@ -123,6 +126,7 @@ public class TableSink extends BatchWritableSink<StructuredRecord, byte[], Put>
       outputSchema = Schema.parseJson(schemaString);
     }
     recordPutTransformer = new RecordPutTransformer(tableSinkConfig.getRowField(), outputSchema);
+    metrics = context.getMetrics();
   }
 
   @Override
@@ -138,6 +142,11 @@ public class TableSink extends BatchWritableSink<StructuredRecord, byte[], Put>
   @Override
   public void transform(StructuredRecord input, Emitter<KeyValue<byte[], Put>> emitter) throws Exception {
     Put put = recordPutTransformer.toPut(input);
+    int size = put.getRow().length;
+    for (Map.Entry<byte[], byte[]> column : put.getValues().entrySet()) {
+      size += column.getKey().length + column.getValue().length;
+    }
+    metrics.count(BYTES_WRITTEN_METRIC, size);
     emitter.emit(new KeyValue<>(put.getRow(), put));
   }
 }
@@ -43,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -112,6 +113,11 @@ public abstract class TimePartitionedFileSetSink<T extends TPFSSinkConfig>
       TimePartitionedFileSetArguments.setOutputPathFormat(sinkArgs, tpfsSinkConfig.filePathFormat,
                                                           tpfsSinkConfig.timeZone);
     }
+    List<String> sortFields = tpfsSinkConfig.getSortFields();
+    if (!sortFields.isEmpty()) {
+      SortingOutputFormat.configure(sinkArgs, sortFields, tpfsSinkConfig.getBucketFields(),
+                                    tpfsSinkConfig.getNumBuckets(), tpfsSinkConfig.getSortBufferSize());
+    }
     context.addOutput(Output.ofDataset(tpfsSinkConfig.name, sinkArgs));
 
     if (tpfsSinkConfig.schema != null) {
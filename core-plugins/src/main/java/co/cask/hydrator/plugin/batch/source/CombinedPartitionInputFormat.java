@@ -0,0 +1,290 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the given partition directories with the input format of the partitions, combining the splits of small
+ * partitions into splits of up to a maximum size, so that a window of many small partitions is not read by as many
+ * tasks. Partition directories that no longer exist, because the partition was dropped, are skipped.
+ */
+public class CombinedPartitionInputFormat extends InputFormat<NullWritable, StructuredRecord> {
+  static final String DELEGATE = "tpfs.combined.delegate.input.format";
+  static final String PARTITIONS = "tpfs.combined.partitions";
+  static final String MAX_SPLIT_SIZE = "tpfs.combined.max.split.size";
+  private static final Logger LOG = LoggerFactory.getLogger(CombinedPartitionInputFormat.class);
+  private static final Gson GSON = new Gson();
+  private static final Type PARTITIONS_TYPE = new TypeToken<List<String>>() { }.getType();
+  // the locations of a combined split are only a hint for scheduling, so only a few are kept
+  private static final int MAX_LOCATIONS = 8;
+
+  /**
+   * Sets the properties this input format needs to read the given partitions.
+   *
+   * @param conf the configuration to add to
+   * @param delegate class name of the input format that reads the partition files
+   * @param partitions the location of each partition
+   * @param maxSplitSize the maximum size of a combined split, or 0 to not combine splits
+   */
+  static void configure(Configuration conf, String delegate, Collection<String> partitions, long maxSplitSize) {
+    conf.set(DELEGATE, delegate);
+    conf.set(PARTITIONS, GSON.toJson(new ArrayList<>(partitions), PARTITIONS_TYPE));
+    conf.setLong(MAX_SPLIT_SIZE, maxSplitSize);
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException {
+    Configuration conf = context.getConfiguration();
+    InputFormat<NullWritable, StructuredRecord> delegate = createDelegate(conf);
+    List<String> partitions = GSON.fromJson(conf.get(PARTITIONS), PARTITIONS_TYPE);
+    long maxSplitSize = conf.getLong(MAX_SPLIT_SIZE, 0L);
+
+    List<InputSplit> splits = new ArrayList<>();
+    List<InputSplit> combined = new ArrayList<>();
+    long combinedSize = 0L;
+    for (String partition : partitions) {
+      Path path = new Path(partition);
+      if (!path.getFileSystem(conf).exists(path)) {
+        LOG.debug("Skipping partition {} that no longer exists.", partition);
+        continue;
+      }
+      Configuration partitionConf = new Configuration(conf);
+      partitionConf.set(FileInputFormat.INPUT_DIR, StringUtils.escapeString(path.toString()));
+      for (InputSplit split : delegate.getSplits(new JobContextImpl(partitionConf, context.getJobID()))) {
+        long length = split.getLength();
+        if (!combined.isEmpty() && combinedSize + length > maxSplitSize) {
+          splits.add(new CombinedSplit(combined, conf));
+          combined = new ArrayList<>();
+          combinedSize = 0L;
+        }
+        combined.add(split);
+        combinedSize += length;
+      }
+    }
+    if (!combined.isEmpty()) {
+      splits.add(new CombinedSplit(combined, conf));
+    }
+    LOG.debug("Combined the splits of {} partitions into {} splits.", partitions.size(), splits.size());
+    return splits;
+  }
+
+  @Override
+  public RecordReader<NullWritable, StructuredRecord> createRecordReader(InputSplit split,
+                                                                         TaskAttemptContext context) {
+    return new CombinedRecordReader();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static InputFormat<NullWritable, StructuredRecord> createDelegate(Configuration conf) throws IOException {
+    try {
+      return (InputFormat<NullWritable, StructuredRecord>)
+        ReflectionUtils.newInstance(conf.getClassByName(conf.get(DELEGATE)), conf);
+    } catch (ClassNotFoundException e) {
+      throw new IOException(String.format("Could not load the partition input format '%s'.", conf.get(DELEGATE)), e);
+    }
+  }
+
+  /**
+   * Reads the splits of a combined split one after the other.
+   */
+  private static class CombinedRecordReader extends RecordReader<NullWritable, StructuredRecord> {
+    private InputFormat<NullWritable, StructuredRecord> delegate;
+    private TaskAttemptContext context;
+    private List<InputSplit> splits;
+    private int current;
+    private RecordReader<NullWritable, StructuredRecord> reader;
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+      this.delegate = createDelegate(context.getConfiguration());
+      this.context = context;
+      this.splits = ((CombinedSplit) split).splits;
+      this.current = -1;
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+      while (reader == null || !reader.nextKeyValue()) {
+        if (reader != null) {
+          reader.close();
+          reader = null;
+        }
+        if (current + 1 >= splits.size()) {
+          current = splits.size();
+          return false;
+        }
+        current++;
+        reader = delegate.createRecordReader(splits.get(current), context);
+        reader.initialize(splits.get(current), context);
+      }
+      return true;
+    }
+
+    @Override
+    public NullWritable getCurrentKey() {
+      return NullWritable.get();
+    }
+
+    @Override
+    public StructuredRecord getCurrentValue() throws IOException, InterruptedException {
+      return reader.getCurrentValue();
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+      if (splits.isEmpty()) {
+        return 1.0f;
+      }
+      float progress = reader == null ? 0.0f : reader.getProgress();
+      return (Math.max(current, 0) + progress) / splits.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * A number of splits of the input format of the partitions that are read by the same task.
+   */
+  public static class CombinedSplit extends InputSplit implements Writable, Configurable {
+    private List<InputSplit> splits;
+    private Configuration conf;
+
+    public CombinedSplit() {
+      // for deserialization
+    }
+
+    CombinedSplit(List<InputSplit> splits, Configuration conf) {
+      this.splits = splits;
+      this.conf = conf;
+    }
+
+    @Override
+    public long getLength() throws IOException, InterruptedException {
+      long length = 0L;
+      for (InputSplit split : splits) {
+        length += split.getLength();
+      }
+      return length;
+    }
+
+    @Override
+    public String[] getLocations() throws IOException, InterruptedException {
+      Set<String> locations = new LinkedHashSet<>();
+      for (InputSplit split : splits) {
+        Collections.addAll(locations, split.getLocations());
+        if (locations.size() >= MAX_LOCATIONS) {
+          break;
+        }
+      }
+      return locations.toArray(new String[locations.size()]);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeInt(splits.size());
+      SerializationFactory serializationFactory = new SerializationFactory(conf);
+      for (InputSplit split : splits) {
+        Text.writeString(out, split.getClass().getName());
+        // the split is serialized into a buffer, because the output is not always a DataOutputStream
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serializer<InputSplit> serializer = serializationFactory.getSerializer((Class<InputSplit>) split.getClass());
+        serializer.open(bytes);
+        serializer.serialize(split);
+        serializer.close();
+        WritableUtils.writeVInt(out, bytes.size());
+        out.write(bytes.toByteArray());
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      int size = in.readInt();
+      splits = new ArrayList<>(size);
+      SerializationFactory serializationFactory = new SerializationFactory(conf);
+      for (int i = 0; i < size; i++) {
+        String splitClassName = Text.readString(in);
+        Class<InputSplit> splitClass;
+        try {
+          splitClass = (Class<InputSplit>) conf.getClassByName(splitClassName);
+        } catch (ClassNotFoundException e) {
+          throw new IOException(String.format("Could not load the split class '%s'.", splitClassName), e);
+        }
+        byte[] bytes = new byte[WritableUtils.readVInt(in)];
+        in.readFully(bytes);
+        Deserializer<InputSplit> deserializer = serializationFactory.getDeserializer(splitClass);
+        deserializer.open(new ByteArrayInputStream(bytes));
+        splits.add(deserializer.deserialize(ReflectionUtils.newInstance(splitClass, conf)));
+        deserializer.close();
+      }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+  }
+}
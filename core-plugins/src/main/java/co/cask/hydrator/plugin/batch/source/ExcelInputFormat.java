@@ -20,35 +20,41 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.poi.hssf.usermodel.HSSFDateUtil;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
-import org.apache.poi.ss.util.CellReference;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 
 /**
- * {@link ExcelInputFormat} is {@link TextInputFormat} implementation for reading Excel files.
+ * {@link ExcelInputFormat} is {@link FileInputFormat} implementation for reading Excel files.
  *
  * The {@link ExcelInputFormat.ExcelRecordReader} reads a given sheet, and within a sheet reads
- * all columns and all rows.
+ * all columns and all rows. Files are not split, since a workbook can only be read as a whole.
  */
-public class ExcelInputFormat extends TextInputFormat {
+public class ExcelInputFormat extends FileInputFormat<LongWritable, ExcelRow> {
 
   public static final String SHEET_NAME = "Sheet Name";
   public static final String RE_PROCESS = "reprocess";
@@ -61,12 +67,18 @@ public class ExcelInputFormat extends TextInputFormat {
   public static final String FILE_PATTERN = "filePattern";
   public static final String SHEET = "sheet";
   public static final String SHEET_VALUE = "sheetValue";
+  public static final String SHARED_STRINGS_MEMORY_LIMIT = "sharedStringsMemoryLimit";
 
   @Override
-  public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+  public RecordReader<LongWritable, ExcelRow> createRecordReader(InputSplit split, TaskAttemptContext context) {
     return new ExcelRecordReader();
   }
 
+  @Override
+  protected boolean isSplitable(JobContext context, Path filename) {
+    return false;
+  }
+
   public static void setConfigurations(Job job, String filePattern, String sheet, boolean reprocess,
                                        String sheetValue, String columnList, boolean skipFirstRow,
                                        String terminateIfEmptyRow, String rowLimit, String ifErrorRecord,
@@ -92,40 +104,55 @@ public class ExcelInputFormat extends TextInputFormat {
     configuration.set(PROCESSED_FILES, processedFiles);
   }
 
+  /**
+   * Lists the files that are read with the given job configuration, after the input path filter is applied.
+   *
+   * @return the paths of the files, as they appear in the rows read from them
+   */
+  static List<String> listInputFiles(Job job) throws IOException {
+    List<String> files = new ArrayList<>();
+    for (FileStatus status : new ExcelInputFormat().listStatus(job)) {
+      files.add(status.getPath().toString());
+    }
+    return files;
+  }
 
   /**
-   * Reads excel spread sheet, where the keys are the offset in the excel file and the text is the complete record.
+   * Sets the maximum number of shared strings of an .xlsx workbook that are kept in memory. The remaining strings
+   * are kept in a local file.
    */
-  public static class ExcelRecordReader extends RecordReader<LongWritable, Text> {
+  public static void setSharedStringsMemoryLimit(Job job, int limit) {
+    job.getConfiguration().setInt(SHARED_STRINGS_MEMORY_LIMIT, limit);
+  }
 
-    public static final String END = "END";
-    public static final String MID = "MID";
 
-    // Non-printable ASCII character(EOT) to seperate column-values
-    public static final String CELL_SEPERATOR = String.valueOf((char) 4);
+  /**
+   * Reads excel spread sheet, where the keys are the row index in the sheet and the values are the rows.
+   * Workbooks in the .xlsx format are streamed, so that the memory used does not depend on the size of the sheet.
+   * Workbooks in the binary .xls format, which are limited to 65536 rows, are loaded in memory.
+   */
+  public static class ExcelRecordReader extends RecordReader<LongWritable, ExcelRow> {
 
-    public static final String COLUMN_SEPERATOR = "\r";
+    // The first bytes of a zip file. Workbooks in the .xlsx format are zip files.
+    private static final byte[] ZIP_HEADER = {'P', 'K', 3, 4};
 
     // Map key that represents the row index.
-    private LongWritable key;
+    private final LongWritable key = new LongWritable();
 
-    // Map value that represents an excel row
-    private Text value;
+    // The row returned by getCurrentValue().
+    private ExcelRow row;
 
-    // Specifies all the rows of an Excel spreadsheet - An iterator over all the rows.
-    private Iterator<Row> rows;
+    // Reads the rows of the selected sheet.
+    private SheetRowReader rows;
 
-    // InputStream handler for Excel files.
-    private FSDataInputStream fileIn;
-
-    // Path of input file.
-    private Path file;
+    // Local copy of the input file, to be deleted when the reader is closed.
+    private File localCopy;
 
     // Specifies the row index.
     private long rowIdx;
 
     // Specifies last row num.
-    private int lastRowNum;
+    private long lastRowNum;
 
     //Keeps row limits
     private int rowCount;
@@ -136,116 +163,234 @@ public class ExcelInputFormat extends TextInputFormat {
 
       FileSplit split = (FileSplit) genericSplit;
       Configuration job = context.getConfiguration();
-      file = split.getPath();
-
+      Path file = split.getPath();
       FileSystem fs = file.getFileSystem(job);
-      fileIn = fs.open(split.getPath());
 
       // Reads the excel file, selects the sheet to be read.
       String sheet = job.get(SHEET);
       String sheetValue = job.get(SHEET_VALUE);
+      String sheetName = sheet.equalsIgnoreCase(SHEET_NAME) ? sheetValue : null;
+      int sheetIndex = sheetName == null ? Integer.parseInt(sheetValue) : -1;
 
-      Sheet workSheet; // sheet can be used as common for XSSF and HSSF workbook
       try {
-        Workbook workbook = WorkbookFactory.create(fileIn);
-        if (sheet.equalsIgnoreCase(SHEET_NAME)) {
-          workSheet = workbook.getSheet(sheetValue);
+        if (isZipFile(fs, file)) {
+          XlsxSheetReader reader = new XlsxSheetReader(getLocalFile(fs, file), sheetName, sheetIndex,
+                                                       job.getInt(SHARED_STRINGS_MEMORY_LIMIT, Integer.MAX_VALUE));
+          rows = new XlsxRowReader(reader);
         } else {
-          workSheet = workbook.getSheetAt(Integer.parseInt(sheetValue));
+          rows = new WorkbookRowReader(fs.open(file), sheetName, sheetIndex);
         }
       } catch (Exception e) {
         throw new IllegalArgumentException("Exception while reading excel sheet. " + e.getMessage(), e);
       }
 
-      rowCount = job.getInt(ROWS_LIMIT, workSheet.getPhysicalNumberOfRows());
-      rows = workSheet.iterator();
-      lastRowNum = workSheet.getLastRowNum();
+      row = new ExcelRow(file.toString(), rows.getSheetName());
+      rowCount = job.getInt(ROWS_LIMIT, Integer.MAX_VALUE);
+      lastRowNum = rows.getLastRowNum();
       rowIdx = 0;
 
       boolean skipFirstRow = job.getBoolean(SKIP_FIRST_ROW, false);
       if (skipFirstRow) {
-        Preconditions.checkArgument(rows.hasNext(), "No rows found on sheet %s", sheetValue);
+        Preconditions.checkArgument(rows.next(row), "No rows found on sheet %s", sheetValue);
         rowIdx = 1;
-        rows.next();
       }
     }
 
+    private boolean isZipFile(FileSystem fs, Path file) throws IOException {
+      byte[] header = new byte[ZIP_HEADER.length];
+      try (FSDataInputStream in = fs.open(file)) {
+        int read = 0;
+        while (read < header.length) {
+          int n = in.read(header, read, header.length - read);
+          if (n < 0) {
+            return false;
+          }
+          read += n;
+        }
+      }
+      for (int i = 0; i < header.length; i++) {
+        if (header[i] != ZIP_HEADER[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Returns a local file with the content of the given file. Workbooks are zip files which are read through random
+     * access to their entries, so files on other file systems are first copied to the local disk.
+     */
+    private File getLocalFile(FileSystem fs, Path file) throws IOException {
+      if (fs instanceof LocalFileSystem) {
+        return ((LocalFileSystem) fs).pathToFile(file);
+      }
+      if (fs instanceof RawLocalFileSystem) {
+        return ((RawLocalFileSystem) fs).pathToFile(file);
+      }
+      localCopy = File.createTempFile("excel", ".xlsx");
+      fs.copyToLocalFile(false, file, new Path(localCopy.getAbsolutePath()), true);
+      return localCopy;
+    }
+
     @Override
     public boolean nextKeyValue() throws IOException, InterruptedException {
-      if (!rows.hasNext() || rowCount == 0) {
+      if (rowCount == 0 || !rows.next(row)) {
         return false;
       }
+      rowCount--;
 
-      StringBuilder sb = new StringBuilder();
+      key.set(rowIdx);
+      rowIdx++;
+      return true;
+    }
 
-      // Get the next row.
-      Row row = rows.next();
+    @Override
+    public float getProgress() throws IOException {
+      return lastRowNum <= 0 ? 0.0f : Math.min(1.0f, (float) rowIdx / lastRowNum);
+    }
 
-      // For each row, iterate through each columns
-      Iterator<Cell> cellIterator = row.cellIterator();
+    @Override
+    public void close() throws IOException {
+      try {
+        if (rows != null) {
+          rows.close();
+        }
+      } finally {
+        if (localCopy != null && !localCopy.delete()) {
+          localCopy.deleteOnExit();
+        }
+      }
+    }
+
+    @Override
+    public LongWritable getCurrentKey() throws IOException, InterruptedException {
+      return key;
+    }
+
+    @Override
+    public ExcelRow getCurrentValue() throws IOException, InterruptedException {
+      return row;
+    }
+  }
 
-      sb.append(row.getRowNum()).append(CELL_SEPERATOR);
-      sb.append(file).append(CELL_SEPERATOR);
-      sb.append(row.getSheet().getSheetName()).append(CELL_SEPERATOR);
+  /**
+   * Reads the rows of a sheet into {@link ExcelRow ExcelRows}.
+   */
+  private interface SheetRowReader extends Closeable {
+
+    String getSheetName();
+
+    /**
+     * @return the zero-based number of the last row of the sheet, or -1 if unknown
+     */
+    long getLastRowNum();
 
-      if (rowCount - 1 == 0 || !rows.hasNext()) {
-        sb.append(END).append(CELL_SEPERATOR);
-      } else {
-        sb.append(MID).append(CELL_SEPERATOR);
+    /**
+     * Reads the next row into the given {@link ExcelRow}.
+     *
+     * @return false if there are no more rows
+     */
+    boolean next(ExcelRow row) throws IOException;
+  }
+
+  /**
+   * A {@link SheetRowReader} which streams a sheet of an .xlsx workbook.
+   */
+  private static final class XlsxRowReader implements SheetRowReader {
+    private final XlsxSheetReader reader;
+
+    private XlsxRowReader(XlsxSheetReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public String getSheetName() {
+      return reader.getSheetName();
+    }
+
+    @Override
+    public long getLastRowNum() {
+      return reader.getDimensionLastRow();
+    }
+
+    @Override
+    public boolean next(ExcelRow row) throws IOException {
+      return reader.next(row);
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  /**
+   * A {@link SheetRowReader} which reads a sheet of a workbook loaded in memory.
+   */
+  private static final class WorkbookRowReader implements SheetRowReader {
+    private final FSDataInputStream fileIn;
+    private final Sheet sheet;
+    private final Iterator<Row> rows;
+
+    private WorkbookRowReader(FSDataInputStream fileIn, String sheetName, int sheetIndex) throws Exception {
+      this.fileIn = fileIn;
+      try {
+        Workbook workbook = WorkbookFactory.create(fileIn);
+        sheet = sheetName != null ? workbook.getSheet(sheetName) : workbook.getSheetAt(sheetIndex);
+        Preconditions.checkArgument(sheet != null, "Sheet %s does not exist.", sheetName);
+      } catch (Exception e) {
+        fileIn.close();
+        throw e;
       }
-      rowCount--;
+      rows = sheet.iterator();
+    }
+
+    @Override
+    public String getSheetName() {
+      return sheet.getSheetName();
+    }
+
+    @Override
+    public long getLastRowNum() {
+      return sheet.getLastRowNum();
+    }
+
+    @Override
+    public boolean next(ExcelRow excelRow) throws IOException {
+      if (!rows.hasNext()) {
+        return false;
+      }
+      Row row = rows.next();
+      excelRow.reset(row.getRowNum());
 
-      key = new LongWritable(rowIdx);
+      // For each row, iterate through each columns
+      Iterator<Cell> cellIterator = row.cellIterator();
       while (cellIterator.hasNext()) {
         Cell cell = cellIterator.next();
-        String colName = CellReference.convertNumToColString(cell.getColumnIndex());
         switch (cell.getCellType()) {
           case Cell.CELL_TYPE_STRING:
-            sb.append(colName)
-              .append(COLUMN_SEPERATOR).append(cell.getStringCellValue()).append(CELL_SEPERATOR);
+            excelRow.setValue(cell.getColumnIndex(), cell.getStringCellValue());
             break;
 
           case Cell.CELL_TYPE_BOOLEAN:
-            sb.append(colName)
-              .append(COLUMN_SEPERATOR).append(cell.getBooleanCellValue()).append(CELL_SEPERATOR);
+            excelRow.setValue(cell.getColumnIndex(), String.valueOf(cell.getBooleanCellValue()));
             break;
 
           case Cell.CELL_TYPE_NUMERIC:
             if (HSSFDateUtil.isCellDateFormatted(cell)) {
-              sb.append(colName).append(COLUMN_SEPERATOR).append(cell.getDateCellValue()).append(CELL_SEPERATOR);
+              excelRow.setValue(cell.getColumnIndex(), String.valueOf(cell.getDateCellValue()));
             } else {
-              sb.append(colName)
-                  .append(COLUMN_SEPERATOR).append(cell.getNumericCellValue()).append(CELL_SEPERATOR);
+              excelRow.setValue(cell.getColumnIndex(), String.valueOf(cell.getNumericCellValue()));
             }
             break;
         }
       }
-      value = new Text(sb.toString());
-      rowIdx++;
-
       return true;
     }
 
-    @Override
-    public float getProgress() throws IOException {
-        return rowIdx / lastRowNum;
-    }
-
     @Override
     public void close() throws IOException {
-      if (fileIn != null) {
-        fileIn.close();
-      }
-    }
-
-    @Override
-    public LongWritable getCurrentKey() throws IOException, InterruptedException {
-      return key;
-    }
-
-    @Override
-    public Text getCurrentValue() throws IOException, InterruptedException {
-      return value;
+      fileIn.close();
     }
   }
 }
@@ -48,6 +48,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.poi.ss.util.CellReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,11 +56,13 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 /**
@@ -79,12 +82,8 @@ public class ExcelInputReader extends BatchSource<LongWritable, Object, Structur
   private static final String EXIT_ON_ERROR = "Exit on error";
   private static final String WRITE_ERROR_DATASET = "Write to error dataset";
   private static final String NULL = "NULL";
-  private static final String END = "END";
   private static final String SHEET_NO = "Sheet Number";
-
-  // Non-printable ASCII character(EOT) to seperate column-values
-  private static final String CELL_SEPERATION = String.valueOf((char) 4);
-  private static final String COLUMN_SEPERATION = "\r";
+  private static final Pattern COLUMN_NAME = Pattern.compile("[A-Z]+");
 
   private static final Gson GSON = new Gson();
   private static final Type ARRAYLIST_PREPROCESSED_FILES = new TypeToken<ArrayList<String>>() { }.getType();
@@ -96,7 +95,13 @@ public class ExcelInputReader extends BatchSource<LongWritable, Object, Structur
   private List<String> inputColumns;
   private Map<String, String> outputFieldsMapping = new HashMap<>();
   private BatchRuntimeContext batchRuntimeContext;
-  private int prevRowNum;
+  private long prevRowNum;
+  // Zero-based index of the excel column read for each field of the output schema, or -1 if there is none.
+  private int[] fieldColumns;
+  private String currentFile;
+  private String currentFileName;
+  // Files read by the run, which are written to the memory table once the run succeeds.
+  private List<String> inputFiles = Collections.emptyList();
 
   public ExcelInputReader(ExcelInputReaderConfig excelReaderConfig) {
     this.excelInputreaderConfig = excelReaderConfig;
@@ -113,6 +118,20 @@ public class ExcelInputReader extends BatchSource<LongWritable, Object, Structur
   public void initialize(BatchRuntimeContext context) throws Exception {
     batchRuntimeContext = context;
     init();
+    getOutputSchema();
+
+    Map<String, String> fieldToColumn = new HashMap<>();
+    for (Map.Entry<String, String> mapping : columnMapping.entrySet()) {
+      fieldToColumn.put(mapping.getValue(), mapping.getKey());
+    }
+    List<Schema.Field> fields = outputSchema.getFields();
+    fieldColumns = new int[fields.size()];
+    for (int i = 0; i < fieldColumns.length; i++) {
+      String fieldName = fields.get(i).getName();
+      String column = fieldToColumn.containsKey(fieldName) ? fieldToColumn.get(fieldName) : fieldName;
+      boolean isColumn = !FILE.equals(fieldName) && !SHEET.equals(fieldName) && COLUMN_NAME.matcher(column).matches();
+      fieldColumns[i] = isColumn ? CellReference.convertColStringToIndex(column) : -1;
+    }
   }
 
   /**
@@ -155,69 +174,48 @@ public class ExcelInputReader extends BatchSource<LongWritable, Object, Structur
 
   @Override
   public void transform(KeyValue<LongWritable, Object> input, Emitter<StructuredRecord> emitter) throws Exception {
+    ExcelRow row = (ExcelRow) input.getValue();
+    String fileName = row.getFile();
+    String sheetName = row.getSheet();
+    if (!fileName.equals(currentFile)) {
+      currentFile = fileName;
+      currentFileName = new Path(fileName).getName();
+    }
 
-    getOutputSchema();
-    StructuredRecord.Builder builder = StructuredRecord.builder(outputSchema);
-    String inputValue = input.getValue().toString();
-
-    String[] excelRecord = inputValue.split(CELL_SEPERATION);
-
-    String fileName = excelRecord[1];
-    String sheetName = excelRecord[2];
-    String ifEndRow = excelRecord[3];
-
-    int currentRowNum = Integer.parseInt(excelRecord[0]);
+    long currentRowNum = row.getRowNumber();
     if (currentRowNum - prevRowNum > 1 && excelInputreaderConfig.terminateIfEmptyRow.equalsIgnoreCase("true")) {
       throw new ExecutionException("Encountered empty row while reading Excel file :" + fileName +
                                      " . Terminating processing", new Throwable());
     }
     prevRowNum = currentRowNum;
 
-    Map<String, String> excelColumnValueMap = new HashMap<>();
-
-    for (String column : excelRecord) {
-      String[] columnValue = column.split(COLUMN_SEPERATION);
-      if (columnValue.length > 1) {
-        String name = columnValue[0];
-        String value = columnValue[1];
-
-        if (columnMapping.containsKey(name)) {
-          excelColumnValueMap.put(columnMapping.get(name), value);
-        } else {
-          excelColumnValueMap.put(name, value);
-        }
-      }
-    }
-
     try {
-      for (Schema.Field field : outputSchema.getFields()) {
-        String fieldName = field.getName();
-        if (excelColumnValueMap.containsKey(fieldName)) {
-          builder.convertAndSet(fieldName, excelColumnValueMap.get(fieldName));
-        } else {
+      StructuredRecord.Builder builder = StructuredRecord.builder(outputSchema);
+      List<Schema.Field> fields = outputSchema.getFields();
+      for (int i = 0; i < fieldColumns.length; i++) {
+        String fieldName = fields.get(i).getName();
+        String value = row.getValue(fieldColumns[i]);
+        if (Strings.isNullOrEmpty(value)) {
           builder.set(fieldName, NULL);
+        } else {
+          builder.convertAndSet(fieldName, value);
         }
       }
 
-      builder.set(FILE, new Path(fileName).getName());
+      builder.set(FILE, currentFileName);
       builder.set(SHEET, sheetName);
 
       emitter.emit(builder.build());
-
-      if (ifEndRow.equalsIgnoreCase(END) && !Strings.isNullOrEmpty(excelInputreaderConfig.memoryTableName)) {
-        KeyValueTable processedFileMemoryTable = batchRuntimeContext.getDataset(excelInputreaderConfig.memoryTableName);
-        processedFileMemoryTable.write(Bytes.toBytes(fileName), Bytes.toBytes(new Date().getTime()));
-      }
     } catch (Exception e) {
       switch (excelInputreaderConfig.ifErrorRecord) {
         case EXIT_ON_ERROR:
           throw new IllegalStateException("Terminating processing on error : " + e.getMessage());
         case WRITE_ERROR_DATASET:
           StructuredRecord.Builder errorRecordBuilder = StructuredRecord.builder(errorRecordSchema);
-          errorRecordBuilder.set(KEY, fileName + "_" + sheetName + "_" + excelRecord[0]);
+          errorRecordBuilder.set(KEY, fileName + "_" + sheetName + "_" + currentRowNum);
           errorRecordBuilder.set(FILE, fileName);
           errorRecordBuilder.set(SHEET, sheetName);
-          errorRecordBuilder.set(RECORD, inputValue);
+          errorRecordBuilder.set(RECORD, row.toString());
           Table errorTable = batchRuntimeContext.getDataset(excelInputreaderConfig.errorDatasetName);
           errorTable.write(errorRecordBuilder.build());
           break;
@@ -297,18 +295,41 @@ public class ExcelInputReader extends BatchSource<LongWritable, Object, Structur
                                        excelInputreaderConfig.columnList, excelInputreaderConfig.skipFirstRow,
                                        excelInputreaderConfig.terminateIfEmptyRow, excelInputreaderConfig.rowsLimit,
                                        excelInputreaderConfig.ifErrorRecord, processFiles);
+    if (!Strings.isNullOrEmpty(excelInputreaderConfig.sharedStringsMemoryLimit)) {
+      ExcelInputFormat.setSharedStringsMemoryLimit(job,
+                                                   Integer.parseInt(excelInputreaderConfig.sharedStringsMemoryLimit));
+    }
 
     // Sets the input path(s).
     ExcelInputFormat.addInputPaths(job, excelInputreaderConfig.filePath);
 
     // Sets the filter based on extended class implementation.
     ExcelInputFormat.setInputPathFilter(job, ExcelReaderRegexFilter.class);
+    if (!Strings.isNullOrEmpty(excelInputreaderConfig.memoryTableName)) {
+      inputFiles = ExcelInputFormat.listInputFiles(job);
+    }
     SourceInputFormatProvider inputFormatProvider = new SourceInputFormatProvider(ExcelInputFormat.class,
                                                                                   job.getConfiguration());
     batchSourceContext.setInput(Input.of(excelInputreaderConfig.referenceName, inputFormatProvider));
 
   }
 
+  /**
+   * Writes the files read by the run to the memory table. Files are only recorded if the run succeeded, so that the
+   * files of a failed run are read again by the next run.
+   */
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    if (!succeeded || inputFiles.isEmpty()) {
+      return;
+    }
+    KeyValueTable processedFileMemoryTable = context.getDataset(excelInputreaderConfig.memoryTableName);
+    byte[] processedTime = Bytes.toBytes(System.currentTimeMillis());
+    for (String inputFile : inputFiles) {
+      processedFileMemoryTable.write(Bytes.toBytes(inputFile), processedTime);
+    }
+  }
+
   private void createDatasets(@Nullable PipelineConfigurer pipelineConfigurer, @Nullable BatchSourceContext context) {
     try {
       if (!excelInputreaderConfig.containsMacro("errorDatasetName") &&
@@ -485,6 +506,14 @@ public class ExcelInputReader extends BatchSource<LongWritable, Object, Structur
     @Macro
     private String errorDatasetName;
 
+    @Nullable
+    @Name("sharedStringsMemoryLimit")
+    @Description("Maximum number of distinct strings of a workbook in the .xlsx format to keep in memory. The " +
+      "remaining strings are kept in a local file. All strings are kept in memory if no limit is specified; " +
+      "for example: '100000'.")
+    @Macro
+    private String sharedStringsMemoryLimit;
+
     public ExcelInputReaderConfig() {
       super("ExcelInputReader");
     }
@@ -503,6 +532,12 @@ public class ExcelInputReader extends BatchSource<LongWritable, Object, Structur
         throw new IllegalArgumentException(String.format("Invalid row limit: %s. " +
                                                            "Numeric value expected.", rowsLimit));
       }
+
+      if (!containsMacro("sharedStringsMemoryLimit") && !Strings.isNullOrEmpty(sharedStringsMemoryLimit) &&
+        !StringUtils.isNumeric(sharedStringsMemoryLimit)) {
+        throw new IllegalArgumentException(String.format("Invalid shared strings memory limit: %s. " +
+                                                           "Numeric value expected.", sharedStringsMemoryLimit));
+      }
     }
   }
 }
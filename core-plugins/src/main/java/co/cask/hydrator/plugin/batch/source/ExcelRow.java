@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.source;
+
+import org.apache.poi.ss.util.CellReference;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * A row of an Excel sheet read by the {@link ExcelInputFormat}. The values of the cells are formatted as strings
+ * and indexed by the zero-based column index, so that they can be set on a record without parsing the row again.
+ *
+ * Instances are reused by the record reader, so a row must not be kept after the next row has been read.
+ */
+public class ExcelRow {
+  private static final String[] EMPTY = new String[0];
+
+  private final String file;
+  private final String sheet;
+  private long rowNumber;
+  private String[] values = EMPTY;
+  private int size;
+
+  ExcelRow(String file, String sheet) {
+    this.file = file;
+    this.sheet = sheet;
+  }
+
+  /**
+   * Clears the cells of this row so that it can be reused for the row with the given number.
+   */
+  void reset(long rowNumber) {
+    Arrays.fill(values, 0, size, null);
+    this.size = 0;
+    this.rowNumber = rowNumber;
+  }
+
+  void setValue(int column, String value) {
+    if (column >= values.length) {
+      values = Arrays.copyOf(values, Math.max(column + 1, values.length * 2));
+    }
+    values[column] = value;
+    size = Math.max(size, column + 1);
+  }
+
+  /**
+   * @return the path of the file which contains this row
+   */
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * @return the name of the sheet which contains this row
+   */
+  public String getSheet() {
+    return sheet;
+  }
+
+  /**
+   * @return the zero-based number of this row in the sheet
+   */
+  public long getRowNumber() {
+    return rowNumber;
+  }
+
+  /**
+   * @return the value of the cell in the given zero-based column, or null if the cell is empty
+   */
+  @Nullable
+  public String getValue(int column) {
+    return column >= 0 && column < size ? values[column] : null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("ExcelRow{file=").append(file)
+      .append(", sheet=").append(sheet)
+      .append(", rowNumber=").append(rowNumber)
+      .append(", cells={");
+    String separator = "";
+    for (int i = 0; i < size; i++) {
+      if (values[i] != null) {
+        builder.append(separator).append(CellReference.convertNumToColString(i)).append('=').append(values[i]);
+        separator = ", ";
+      }
+    }
+    return builder.append("}}").toString();
+  }
+}
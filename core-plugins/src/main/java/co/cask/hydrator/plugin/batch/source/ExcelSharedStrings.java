@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.source;
+
+import com.google.common.base.Charsets;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The shared strings table of an .xlsx workbook, which holds the text of all string cells in the workbook.
+ *
+ * The table is parsed with a streaming XML reader. The first strings up to the configured limit are kept in memory.
+ * The remaining strings are spilled to a local file and read back on demand through a small cache, so that the
+ * memory used does not grow with the number of distinct strings in the workbook.
+ */
+public class ExcelSharedStrings implements Closeable {
+  private static final int CACHE_SIZE = 1024;
+
+  private final int memoryLimit;
+  private final List<String> strings = new ArrayList<>();
+  private long[] offsets = new long[0];
+  private int spilled;
+  private File spillFile;
+  private RandomAccessFile spillReader;
+  private Map<Integer, String> cache;
+
+  /**
+   * @param memoryLimit maximum number of strings to keep in memory. The remaining strings are kept in a local file.
+   */
+  public ExcelSharedStrings(int memoryLimit) {
+    this.memoryLimit = memoryLimit;
+  }
+
+  /**
+   * Reads the shared strings from the sharedStrings.xml part of a workbook.
+   */
+  public void read(InputStream sharedStringsData) throws IOException {
+    XMLInputFactory factory = createXMLInputFactory();
+    DataOutputStream spillOutput = null;
+    long spillPosition = 0;
+    try {
+      XMLStreamReader reader = factory.createXMLStreamReader(sharedStringsData);
+      StringBuilder text = new StringBuilder();
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT || !"si".equals(reader.getLocalName())) {
+          continue;
+        }
+        text.setLength(0);
+        readText(reader, "si", text);
+        if (strings.size() < memoryLimit) {
+          strings.add(text.toString());
+          continue;
+        }
+        if (spillOutput == null) {
+          spillFile = File.createTempFile("excel-shared-strings", ".bin");
+          spillOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+        }
+        if (spilled == offsets.length) {
+          offsets = Arrays.copyOf(offsets, Math.max(1024, offsets.length * 2));
+        }
+        byte[] bytes = text.toString().getBytes(Charsets.UTF_8);
+        offsets[spilled++] = spillPosition;
+        spillOutput.writeInt(bytes.length);
+        spillOutput.write(bytes);
+        spillPosition += Integer.SIZE / Byte.SIZE + bytes.length;
+      }
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to read the shared strings of the workbook.", e);
+    } finally {
+      if (spillOutput != null) {
+        spillOutput.close();
+      }
+    }
+    if (spillFile != null) {
+      spillReader = new RandomAccessFile(spillFile, "r");
+      cache = new LinkedHashMap<Integer, String>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      };
+    }
+  }
+
+  /**
+   * Returns the string with the given index in the table.
+   */
+  public String get(int index) throws IOException {
+    if (index < strings.size()) {
+      return strings.get(index);
+    }
+    int spillIndex = index - strings.size();
+    if (spillIndex >= spilled) {
+      throw new IllegalArgumentException(String.format("Invalid shared string index %d. The workbook contains %d " +
+                                                         "shared strings.", index, strings.size() + spilled));
+    }
+    String value = cache.get(spillIndex);
+    if (value == null) {
+      spillReader.seek(offsets[spillIndex]);
+      byte[] bytes = new byte[spillReader.readInt()];
+      spillReader.readFully(bytes);
+      value = new String(bytes, Charsets.UTF_8);
+      cache.put(spillIndex, value);
+    }
+    return value;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (spillReader != null) {
+        spillReader.close();
+      }
+    } finally {
+      if (spillFile != null && !spillFile.delete()) {
+        spillFile.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * Creates a {@link XMLInputFactory} which does not resolve DTDs or external entities of the parsed documents.
+   */
+  static XMLInputFactory createXMLInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * Appends the text of the current element to the given builder, until the end of the element. Text in phonetic runs
+   * is not part of the value of a cell and is skipped.
+   */
+  static void readText(XMLStreamReader reader, String element, StringBuilder text) throws XMLStreamException {
+    int phoneticDepth = 0;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String name = reader.getLocalName();
+        if ("rPh".equals(name)) {
+          phoneticDepth++;
+        } else if ("t".equals(name) && phoneticDepth == 0) {
+          text.append(reader.getElementText());
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        String name = reader.getLocalName();
+        if ("rPh".equals(name)) {
+          phoneticDepth--;
+        } else if (element.equals(name)) {
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import co.cask.cdap.api.dataset.lib.PartitionConsumerResult;
+import co.cask.cdap.api.dataset.lib.PartitionConsumerState;
+import co.cask.cdap.api.dataset.lib.PartitionDetail;
+import co.cask.cdap.api.dataset.lib.PartitionKey;
+import co.cask.cdap.api.dataset.lib.TimePartition;
+import co.cask.cdap.api.dataset.lib.TimePartitionedFileSet;
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.gson.Gson;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * An index of the partitions of a {@link TimePartitionedFileSet}, kept in a file next to the partitions.
+ * Instead of listing all partitions in the time window with every run, the index is updated with only the partitions
+ * that were added since the previous update, which it tracks with a partition consumer state. A partition that is
+ * added again for the same time, for example after compaction, replaces the previous one.
+ *
+ * Partitions older than the start of the time window are pruned from the index, since the window only moves forward
+ * between runs. A window that starts before the pruned time is not covered by the index.
+ *
+ * Dropped partitions are not removed from the index, so their locations have to be checked by the reader.
+ */
+final class PartitionIndex {
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionIndex.class);
+  private static final Gson GSON = new Gson();
+
+  @Nullable
+  private String consumerState;
+  private long prunedBefore;
+  private TreeMap<Long, String> partitions = new TreeMap<>();
+
+  /**
+   * Loads the index from the given file in the given directory, or returns an empty index if it does not exist or
+   * cannot be read.
+   */
+  static PartitionIndex load(Location dir, String name) throws IOException {
+    Location location = dir.append(name);
+    if (!location.exists()) {
+      return new PartitionIndex();
+    }
+    try (Reader reader = new InputStreamReader(location.getInputStream(), Charsets.UTF_8)) {
+      PartitionIndex index = GSON.fromJson(CharStreams.toString(reader), PartitionIndex.class);
+      if (index != null && index.partitions != null) {
+        return index;
+      }
+    } catch (RuntimeException e) {
+      LOG.warn("Ignoring the partition index {} that cannot be parsed. It will be rebuilt.", location, e);
+    }
+    return new PartitionIndex();
+  }
+
+  /**
+   * Writes the index to a temporary file in the given directory and then moves it into place, so that readers never
+   * see a partially written index.
+   */
+  void save(Location dir, String name) throws IOException {
+    Location location = dir.append(name);
+    Location tmp = dir.append("." + name + "." + UUID.randomUUID());
+    try (OutputStream out = tmp.getOutputStream()) {
+      out.write(GSON.toJson(this).getBytes(Charsets.UTF_8));
+    }
+    if (tmp.renameTo(location) == null) {
+      // some file systems cannot rename onto an existing file
+      location.delete();
+      if (tmp.renameTo(location) == null) {
+        tmp.delete();
+        throw new IOException(String.format("Failed to write the partition index %s.", location));
+      }
+    }
+  }
+
+  /**
+   * @return whether the index contains all partitions at or after the given time
+   */
+  boolean covers(long startTime) {
+    return startTime >= prunedBefore;
+  }
+
+  /**
+   * Adds the partitions that were added to the dataset since the previous update.
+   *
+   * @return the number of partitions that were added
+   */
+  int update(TimePartitionedFileSet tpfs) {
+    PartitionConsumerState state = consumerState == null ? PartitionConsumerState.FROM_BEGINNING :
+      PartitionConsumerState.fromBytes(Base64.getDecoder().decode(consumerState));
+    PartitionConsumerResult result = tpfs.consumePartitions(state);
+    for (PartitionDetail partition : result.getPartitions()) {
+      long time = getTime(partition);
+      if (time >= prunedBefore) {
+        partitions.put(time, partition.getRelativePath());
+      }
+    }
+    consumerState = Base64.getEncoder().encodeToString(result.getPartitionConsumerState().toBytes());
+    return result.getPartitions().size();
+  }
+
+  /**
+   * Removes the partitions before the given time from the index.
+   */
+  void prune(long before) {
+    if (before > prunedBefore) {
+      partitions.headMap(before).clear();
+      prunedBefore = before;
+    }
+  }
+
+  /**
+   * @return the relative paths of the partitions in the given time range, keyed by partition time
+   */
+  SortedMap<Long, String> getPartitions(long startTime, long endTime) {
+    return partitions.subMap(startTime, endTime);
+  }
+
+  private static long getTime(PartitionDetail partition) {
+    if (partition instanceof TimePartition) {
+      return ((TimePartition) partition).getTime();
+    }
+    // time partitioned file sets derive the partition key from the time in the default time zone
+    PartitionKey key = partition.getPartitionKey();
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set((Integer) key.getField("year"), (Integer) key.getField("month") - 1, (Integer) key.getField("day"),
+                 (Integer) key.getField("hour"), (Integer) key.getField("minute"));
+    return calendar.getTimeInMillis();
+  }
+}
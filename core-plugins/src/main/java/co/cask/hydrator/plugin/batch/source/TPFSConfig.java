@@ -59,6 +59,19 @@ public class TPFSConfig extends PluginConfig {
   @Description("Schema of the data to read.")
   private String schema;
 
+  @Macro
+  @Nullable
+  @Description("Maximum size in bytes of the data read by each task. When set, the splits of small partitions are " +
+    "combined into splits of up to this size, instead of every partition being read by at least one task.")
+  private Long maxSplitSize;
+
+  @Nullable
+  @Description("Whether to keep an index of the partitions of the dataset in a file next to the partitions. " +
+    "The index is updated with only the partitions added since the previous run, instead of all partitions in the " +
+    "time window being listed with every run. This is useful for pipelines that run frequently over a long " +
+    "duration. Defaults to false.")
+  private Boolean usePartitionIndex;
+
   public String getName() {
     return name;
   }
@@ -77,6 +90,15 @@ public class TPFSConfig extends PluginConfig {
     return delay;
   }
 
+  @Nullable
+  public Long getMaxSplitSize() {
+    return maxSplitSize;
+  }
+
+  public boolean usePartitionIndex() {
+    return usePartitionIndex != null && usePartitionIndex;
+  }
+
   public Schema getSchema() {
     try {
       return Schema.parseJson(schema);
@@ -94,6 +116,9 @@ public class TPFSConfig extends PluginConfig {
     if (!containsMacro("delay") && !Strings.isNullOrEmpty(delay)) {
       TimeParser.parseDuration(delay);
     }
+    if (!containsMacro("maxSplitSize") && maxSplitSize != null) {
+      Preconditions.checkArgument(maxSplitSize > 0, "Max split size must be greater than 0");
+    }
     getSchema();
   }
 }
@@ -22,7 +22,9 @@ import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.dataset.DatasetManagementException;
 import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.lib.FileSet;
 import co.cask.cdap.api.dataset.lib.FileSetProperties;
+import co.cask.cdap.api.dataset.lib.TimePartitionDetail;
 import co.cask.cdap.api.dataset.lib.TimePartitionedFileSet;
 import co.cask.cdap.api.dataset.lib.TimePartitionedFileSetArguments;
 import co.cask.cdap.api.lineage.field.EndPoint;
@@ -31,12 +33,19 @@ import co.cask.cdap.etl.api.batch.BatchSource;
 import co.cask.cdap.etl.api.batch.BatchSourceContext;
 import co.cask.cdap.etl.api.lineage.field.FieldOperation;
 import co.cask.cdap.etl.api.lineage.field.FieldReadOperation;
+import co.cask.hydrator.common.SourceInputFormatProvider;
 import co.cask.hydrator.common.TimeParser;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -47,7 +56,10 @@ import java.util.stream.Collectors;
  */
 public abstract class TimePartitionedFileSetSource<T extends TPFSConfig>
   extends BatchSource<NullWritable, StructuredRecord, StructuredRecord> {
+  private static final Logger LOG = LoggerFactory.getLogger(TimePartitionedFileSetSource.class);
   private static final String FORMAT_PLUGIN_ID = "format";
+  // the partition index is a hidden file, so that it is not read as part of the dataset
+  private static final String PARTITION_INDEX_PREFIX = "_partition_index.";
   protected final T config;
 
   public TimePartitionedFileSetSource(T config) {
@@ -82,7 +94,8 @@ public abstract class TimePartitionedFileSetSource<T extends TPFSConfig>
   }
 
   @Override
-  public void prepareRun(BatchSourceContext context) throws DatasetManagementException, InstantiationException {
+  public void prepareRun(BatchSourceContext context)
+    throws DatasetManagementException, InstantiationException, IOException {
     config.validate();
 
     InputFormatProvider inputFormatProvider = context.newPluginInstance(FORMAT_PLUGIN_ID);
@@ -108,10 +121,64 @@ public abstract class TimePartitionedFileSetSource<T extends TPFSConfig>
     long delay = Strings.isNullOrEmpty(config.getDelay()) ? 0 : TimeParser.parseDuration(config.getDelay());
     long endTime = context.getLogicalStartTime() - delay;
     long startTime = endTime - duration;
-    Map<String, String> sourceArgs = Maps.newHashMap(datasetProperties.getProperties());
-    TimePartitionedFileSetArguments.setInputStartTime(sourceArgs, startTime);
-    TimePartitionedFileSetArguments.setInputEndTime(sourceArgs, endTime);
-    context.setInput(Input.ofDataset(config.getName(), sourceArgs));
+    if (!config.usePartitionIndex() && config.getMaxSplitSize() == null) {
+      Map<String, String> sourceArgs = Maps.newHashMap(datasetProperties.getProperties());
+      TimePartitionedFileSetArguments.setInputStartTime(sourceArgs, startTime);
+      TimePartitionedFileSetArguments.setInputEndTime(sourceArgs, endTime);
+      context.setInput(Input.ofDataset(config.getName(), sourceArgs));
+      return;
+    }
+
+    // read the partitions directly, so that they can come from the index and their splits can be combined
+    TimePartitionedFileSet tpfs = context.getDataset(config.getName());
+    List<String> partitions = config.usePartitionIndex() ?
+      getIndexedPartitions(context, tpfs, startTime, endTime) : listPartitions(tpfs, startTime, endTime);
+    Configuration conf = new Configuration();
+    for (Map.Entry<String, String> entry : inputFormatProvider.getInputFormatConfiguration().entrySet()) {
+      conf.set(entry.getKey(), entry.getValue());
+    }
+    long maxSplitSize = config.getMaxSplitSize() == null ? 0L : config.getMaxSplitSize();
+    CombinedPartitionInputFormat.configure(conf, inputFormatProvider.getInputFormatClassName(), partitions,
+                                           maxSplitSize);
+    context.setInput(Input.of(config.getName(),
+                              new SourceInputFormatProvider(CombinedPartitionInputFormat.class, conf)));
+  }
+
+  /**
+   * Returns the locations of the partitions in the time range from the partition index of this stage, after updating
+   * it with the partitions that were added since the previous run. If the index does not go back far enough, which
+   * happens when an earlier time range is read again, the partitions are listed from the dataset instead.
+   */
+  private List<String> getIndexedPartitions(BatchSourceContext context, TimePartitionedFileSet tpfs,
+                                            long startTime, long endTime) throws IOException {
+    FileSet files = tpfs.getEmbeddedFileSet();
+    String indexName = PARTITION_INDEX_PREFIX + (context.getPipelineName() + "." + context.getStageName())
+      .replaceAll("[^A-Za-z0-9_.-]", "_");
+    PartitionIndex index = PartitionIndex.load(files.getBaseLocation(), indexName);
+    if (!index.covers(startTime)) {
+      LOG.debug("The partition index of {} does not cover {}, listing the partitions instead.",
+                config.getName(), startTime);
+      return listPartitions(tpfs, startTime, endTime);
+    }
+
+    int added = index.update(tpfs);
+    index.prune(startTime);
+    List<String> partitions = new ArrayList<>();
+    for (String relativePath : index.getPartitions(startTime, endTime).values()) {
+      partitions.add(files.getLocation(relativePath).toURI().toString());
+    }
+    index.save(files.getBaseLocation(), indexName);
+    LOG.debug("Added {} partitions to the partition index of {}, which has {} partitions between {} and {}.",
+              added, config.getName(), partitions.size(), startTime, endTime);
+    return partitions;
+  }
+
+  private List<String> listPartitions(TimePartitionedFileSet tpfs, long startTime, long endTime) {
+    List<String> partitions = new ArrayList<>();
+    for (TimePartitionDetail partition : tpfs.getPartitionsByTime(startTime, endTime)) {
+      partitions.add(partition.getLocation().toURI().toString());
+    }
+    return partitions;
   }
 
   private DatasetProperties createProperties(InputFormatProvider inputFormatProvider) {
@@ -0,0 +1,302 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.source;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the rows of one sheet of an .xlsx workbook with a streaming XML reader, so that only the current row, the
+ * shared strings table and the styles are held in memory rather than the whole workbook.
+ *
+ * Cell values are formatted the same way as the {@link ExcelInputFormat} formats the cells of .xls workbooks: strings
+ * as is, booleans as 'true' or 'false', date formatted numbers as {@link java.util.Date#toString()} and other numbers
+ * as {@link Double#toString(double)}. Empty, error and formula cells are skipped.
+ */
+public class XlsxSheetReader implements Closeable {
+  private final OPCPackage pkg;
+  private final ExcelSharedStrings sharedStrings;
+  private final StylesTable styles;
+  private final InputStream sheetData;
+  private final XMLStreamReader reader;
+  private final String sheetName;
+  private final boolean date1904;
+  private final StringBuilder text = new StringBuilder();
+  // whether a style formats numbers as dates, resolved lazily for each style index
+  private Boolean[] dateStyles = new Boolean[0];
+  private long lastRowNumber = -1;
+  private long dimensionLastRow = -1;
+
+  /**
+   * Opens a sheet of a workbook.
+   *
+   * @param file the local .xlsx file
+   * @param sheetName the name of the sheet to read, or null to select the sheet by index
+   * @param sheetIndex the zero-based index of the sheet to read if no name is given
+   * @param sharedStringsMemoryLimit the maximum number of shared strings to keep in memory
+   */
+  public XlsxSheetReader(File file, String sheetName, int sheetIndex,
+                         int sharedStringsMemoryLimit) throws IOException {
+    XMLInputFactory factory = ExcelSharedStrings.createXMLInputFactory();
+    try {
+      pkg = OPCPackage.open(file, PackageAccess.READ);
+    } catch (OpenXML4JException e) {
+      throw new IOException("Failed to open Excel workbook " + file, e);
+    }
+    try {
+      XSSFReader xssfReader = new XSSFReader(pkg);
+      sharedStrings = new ExcelSharedStrings(sharedStringsMemoryLimit);
+      List<PackagePart> sharedStringsParts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+      if (!sharedStringsParts.isEmpty()) {
+        try (InputStream sharedStringsData = sharedStringsParts.get(0).getInputStream()) {
+          sharedStrings.read(sharedStringsData);
+        }
+      }
+      styles = xssfReader.getStylesTable();
+      try (InputStream workbookData = xssfReader.getWorkbookData()) {
+        date1904 = isDate1904(factory.createXMLStreamReader(workbookData));
+      }
+
+      XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+      InputStream selected = null;
+      String selectedName = null;
+      int index = 0;
+      while (sheets.hasNext() && selected == null) {
+        InputStream stream = sheets.next();
+        String name = sheets.getSheetName();
+        if (sheetName == null ? index == sheetIndex : sheetName.equalsIgnoreCase(name)) {
+          selected = stream;
+          selectedName = name;
+        } else {
+          stream.close();
+        }
+        index++;
+      }
+      if (selected == null) {
+        throw new IllegalArgumentException(
+          String.format("Sheet %s does not exist in Excel workbook %s.",
+                        sheetName == null ? String.valueOf(sheetIndex) : sheetName, file));
+      }
+      this.sheetData = selected;
+      this.sheetName = selectedName;
+      this.reader = factory.createXMLStreamReader(selected);
+    } catch (IOException | RuntimeException e) {
+      pkg.revert();
+      throw e;
+    } catch (OpenXML4JException | XMLStreamException e) {
+      pkg.revert();
+      throw new IOException("Failed to read Excel workbook " + file, e);
+    }
+  }
+
+  public String getSheetName() {
+    return sheetName;
+  }
+
+  /**
+   * @return the zero-based number of the last row of the sheet according to its dimension, or -1 if unknown
+   */
+  public long getDimensionLastRow() {
+    return dimensionLastRow;
+  }
+
+  /**
+   * Reads the next row of the sheet into the given {@link ExcelRow}.
+   *
+   * @return false if there are no more rows in the sheet
+   */
+  public boolean next(ExcelRow row) throws IOException {
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        String name = reader.getLocalName();
+        if ("dimension".equals(name)) {
+          readDimension();
+        } else if ("row".equals(name)) {
+          String rowRef = reader.getAttributeValue(null, "r");
+          lastRowNumber = rowRef == null ? lastRowNumber + 1 : Long.parseLong(rowRef) - 1;
+          row.reset(lastRowNumber);
+          readCells(row);
+          return true;
+        }
+      }
+      return false;
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to read sheet " + sheetName, e);
+    }
+  }
+
+  private void readDimension() {
+    String ref = reader.getAttributeValue(null, "ref");
+    if (ref != null) {
+      String last = ref.substring(ref.indexOf(':') + 1);
+      dimensionLastRow = new CellReference(last).getRow();
+    }
+  }
+
+  private void readCells(ExcelRow row) throws XMLStreamException, IOException {
+    int column = -1;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT && "row".equals(reader.getLocalName())) {
+        return;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT || !"c".equals(reader.getLocalName())) {
+        continue;
+      }
+      String cellRef = reader.getAttributeValue(null, "r");
+      column = cellRef == null ? column + 1 : new CellReference(cellRef).getCol();
+      String type = reader.getAttributeValue(null, "t");
+      String style = reader.getAttributeValue(null, "s");
+      String value = readCell(type, style == null ? 0 : Integer.parseInt(style));
+      if (value != null) {
+        row.setValue(column, value);
+      }
+    }
+  }
+
+  /**
+   * Reads the content of the current cell element and formats its value.
+   *
+   * @return the formatted value, or null if the cell is skipped
+   */
+  private String readCell(String type, int style) throws XMLStreamException, IOException {
+    boolean formula = false;
+    String value = null;
+    text.setLength(0);
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT && "c".equals(reader.getLocalName())) {
+        break;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT) {
+        continue;
+      }
+      String name = reader.getLocalName();
+      if ("f".equals(name)) {
+        formula = true;
+      } else if ("v".equals(name)) {
+        value = reader.getElementText();
+      } else if ("is".equals(name)) {
+        ExcelSharedStrings.readText(reader, "is", text);
+        value = text.toString();
+      }
+    }
+    // formula, error and blank cells are not read, in the same way as for .xls workbooks
+    if (formula || value == null || "e".equals(type)) {
+      return null;
+    }
+    if ("s".equals(type)) {
+      return sharedStrings.get(Integer.parseInt(value.trim()));
+    }
+    if ("inlineStr".equals(type) || "str".equals(type)) {
+      return value;
+    }
+    if ("b".equals(type)) {
+      return String.valueOf("1".equals(value.trim()));
+    }
+    double number = Double.parseDouble(value);
+    if (isDateStyle(style) && DateUtil.isValidExcelDate(number)) {
+      return DateUtil.getJavaDate(number, date1904).toString();
+    }
+    return String.valueOf(number);
+  }
+
+  private boolean isDateStyle(int style) {
+    if (styles == null) {
+      return false;
+    }
+    if (style >= dateStyles.length) {
+      Boolean[] resized = new Boolean[Math.max(style + 1, dateStyles.length * 2)];
+      System.arraycopy(dateStyles, 0, resized, 0, dateStyles.length);
+      dateStyles = resized;
+    }
+    Boolean isDate = dateStyles[style];
+    if (isDate == null) {
+      isDate = false;
+      if (style < styles.getNumCellStyles()) {
+        XSSFCellStyle cellStyle = styles.getStyleAt(style);
+        int formatIndex = cellStyle.getDataFormat();
+        String format = cellStyle.getDataFormatString();
+        if (format == null) {
+          format = BuiltinFormats.getBuiltinFormat(formatIndex);
+        }
+        isDate = format != null && DateUtil.isADateFormat(formatIndex, format);
+      }
+      dateStyles[style] = isDate;
+    }
+    return isDate;
+  }
+
+  private static boolean isDate1904(XMLStreamReader workbook) throws XMLStreamException {
+    try {
+      while (workbook.hasNext()) {
+        if (workbook.next() == XMLStreamConstants.START_ELEMENT) {
+          String name = workbook.getLocalName();
+          if ("workbookPr".equals(name)) {
+            String value = workbook.getAttributeValue(null, "date1904");
+            return "1".equals(value) || "true".equalsIgnoreCase(value);
+          }
+          if ("sheets".equals(name)) {
+            // workbook properties always come before the sheets
+            return false;
+          }
+        }
+      }
+      return false;
+    } finally {
+      workbook.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to close sheet " + sheetName, e);
+    } finally {
+      try {
+        sheetData.close();
+        sharedStrings.close();
+      } finally {
+        pkg.revert();
+      }
+    }
+  }
+}
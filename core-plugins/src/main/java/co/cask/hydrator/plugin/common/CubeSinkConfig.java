@@ -74,6 +74,19 @@ public class CubeSinkConfig extends BatchReadableWritableConfig {
     "the key and value are delimited by ':' while the entries are delimited by ';'")
   String measurements;
 
+  @Name(Properties.Cube.BUFFER_SIZE)
+  @Description("Maximum number of distinct facts to merge in memory before writing them to the Cube. Facts with " +
+    "the same dimension values and time bucket are merged into one, by adding up counters and keeping the last " +
+    "gauge. Only supported with the MapReduce engine. Defaults to 0, which writes every fact as it is.")
+  @Nullable
+  Integer bufferSize;
+
+  @Name(Properties.Cube.BUFFER_FLUSH_INTERVAL)
+  @Description("Maximum number of seconds to keep merged facts in memory before writing them to the Cube. " +
+    "Only used if " + Properties.Cube.BUFFER_SIZE + " is positive. Defaults to 60.")
+  @Nullable
+  Integer bufferFlushInterval;
+
   public CubeSinkConfig(String name, String resolutions, String aggregations,
                         String tsField, String tsFormat, String measurements) {
     super(name);
@@ -82,6 +95,8 @@ public class CubeSinkConfig extends BatchReadableWritableConfig {
     this.tsField = tsField;
     this.tsFormat = tsFormat;
     this.measurements = measurements;
+    this.bufferSize = 0;
+    this.bufferFlushInterval = 60;
   }
 
   @Nullable
@@ -108,5 +123,13 @@ public class CubeSinkConfig extends BatchReadableWritableConfig {
   public String getMeasurements() {
     return measurements;
   }
+
+  public int getBufferSize() {
+    return bufferSize == null ? 0 : bufferSize;
+  }
+
+  public int getBufferFlushInterval() {
+    return bufferFlushInterval == null ? 60 : bufferFlushInterval;
+  }
 }
 
@@ -69,6 +69,9 @@ public final class Properties {
     public static final String MEASUREMENT_PREFIX = "cubeFact.measurement.";
 
     public static final String MEASUREMENTS = "cubeFact.measurements";
+
+    public static final String BUFFER_SIZE = "cubeFact.buffer.size";
+    public static final String BUFFER_FLUSH_INTERVAL = "cubeFact.buffer.flush.interval";
   }
 
   /**
@@ -79,6 +82,11 @@ public final class Properties {
     public static final String PROPERTY_SCHEMA = co.cask.cdap.api.dataset.table.Table.PROPERTY_SCHEMA;
     public static final String PROPERTY_SCHEMA_ROW_FIELD =
       co.cask.cdap.api.dataset.table.Table.PROPERTY_SCHEMA_ROW_FIELD;
+    public static final String PROPERTY_CONFLICT_LEVEL =
+      co.cask.cdap.api.dataset.table.Table.PROPERTY_CONFLICT_LEVEL;
+    public static final String CONFLICT_LEVEL_DESC = "The level of conflict detection when concurrent transactions " +
+      "write to the same data. Can be 'ROW', 'COLUMN', or 'NONE'. 'NONE' skips conflict detection, which is " +
+      "faster for bulk loads that only append new rows. Only used when the dataset is created. Defaults to 'ROW'.";
   }
 
   /**
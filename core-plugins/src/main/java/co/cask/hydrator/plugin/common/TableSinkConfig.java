@@ -41,6 +41,11 @@ public class TableSinkConfig extends BatchReadableWritableConfig {
   @Description("The name of the record field that should be used as the row key when writing to the table.")
   private String rowField;
 
+  @Name(Properties.Table.PROPERTY_CONFLICT_LEVEL)
+  @Description(Properties.Table.CONFLICT_LEVEL_DESC)
+  @Nullable
+  private String conflictDetection;
+
   public TableSinkConfig(String name, String rowField, @Nullable String schemaStr) {
     super(name);
     this.rowField = rowField;
@@ -55,4 +60,9 @@ public class TableSinkConfig extends BatchReadableWritableConfig {
   public String getRowField() {
     return rowField;
   }
+
+  @Nullable
+  public String getConflictDetection() {
+    return conflictDetection;
+  }
 }
@@ -0,0 +1,429 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.dataset;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Reads a snapshot that was written as a base snapshot followed by deltas, merging them by key on the fly.
+ * Each snapshot partition is split by the input format of the snapshot, and every record reader skips the records
+ * whose key has a later version in one of the deltas, and the records that are marked as deleted.
+ *
+ * The deltas are only read once, when the splits are computed, to write an index of their keys. The index holds
+ * the keys grouped by the time of their latest version, newest first, so that a task only loads the keys that
+ * were written after the partition of its split, and tasks that run in the same JVM share them. The index is
+ * kept for later runs until the partitions change. The memory needed is proportional to the number of distinct
+ * keys in the deltas since the last full snapshot, so deltas should be small compared to the base and should be
+ * compacted regularly by writing a full snapshot.
+ */
+public class DeltaSnapshotInputFormat extends InputFormat<NullWritable, StructuredRecord> {
+  static final String DELEGATE = "snapshot.delta.delegate.input.format";
+  static final String PARTITIONS = "snapshot.delta.partitions";
+  static final String KEY_FIELDS = "snapshot.delta.key.fields";
+  static final String DELETE_FIELD = "snapshot.delta.delete.field";
+  static final String INDEX_DIR = "snapshot.delta.index.dir";
+  private static final Logger LOG = LoggerFactory.getLogger(DeltaSnapshotInputFormat.class);
+  private static final Gson GSON = new Gson();
+  private static final Type PARTITIONS_TYPE = new TypeToken<LinkedHashMap<Long, String>>() { }.getType();
+  // superseded keys are shared by the tasks that run in the same JVM, only kept for a few minutes
+  private static final Cache<String, Set<Object>> SUPERSEDED_KEYS = CacheBuilder.newBuilder()
+    .expireAfterAccess(10, TimeUnit.MINUTES)
+    .softValues()
+    .build();
+
+  /**
+   * Sets the properties this input format needs to merge the given partitions.
+   *
+   * @param properties the input properties to add to
+   * @param delegate class name of the input format that reads the snapshot files
+   * @param partitions the location of each snapshot partition, keyed by snapshot time
+   * @param keyFields the fields that identify a record
+   * @param deleteField the boolean field that marks a record as deleted, if any
+   * @param indexDir the directory to write the index of the delta keys to
+   */
+  static void configure(Map<String, String> properties, String delegate, Map<Long, String> partitions,
+                        List<String> keyFields, @Nullable String deleteField, String indexDir) {
+    properties.put(DELEGATE, delegate);
+    properties.put(INDEX_DIR, indexDir);
+    properties.put(PARTITIONS, GSON.toJson(partitions, PARTITIONS_TYPE));
+    properties.put(KEY_FIELDS, Joiner.on(',').join(keyFields));
+    if (deleteField != null) {
+      properties.put(DELETE_FIELD, deleteField);
+    }
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException {
+    Configuration conf = context.getConfiguration();
+    InputFormat<NullWritable, StructuredRecord> delegate = createDelegate(conf);
+    Map<Long, String> partitions = getPartitions(conf);
+    Path index = getIndexPath(conf, partitions);
+    FileSystem fs = index.getFileSystem(conf);
+    if (partitions.size() > 1 && !fs.exists(index)) {
+      writeIndex(context, delegate, partitions, fs, index);
+    }
+
+    List<InputSplit> splits = new ArrayList<>();
+    for (Map.Entry<Long, String> partition : partitions.entrySet()) {
+      JobContext partitionContext = new JobContextImpl(getPartitionConf(conf, partition.getValue()),
+                                                       context.getJobID());
+      for (InputSplit split : delegate.getSplits(partitionContext)) {
+        splits.add(new SnapshotSplit(partition.getKey(), split, conf));
+      }
+    }
+    return splits;
+  }
+
+  @Override
+  public RecordReader<NullWritable, StructuredRecord> createRecordReader(InputSplit split,
+                                                                         TaskAttemptContext context) {
+    return new MergingRecordReader();
+  }
+
+  private static Map<Long, String> getPartitions(Configuration conf) {
+    return GSON.fromJson(conf.get(PARTITIONS), PARTITIONS_TYPE);
+  }
+
+  private static List<String> getKeyFields(Configuration conf) {
+    List<String> keyFields = new ArrayList<>();
+    Iterables.addAll(keyFields, Splitter.on(',').split(conf.get(KEY_FIELDS)));
+    return keyFields;
+  }
+
+  // partitions are never rewritten, so the base and the latest delta identify the content of the index
+  private static Path getIndexPath(Configuration conf, Map<Long, String> partitions) {
+    long base = Iterables.getFirst(partitions.keySet(), null);
+    long latest = Iterables.getLast(partitions.keySet());
+    return new Path(conf.get(INDEX_DIR), String.format("%d-%d", base, latest));
+  }
+
+  private static Configuration getPartitionConf(Configuration conf, String location) {
+    Configuration partitionConf = new Configuration(conf);
+    partitionConf.set(FileInputFormat.INPUT_DIR, StringUtils.escapeString(new Path(location).toString()));
+    return partitionConf;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static InputFormat<NullWritable, StructuredRecord> createDelegate(Configuration conf) throws IOException {
+    try {
+      return (InputFormat<NullWritable, StructuredRecord>)
+        ReflectionUtils.newInstance(conf.getClassByName(conf.get(DELEGATE)), conf);
+    } catch (ClassNotFoundException e) {
+      throw new IOException(String.format("Could not load the snapshot input format '%s'.", conf.get(DELEGATE)), e);
+    }
+  }
+
+  /**
+   * Reads the delta partitions and writes the index of their keys, which holds the number of groups, followed by
+   * the time, the number of keys and the keys of each group. Each key is in the group of the latest delta that
+   * contains it, and the groups are ordered by time, newest first.
+   */
+  private static void writeIndex(JobContext context, InputFormat<NullWritable, StructuredRecord> delegate,
+                                 Map<Long, String> partitions, FileSystem fs, Path index)
+    throws IOException, InterruptedException {
+    Configuration conf = context.getConfiguration();
+    List<String> keyFields = getKeyFields(conf);
+    Map<Object, Long> deltaKeys = new HashMap<>();
+    // the first partition is the base, which does not need to be indexed
+    for (Map.Entry<Long, String> partition : Iterables.skip(partitions.entrySet(), 1)) {
+      Configuration partitionConf = getPartitionConf(conf, partition.getValue());
+      for (InputSplit split : delegate.getSplits(new JobContextImpl(partitionConf, context.getJobID()))) {
+        TaskAttemptContext splitContext = new TaskAttemptContextImpl(partitionConf, new TaskAttemptID());
+        try (RecordReader<NullWritable, StructuredRecord> reader = delegate.createRecordReader(split,
+                                                                                              splitContext)) {
+          reader.initialize(split, splitContext);
+          while (reader.nextKeyValue()) {
+            deltaKeys.put(getKey(reader.getCurrentValue(), keyFields), partition.getKey());
+          }
+        }
+      }
+    }
+    Map<Long, List<Object>> groups = new TreeMap<>(Collections.reverseOrder());
+    for (Map.Entry<Object, Long> deltaKey : deltaKeys.entrySet()) {
+      List<Object> group = groups.get(deltaKey.getValue());
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(deltaKey.getValue(), group);
+      }
+      group.add(deltaKey.getKey());
+    }
+
+    Path newIndex = new Path(index.getParent(), String.format(".%s.%s", index.getName(), UUID.randomUUID()));
+    try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fs.create(newIndex)))) {
+      out.writeInt(groups.size());
+      for (Map.Entry<Long, List<Object>> group : groups.entrySet()) {
+        out.writeLong(group.getKey());
+        out.writeInt(group.getValue().size());
+        for (Object key : group.getValue()) {
+          out.writeObject(key);
+        }
+      }
+    }
+    // another run may have written the same index in the meantime, which has the same content
+    if (!fs.rename(newIndex, index)) {
+      fs.delete(newIndex, false);
+      if (!fs.exists(index)) {
+        throw new IOException(String.format("Failed to write the index of the snapshot deltas to '%s'.", index));
+      }
+    }
+    LOG.debug("Wrote {} keys of the snapshot deltas to the index '{}'.", deltaKeys.size(), index);
+  }
+
+  /**
+   * Reads the keys that have a later version than the given snapshot time from the index.
+   */
+  private static Set<Object> loadSupersededKeys(Configuration conf, long snapshotTime) throws IOException {
+    Map<Long, String> partitions = getPartitions(conf);
+    if (snapshotTime == Iterables.getLast(partitions.keySet())) {
+      return Collections.emptySet();
+    }
+    Path index = getIndexPath(conf, partitions);
+    try {
+      return SUPERSEDED_KEYS.get(index.toString() + '/' + snapshotTime, () -> {
+        Set<Object> keys = new HashSet<>();
+        try (ObjectInputStream in = new ObjectInputStream(
+          new BufferedInputStream(index.getFileSystem(conf).open(index)))) {
+          int groups = in.readInt();
+          for (int i = 0; i < groups; i++) {
+            if (in.readLong() <= snapshotTime) {
+              // the remaining groups are older
+              break;
+            }
+            int size = in.readInt();
+            for (int j = 0; j < size; j++) {
+              keys.add(in.readObject());
+            }
+          }
+        }
+        LOG.debug("Loaded {} keys from the index '{}'.", keys.size(), index);
+        return keys;
+      });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(String.format("Failed to load the keys of the snapshot deltas from '%s'.", index),
+                            e.getCause());
+    }
+  }
+
+  private static Object getKey(StructuredRecord record, List<String> keyFields) {
+    if (keyFields.size() == 1) {
+      return record.get(keyFields.get(0));
+    }
+    Object[] key = new Object[keyFields.size()];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = record.get(keyFields.get(i));
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * Returns the records of one snapshot partition that are the latest version of their key and are not deleted.
+   */
+  private static class MergingRecordReader extends RecordReader<NullWritable, StructuredRecord> {
+    private RecordReader<NullWritable, StructuredRecord> delegate;
+    private long snapshotTime;
+    private List<String> keyFields;
+    private String deleteField;
+    private Set<Object> supersededKeys;
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+      Configuration conf = context.getConfiguration();
+      SnapshotSplit snapshotSplit = (SnapshotSplit) split;
+      snapshotTime = snapshotSplit.snapshotTime;
+      keyFields = getKeyFields(conf);
+      deleteField = conf.get(DELETE_FIELD);
+      supersededKeys = loadSupersededKeys(conf, snapshotTime);
+      delegate = createDelegate(conf).createRecordReader(snapshotSplit.split, context);
+      delegate.initialize(snapshotSplit.split, context);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+      while (delegate.nextKeyValue()) {
+        StructuredRecord record = delegate.getCurrentValue();
+        if (deleteField != null && Boolean.TRUE.equals(record.get(deleteField))) {
+          continue;
+        }
+        if (!supersededKeys.contains(getKey(record, keyFields))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public NullWritable getCurrentKey() {
+      return NullWritable.get();
+    }
+
+    @Override
+    public StructuredRecord getCurrentValue() throws IOException, InterruptedException {
+      return delegate.getCurrentValue();
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+      return delegate.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (delegate != null) {
+        delegate.close();
+      }
+    }
+  }
+
+  /**
+   * A split of the input format of the snapshot, together with the time of the snapshot partition it belongs to.
+   */
+  public static class SnapshotSplit extends InputSplit implements Writable, Configurable {
+    private long snapshotTime;
+    private InputSplit split;
+    private Configuration conf;
+
+    public SnapshotSplit() {
+      // for deserialization
+    }
+
+    SnapshotSplit(long snapshotTime, InputSplit split, Configuration conf) {
+      this.snapshotTime = snapshotTime;
+      this.split = split;
+      this.conf = conf;
+    }
+
+    long getSnapshotTime() {
+      return snapshotTime;
+    }
+
+    @Override
+    public long getLength() throws IOException, InterruptedException {
+      return split.getLength();
+    }
+
+    @Override
+    public String[] getLocations() throws IOException, InterruptedException {
+      return split.getLocations();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeLong(snapshotTime);
+      Text.writeString(out, split.getClass().getName());
+      // the output is not always a stream, for example when Spark serializes the split, so the split is
+      // serialized to bytes first
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Serializer<InputSplit> serializer = new SerializationFactory(conf).getSerializer((Class<InputSplit>)
+                                                                                         split.getClass());
+      serializer.open(bytes);
+      serializer.serialize(split);
+      serializer.close();
+      WritableUtils.writeVInt(out, bytes.size());
+      out.write(bytes.toByteArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      snapshotTime = in.readLong();
+      String splitClassName = Text.readString(in);
+      Class<InputSplit> splitClass;
+      try {
+        splitClass = (Class<InputSplit>) conf.getClassByName(splitClassName);
+      } catch (ClassNotFoundException e) {
+        throw new IOException(String.format("Could not load the split class '%s'.", splitClassName), e);
+      }
+      byte[] bytes = new byte[WritableUtils.readVInt(in)];
+      in.readFully(bytes);
+      Deserializer<InputSplit> deserializer = new SerializationFactory(conf).getDeserializer(splitClass);
+      deserializer.open(new ByteArrayInputStream(bytes));
+      split = deserializer.deserialize(ReflectionUtils.newInstance(splitClass, conf));
+      deserializer.close();
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package co.cask.hydrator.plugin.dataset;
 
+import co.cask.cdap.api.dataset.lib.FileSetProperties;
 import co.cask.cdap.api.dataset.lib.PartitionDetail;
 import co.cask.cdap.api.dataset.lib.PartitionFilter;
 import co.cask.cdap.api.dataset.lib.PartitionKey;
@@ -26,7 +27,9 @@ import co.cask.cdap.api.dataset.lib.Partitioning;
 import co.cask.hydrator.plugin.common.SnapshotFileSetConfig;
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.apache.twill.filesystem.Location;
@@ -35,9 +38,19 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -45,6 +58,15 @@ import javax.annotation.Nullable;
  * Writes snapshots as partitions of a PartitionedFileSet, and keeps track of which partition is the most recent
  * partition. Also used to read the latest snapshot.
  *
+ * A snapshot can also be written as deltas on top of a base snapshot, each containing only the records that changed
+ * or were deleted since the previous one. The state file then lists the base and all its deltas, which are merged by
+ * key when the snapshot is read. Writing a full snapshot again starts a new base. The keys of the deltas are indexed
+ * in a hidden directory of the base path when they are first read, and the indexes of older states are deleted
+ * together with the expired partitions.
+ *
+ * The state file is replaced atomically by renaming a new version of it, so readers never take the lock, which only
+ * serializes writers.
+ *
  * Note: this should be a CDAP dataset, but plugins are not able to add custom datasets until CDAP-3992 is fixed.
  *       it should also implement DatasetOutputCommitter.
  */
@@ -52,6 +74,11 @@ public class SnapshotFileSet {
   private static final Type MAP_TYPE = new TypeToken<Map<String, String>>() { }.getType();
   private static final Gson GSON = new Gson();
   private static final String STATE_FILE_NAME = "state";
+  private static final String INDEX_DIR_NAME = ".delta-index";
+  private static final long LOCK_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(20);
+  private static final long MIN_LOCK_BACKOFF_MS = 10;
+  private static final long MAX_LOCK_BACKOFF_MS = 1000;
+  private static final int DEFAULT_DROP_PARALLELISM = 8;
   public static final String SNAPSHOT_FIELD = "snapshot";
   private final PartitionedFileSet files;
 
@@ -82,35 +109,63 @@ public class SnapshotFileSet {
 
   @Nullable
   public Location getLocation() throws IOException, InterruptedException {
+    PartitionDetail partitionDetail = getLatestPartition();
+    if (partitionDetail == null) {
+      return null;
+    }
+    return partitionDetail.getLocation();
+  }
+
+  public void onSuccess(long snapshotTime) throws IOException, InterruptedException {
     Location lock = lock();
     try {
-      PartitionDetail partitionDetail = getLatestPartition();
-      if (partitionDetail == null) {
-        return null;
+      // update state file that contains the latest snapshot
+      SnapshotState state = getState();
+      if (state == null || snapshotTime > state.getLatest()) {
+        writeState(new SnapshotState(snapshotTime, Collections.<Long>emptyList(), null, null));
       }
-      return partitionDetail.getLocation();
     } finally {
       lock.delete();
     }
   }
 
-  public void onSuccess(long snapshotTime) throws IOException, InterruptedException {
+  /**
+   * Adds a delta on top of the latest snapshot. If there is no snapshot yet, the delta becomes the base.
+   *
+   * @param snapshotTime the time of the partition the delta was written to
+   * @param keyFields the fields that identify a record
+   * @param deleteField the boolean field that marks a record as deleted, if any
+   */
+  public void onDeltaSuccess(long snapshotTime, List<String> keyFields,
+                             @Nullable String deleteField) throws IOException, InterruptedException {
     Location lock = lock();
     try {
-      // update state file that contains the latest snapshot
-      Long latestSnapshot = getLatestSnapshot();
-      if (latestSnapshot == null || snapshotTime > latestSnapshot) {
-        Location stateFile = files.getEmbeddedFileSet().getBaseLocation().append(STATE_FILE_NAME);
-        stateFile.delete();
-        try (OutputStream outputStream = stateFile.getOutputStream()) {
-          outputStream.write(String.valueOf(snapshotTime).getBytes(Charsets.UTF_8));
-        }
+      SnapshotState state = getState();
+      if (state == null) {
+        writeState(new SnapshotState(snapshotTime, Collections.<Long>emptyList(), keyFields, deleteField));
+      } else if (snapshotTime > state.getLatest()) {
+        writeState(state.addDelta(snapshotTime, keyFields, deleteField));
       }
     } finally {
       lock.delete();
     }
   }
 
+  /**
+   * Checks that a delta with the given key can be merged with the deltas that were already written.
+   *
+   * @throws IllegalArgumentException if the deltas already written use different key fields
+   */
+  public void validateDelta(List<String> keyFields) throws IOException, InterruptedException {
+    SnapshotState state = getState();
+    if (state != null && !state.getDeltas().isEmpty() && !keyFields.equals(state.getKeyFields())) {
+      throw new IllegalArgumentException(String.format(
+        "The key fields %s are different than the key fields %s of the deltas already written on top of the " +
+          "latest snapshot. Please write a full snapshot before changing the key fields.",
+        keyFields, state.getKeyFields()));
+    }
+  }
+
   public Map<String, String> getOutputArguments(long snapshotTime, Map<String, String> otherProperties) {
     Map<String, String> args = new HashMap<>();
     args.putAll(otherProperties);
@@ -122,52 +177,138 @@ public class SnapshotFileSet {
 
   public Map<String, String> getInputArguments(Map<String, String> otherProperties)
     throws IOException, InterruptedException {
+    SnapshotState state = getState();
+    if (state == null) {
+      throw new IllegalArgumentException("Snapshot fileset does not have a latest snapshot, so cannot be read.");
+    }
+    Map<String, String> args = new HashMap<>();
+    args.putAll(otherProperties);
+    if (!state.isDelta()) {
+      PartitionedFileSetArguments.addInputPartition(args, getPartition(state.getBase()));
+      return args;
+    }
 
-    Location lock = lock();
+    // read the base and all deltas, with an input format that merges them
+    Map<Long, String> partitions = new LinkedHashMap<>();
+    for (long snapshotTime : state.getSnapshots()) {
+      PartitionDetail partition = getPartition(snapshotTime);
+      PartitionedFileSetArguments.addInputPartition(args, partition);
+      partitions.put(snapshotTime, partition.getLocation().toURI().toString());
+    }
+    String delegate = otherProperties.containsKey(FileSetProperties.INPUT_FORMAT) ?
+      otherProperties.get(FileSetProperties.INPUT_FORMAT) : files.getInputFormatClassName();
+    Map<String, String> inputProperties = new HashMap<>();
+    DeltaSnapshotInputFormat.configure(inputProperties, delegate, partitions, state.getKeyFields(),
+                                       state.getDeleteField(), getIndexDir().toURI().toString());
+    for (Map.Entry<String, String> inputProperty : inputProperties.entrySet()) {
+      args.put(FileSetProperties.INPUT_PROPERTIES_PREFIX + inputProperty.getKey(), inputProperty.getValue());
+    }
+    args.put(FileSetProperties.INPUT_FORMAT, DeltaSnapshotInputFormat.class.getName());
+    return args;
+  }
+
+  public void deleteMatchingPartitionsByTime(long upperLimit) throws IOException, InterruptedException {
+    deleteMatchingPartitionsByTime(upperLimit, DEFAULT_DROP_PARALLELISM);
+  }
+
+  /**
+   * Drops the partitions older than the given time, except for the ones the latest snapshot consists of, and
+   * deletes the indexes of the delta keys of older states.
+   * The files of the partitions are deleted by up to the given number of threads, which is where most of the time
+   * goes, and the partitions are then dropped from the dataset one by one, since datasets are not thread safe.
+   */
+  public void deleteMatchingPartitionsByTime(long upperLimit, int parallelism)
+    throws IOException, InterruptedException {
+    if (upperLimit <= 0 || upperLimit == Long.MAX_VALUE) {
+      return;
+    }
+    // the base and deltas of the latest snapshot are still needed, even if they are older than the limit
+    Set<Long> inUse = new HashSet<>();
+    SnapshotState state = getState();
+    if (state != null) {
+      inUse.addAll(state.getSnapshots());
+    }
+    deleteIndexes(state);
+
+    PartitionFilter filter = PartitionFilter.builder().addRangeCondition(SNAPSHOT_FIELD, null, upperLimit).build();
+    List<PartitionDetail> expired = new ArrayList<>();
+    for (PartitionDetail partition : files.getPartitions(filter)) {
+      if (!inUse.contains(partition.getPartitionKey().getField(SNAPSHOT_FIELD))) {
+        expired.add(partition);
+      }
+    }
+    if (expired.isEmpty()) {
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(parallelism, expired.size())),
+      new ThreadFactoryBuilder().setNameFormat("snapshot-cleanup-%d").setDaemon(true).build());
     try {
-      PartitionDetail partition = getLatestPartition();
-      if (partition == null) {
-        throw new IllegalArgumentException("Snapshot fileset does not have a latest snapshot, so cannot be read.");
+      List<Future<Boolean>> deletions = new ArrayList<>(expired.size());
+      for (PartitionDetail partition : expired) {
+        Location location = partition.getLocation();
+        deletions.add(executor.submit(() -> location.delete(true)));
+      }
+      for (Future<Boolean> deletion : deletions) {
+        try {
+          deletion.get();
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause(), IOException.class);
+          throw new IOException("Failed to delete the files of an expired snapshot.", e.getCause());
+        }
       }
-      Map<String, String> args = new HashMap<>();
-      args.putAll(otherProperties);
-      PartitionedFileSetArguments.addInputPartition(args, partition);
-      return args;
     } finally {
-      lock.delete();
+      executor.shutdownNow();
+    }
+    for (PartitionDetail partition : expired) {
+      files.dropPartition(partition.getPartitionKey());
     }
   }
 
-  public void deleteMatchingPartitionsByTime(long upperLimit) throws IOException {
-    if (upperLimit > 0 && upperLimit < Long.MAX_VALUE) {
-      PartitionFilter filter = PartitionFilter.builder().addRangeCondition(SNAPSHOT_FIELD, null, upperLimit).build();
-      Set<PartitionDetail> partitions = files.getPartitions(filter);
-      for (PartitionDetail partition : partitions) {
-        files.dropPartition(partition.getPartitionKey());
+  private Location getIndexDir() throws IOException {
+    return files.getEmbeddedFileSet().getBaseLocation().append(INDEX_DIR_NAME);
+  }
+
+  // indexes are named by the base and the latest delta they were written for, see DeltaSnapshotInputFormat
+  private void deleteIndexes(@Nullable SnapshotState state) throws IOException {
+    Location indexDir = getIndexDir();
+    if (!indexDir.exists()) {
+      return;
+    }
+    String current = state == null ? null : String.format("%d-%d", state.getBase(), state.getLatest());
+    for (Location index : indexDir.list()) {
+      // hidden files are indexes that are still being written
+      if (!index.getName().equals(current) && !index.getName().startsWith(".")) {
+        index.delete();
       }
     }
   }
 
   private PartitionDetail getLatestPartition() throws IOException {
-    Long latestTime = getLatestSnapshot();
-    if (latestTime == null) {
+    SnapshotState state = getState();
+    if (state == null) {
       return null;
     }
+    return getPartition(state.getLatest());
+  }
 
-    PartitionKey partitionKey = PartitionKey.builder().addLongField(SNAPSHOT_FIELD, latestTime).build();
+  private PartitionDetail getPartition(long snapshotTime) {
+    PartitionKey partitionKey = PartitionKey.builder().addLongField(SNAPSHOT_FIELD, snapshotTime).build();
     PartitionDetail partitionDetail = files.getPartition(partitionKey);
 
     if (partitionDetail == null) {
       throw new IllegalStateException(String.format("No snapshot files found for latest recorded snapshot from '%d'. " +
         "This can happen if files are deleted manually without updating the state file. " +
         "Please fix the state file to contain the latest snapshot, or delete the file and write another snapshot.",
-        latestTime));
+        snapshotTime));
     }
     return partitionDetail;
   }
 
-  // should only be called after lock()
-  private Long getLatestSnapshot() throws IOException {
+  // the state file is always replaced atomically, so it can be read without the lock
+  @Nullable
+  private SnapshotState getState() throws IOException {
     Location stateFile = files.getEmbeddedFileSet().getBaseLocation().append(STATE_FILE_NAME);
     if (!stateFile.exists()) {
       return null;
@@ -175,24 +316,43 @@ public class SnapshotFileSet {
 
     try (InputStreamReader reader = new InputStreamReader(stateFile.getInputStream(), Charsets.UTF_8)) {
       String val = CharStreams.toString(reader);
-      return Long.valueOf(val);
+      return SnapshotState.parse(val);
+    }
+  }
+
+  // should only be called after lock(), which only writers need to take
+  private void writeState(SnapshotState state) throws IOException {
+    Location baseLocation = files.getEmbeddedFileSet().getBaseLocation();
+    Location stateFile = baseLocation.append(STATE_FILE_NAME);
+    // write a new version of the state, then move it in place, so that readers see either the old or the new state
+    Location newState = baseLocation.append(String.format(".%s.%s", STATE_FILE_NAME, UUID.randomUUID()));
+    try (OutputStream outputStream = newState.getOutputStream()) {
+      outputStream.write(state.serialize().getBytes(Charsets.UTF_8));
+    }
+    if (newState.renameTo(stateFile) == null) {
+      // file systems that do not replace an existing file on rename
+      stateFile.delete();
+      if (newState.renameTo(stateFile) == null) {
+        newState.delete();
+        throw new IOException(String.format("Failed to replace the state file '%s'.", stateFile));
+      }
     }
   }
 
   private Location lock() throws IOException, InterruptedException {
-    // create a lock file in case there is somebody updating the latest snapshot
+    // create a lock file in case there is somebody else updating the latest snapshot
     Location lockFile = files.getEmbeddedFileSet().getBaseLocation().append("lock");
 
-    int retries = 0;
-    int maxRetries = 20;
+    long deadline = System.currentTimeMillis() + LOCK_TIMEOUT_MS;
+    long backoff = MIN_LOCK_BACKOFF_MS;
     while (!lockFile.createNew()) {
-      if (retries > maxRetries) {
+      if (System.currentTimeMillis() > deadline) {
         throw new IOException("Failed to create lock file. If there is a file named 'lock' in the " +
           "base path, but there is nobody updating the latest snapshot, please delete the 'lock' file.");
       }
 
-      TimeUnit.SECONDS.sleep(1);
-      retries++;
+      TimeUnit.MILLISECONDS.sleep(backoff);
+      backoff = Math.min(backoff * 2, MAX_LOCK_BACKOFF_MS);
     }
     return lockFile;
   }
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.dataset;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Contents of the state file of a {@link SnapshotFileSet}. A full snapshot is stored as just its time, which is
+ * what older versions of the plugins wrote. A snapshot with deltas is stored as a JSON object containing the time of
+ * the base snapshot, the times of the deltas written on top of it, and the fields used to merge them.
+ */
+final class SnapshotState {
+  private static final Gson GSON = new Gson();
+
+  private final long base;
+  private final List<Long> deltas;
+  private final List<String> keyFields;
+  private final String deleteField;
+
+  SnapshotState(long base, List<Long> deltas, @Nullable List<String> keyFields, @Nullable String deleteField) {
+    this.base = base;
+    this.deltas = deltas;
+    this.keyFields = keyFields;
+    this.deleteField = deleteField;
+  }
+
+  static SnapshotState parse(String contents) {
+    String trimmed = contents.trim();
+    if (!trimmed.startsWith("{")) {
+      return new SnapshotState(Long.valueOf(trimmed), Collections.<Long>emptyList(), null, null);
+    }
+    SnapshotState state = GSON.fromJson(trimmed, SnapshotState.class);
+    if (state.deltas == null) {
+      return new SnapshotState(state.base, Collections.<Long>emptyList(), state.keyFields, state.deleteField);
+    }
+    return state;
+  }
+
+  long getBase() {
+    return base;
+  }
+
+  List<Long> getDeltas() {
+    return deltas;
+  }
+
+  /**
+   * @return the time of the base snapshot, followed by the times of its deltas in the order they were written
+   */
+  List<Long> getSnapshots() {
+    List<Long> snapshots = new ArrayList<>(deltas.size() + 1);
+    snapshots.add(base);
+    snapshots.addAll(deltas);
+    return snapshots;
+  }
+
+  long getLatest() {
+    return deltas.isEmpty() ? base : deltas.get(deltas.size() - 1);
+  }
+
+  /**
+   * @return whether the snapshot was written as deltas, which need to be merged by key when reading
+   */
+  boolean isDelta() {
+    return keyFields != null;
+  }
+
+  @Nullable
+  List<String> getKeyFields() {
+    return keyFields;
+  }
+
+  @Nullable
+  String getDeleteField() {
+    return deleteField;
+  }
+
+  /**
+   * @return a state with the given delta added on top of this one
+   */
+  SnapshotState addDelta(long snapshotTime, List<String> keyFields, @Nullable String deleteField) {
+    List<Long> newDeltas = new ArrayList<>(deltas);
+    newDeltas.add(snapshotTime);
+    return new SnapshotState(base, newDeltas, keyFields, deleteField);
+  }
+
+  String serialize() {
+    return isDelta() ? GSON.toJson(this) : String.valueOf(base);
+  }
+}
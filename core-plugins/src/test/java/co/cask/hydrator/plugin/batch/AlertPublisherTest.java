@@ -41,8 +41,10 @@ import com.google.gson.Gson;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -106,4 +108,43 @@ public class AlertPublisherTest extends ETLBatchTestBase {
     Set<Alert> expectedMessages = ImmutableSet.of(new Alert("nullAlert", new HashMap<String, String>()));
     Assert.assertEquals(expectedMessages, actualMessages);
   }
+
+  @Test
+  public void testAlertDeduplication() throws Exception {
+    String sourceName = "dedupAlertSource";
+    String topic = "dedupAlertTopic";
+    ArtifactSelectorConfig corePluginsArtifact = new ArtifactSelectorConfig("USER", "core-plugins", "1.0.0");
+
+    ETLBatchConfig config = ETLBatchConfig.builder("* * * * *")
+      .addStage(new ETLStage("source", MockSource.getPlugin(sourceName)))
+      .addStage(new ETLStage("nullAlert", NullAlertTransform.getPlugin("id")))
+      .addStage(new ETLStage("sink", MockSink.getPlugin("dedupAlertSink")))
+      .addStage(new ETLStage("tms", new ETLPlugin("TMS", AlertPublisher.PLUGIN_TYPE,
+                                                  ImmutableMap.of("topic", topic, "autoCreateTopic", "true",
+                                                                  "batchSize", "2", "dedupWindowSeconds", "3600"),
+                                                  corePluginsArtifact)))
+      .addConnection("source", "nullAlert")
+      .addConnection("nullAlert", "sink")
+      .addConnection("nullAlert", "tms")
+      .build();
+
+    ApplicationManager appManager = deployETL(config, "DedupAlertTest");
+
+    // every record without an id results in the same alert, which should only be published once
+    Schema schema = Schema.recordOf("x", Schema.Field.of("id", Schema.nullableOf(Schema.of(Schema.Type.LONG))));
+    StructuredRecord alertRecord = StructuredRecord.builder(schema).build();
+    DataSetManager<Table> sourceTable = getDataset(sourceName);
+    MockSource.writeInput(sourceTable, ImmutableList.of(alertRecord, alertRecord, alertRecord));
+
+    runETLOnce(appManager);
+
+    MessageFetcher messageFetcher = getMessagingContext().getMessageFetcher();
+    List<Alert> actualMessages = new ArrayList<>();
+    try (CloseableIterator<Message> iter = messageFetcher.fetch(NamespaceId.DEFAULT.getNamespace(), topic, 5, 0)) {
+      while (iter.hasNext()) {
+        actualMessages.add(GSON.fromJson(iter.next().getPayloadAsString(), Alert.class));
+      }
+    }
+    Assert.assertEquals(ImmutableList.of(new Alert("nullAlert", new HashMap<String, String>())), actualMessages);
+  }
 }
@@ -40,7 +40,10 @@ import co.cask.hydrator.plugin.common.Properties;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.avro.file.DataFileStream;
 import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
@@ -57,8 +60,11 @@ import org.junit.Test;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 public class ETLTPFSTestRun extends ETLBatchTestBase {
@@ -153,6 +159,134 @@ public class ETLTPFSTestRun extends ETLBatchTestBase {
     Assert.assertEquals(Long.MAX_VALUE, outputRecords.get(0).get("l"));
   }
 
+  @Test
+  public void testPartitionIndexAndCombinedSplits() throws Exception {
+    ETLPlugin sourceConfig = new ETLPlugin(
+      "TPFSAvro",
+      BatchSource.PLUGIN_TYPE,
+      ImmutableMap.<String, String>builder()
+        .put(Properties.TimePartitionedFileSetDataset.SCHEMA, RECORD_SCHEMA.toString())
+        .put(Properties.TimePartitionedFileSetDataset.TPFS_NAME, "indexInput")
+        .put(Properties.TimePartitionedFileSetDataset.DELAY, "0d")
+        .put(Properties.TimePartitionedFileSetDataset.DURATION, "1h")
+        .put("usePartitionIndex", "true")
+        .put("maxSplitSize", "1048576")
+        .build(),
+      null);
+    ETLPlugin sinkConfig = new ETLPlugin(
+      "TPFSAvro",
+      BatchSink.PLUGIN_TYPE,
+      ImmutableMap.of(
+        Properties.TimePartitionedFileSetDataset.SCHEMA, RECORD_SCHEMA.toString(),
+        Properties.TimePartitionedFileSetDataset.TPFS_NAME, "indexOutput"),
+      null);
+
+    ETLStage source = new ETLStage("source", sourceConfig);
+    ETLStage sink = new ETLStage("sink", sinkConfig);
+
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+
+    ApplicationManager appManager = deployETL(etlConfig, "partitionIndexTest");
+
+    DataSetManager<TimePartitionedFileSet> inputManager = getDataset("indexInput");
+    DataSetManager<TimePartitionedFileSet> outputManager = getDataset("indexOutput");
+
+    long runtime = 1451606400000L;
+    writeAvroPartition(inputManager, runtime - TimeUnit.MINUTES.toMillis(50), 1, 2);
+    writeAvroPartition(inputManager, runtime - TimeUnit.MINUTES.toMillis(40), 3);
+    // the first run builds the index and reads the window from 1 hour before the runtime
+    runETLOnce(appManager, ImmutableMap.of("logical.start.time", String.valueOf(runtime)));
+
+    outputManager.flush();
+    Assert.assertEquals(ImmutableSet.of(1, 2, 3), readPartitionValues(outputManager.get(), runtime));
+
+    // re-add the partition at 40 minutes before the runtime, as compaction would, and add a late partition
+    // and a partition after the first window
+    long readdedTime = runtime - TimeUnit.MINUTES.toMillis(40);
+    inputManager.get().dropPartition(readdedTime);
+    inputManager.flush();
+    writeAvroPartition(inputManager, readdedTime, 4);
+    writeAvroPartition(inputManager, runtime - TimeUnit.MINUTES.toMillis(30), 5, 6);
+    writeAvroPartition(inputManager, runtime + TimeUnit.MINUTES.toMillis(10), 7);
+
+    // the second run only adds the new partitions to the index, and its window no longer includes the oldest one
+    long secondRuntime = runtime + TimeUnit.MINUTES.toMillis(20);
+    runETLOnce(appManager, ImmutableMap.of("logical.start.time", String.valueOf(secondRuntime)));
+
+    outputManager.flush();
+    Assert.assertEquals(ImmutableSet.of(4, 5, 6, 7), readPartitionValues(outputManager.get(), secondRuntime));
+  }
+
+
+  @Test
+  public void testSortedAndBucketedSink() throws Exception {
+    String inputDatasetName = "input-sortedsink";
+    ETLStage source = new ETLStage("source", MockSource.getPlugin(inputDatasetName, RECORD_SCHEMA));
+    ETLStage sink = new ETLStage("sink", new ETLPlugin(
+      "TPFSAvro",
+      BatchSink.PLUGIN_TYPE,
+      ImmutableMap.<String, String>builder()
+        .put(Properties.TimePartitionedFileSetDataset.SCHEMA, RECORD_SCHEMA.toString())
+        .put(Properties.TimePartitionedFileSetDataset.TPFS_NAME, "sortedOutput")
+        .put("sortFields", "l")
+        .put("bucketFields", "i")
+        .put("numBuckets", "2")
+        // a small buffer makes the sink spill and merge the sorted records
+        .put("sortBufferSize", "4")
+        .build(),
+      null));
+
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+
+    ApplicationManager appManager = deployETL(etlConfig, "sortedSinkTest");
+
+    List<StructuredRecord> input = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      input.add(StructuredRecord.builder(RECORD_SCHEMA).set("i", i).set("l", (long) (i * 7 % 20)).build());
+    }
+    DataSetManager<Table> inputManager = getDataset(inputDatasetName);
+    MockSource.writeInput(inputManager, input);
+
+    long runtime = 1451606400000L;
+    runETLOnce(appManager, ImmutableMap.of("logical.start.time", String.valueOf(runtime)));
+
+    DataSetManager<TimePartitionedFileSet> outputManager = getDataset("sortedOutput");
+    TimePartitionDetail partition = outputManager.get().getPartitionByTime(runtime);
+    Assert.assertNotNull(partition);
+
+    // every bucket is written to its own file, in which the records are sorted by the sort field
+    org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(RECORD_SCHEMA.toString());
+    Set<Integer> values = new HashSet<>();
+    int numFiles = 0;
+    for (Location file : partition.getLocation().list()) {
+      if (!file.getName().endsWith(".avro")) {
+        continue;
+      }
+      Assert.assertTrue(file.getName(), file.getName().contains("-b0000"));
+      numFiles++;
+      long previous = Long.MIN_VALUE;
+      try (DataFileStream<GenericRecord> fileStream =
+             new DataFileStream<>(file.getInputStream(), new GenericDatumReader<GenericRecord>(avroSchema))) {
+        for (GenericRecord record : fileStream) {
+          long l = (Long) record.get("l");
+          Assert.assertTrue(previous <= l);
+          previous = l;
+          // a value of the bucket field is only written to one bucket
+          Assert.assertTrue(values.add((Integer) record.get("i")));
+        }
+      }
+    }
+    Assert.assertEquals(2, numFiles);
+    Assert.assertEquals(20, values.size());
+  }
 
   @Test
   public void testOrc() throws Exception {
@@ -416,6 +550,31 @@ public class ETLTPFSTestRun extends ETLBatchTestBase {
     Assert.fail();
   }
 
+  private void writeAvroPartition(DataSetManager<TimePartitionedFileSet> manager, long time,
+                                  int... values) throws Exception {
+    org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(RECORD_SCHEMA.toString());
+    TimePartitionOutput partitionOutput = manager.get().getPartitionOutput(time);
+    Location location = partitionOutput.getLocation().append("0.avro");
+    DataFileWriter<GenericRecord> dataFileWriter = new DataFileWriter<>(new GenericDatumWriter<>(avroSchema));
+    dataFileWriter.create(avroSchema, location.getOutputStream());
+    for (int value : values) {
+      dataFileWriter.append(new GenericRecordBuilder(avroSchema).set("i", value).set("l", (long) value).build());
+    }
+    dataFileWriter.close();
+    partitionOutput.addPartition();
+    manager.flush();
+  }
+
+  private Set<Integer> readPartitionValues(TimePartitionedFileSet fileSet, long time) throws Exception {
+    TimePartitionDetail partition = fileSet.getPartitionByTime(time);
+    Assert.assertNotNull(partition);
+    Set<Integer> values = new HashSet<>();
+    for (GenericRecord record : readOutput(partition.getLocation(), RECORD_SCHEMA)) {
+      values.add((Integer) record.get("i"));
+    }
+    return values;
+  }
+
   private void writeDataToPipeline(long timeInMillis) throws Exception {
     org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(RECORD_SCHEMA.toString());
     GenericRecord record = new GenericRecordBuilder(avroSchema)
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.action;
+
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.mock.action.MockActionContext;
+import co.cask.cdap.etl.mock.common.MockStageMetrics;
+import co.cask.hydrator.plugin.batch.action.ParallelFileOperation.ListedFile;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests for {@link FileMoveAction} and {@link FileDeleteAction} with many files on the local file system.
+ */
+public class FileActionTest {
+  private static final int NUM_FILES = 2500;
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testParallelMove() throws Exception {
+    File source = TEMP_FOLDER.newFolder();
+    File dest = new File(TEMP_FOLDER.newFolder(), "dest");
+    createFiles(source, NUM_FILES, ".txt");
+    createFiles(source, 10, ".csv");
+
+    MetricsActionContext context = new MetricsActionContext();
+    new FileMoveAction(new FileMoveAction.Conf(source.getAbsolutePath(), dest.getAbsolutePath(), ".*\\.txt", false,
+                                               null, 8, null)).run(context);
+
+    Assert.assertEquals(NUM_FILES, dest.list().length);
+    Assert.assertEquals(10, source.list().length);
+    Assert.assertEquals(NUM_FILES, context.metrics.getCount(FileMoveAction.MOVED_METRIC));
+    Assert.assertEquals(0, context.metrics.getCount(ParallelFileOperation.FAILED_METRIC));
+  }
+
+  @Test
+  public void testRecursiveGlobMove() throws Exception {
+    File source = TEMP_FOLDER.newFolder();
+    File dest = new File(TEMP_FOLDER.newFolder(), "dest");
+    createFiles(new File(source, "a/x"), 100, ".txt");
+    createFiles(new File(source, "b"), 100, ".txt");
+    createFiles(new File(source, "c"), 100, ".txt");
+
+    MetricsActionContext context = new MetricsActionContext();
+    new FileMoveAction(new FileMoveAction.Conf(source.getAbsolutePath() + "/{a,b}", dest.getAbsolutePath(), null,
+                                               false, true, 4, null)).run(context);
+
+    // files are moved to the same subdirectories of the destination
+    Assert.assertEquals(100, new File(dest, "a/x").list().length);
+    Assert.assertEquals(100, new File(dest, "b").list().length);
+    Assert.assertFalse(new File(dest, "c").exists());
+    Assert.assertEquals(0, new File(source, "a/x").list().length);
+    Assert.assertEquals(100, new File(source, "c").list().length);
+    Assert.assertEquals(200, context.metrics.getCount(FileMoveAction.MOVED_METRIC));
+  }
+
+  @Test
+  public void testDryRunMove() throws Exception {
+    File source = TEMP_FOLDER.newFolder();
+    File dest = new File(TEMP_FOLDER.newFolder(), "dest");
+    createFiles(source, 100, ".txt");
+
+    new FileMoveAction(new FileMoveAction.Conf(source.getAbsolutePath(), dest.getAbsolutePath(), null, false,
+                                               null, 4, true)).run(new MetricsActionContext());
+
+    Assert.assertEquals(100, source.list().length);
+    Assert.assertFalse(dest.exists());
+  }
+
+  @Test
+  public void testParallelDelete() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    createFiles(dir, NUM_FILES, ".txt");
+    createFiles(dir, 10, ".csv");
+
+    MetricsActionContext context = new MetricsActionContext();
+    new FileDeleteAction(new FileDeleteAction.Conf(dir.getAbsolutePath(), ".*\\.txt", false, null, 8, null))
+      .run(context);
+
+    Assert.assertEquals(10, dir.list().length);
+    Assert.assertEquals(NUM_FILES, context.metrics.getCount(FileDeleteAction.DELETED_METRIC));
+  }
+
+  @Test
+  public void testRecursiveDelete() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    createFiles(new File(dir, "a"), 100, ".txt");
+    createFiles(new File(dir, "a/b"), 100, ".txt");
+    createFiles(new File(dir, "a/b"), 10, ".csv");
+
+    MetricsActionContext context = new MetricsActionContext();
+    new FileDeleteAction(new FileDeleteAction.Conf(dir.getAbsolutePath(), ".*\\.txt", false, true, 4, null))
+      .run(context);
+
+    Assert.assertEquals(1, new File(dir, "a").list().length);
+    Assert.assertEquals(10, new File(dir, "a/b").list().length);
+    Assert.assertEquals(200, context.metrics.getCount(FileDeleteAction.DELETED_METRIC));
+  }
+
+  @Test
+  public void testDeleteDirectory() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    createFiles(new File(dir, "a"), 100, ".txt");
+
+    new FileDeleteAction(new FileDeleteAction.Conf(dir.getAbsolutePath(), null, false, null, 4, true))
+      .run(new MetricsActionContext());
+    Assert.assertTrue(dir.exists());
+
+    new FileDeleteAction(new FileDeleteAction.Conf(dir.getAbsolutePath(), null, false, null, 4, null))
+      .run(new MetricsActionContext());
+    Assert.assertFalse(dir.exists());
+  }
+
+  @Test
+  public void testContinueOnError() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    createFiles(dir, NUM_FILES, ".txt");
+    List<ListedFile> files = ParallelFileOperation.list(FileSystem.getLocal(new Configuration()),
+                                                        new Path(dir.getAbsolutePath()), null, false);
+    Assert.assertEquals(NUM_FILES, files.size());
+
+    // fails on one in ten files
+    ParallelFileOperation.Operation operation = new ParallelFileOperation.Operation() {
+      @Override
+      public boolean apply(ListedFile file) throws IOException {
+        if (file.getRelativePath().endsWith("0.txt")) {
+          throw new IOException("Failed " + file);
+        }
+        return true;
+      }
+    };
+
+    MockStageMetrics metrics = new MockStageMetrics("action");
+    int succeeded = new ParallelFileOperation("test", 8, true, metrics, "files.succeeded").run(files, operation);
+    Assert.assertEquals(NUM_FILES - NUM_FILES / 10, succeeded);
+    Assert.assertEquals(succeeded, metrics.getCount("files.succeeded"));
+    Assert.assertEquals(NUM_FILES / 10, metrics.getCount(ParallelFileOperation.FAILED_METRIC));
+
+    try {
+      new ParallelFileOperation("test", 8, false, null, "files.succeeded").run(files, operation);
+      Assert.fail("Operation should fail if continueOnError is false");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private static void createFiles(File dir, int count, String extension) throws IOException {
+    Assert.assertTrue(dir.isDirectory() || dir.mkdirs());
+    for (int i = 0; i < count; i++) {
+      Assert.assertTrue(new File(dir, "file" + i + extension).createNewFile());
+    }
+  }
+
+  /**
+   * {@link MockActionContext} that returns {@link MockStageMetrics}.
+   */
+  private static class MetricsActionContext extends MockActionContext {
+    private final MockStageMetrics metrics = new MockStageMetrics("action");
+
+    @Override
+    public StageMetrics getMetrics() {
+      return metrics;
+    }
+  }
+}
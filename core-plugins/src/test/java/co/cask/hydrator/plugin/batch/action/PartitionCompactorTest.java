@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.action;
+
+import co.cask.cdap.api.data.batch.InputFormatProvider;
+import co.cask.cdap.api.data.batch.OutputFormatProvider;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link PartitionCompactor} and {@link TPFSCompactionAction}.
+ */
+public class PartitionCompactorTest {
+  private static final Schema SCHEMA = Schema.recordOf("line", Schema.Field.of("body", Schema.of(Schema.Type.STRING)));
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testCompact() throws Exception {
+    File partition = TEMP_FOLDER.newFolder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      StringBuilder lines = new StringBuilder();
+      for (int j = 0; j < 5; j++) {
+        String line = "line-" + i + "-" + j;
+        lines.append(line).append('\n');
+        expected.add(line);
+      }
+      Files.write(lines.toString(), new File(partition, "part-" + i), Charsets.UTF_8);
+    }
+    Files.write("", new File(partition, "_SUCCESS"), Charsets.UTF_8);
+    Files.write("checksum", new File(partition, ".part-0.crc"), Charsets.UTF_8);
+
+    // each file has 45 bytes, so the files are combined into groups of 4, 4 and 2 files
+    PartitionCompactor compactor = new PartitionCompactor(new Configuration(), new LineFormatProvider(),
+                                                          new LineFormatProvider(), 200L);
+    List<FileStatus> files = compactor.listFiles(new Path(partition.toURI()));
+    Assert.assertEquals(10, files.size());
+
+    Path output = new Path(new File(TEMP_FOLDER.getRoot(), "compacted").toURI());
+    Assert.assertEquals(50L, compactor.compact(files, output));
+
+    List<FileStatus> compacted = compactor.listFiles(output);
+    Assert.assertEquals(3, compacted.size());
+    List<String> actual = new ArrayList<>();
+    for (FileStatus file : compacted) {
+      actual.addAll(Files.readLines(new File(file.getPath().toUri()), Charsets.UTF_8));
+    }
+    Collections.sort(expected);
+    Collections.sort(actual);
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testCountMismatchRemovesOutput() throws Exception {
+    File partition = TEMP_FOLDER.newFolder();
+    Files.write("a\nb\nc\n", new File(partition, "part-0"), Charsets.UTF_8);
+    Files.write("d\n", new File(partition, "part-1"), Charsets.UTF_8);
+
+    // writing every record twice makes the compacted files contain more records than the original ones
+    Map<String, String> conf = ImmutableMap.of(LineOutputFormat.REPEAT, "2");
+    PartitionCompactor compactor = new PartitionCompactor(new Configuration(), new LineFormatProvider(),
+                                                          new LineFormatProvider(conf), 1024L);
+    Path output = new Path(new File(TEMP_FOLDER.getRoot(), "mismatch").toURI());
+    try {
+      compactor.compact(compactor.listFiles(new Path(partition.toURI())), output);
+      Assert.fail("Compaction should fail if the record counts differ.");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("8 records instead of 4"));
+    }
+    Assert.assertFalse(new File(output.toUri()).exists());
+  }
+
+  @Test
+  public void testCompactedPath() {
+    Assert.assertEquals("2018-01-01/10-00.1514800800000-compacted-5",
+                        TPFSCompactionAction.getCompactedPath("2018-01-01/10-00.1514800800000", 5L));
+    Assert.assertEquals("2018-01-01/10-00.1514800800000-compacted-9",
+                        TPFSCompactionAction.getCompactedPath("2018-01-01/10-00.1514800800000-compacted-5/", 9L));
+    Assert.assertEquals("a-compacted-1/b-compacted-2",
+                        TPFSCompactionAction.getCompactedPath("a-compacted-1/b", 2L));
+  }
+
+  /**
+   * Provides the line formats, which stand in for the format plugins.
+   */
+  private static final class LineFormatProvider implements InputFormatProvider, OutputFormatProvider {
+    private final Map<String, String> conf;
+
+    private LineFormatProvider() {
+      this(Collections.<String, String>emptyMap());
+    }
+
+    private LineFormatProvider(Map<String, String> conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public String getInputFormatClassName() {
+      return LineInputFormat.class.getName();
+    }
+
+    @Override
+    public Map<String, String> getInputFormatConfiguration() {
+      return conf;
+    }
+
+    @Override
+    public String getOutputFormatClassName() {
+      return LineOutputFormat.class.getName();
+    }
+
+    @Override
+    public Map<String, String> getOutputFormatConfiguration() {
+      return conf;
+    }
+  }
+
+  /**
+   * Reads each line of a file as a record.
+   */
+  public static final class LineInputFormat extends FileInputFormat<NullWritable, StructuredRecord> {
+    @Override
+    public RecordReader<NullWritable, StructuredRecord> createRecordReader(InputSplit split,
+                                                                           TaskAttemptContext context) {
+      LineRecordReader lineReader = new LineRecordReader();
+      return new RecordReader<NullWritable, StructuredRecord>() {
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+          lineReader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+          return lineReader.nextKeyValue();
+        }
+
+        @Override
+        public NullWritable getCurrentKey() {
+          return NullWritable.get();
+        }
+
+        @Override
+        public StructuredRecord getCurrentValue() {
+          return StructuredRecord.builder(SCHEMA).set("body", lineReader.getCurrentValue().toString()).build();
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+          return lineReader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+          lineReader.close();
+        }
+      };
+    }
+  }
+
+  /**
+   * Writes each record as a line, optionally repeating it.
+   */
+  public static final class LineOutputFormat extends FileOutputFormat<NullWritable, StructuredRecord> {
+    static final String REPEAT = "line.repeat";
+
+    @Override
+    public RecordWriter<NullWritable, StructuredRecord> getRecordWriter(TaskAttemptContext context)
+      throws IOException {
+      Path file = getDefaultWorkFile(context, ".txt");
+      FSDataOutputStream out = file.getFileSystem(context.getConfiguration()).create(file, false);
+      int repeat = context.getConfiguration().getInt(REPEAT, 1);
+      return new RecordWriter<NullWritable, StructuredRecord>() {
+        @Override
+        public void write(NullWritable key, StructuredRecord value) throws IOException {
+          for (int i = 0; i < repeat; i++) {
+            out.write((value.<String>get("body") + "\n").getBytes(Charsets.UTF_8));
+          }
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+          out.close();
+        }
+      };
+    }
+  }
+}
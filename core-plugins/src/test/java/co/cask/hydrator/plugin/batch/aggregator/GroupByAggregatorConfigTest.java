@@ -51,4 +51,23 @@ public class GroupByAggregatorConfigTest {
     );
     Assert.assertEquals(expected, config.getAggregates());
   }
+
+  @Test
+  public void testArguments() {
+    GroupByConfig config = new GroupByConfig("user", "visitors:approxCountDistinct( visitor , 12 ), " +
+      "pages:countDistinct(page), total:count(*), p95:percentile(latency, 0.95), topUrls:topK(url,10)");
+    List<GroupByConfig.FunctionInfo> expected = ImmutableList.of(
+      new GroupByConfig.FunctionInfo("visitors", "visitor", GroupByConfig.Function.APPROXCOUNTDISTINCT,
+                                     ImmutableList.of("12")),
+      new GroupByConfig.FunctionInfo("pages", "page", GroupByConfig.Function.COUNTDISTINCT),
+      new GroupByConfig.FunctionInfo("total", "*", GroupByConfig.Function.COUNT),
+      new GroupByConfig.FunctionInfo("p95", "latency", GroupByConfig.Function.PERCENTILE, ImmutableList.of("0.95")),
+      new GroupByConfig.FunctionInfo("topUrls", "url", GroupByConfig.Function.TOPK, ImmutableList.of("10")));
+    Assert.assertEquals(expected, config.getAggregates());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyArguments() {
+    new GroupByConfig("user", "total:sum(price, 2)").getAggregates();
+  }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CountDistinct} and {@link ApproxCountDistinct}.
+ */
+public class CountDistinctTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "test",
+    Schema.Field.of("x", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("b", Schema.nullableOf(Schema.of(Schema.Type.BYTES))));
+
+  @Test
+  public void testCountDistinct() {
+    CountDistinct countDistinct = new CountDistinct("x", SCHEMA.getField("x").getSchema(), 10);
+    countDistinct.beginFunction();
+    for (String value : new String[] { "a", "b", "a", null, "c", "b" }) {
+      countDistinct.operateOn(StructuredRecord.builder(SCHEMA).set("x", value).build());
+    }
+    Assert.assertEquals(3L, countDistinct.getAggregate().longValue());
+
+    countDistinct = new CountDistinct("b", SCHEMA.getField("b").getSchema(), 10);
+    countDistinct.beginFunction();
+    countDistinct.operateOn(StructuredRecord.builder(SCHEMA).set("b", new byte[] { 1, 2 }).build());
+    countDistinct.operateOn(StructuredRecord.builder(SCHEMA).set("b", new byte[] { 1, 2 }).build());
+    Assert.assertEquals(1L, countDistinct.getAggregate().longValue());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCountDistinctLimit() {
+    CountDistinct countDistinct = new CountDistinct("x", SCHEMA.getField("x").getSchema(), 2);
+    countDistinct.beginFunction();
+    for (String value : new String[] { "a", "b", "c" }) {
+      countDistinct.operateOn(StructuredRecord.builder(SCHEMA).set("x", value).build());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testComplexType() {
+    new CountDistinct("x", Schema.arrayOf(Schema.of(Schema.Type.INT)), 10);
+  }
+
+  @Test
+  public void testApproxCountDistinct() {
+    ApproxCountDistinct approx = new ApproxCountDistinct("x", SCHEMA.getField("x").getSchema(), 14);
+    for (int distinct : new int[] { 0, 10, 1000, 100000 }) {
+      approx.beginFunction();
+      for (int i = 0; i < distinct; i++) {
+        // every value is offered twice
+        approx.operateOn(StructuredRecord.builder(SCHEMA).set("x", "user" + i).build());
+        approx.operateOn(StructuredRecord.builder(SCHEMA).set("x", "user" + i).build());
+      }
+      // 4 times the standard error of 0.8%
+      Assert.assertEquals(distinct, approx.getAggregate(), Math.max(1d, distinct * 0.033d));
+    }
+  }
+
+  @Test
+  public void testMergeAndSerialize() {
+    HyperLogLog first = new HyperLogLog(12);
+    HyperLogLog second = new HyperLogLog(12);
+    HyperLogLog all = new HyperLogLog(12);
+    for (int i = 0; i < 20000; i++) {
+      (i % 2 == 0 ? first : second).offer(i);
+      all.offer(i);
+    }
+    // values offered to both sketches are counted once
+    for (int i = 0; i < 5000; i++) {
+      first.offer(i);
+    }
+    HyperLogLog merged = HyperLogLog.fromBytes(first.toBytes());
+    merged.merge(HyperLogLog.fromBytes(second.toBytes()));
+    Assert.assertEquals(all.cardinality(), merged.cardinality());
+    Assert.assertEquals(20000d, merged.cardinality(), 20000 * 0.065d);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link Percentile} and {@link TDigest}.
+ */
+public class PercentileTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "test", Schema.Field.of("x", Schema.nullableOf(Schema.of(Schema.Type.LONG))));
+
+  @Test
+  public void testPercentile() {
+    Percentile median = new Percentile("x", SCHEMA.getField("x").getSchema(), 0.5d);
+    Percentile p99 = new Percentile("x", SCHEMA.getField("x").getSchema(), 0.99d);
+    median.beginFunction();
+    p99.beginFunction();
+    Assert.assertNull(median.getAggregate());
+
+    // shuffled values from 1 to 100000
+    Random random = new Random(0);
+    long[] values = new long[100000];
+    for (int i = 0; i < values.length; i++) {
+      int j = random.nextInt(i + 1);
+      values[i] = values[j];
+      values[j] = i + 1;
+    }
+    for (long value : values) {
+      StructuredRecord record = StructuredRecord.builder(SCHEMA).set("x", value).build();
+      median.operateOn(record);
+      p99.operateOn(record);
+    }
+    median.operateOn(StructuredRecord.builder(SCHEMA).build());
+    Assert.assertEquals(50000d, median.getAggregate(), 500d);
+    Assert.assertEquals(99000d, p99.getAggregate(), 100d);
+  }
+
+  @Test
+  public void testMergeAndSerialize() {
+    TDigest first = new TDigest(TDigest.DEFAULT_COMPRESSION);
+    TDigest second = new TDigest(TDigest.DEFAULT_COMPRESSION);
+    for (int i = 0; i < 10000; i++) {
+      (i < 5000 ? first : second).add(i);
+    }
+    TDigest merged = TDigest.fromBytes(first.toBytes());
+    merged.merge(TDigest.fromBytes(second.toBytes()));
+    Assert.assertEquals(10000L, merged.count());
+    Assert.assertEquals(0d, merged.quantile(0d), 0d);
+    Assert.assertEquals(9999d, merged.quantile(1d), 0d);
+    Assert.assertEquals(9000d, merged.quantile(0.9d), 100d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPercentile() {
+    new Percentile("x", SCHEMA.getField("x").getSchema(), 95d);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link TopK} and {@link SpaceSaving}.
+ */
+public class TopKTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "test", Schema.Field.of("url", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  @Test
+  public void testTopK() {
+    TopK topK = new TopK("topUrls", "url", SCHEMA.getField("url").getSchema(), 2);
+    topK.beginFunction();
+    // a few frequent values among many values that occur once
+    for (int i = 0; i < 10000; i++) {
+      String url = i % 10 == 0 ? "/home" : i % 10 == 1 || i % 10 == 2 ? "/search" : "/item/" + i;
+      topK.operateOn(StructuredRecord.builder(SCHEMA).set("url", url).build());
+      topK.operateOn(StructuredRecord.builder(SCHEMA).build());
+    }
+    List<StructuredRecord> top = topK.getAggregate();
+    Assert.assertEquals(2, top.size());
+    Assert.assertEquals("/search", top.get(0).get("value"));
+    Assert.assertEquals("/home", top.get(1).get("value"));
+    // counts are upper bounds
+    Assert.assertTrue(top.get(0).<Long>get("count") >= 2000L);
+    Assert.assertTrue(top.get(1).<Long>get("count") >= 1000L);
+    Assert.assertEquals(topK.getOutputSchema(), Schema.arrayOf(top.get(0).getSchema()));
+  }
+
+  @Test
+  public void testSchemaNames() {
+    Schema urlSchema = SCHEMA.getField("url").getSchema();
+    Schema top2 = new TopK("top2", "url", urlSchema, 2).getOutputSchema().getComponentSchema();
+    Schema top10 = new TopK("top10", "url", urlSchema, 10).getOutputSchema().getComponentSchema();
+    // two topK aggregates of the same field must not define the same record with different schemas
+    Assert.assertNotEquals(top2.getRecordName(), top10.getRecordName());
+  }
+
+  @Test
+  public void testMerge() {
+    SpaceSaving<String> first = new SpaceSaving<>(3);
+    SpaceSaving<String> second = new SpaceSaving<>(3);
+    for (String value : ImmutableList.of("a", "a", "a", "b", "b", "c")) {
+      first.offer(value);
+    }
+    for (String value : ImmutableList.of("b", "b", "b", "d", "d", "a")) {
+      second.offer(value);
+    }
+    first.merge(second);
+    List<String> values = new ArrayList<>();
+    List<Long> counts = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : first.top(3)) {
+      values.add(entry.getKey());
+      counts.add(entry.getValue());
+    }
+    Assert.assertEquals(ImmutableList.of("b", "a"), values.subList(0, 2));
+    Assert.assertEquals(ImmutableList.of(5L, 4L), counts.subList(0, 2));
+  }
+
+  @Test
+  public void testCountBounds() {
+    SpaceSaving<Integer> summary = new SpaceSaving<>(10);
+    Map<Integer, Long> exact = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      // two frequent values, which stay in the summary while the others replace each other
+      double sample = random.nextDouble();
+      int value = sample < 0.3 ? 0 : sample < 0.5 ? 1 : 2 + random.nextInt(1000);
+      summary.offer(value);
+      Long count = exact.get(value);
+      exact.put(value, count == null ? 1L : count + 1);
+    }
+    List<Map.Entry<Integer, Long>> top = summary.top(10);
+    Assert.assertEquals(10, top.size());
+    long previous = Long.MAX_VALUE;
+    for (Map.Entry<Integer, Long> entry : top) {
+      long count = exact.get(entry.getKey());
+      Assert.assertTrue(entry.getValue() <= previous);
+      Assert.assertTrue(entry.getValue() >= count);
+      Assert.assertTrue(entry.getValue() - summary.getError(entry.getKey()) <= count);
+      previous = entry.getValue();
+    }
+    // the two most frequent values occur more than n / capacity times, so they must be kept
+    Assert.assertEquals(ImmutableSet.of(0, 1), ImmutableSet.of(top.get(0).getKey(), top.get(1).getKey()));
+  }
+}
@@ -22,8 +22,10 @@ import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
 import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.etl.api.Engine;
 import co.cask.cdap.etl.api.batch.BatchSink;
 import co.cask.cdap.etl.api.batch.BatchSource;
 import co.cask.cdap.etl.proto.v2.ETLBatchConfig;
@@ -39,7 +41,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -145,4 +149,104 @@ public class BatchCubeSinkTest extends ETLBatchTestBase {
     Assert.assertEquals(5, timeSeries.getTimeValues().get(0).getValue());
     Assert.assertFalse(iterator.hasNext());
   }
+
+  @Test
+  public void testBufferedFacts() throws Exception {
+    // a buffer of two distinct facts, which the 21 records written by the test fill ten times, leaving one fact
+    // for the end
+    Map<String, String> bufferProperties = ImmutableMap.of(Properties.Cube.BUFFER_SIZE, "2",
+                                                           Properties.Cube.BUFFER_FLUSH_INTERVAL, "3600");
+    testFacts("buffered", Engine.MAPREDUCE, bufferProperties);
+  }
+
+  @Test
+  public void testFactsOnSpark() throws Exception {
+    testFacts("spark", Engine.SPARK, ImmutableMap.<String, String>of());
+
+    // Spark never destroys the sink at the end of a partition, so the facts still buffered would be lost
+    ETLBatchConfig etlConfig = createFactsConfig("sparkBuffered", Engine.SPARK,
+                                                 ImmutableMap.of(Properties.Cube.BUFFER_SIZE, "2"));
+    try {
+      deployETL(etlConfig, "testSparkBufferedCubeAdapter");
+      Assert.fail("Expected buffering to be rejected with Spark.");
+    } catch (Exception e) {
+      // expected
+    }
+  }
+
+  private void testFacts(String name, Engine engine, Map<String, String> sinkProperties) throws Exception {
+    ApplicationManager appManager = deployETL(createFactsConfig(name, engine, sinkProperties),
+                                              name + "CubeAdapter");
+
+    DataSetManager<Table> inputManager = getDataset(name + "CubeInputTable");
+    Table inputTable = inputManager.get();
+    Map<String, Long> expected = new HashMap<>();
+    for (int i = 0; i < 21; i++) {
+      String user = "user" + (i % 7);
+      Put put = new Put(Bytes.toBytes("row" + i));
+      put.add("user", user);
+      put.add("count", i);
+      inputTable.put(put);
+      Long total = expected.get(user);
+      expected.put(user, (total == null ? 0L : total) + i);
+    }
+    inputManager.flush();
+
+    long startTs = System.currentTimeMillis() / 1000;
+    runETLOnce(appManager);
+    long endTs = System.currentTimeMillis() / 1000;
+
+    DataSetManager<Cube> cubeManager = getDataset(name + "_cube");
+    Collection<TimeSeries> result = cubeManager.get().query(
+      CubeQuery.builder()
+        .select().measurement("count", AggregationFunction.SUM)
+        .from("byUser").resolution(1, TimeUnit.SECONDS)
+        .where().timeRange(startTs, endTs)
+        .groupBy().dimension("user").limit(100).build());
+
+    Map<String, Long> actual = new HashMap<>();
+    for (TimeSeries timeSeries : result) {
+      long total = 0;
+      for (TimeValue timeValue : timeSeries.getTimeValues()) {
+        total += timeValue.getValue();
+      }
+      actual.put(timeSeries.getDimensionValues().get("user"), total);
+    }
+    Assert.assertEquals(expected, actual);
+  }
+
+  private ETLBatchConfig createFactsConfig(String name, Engine engine, Map<String, String> sinkProperties) {
+    Schema schema = Schema.recordOf(
+      "action",
+      Schema.Field.of("rowkey", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("count", Schema.of(Schema.Type.INT))
+    );
+
+    ETLPlugin sourceConfig = new ETLPlugin("Table",
+                                           BatchSource.PLUGIN_TYPE,
+                                           ImmutableMap.of(
+                                             Properties.BatchReadableWritable.NAME, name + "CubeInputTable",
+                                             Properties.Table.PROPERTY_SCHEMA_ROW_FIELD, "rowkey",
+                                             Properties.Table.PROPERTY_SCHEMA, schema.toString()),
+                                           null);
+    ETLStage source = new ETLStage("tableSource", sourceConfig);
+
+    ETLPlugin sinkConfig = new ETLPlugin("Cube",
+                                         BatchSink.PLUGIN_TYPE,
+                                         ImmutableMap.<String, String>builder()
+                                           .put(Properties.Cube.DATASET_NAME, name + "_cube")
+                                           .put(Properties.Cube.AGGREGATIONS, "byUser:user")
+                                           .put(Properties.Cube.MEASUREMENTS, "count:COUNTER")
+                                           .putAll(sinkProperties)
+                                           .build(),
+                                         null);
+    ETLStage sink = new ETLStage(name + "CubeSink", sinkConfig);
+    return ETLBatchConfig.builder("* * * * *")
+      .setEngine(engine)
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+  }
 }
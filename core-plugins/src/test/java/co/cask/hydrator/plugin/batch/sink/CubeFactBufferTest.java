@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.sink;
+
+import co.cask.cdap.api.dataset.lib.cube.CubeFact;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.Measurement;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link CubeFactBuffer}.
+ */
+public class CubeFactBufferTest {
+
+  @Test
+  public void testBucketSeconds() {
+    Assert.assertEquals(1L, CubeFactBuffer.getBucketSeconds(new int[] { 1, 60, 3600 }));
+    Assert.assertEquals(60L, CubeFactBuffer.getBucketSeconds(new int[] { 60, 3600, 86400 }));
+    Assert.assertEquals(30L, CubeFactBuffer.getBucketSeconds(new int[] { 90, 60 }));
+    Assert.assertEquals(1L, CubeFactBuffer.getBucketSeconds(new int[0]));
+  }
+
+  @Test
+  public void testMerge() {
+    CubeFactBuffer buffer = new CubeFactBuffer(60);
+    Assert.assertEquals(1, buffer.add(fact(120, "alice", 1, 10)));
+    Assert.assertEquals(1, buffer.add(fact(150, "alice", 2, 20)));
+    // different dimension value
+    Assert.assertEquals(2, buffer.add(fact(179, "bob", 4, 30)));
+    // different time bucket
+    Assert.assertEquals(3, buffer.add(fact(180, "alice", 8, 40)));
+    Assert.assertEquals(3, buffer.add(fact(130, "alice", 16, 50)));
+
+    List<CubeFact> facts = buffer.drain();
+    Assert.assertEquals(0, buffer.size());
+    Assert.assertEquals(3, facts.size());
+    assertFact(facts.get(0), 120, "alice", 19, 50);
+    assertFact(facts.get(1), 120, "bob", 4, 30);
+    assertFact(facts.get(2), 180, "alice", 8, 40);
+  }
+
+  private static CubeFact fact(long timestamp, String user, long count, long price) {
+    return new CubeFact(timestamp)
+      .addDimensionValue("user", user)
+      .addMeasurement("count", MeasureType.COUNTER, count)
+      .addMeasurement("price", MeasureType.GAUGE, price);
+  }
+
+  private static void assertFact(CubeFact fact, long timestamp, String user, long count, long price) {
+    Assert.assertEquals(timestamp, fact.getTimestamp());
+    Assert.assertEquals(ImmutableMap.of("user", user), fact.getDimensionValues());
+    Map<String, Measurement> measurements = new HashMap<>();
+    for (Measurement measurement : fact.getMeasurements()) {
+      measurements.put(measurement.getName(), measurement);
+    }
+    Assert.assertEquals(count, measurements.get("count").getValue());
+    Assert.assertEquals(MeasureType.COUNTER, measurements.get("count").getType());
+    Assert.assertEquals(price, measurements.get("price").getValue());
+    Assert.assertEquals(MeasureType.GAUGE, measurements.get("price").getType());
+  }
+}
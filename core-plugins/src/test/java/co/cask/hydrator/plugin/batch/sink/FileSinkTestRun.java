@@ -23,6 +23,8 @@ import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.metadata.MetadataEntity;
 import co.cask.cdap.api.metadata.MetadataScope;
 import co.cask.cdap.etl.api.batch.BatchSink;
+import co.cask.cdap.etl.api.batch.BatchSource;
+import co.cask.cdap.etl.mock.batch.MockSink;
 import co.cask.cdap.etl.mock.batch.MockSource;
 import co.cask.cdap.etl.proto.v2.ETLBatchConfig;
 import co.cask.cdap.etl.proto.v2.ETLPlugin;
@@ -35,6 +37,7 @@ import co.cask.cdap.test.DataSetManager;
 import co.cask.hydrator.format.FileFormat;
 import co.cask.hydrator.plugin.batch.ETLBatchTestBase;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.apache.avro.file.DataFileStream;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
@@ -54,8 +57,10 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import javax.annotation.Nullable;
 
@@ -160,6 +165,64 @@ public class FileSinkTestRun extends ETLBatchTestBase {
     validateDatasetSchema(FileFormat.PARQUET);
   }
 
+  @Test
+  public void testIndexedFiles() throws Exception {
+    File outputDir = new File(TEMP_FOLDER.newFolder("indexedFileSink"), "out");
+    // every run writes an indexed file to a directory named after its logical start time
+    writeIndexedFile("indexed-input-1", outputDir, 0, 1451606400000L);
+    writeIndexedFile("indexed-input-2", outputDir, 100, 1451610000000L);
+
+    Map<String, String> sourceProperties = new HashMap<>();
+    sourceProperties.put("referenceName", "indexedFileSource");
+    sourceProperties.put("path", outputDir.getAbsolutePath());
+    sourceProperties.put("format", "avro");
+    sourceProperties.put("schema", SCHEMA.toString());
+    sourceProperties.put("recursive", "true");
+    sourceProperties.put("indexFilter", "i >= 101");
+    String outputName = UUID.randomUUID().toString();
+    ETLBatchConfig conf = ETLBatchConfig.builder()
+      .addStage(new ETLStage("source", new ETLPlugin("File", BatchSource.PLUGIN_TYPE, sourceProperties)))
+      .addStage(new ETLStage("sink", MockSink.getPlugin(outputName)))
+      .addConnection("source", "sink")
+      .build();
+    ApplicationManager appManager = deployETL(conf, "IndexedFileSourceApp");
+    runETLOnce(appManager);
+
+    // the file of the first run is skipped, and the file of the second run is read without filtering its records
+    DataSetManager<Table> outputManager = getDataset(outputName);
+    Set<Integer> values = new HashSet<>();
+    for (StructuredRecord record : MockSink.readOutput(outputManager)) {
+      values.add(record.<Integer>get("i"));
+    }
+    Assert.assertEquals(ImmutableSet.of(100, 101, 102), values);
+  }
+
+  private void writeIndexedFile(String inputName, File outputDir, int start, long logicalStartTime) throws Exception {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("path", outputDir.getAbsolutePath());
+    properties.put("referenceName", "indexedFileSink");
+    properties.put("format", "avro");
+    properties.put("schema", SCHEMA.toString());
+    properties.put("suffix", "yyyy-MM-dd-HH-mm");
+    properties.put("writeIndex", "true");
+    properties.put("bloomFilterFields", "s");
+
+    ETLBatchConfig conf = ETLBatchConfig.builder()
+      .addStage(new ETLStage("source", MockSource.getPlugin(inputName, SCHEMA)))
+      .addStage(new ETLStage("sink", new ETLPlugin("File", BatchSink.PLUGIN_TYPE, properties)))
+      .addConnection("source", "sink")
+      .build();
+    ApplicationManager appManager = deployETL(conf, "IndexedFileSinkApp" + start);
+
+    DataSetManager<Table> inputManager = getDataset(inputName);
+    List<StructuredRecord> input = new ArrayList<>();
+    for (int i = start; i < start + 3; i++) {
+      input.add(StructuredRecord.builder(SCHEMA).set("i", i).set("s", "s" + i).build());
+    }
+    MockSource.writeInput(inputManager, input);
+    runETLOnce(appManager, ImmutableMap.of("logical.start.time", String.valueOf(logicalStartTime)));
+  }
+
   private void runPipeline(FileFormat format, FileConsumer fileConsumer) throws Exception {
     runPipeline(format, null, fileConsumer);
   }
@@ -132,4 +132,20 @@ public class KVTableSinkTest {
     MockPipelineConfigurer mockPipelineConfigurer = new MockPipelineConfigurer(inputSchema);
     kvTableSink.configurePipeline(mockPipelineConfigurer);
   }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTableSinkWithInvalidConflictDetection() {
+    Schema inputSchema = Schema.recordOf(
+      "purchase",
+      Schema.Field.of("rowKey", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("user", Schema.of(Schema.Type.STRING))
+    );
+
+    KVTableSink.KVTableConfig kvTableConfig =
+      new KVTableSink.KVTableConfig("purchases", "rowKey", "user", "TABLE");
+    KVTableSink kvTableSink = new KVTableSink(kvTableConfig);
+
+    MockPipelineConfigurer mockPipelineConfigurer = new MockPipelineConfigurer(inputSchema);
+    kvTableSink.configurePipeline(mockPipelineConfigurer);
+  }
 }
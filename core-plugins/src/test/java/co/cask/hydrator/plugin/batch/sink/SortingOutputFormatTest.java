@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.sink;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.lib.FileSetProperties;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Tests for {@link SortingOutputFormat}.
+ */
+public class SortingOutputFormatTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "event",
+    Schema.Field.of("customer", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("ts", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("payload", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("counts", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))),
+    Schema.Field.of("score", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))));
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testSortWithSpills() throws Exception {
+    List<StructuredRecord> records = createRecords(500);
+    // a buffer of 64 records spills 7 times before the remaining records are merged with the spills
+    Map<String, File> files = write(records, ImmutableList.of("customer", "ts"), ImmutableList.<String>of(), 1, 64);
+    Assert.assertEquals(1, files.size());
+
+    List<String> lines = Files.readLines(Iterables.getOnlyElement(files.values()), Charsets.UTF_8);
+    assertSorted(records, ImmutableList.of("customer", "ts"), lines);
+  }
+
+  @Test
+  public void testMultiPassMerge() throws Exception {
+    List<StructuredRecord> records = createRecords(500);
+    // a buffer of 16 records spills 32 times, which takes several passes to merge 3 spills at a time
+    Map<String, File> files = write(records, ImmutableList.of("ts"), ImmutableList.of("customer"), 2, 16, 3);
+    Assert.assertEquals(2, files.size());
+
+    SortingOutputFormat.RecordComparator comparator =
+      new SortingOutputFormat.RecordComparator(ImmutableList.of("ts"), ImmutableList.of("customer"), 2);
+    for (int bucket = 0; bucket < 2; bucket++) {
+      List<StructuredRecord> bucketRecords = new ArrayList<>();
+      for (StructuredRecord record : records) {
+        if (comparator.getBucket(record) == bucket) {
+          bucketRecords.add(record);
+        }
+      }
+      File file = files.get(String.format("part-b%05d-m-00000", bucket));
+      Assert.assertNotNull(file);
+      assertSorted(bucketRecords, ImmutableList.of("ts"), Files.readLines(file, Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testBuckets() throws Exception {
+    List<StructuredRecord> records = createRecords(300);
+    Map<String, File> files = write(records, ImmutableList.of("ts"), ImmutableList.of("customer"), 4, 50);
+    Assert.assertEquals(4, files.size());
+
+    SortingOutputFormat.RecordComparator comparator =
+      new SortingOutputFormat.RecordComparator(ImmutableList.of("ts"), ImmutableList.of("customer"), 4);
+    Map<Integer, List<StructuredRecord>> buckets = new TreeMap<>();
+    for (StructuredRecord record : records) {
+      int bucket = comparator.getBucket(record);
+      if (!buckets.containsKey(bucket)) {
+        buckets.put(bucket, new ArrayList<StructuredRecord>());
+      }
+      buckets.get(bucket).add(record);
+    }
+    for (Map.Entry<Integer, List<StructuredRecord>> bucket : buckets.entrySet()) {
+      File file = files.get(String.format("part-b%05d-m-00000", bucket.getKey()));
+      Assert.assertNotNull(file);
+      assertSorted(bucket.getValue(), ImmutableList.of("ts"), Files.readLines(file, Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testConfigure() {
+    Map<String, String> arguments = new HashMap<>();
+    arguments.put(FileSetProperties.OUTPUT_FORMAT, "org.example.OutputFormat");
+    SortingOutputFormat.configure(arguments, ImmutableList.of("a", "b"), ImmutableList.of("c"), 8, 1000);
+    Assert.assertEquals(ImmutableMap.<String, String>builder()
+                          .put(FileSetProperties.OUTPUT_FORMAT, SortingOutputFormat.class.getName())
+                          .put("output.properties." + SortingOutputFormat.DELEGATE, "org.example.OutputFormat")
+                          .put("output.properties." + SortingOutputFormat.SORT_FIELDS, "a,b")
+                          .put("output.properties." + SortingOutputFormat.BUCKET_FIELDS, "c")
+                          .put("output.properties." + SortingOutputFormat.NUM_BUCKETS, "8")
+                          .put("output.properties." + SortingOutputFormat.BUFFER_SIZE, "1000")
+                          .build(), arguments);
+  }
+
+  private List<StructuredRecord> createRecords(int count) {
+    Random random = new Random(0);
+    List<StructuredRecord> records = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int customer = random.nextInt(20);
+      records.add(StructuredRecord.builder(SCHEMA)
+                    .set("customer", customer == 0 ? null : "customer-" + customer)
+                    .set("ts", (long) random.nextInt(1000))
+                    .set("payload", i % 3 == 0 ? null : ByteBuffer.wrap(new byte[] { (byte) i, 1, 2 }))
+                    .set("tags", ImmutableList.of("t" + i, "x"))
+                    .set("counts", ImmutableMap.of("c", i))
+                    .set("score", i % 5 == 0 ? null : i / 7.0d)
+                    .build());
+    }
+    return records;
+  }
+
+  /**
+   * Asserts that the lines are the given records, sorted by the given fields. Records with the same values for those
+   * fields may be in any order.
+   */
+  private void assertSorted(List<StructuredRecord> records, List<String> sortFields, List<String> lines) {
+    List<StructuredRecord> sorted = new ArrayList<>(records);
+    Collections.sort(sorted, new SortingOutputFormat.RecordComparator(sortFields, ImmutableList.<String>of(), 1));
+    List<String> expectedKeys = new ArrayList<>();
+    List<String> expectedLines = new ArrayList<>();
+    for (StructuredRecord record : sorted) {
+      expectedKeys.add(toKey(record, sortFields));
+      expectedLines.add(LineOutputFormat.toLine(record));
+    }
+
+    Map<String, StructuredRecord> recordsByLine = new HashMap<>();
+    for (StructuredRecord record : records) {
+      recordsByLine.put(LineOutputFormat.toLine(record), record);
+    }
+    List<String> actualKeys = new ArrayList<>();
+    for (String line : lines) {
+      actualKeys.add(toKey(recordsByLine.get(line), sortFields));
+    }
+    Assert.assertEquals(expectedKeys, actualKeys);
+
+    List<String> actualLines = new ArrayList<>(lines);
+    Collections.sort(expectedLines);
+    Collections.sort(actualLines);
+    Assert.assertEquals(expectedLines, actualLines);
+  }
+
+  private String toKey(StructuredRecord record, List<String> fields) {
+    StringBuilder key = new StringBuilder();
+    for (String field : fields) {
+      key.append(record.<Object>get(field)).append(',');
+    }
+    return key.toString();
+  }
+
+  /**
+   * Writes the records through a single task and returns the committed files by name.
+   */
+  private Map<String, File> write(List<StructuredRecord> records, List<String> sortFields,
+                                  List<String> bucketFields, int numBuckets, int bufferSize) throws Exception {
+    return write(records, sortFields, bucketFields, numBuckets, bufferSize, SortingOutputFormat.DEFAULT_MERGE_FACTOR);
+  }
+
+  private Map<String, File> write(List<StructuredRecord> records, List<String> sortFields, List<String> bucketFields,
+                                  int numBuckets, int bufferSize, int mergeFactor) throws Exception {
+    File outputDir = new File(tempFolder.getRoot(), "output");
+    Map<String, String> arguments = new HashMap<>();
+    arguments.put(FileSetProperties.OUTPUT_FORMAT, LineOutputFormat.class.getName());
+    SortingOutputFormat.configure(arguments, sortFields, bucketFields, numBuckets, bufferSize);
+    Configuration conf = new Configuration();
+    for (Map.Entry<String, String> argument : arguments.entrySet()) {
+      String key = argument.getKey();
+      if (key.startsWith(FileSetProperties.OUTPUT_PROPERTIES_PREFIX)) {
+        conf.set(key.substring(FileSetProperties.OUTPUT_PROPERTIES_PREFIX.length()), argument.getValue());
+      }
+    }
+    conf.setInt(SortingOutputFormat.MERGE_FACTOR, mergeFactor);
+    conf.set(FileOutputFormat.OUTDIR, outputDir.toURI().toString());
+
+    JobID jobId = new JobID("sort", 0);
+    JobContext jobContext = new JobContextImpl(conf, jobId);
+    TaskAttemptContext taskContext =
+      new TaskAttemptContextImpl(conf, new TaskAttemptID(jobId.getJtIdentifier(), jobId.getId(), TaskType.MAP, 0, 0));
+    SortingOutputFormat outputFormat = new SortingOutputFormat();
+    OutputCommitter committer = outputFormat.getOutputCommitter(taskContext);
+    committer.setupJob(jobContext);
+    committer.setupTask(taskContext);
+    RecordWriter<NullWritable, StructuredRecord> writer = outputFormat.getRecordWriter(taskContext);
+    for (StructuredRecord record : records) {
+      writer.write(NullWritable.get(), record);
+    }
+    writer.close(taskContext);
+    committer.commitTask(taskContext);
+    committer.commitJob(jobContext);
+
+    Map<String, File> files = new HashMap<>();
+    for (File file : outputDir.listFiles()) {
+      if (!file.getName().startsWith("_") && !file.getName().startsWith(".")) {
+        files.put(file.getName(), file);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Writes each record as a line with the values of all its fields.
+   */
+  public static final class LineOutputFormat extends FileOutputFormat<NullWritable, StructuredRecord> {
+
+    static String toLine(StructuredRecord record) {
+      ByteBuffer payload = record.get("payload");
+      return record.get("customer") + "," + record.get("ts") + "," +
+        (payload == null ? null : payload.duplicate().get()) + "," + record.get("tags") + "," +
+        record.get("counts") + "," + record.get("score");
+    }
+
+    @Override
+    public RecordWriter<NullWritable, StructuredRecord> getRecordWriter(TaskAttemptContext context)
+      throws IOException {
+      Path file = getDefaultWorkFile(context, "");
+      FSDataOutputStream out = file.getFileSystem(context.getConfiguration()).create(file, false);
+      return new RecordWriter<NullWritable, StructuredRecord>() {
+        @Override
+        public void write(NullWritable key, StructuredRecord value) throws IOException {
+          out.write((toLine(value) + "\n").getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+          out.close();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link CombinedPartitionInputFormat}.
+ */
+public class CombinedPartitionInputFormatTest {
+  private static final Schema SCHEMA = Schema.recordOf("line", Schema.Field.of("body", Schema.of(Schema.Type.STRING)));
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testCombine() throws Exception {
+    List<String> partitions = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      // every partition has 2 files of 4 bytes
+      partitions.add(writePartition("p" + i + "a", "p" + i + "b"));
+      expected.add("p" + i + "a");
+      expected.add("p" + i + "b");
+    }
+    // a dropped partition is skipped
+    partitions.add(new File(TEMP_FOLDER.getRoot(), "dropped").toURI().toString());
+
+    List<InputSplit> splits = getSplits(partitions, 20L);
+    Assert.assertEquals(4, splits.size());
+    Assert.assertEquals(ImmutableList.of(20L, 20L, 20L, 20L), getLengths(splits));
+    Assert.assertEquals(expected, read(partitions, 20L));
+
+    // without a maximum size, every split is read by itself
+    Assert.assertEquals(20, getSplits(partitions, 0L).size());
+    Assert.assertEquals(expected, read(partitions, 0L));
+  }
+
+  @Test
+  public void testLargeSplitsAreNotCombined() throws Exception {
+    List<String> partitions = ImmutableList.of(writePartition("aaaaaaaaa"), writePartition("b"), writePartition("c"));
+    Assert.assertEquals(ImmutableList.of(10L, 4L), getLengths(getSplits(partitions, 5L)));
+  }
+
+  @Test
+  public void testSplitSerialization() throws Exception {
+    Configuration conf = new Configuration();
+    List<InputSplit> fileSplits = ImmutableList.<InputSplit>of(
+      new FileSplit(new Path("/tmp/part-0"), 0, 20, new String[] { "host1" }),
+      new FileSplit(new Path("/tmp/part-1"), 10, 30, new String[] { "host1", "host2" }));
+    CombinedPartitionInputFormat.CombinedSplit split = new CombinedPartitionInputFormat.CombinedSplit(fileSplits, conf);
+    Assert.assertArrayEquals(new String[] { "host1", "host2" }, split.getLocations());
+    DataOutputBuffer out = new DataOutputBuffer();
+    split.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    CombinedPartitionInputFormat.CombinedSplit copy = new CombinedPartitionInputFormat.CombinedSplit();
+    copy.setConf(conf);
+    copy.readFields(in);
+    Assert.assertEquals(50L, copy.getLength());
+
+    // Spark serializes splits with Java serialization, whose streams are not DataOutputStream or DataInputStream
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+      split.write(objectOut);
+    }
+    copy = new CombinedPartitionInputFormat.CombinedSplit();
+    copy.setConf(conf);
+    try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy.readFields(objectIn);
+    }
+    Assert.assertEquals(50L, copy.getLength());
+  }
+
+  private String writePartition(String... lines) throws IOException {
+    File dir = TEMP_FOLDER.newFolder();
+    for (int i = 0; i < lines.length; i++) {
+      Files.write(lines[i] + "\n", new File(dir, "part-" + i), Charsets.UTF_8);
+    }
+    return dir.toURI().toString();
+  }
+
+  private Configuration createConf(List<String> partitions, long maxSplitSize) {
+    Configuration conf = new Configuration();
+    CombinedPartitionInputFormat.configure(conf, LineInputFormat.class.getName(), partitions, maxSplitSize);
+    return conf;
+  }
+
+  private List<InputSplit> getSplits(List<String> partitions, long maxSplitSize) throws Exception {
+    Configuration conf = createConf(partitions, maxSplitSize);
+    return new CombinedPartitionInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+  }
+
+  private List<Long> getLengths(List<InputSplit> splits) throws Exception {
+    List<Long> lengths = new ArrayList<>();
+    for (InputSplit split : splits) {
+      lengths.add(split.getLength());
+    }
+    return lengths;
+  }
+
+  private List<String> read(List<String> partitions, long maxSplitSize) throws Exception {
+    Configuration conf = createConf(partitions, maxSplitSize);
+    CombinedPartitionInputFormat inputFormat = new CombinedPartitionInputFormat();
+    List<String> values = new ArrayList<>();
+    for (InputSplit split : inputFormat.getSplits(new JobContextImpl(conf, new JobID()))) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+      try (RecordReader<NullWritable, StructuredRecord> reader = inputFormat.createRecordReader(split, context)) {
+        reader.initialize(split, context);
+        while (reader.nextKeyValue()) {
+          values.add(reader.getCurrentValue().<String>get("body"));
+        }
+        Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+      }
+    }
+    Collections.sort(values);
+    return values;
+  }
+
+  /**
+   * Reads each line of a file as a record.
+   */
+  public static final class LineInputFormat extends FileInputFormat<NullWritable, StructuredRecord> {
+    @Override
+    public RecordReader<NullWritable, StructuredRecord> createRecordReader(InputSplit split,
+                                                                           TaskAttemptContext context) {
+      LineRecordReader lineReader = new LineRecordReader();
+      return new RecordReader<NullWritable, StructuredRecord>() {
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+          lineReader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+          return lineReader.nextKeyValue();
+        }
+
+        @Override
+        public NullWritable getCurrentKey() {
+          return NullWritable.get();
+        }
+
+        @Override
+        public StructuredRecord getCurrentValue() {
+          return StructuredRecord.builder(SCHEMA).set("body", lineReader.getCurrentValue().toString()).build();
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+          return lineReader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+          lineReader.close();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Tests for the {@link ExcelInputFormat.ExcelRecordReader}.
+ */
+public class ExcelInputFormatTest {
+  private static final int NUM_ROWS = 2000;
+  private static final int SHARED_STRINGS_MEMORY_LIMIT = 100;
+
+  @ClassRule
+  public static TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testSharedStringsSpill() throws Exception {
+    File file = createWorkbook();
+    Configuration conf = createConfiguration();
+    conf.setBoolean(ExcelInputFormat.SKIP_FIRST_ROW, true);
+
+    ExcelInputFormat.ExcelRecordReader reader = createReader(file, conf);
+    try {
+      int rows = 0;
+      while (reader.nextKeyValue()) {
+        rows++;
+        ExcelRow row = reader.getCurrentValue();
+        Assert.assertEquals(rows, reader.getCurrentKey().get());
+        Assert.assertEquals(rows, row.getRowNumber());
+        Assert.assertEquals("Sheet1", row.getSheet());
+        Assert.assertEquals("name-" + rows, row.getValue(0));
+        Assert.assertEquals(String.valueOf((double) rows), row.getValue(1));
+        // strings shared with earlier rows are read back from the spilled part of the table
+        Assert.assertEquals("name-" + (rows * 7 % NUM_ROWS + 1), row.getValue(2));
+        Assert.assertNull(row.getValue(3));
+      }
+      // more rows than shared strings kept in memory are read
+      Assert.assertEquals(NUM_ROWS, rows);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testRowsLimit() throws Exception {
+    File file = createWorkbook();
+    Configuration conf = createConfiguration();
+    conf.setInt(ExcelInputFormat.ROWS_LIMIT, 10);
+
+    ExcelInputFormat.ExcelRecordReader reader = createReader(file, conf);
+    try {
+      Assert.assertTrue(reader.nextKeyValue());
+      Assert.assertEquals("name", reader.getCurrentValue().getValue(0));
+      int rows = 1;
+      while (reader.nextKeyValue()) {
+        Assert.assertEquals("name-" + rows, reader.getCurrentValue().getValue(0));
+        rows++;
+      }
+      Assert.assertEquals(10, rows);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static Configuration createConfiguration() {
+    Configuration conf = new Configuration();
+    conf.set(ExcelInputFormat.SHEET, ExcelInputFormat.SHEET_NAME);
+    conf.set(ExcelInputFormat.SHEET_VALUE, "Sheet1");
+    conf.setInt(ExcelInputFormat.SHARED_STRINGS_MEMORY_LIMIT, SHARED_STRINGS_MEMORY_LIMIT);
+    return conf;
+  }
+
+  private static ExcelInputFormat.ExcelRecordReader createReader(File file, Configuration conf) throws Exception {
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    ExcelInputFormat.ExcelRecordReader reader = new ExcelInputFormat.ExcelRecordReader();
+    reader.initialize(new FileSplit(new Path(file.toURI()), 0, file.length(), null), context);
+    return reader;
+  }
+
+  /**
+   * Creates a workbook with a header row and a distinct string in each row, so that the shared strings table has
+   * more strings than are kept in memory.
+   */
+  private static File createWorkbook() throws Exception {
+    File file = temporaryFolder.newFile();
+    XSSFWorkbook workbook = new XSSFWorkbook();
+    Sheet sheet = workbook.createSheet("Sheet1");
+    Row header = sheet.createRow(0);
+    header.createCell(0).setCellValue("name");
+    header.createCell(1).setCellValue("count");
+    header.createCell(2).setCellValue("other");
+    for (int i = 1; i <= NUM_ROWS; i++) {
+      Row row = sheet.createRow(i);
+      row.createCell(0).setCellValue("name-" + i);
+      row.createCell(1).setCellValue(i);
+      row.createCell(2).setCellValue("name-" + (i * 7 % NUM_ROWS + 1));
+    }
+    try (OutputStream out = new FileOutputStream(file)) {
+      workbook.write(out);
+    }
+    return file;
+  }
+}
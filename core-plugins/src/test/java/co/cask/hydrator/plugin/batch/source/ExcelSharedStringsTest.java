@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests for {@link ExcelSharedStrings}.
+ */
+public class ExcelSharedStringsTest {
+
+  @Test
+  public void testSpill() throws IOException {
+    int numStrings = 5000;
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+      .append("<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+    for (int i = 0; i < numStrings; i++) {
+      if (i % 3 == 0) {
+        // rich text with a phonetic run, which is not part of the value
+        xml.append("<si><r><t>str</t></r><r><t>ing-").append(i).append("</t></r>")
+          .append("<rPh sb=\"0\" eb=\"1\"><t>ignored</t></rPh></si>");
+      } else {
+        xml.append("<si><t>string-").append(i).append(" \u00e9</t></si>");
+      }
+    }
+    xml.append("</sst>");
+
+    try (ExcelSharedStrings sharedStrings = new ExcelSharedStrings(100)) {
+      sharedStrings.read(new ByteArrayInputStream(xml.toString().getBytes(Charsets.UTF_8)));
+      for (int i = 0; i < numStrings; i++) {
+        Assert.assertEquals(expected(i), sharedStrings.get(i));
+      }
+      // random access to the spilled strings goes beyond the size of the cache
+      Random random = new Random(0);
+      for (int i = 0; i < 10000; i++) {
+        int index = random.nextInt(numStrings);
+        Assert.assertEquals(expected(index), sharedStrings.get(index));
+      }
+      try {
+        sharedStrings.get(numStrings);
+        Assert.fail("Expected an invalid index to be rejected.");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testNoSpill() throws IOException {
+    String xml = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" +
+      "<si><t>a</t></si><si><t xml:space=\"preserve\"> b </t></si></sst>";
+    try (ExcelSharedStrings sharedStrings = new ExcelSharedStrings(Integer.MAX_VALUE)) {
+      sharedStrings.read(new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8)));
+      Assert.assertEquals("a", sharedStrings.get(0));
+      Assert.assertEquals(" b ", sharedStrings.get(1));
+    }
+  }
+
+  private static String expected(int index) {
+    return index % 3 == 0 ? "string-" + index : "string-" + index + " \u00e9";
+  }
+}
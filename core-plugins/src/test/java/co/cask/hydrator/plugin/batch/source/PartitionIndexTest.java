@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import co.cask.cdap.api.dataset.lib.PartitionConsumerResult;
+import co.cask.cdap.api.dataset.lib.PartitionConsumerState;
+import co.cask.cdap.api.dataset.lib.PartitionDetail;
+import co.cask.cdap.api.dataset.lib.TimePartitionDetail;
+import co.cask.cdap.api.dataset.lib.TimePartitionedFileSet;
+import com.google.common.collect.ImmutableList;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link PartitionIndex}.
+ */
+public class PartitionIndexTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  // the partitions in the order they were added, which is the version of the partition consumer state
+  private final List<PartitionDetail> added = new ArrayList<>();
+
+  @Test
+  public void testIncrementalUpdate() throws Exception {
+    Location dir = new LocalLocationFactory(tempFolder.newFolder()).create("tpfs");
+    TimePartitionedFileSet tpfs = createFileSet();
+    addPartition(1000L, "a");
+    addPartition(2000L, "b");
+    addPartition(3000L, "c");
+
+    PartitionIndex index = PartitionIndex.load(dir, "index");
+    Assert.assertEquals(3, index.update(tpfs));
+    Assert.assertEquals(ImmutableList.of("b", "c"), new ArrayList<>(index.getPartitions(2000L, 4000L).values()));
+    index.save(dir, "index");
+
+    // a late partition and a partition that replaces an existing one are both picked up
+    addPartition(1500L, "late");
+    addPartition(2000L, "b-compacted");
+    index = PartitionIndex.load(dir, "index");
+    Assert.assertEquals(2, index.update(tpfs));
+    Assert.assertEquals(ImmutableList.of("a", "late", "b-compacted", "c"),
+                        new ArrayList<>(index.getPartitions(0L, 4000L).values()));
+    Assert.assertEquals(0, index.update(tpfs));
+  }
+
+  @Test
+  public void testPrune() throws Exception {
+    TimePartitionedFileSet tpfs = createFileSet();
+    addPartition(1000L, "a");
+    addPartition(2000L, "b");
+
+    PartitionIndex index = PartitionIndex.load(new LocalLocationFactory(tempFolder.newFolder()).create("tpfs"),
+                                               "index");
+    Assert.assertTrue(index.covers(0L));
+    index.update(tpfs);
+    index.prune(1500L);
+    Assert.assertEquals(ImmutableList.of("b"), new ArrayList<>(index.getPartitions(0L, 4000L).values()));
+    Assert.assertTrue(index.covers(1500L));
+    Assert.assertFalse(index.covers(1000L));
+
+    // partitions added before the pruned time are not indexed anymore
+    addPartition(1200L, "late");
+    index.update(tpfs);
+    Assert.assertEquals(ImmutableList.of("b"), new ArrayList<>(index.getPartitions(0L, 4000L).values()));
+  }
+
+  @Test
+  public void testUnreadableIndex() throws Exception {
+    Location dir = new LocalLocationFactory(tempFolder.newFolder()).create("tpfs");
+    dir.append("index").getOutputStream().close();
+    Assert.assertTrue(PartitionIndex.load(dir, "index").getPartitions(0L, Long.MAX_VALUE).isEmpty());
+  }
+
+  private void addPartition(long time, String relativePath) {
+    added.add((TimePartitionDetail) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class[] { TimePartitionDetail.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getTime":
+            return time;
+          case "getRelativePath":
+            return relativePath;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      }));
+  }
+
+  private TimePartitionedFileSet createFileSet() {
+    return (TimePartitionedFileSet) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class[] { TimePartitionedFileSet.class }, (proxy, method, args) -> {
+        if ("consumePartitions".equals(method.getName()) && args.length == 1) {
+          int start = (int) ((PartitionConsumerState) args[0]).getStartVersion();
+          return new PartitionConsumerResult(
+            new PartitionConsumerState(added.size(), Collections.<Long>emptyList()),
+            new ArrayList<>(added.subList(start, added.size())));
+        }
+        throw new UnsupportedOperationException(method.getName());
+      });
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.dataset;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link DeltaSnapshotInputFormat}.
+ */
+public class DeltaSnapshotInputFormatTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "user",
+    Schema.Field.of("id", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("deleted", Schema.of(Schema.Type.BOOLEAN)));
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testMerge() throws Exception {
+    Map<Long, String> partitions = new LinkedHashMap<>();
+    partitions.put(1000L, writePartition("1,alice,false", "2,bob,false", "3,carol,false", "4,dave,false"));
+    partitions.put(2000L, writePartition("2,bobby,false", "3,carol,true", "5,erin,false"));
+    partitions.put(3000L, writePartition("2,robert,false", "5,erin,true", "3,caroline,false"));
+
+    Assert.assertEquals(ImmutableList.of("1:alice", "4:dave", "2:robert", "3:caroline"),
+                        read(partitions, ImmutableList.of("id"), "deleted"));
+  }
+
+  @Test
+  public void testDeltasAreReadOnce() throws Exception {
+    Map<Long, String> partitions = new LinkedHashMap<>();
+    partitions.put(1000L, writePartition("1,alice,false", "2,bob,false", "3,carol,false"));
+    partitions.put(2000L, writePartition("2,bobby,false", "3,carol,true"));
+    Configuration conf = createConf(partitions, ImmutableList.of("id"), "deleted");
+    DeltaSnapshotInputFormat inputFormat = new DeltaSnapshotInputFormat();
+    List<InputSplit> splits = inputFormat.getSplits(new JobContextImpl(conf, new JobID()));
+    File index = new File(new File(URI.create(conf.get(DeltaSnapshotInputFormat.INDEX_DIR))), "1000-2000");
+    Assert.assertTrue(index.isFile());
+
+    // the readers of the base only use the index, not the delta
+    File delta = new File(URI.create(partitions.get(2000L)));
+    for (File file : delta.listFiles()) {
+      Assert.assertTrue(file.delete());
+    }
+    List<String> values = new ArrayList<>();
+    for (InputSplit split : splits) {
+      if (((DeltaSnapshotInputFormat.SnapshotSplit) split).getSnapshotTime() == 1000L) {
+        values.addAll(read(inputFormat, split, conf));
+      }
+    }
+    Assert.assertEquals(ImmutableList.of("1:alice"), values);
+
+    // the index is kept for later runs
+    long modified = index.lastModified();
+    inputFormat.getSplits(new JobContextImpl(conf, new JobID()));
+    Assert.assertEquals(modified, index.lastModified());
+  }
+
+  @Test
+  public void testBaseOnly() throws Exception {
+    Map<Long, String> partitions = new LinkedHashMap<>();
+    partitions.put(1000L, writePartition("1,alice,false", "2,bob,true"));
+
+    Assert.assertEquals(ImmutableList.of("1:alice"), read(partitions, ImmutableList.of("id"), "deleted"));
+    Assert.assertEquals(ImmutableList.of("1:alice", "2:bob"), read(partitions, ImmutableList.of("id", "name"), null));
+  }
+
+  @Test
+  public void testSplitSerialization() throws Exception {
+    Configuration conf = new Configuration();
+    FileSplit fileSplit = new FileSplit(new Path("/tmp/part-0"), 10, 20, new String[0]);
+    DeltaSnapshotInputFormat.SnapshotSplit split = new DeltaSnapshotInputFormat.SnapshotSplit(5L, fileSplit, conf);
+    DataOutputBuffer out = new DataOutputBuffer();
+    split.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    DeltaSnapshotInputFormat.SnapshotSplit copy = new DeltaSnapshotInputFormat.SnapshotSplit();
+    copy.setConf(conf);
+    copy.readFields(in);
+    Assert.assertEquals(20L, copy.getLength());
+
+    // Spark serializes splits with Java serialization, whose streams are not DataOutputStream or DataInputStream
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+      split.write(objectOut);
+    }
+    copy = new DeltaSnapshotInputFormat.SnapshotSplit();
+    copy.setConf(conf);
+    try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy.readFields(objectIn);
+    }
+    Assert.assertEquals(20L, copy.getLength());
+  }
+
+  private List<String> read(Map<Long, String> partitions, List<String> keyFields,
+                            String deleteField) throws Exception {
+    Configuration conf = createConf(partitions, keyFields, deleteField);
+    DeltaSnapshotInputFormat inputFormat = new DeltaSnapshotInputFormat();
+    JobContext jobContext = new JobContextImpl(conf, new JobID());
+    List<String> values = new ArrayList<>();
+    for (InputSplit split : inputFormat.getSplits(jobContext)) {
+      values.addAll(read(inputFormat, split, conf));
+    }
+    return values;
+  }
+
+  private List<String> read(DeltaSnapshotInputFormat inputFormat, InputSplit split,
+                            Configuration conf) throws Exception {
+    List<String> values = new ArrayList<>();
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    try (RecordReader<NullWritable, StructuredRecord> reader = inputFormat.createRecordReader(split, context)) {
+      reader.initialize(split, context);
+      while (reader.nextKeyValue()) {
+        StructuredRecord record = reader.getCurrentValue();
+        values.add(record.get("id") + ":" + record.get("name"));
+      }
+    }
+    return values;
+  }
+
+  private Configuration createConf(Map<Long, String> partitions, List<String> keyFields,
+                                   String deleteField) throws IOException {
+    Map<String, String> properties = new HashMap<>();
+    DeltaSnapshotInputFormat.configure(properties, CsvInputFormat.class.getName(), partitions, keyFields, deleteField,
+                                       TEMP_FOLDER.newFolder().toURI().toString());
+    Configuration conf = new Configuration();
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      conf.set(property.getKey(), property.getValue());
+    }
+    return conf;
+  }
+
+  private String writePartition(String... lines) throws IOException {
+    File dir = TEMP_FOLDER.newFolder();
+    Files.write(String.join("\n", lines) + "\n", new File(dir, "part-r-00000"), Charsets.UTF_8);
+    return dir.toURI().toString();
+  }
+
+  /**
+   * Reads lines of 'id,name,deleted' as records.
+   */
+  public static class CsvInputFormat extends FileInputFormat<NullWritable, StructuredRecord> {
+
+    @Override
+    public RecordReader<NullWritable, StructuredRecord> createRecordReader(InputSplit split,
+                                                                           TaskAttemptContext context) {
+      LineRecordReader lineReader = new LineRecordReader();
+      return new RecordReader<NullWritable, StructuredRecord>() {
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+          lineReader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+          return lineReader.nextKeyValue();
+        }
+
+        @Override
+        public NullWritable getCurrentKey() {
+          return NullWritable.get();
+        }
+
+        @Override
+        public StructuredRecord getCurrentValue() {
+          String[] fields = lineReader.getCurrentValue().toString().split(",");
+          return StructuredRecord.builder(SCHEMA)
+            .set("id", fields[0])
+            .set("name", fields[1])
+            .set("deleted", Boolean.valueOf(fields[2]))
+            .build();
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+          return lineReader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+          lineReader.close();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.dataset;
+
+import co.cask.cdap.api.dataset.lib.FileSet;
+import co.cask.cdap.api.dataset.lib.PartitionDetail;
+import co.cask.cdap.api.dataset.lib.PartitionFilter;
+import co.cask.cdap.api.dataset.lib.PartitionKey;
+import co.cask.cdap.api.dataset.lib.PartitionedFileSet;
+import com.google.common.collect.ImmutableList;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests concurrent use of a {@link SnapshotFileSet} on the local file system, with a partitioned fileset that keeps
+ * its partitions in memory.
+ */
+public class SnapshotFileSetConcurrencyTest {
+  private static final int NUM_WRITERS = 2;
+  private static final int NUM_READERS = 4;
+  private static final int SNAPSHOTS_PER_WRITER = 200;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final Map<Long, PartitionDetail> partitions = new ConcurrentHashMap<>();
+  private Location baseLocation;
+  private PartitionedFileSet files;
+
+  @Before
+  public void setup() throws IOException {
+    partitions.clear();
+    baseLocation = new LocalLocationFactory(tempFolder.newFolder()).create("snapshots");
+    files = createFileSet();
+  }
+
+  @Test
+  public void testConcurrentReadersAndWriters() throws Exception {
+    AtomicLong snapshotTimes = new AtomicLong(1000L);
+    long first = snapshotTimes.getAndIncrement();
+    addPartition(first);
+    new SnapshotFileSet(files).onSuccess(first);
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_WRITERS + NUM_READERS);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    try {
+      List<Future<Long>> writers = new ArrayList<>();
+      for (int i = 0; i < NUM_WRITERS; i++) {
+        writers.add(executor.submit(() -> {
+          SnapshotFileSet snapshotFileSet = new SnapshotFileSet(files);
+          long last = 0L;
+          for (int j = 0; j < SNAPSHOTS_PER_WRITER; j++) {
+            last = snapshotTimes.getAndIncrement();
+            addPartition(last);
+            if (j % 3 == 0) {
+              snapshotFileSet.onSuccess(last);
+            } else {
+              snapshotFileSet.onDeltaSuccess(last, ImmutableList.of("id"), null);
+            }
+          }
+          return last;
+        }));
+      }
+
+      List<Future<Integer>> readers = new ArrayList<>();
+      for (int i = 0; i < NUM_READERS; i++) {
+        readers.add(executor.submit(() -> {
+          SnapshotFileSet snapshotFileSet = new SnapshotFileSet(files);
+          long latest = 0L;
+          int reads = 0;
+          // readers must always see a complete state, and never an older one than they saw before
+          do {
+            snapshotFileSet.getInputArguments(Collections.<String, String>emptyMap());
+            long current = Long.parseLong(snapshotFileSet.getLocation().getName());
+            Assert.assertTrue(current >= latest);
+            latest = current;
+            reads++;
+          } while (writing.get());
+          return reads;
+        }));
+      }
+
+      long max = 0L;
+      for (Future<Long> writer : writers) {
+        max = Math.max(max, writer.get(1, TimeUnit.MINUTES));
+      }
+      writing.set(false);
+      for (Future<Integer> reader : readers) {
+        Assert.assertTrue(reader.get(1, TimeUnit.MINUTES) > 0);
+      }
+      Assert.assertEquals(String.valueOf(max), new SnapshotFileSet(files).getLocation().getName());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testParallelCleanup() throws Exception {
+    SnapshotFileSet snapshotFileSet = new SnapshotFileSet(files);
+    for (long time = 1; time <= 20; time++) {
+      addPartition(time);
+    }
+    snapshotFileSet.onSuccess(10L);
+    snapshotFileSet.onDeltaSuccess(15L, ImmutableList.of("id"), "deleted");
+    snapshotFileSet.onDeltaSuccess(18L, ImmutableList.of("id"), "deleted");
+    Location indexDir = baseLocation.append(".delta-index");
+    indexDir.mkdirs();
+    indexDir.append("10-15").getOutputStream().close();
+    indexDir.append("10-18").getOutputStream().close();
+
+    snapshotFileSet.deleteMatchingPartitionsByTime(17L, 4);
+
+    // partitions of the latest snapshot and the ones newer than the limit are kept
+    Set<Long> expected = new HashSet<>(ImmutableList.of(10L, 15L, 17L, 18L, 19L, 20L));
+    Assert.assertEquals(expected, partitions.keySet());
+    for (long time = 1; time <= 20; time++) {
+      Assert.assertEquals(expected.contains(time), baseLocation.append(String.valueOf(time)).exists());
+    }
+    // only the index of the latest snapshot is kept
+    Assert.assertFalse(indexDir.append("10-15").exists());
+    Assert.assertTrue(indexDir.append("10-18").exists());
+  }
+
+  private void addPartition(long time) throws IOException {
+    Location location = baseLocation.append(String.valueOf(time));
+    location.mkdirs();
+    location.append("part-r-00000").getOutputStream().close();
+    PartitionKey key = PartitionKey.builder().addLongField(SnapshotFileSet.SNAPSHOT_FIELD, time).build();
+    partitions.put(time, (PartitionDetail) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class[] { PartitionDetail.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getLocation":
+            return location;
+          case "getPartitionKey":
+            return key;
+          case "getRelativePath":
+            return String.valueOf(time);
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          case "equals":
+            return proxy == args[0];
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      }));
+  }
+
+  private PartitionedFileSet createFileSet() {
+    FileSet fileSet = (FileSet) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class[] { FileSet.class }, (proxy, method, args) -> {
+        if ("getBaseLocation".equals(method.getName())) {
+          return baseLocation;
+        }
+        throw new UnsupportedOperationException(method.getName());
+      });
+    return (PartitionedFileSet) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class[] { PartitionedFileSet.class }, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getEmbeddedFileSet":
+            return fileSet;
+          case "getInputFormatClassName":
+            return "org.apache.hadoop.mapreduce.lib.input.TextInputFormat";
+          case "getPartition":
+            return partitions.get(((PartitionKey) args[0]).getField(SnapshotFileSet.SNAPSHOT_FIELD));
+          case "getPartitions":
+            Set<PartitionDetail> matches = new HashSet<>();
+            for (PartitionDetail partition : partitions.values()) {
+              if (((PartitionFilter) args[0]).match(partition.getPartitionKey())) {
+                matches.add(partition);
+              }
+            }
+            return matches;
+          case "dropPartition":
+            partitions.remove(((PartitionKey) args[0]).getField(SnapshotFileSet.SNAPSHOT_FIELD));
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.dataset;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests for {@link SnapshotState}.
+ */
+public class SnapshotStateTest {
+
+  @Test
+  public void testFullSnapshot() {
+    // full snapshots are stored the same way older versions stored them
+    SnapshotState state = SnapshotState.parse("1000");
+    Assert.assertFalse(state.isDelta());
+    Assert.assertEquals(1000L, state.getLatest());
+    Assert.assertEquals("1000", state.serialize());
+  }
+
+  @Test
+  public void testDeltas() {
+    SnapshotState state = new SnapshotState(1000L, Collections.<Long>emptyList(), ImmutableList.of("id"), "deleted")
+      .addDelta(2000L, ImmutableList.of("id"), "deleted")
+      .addDelta(3000L, ImmutableList.of("id"), "deleted");
+
+    SnapshotState parsed = SnapshotState.parse(state.serialize());
+    Assert.assertTrue(parsed.isDelta());
+    Assert.assertEquals(ImmutableList.of(1000L, 2000L, 3000L), parsed.getSnapshots());
+    Assert.assertEquals(3000L, parsed.getLatest());
+    Assert.assertEquals(ImmutableList.of("id"), parsed.getKeyFields());
+    Assert.assertEquals("deleted", parsed.getDeleteField());
+  }
+}
@@ -0,0 +1,580 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A small pool of JDBC connections, shared by a database stage and its input or output format in a JVM, for each
+ * database and connection arguments that they connect with. This saves the connection setup, such as TLS handshakes
+ * and authentication, for every task that runs in the same JVM.
+ *
+ * A pool is reference counted: the stage holds a reference from {@link #acquire} until {@link #release}, and every
+ * leased connection holds one until it is closed. When the last reference is released, the pool closes its idle
+ * connections, so that no connection outlives the stage and the JDBC driver it was opened with. At most
+ * {@link #MAX_ACTIVE} connections of a pool are leased at a time; {@link #getConnection()} waits for a connection to
+ * be returned, for up to {@link #MAX_WAIT_MILLIS}, when that many are in use.
+ *
+ * Closing a connection obtained from the pool returns it to the pool, after rolling back any uncommitted changes
+ * and restoring its auto-commit and transaction isolation settings. Idle connections are checked with
+ * {@link Connection#isValid(int)} before they are reused, and closed after {@link #IDLE_TIMEOUT_MILLIS}.
+ * Each connection also caches the statements prepared with {@link Connection#prepareStatement(String)}, so that
+ * closing and preparing the same statement again reuses it.
+ *
+ * The connections are opened with {@link DriverManager}, so the JDBC driver must be registered before a new
+ * connection is needed, as for any other connection.
+ */
+public final class ConnectionPool {
+  private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+  // maximum number of idle connections kept by each pool
+  static final int MAX_IDLE = 8;
+  // maximum number of connections leased at the same time from each pool
+  static final int MAX_ACTIVE = 32;
+  static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  // idle connections are validated if they have not been used for this long
+  static final long VALIDATION_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  static final int VALIDATION_TIMEOUT_SECONDS = 5;
+  static final int MAX_CACHED_STATEMENTS = 32;
+
+  // guarded by itself, along with the reference counts of the pools
+  private static final Map<List<Object>, ConnectionPool> POOLS = new HashMap<>();
+  private static ScheduledExecutorService evictor;
+
+  private final List<Object> key;
+  private final ConnectionFactory factory;
+  private final Ticker ticker;
+  private final Deque<PooledConnection> idle = new ArrayDeque<>();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong opened = new AtomicLong();
+  // guarded by POOLS
+  private int references = 1;
+  // guarded by this
+  private int active;
+  private boolean closed;
+
+  /**
+   * Returns the pool of connections of the given stage to the given JDBC connection string with the given connection
+   * arguments, and adds a reference to it, which must be released with {@link #release()}.
+   *
+   * @param stage the name of the stage, or {@code null} for connections that are not made by a pipeline stage
+   */
+  public static ConnectionPool acquire(@Nullable String stage, final String url, Properties properties) {
+    final Properties copy = new Properties();
+    copy.putAll(properties);
+    List<Object> key = ImmutableList.<Object>of(Strings.nullToEmpty(stage), url, copy);
+    synchronized (POOLS) {
+      ConnectionPool pool = POOLS.get(key);
+      if (pool != null) {
+        pool.references++;
+        return pool;
+      }
+      pool = new ConnectionPool(key, new ConnectionFactory() {
+        @Override
+        public Connection connect() throws SQLException {
+          return DriverManager.getConnection(url, copy);
+        }
+      }, Ticker.systemTicker());
+      POOLS.put(key, pool);
+      return pool;
+    }
+  }
+
+  /**
+   * Returns a connection from the pool of the given stage, see {@link #acquire(String, String, Properties)}. The
+   * pool stays open while the connection is leased, so a connection does not need any other reference to the pool.
+   */
+  public static Connection getConnection(@Nullable String stage, String url, Properties properties)
+    throws SQLException {
+    ConnectionPool pool = acquire(stage, url, properties);
+    try {
+      return pool.getConnection();
+    } finally {
+      pool.release();
+    }
+  }
+
+  /**
+   * Creates a pool with one reference, held by the caller.
+   */
+  @VisibleForTesting
+  ConnectionPool(@Nullable List<Object> key, ConnectionFactory factory, Ticker ticker) {
+    this.key = key;
+    this.factory = factory;
+    this.ticker = ticker;
+  }
+
+  /**
+   * Returns an idle connection of the pool, or a new connection if there is no valid idle connection. Waits for a
+   * connection to be returned if {@link #MAX_ACTIVE} connections are leased.
+   */
+  public Connection getConnection() throws SQLException {
+    retain();
+    boolean leased = false;
+    long start = ticker.read();
+    try {
+      reserve();
+      try {
+        PooledConnection pooled;
+        while ((pooled = poll()) != null) {
+          if (isUsable(pooled)) {
+            leased = true;
+            return pooled.lease();
+          }
+          pooled.closePhysical();
+        }
+        Connection connection = factory.connect();
+        opened.incrementAndGet();
+        PooledConnection created = new PooledConnection(connection);
+        leased = true;
+        return created.lease();
+      } finally {
+        if (!leased) {
+          unreserve();
+        }
+      }
+    } finally {
+      waitNanos.addAndGet(ticker.read() - start);
+      if (!leased) {
+        release();
+      }
+    }
+  }
+
+  /**
+   * Releases a reference to the pool. Releasing the last one closes the idle connections of the pool, and the
+   * connections that are still leased once they are returned.
+   */
+  public void release() {
+    synchronized (POOLS) {
+      if (--references > 0) {
+        return;
+      }
+      if (key != null) {
+        POOLS.remove(key);
+      }
+    }
+    List<PooledConnection> drained;
+    synchronized (this) {
+      closed = true;
+      drained = new ArrayList<>(idle);
+      idle.clear();
+      notifyAll();
+    }
+    for (PooledConnection pooled : drained) {
+      pooled.closePhysical();
+    }
+  }
+
+  /**
+   * Returns the total time spent in {@link #getConnection()}, which includes waiting for a leased connection to be
+   * returned, validating idle connections and opening new ones, in nanoseconds.
+   */
+  public long getWaitTimeNanos() {
+    return waitNanos.get();
+  }
+
+  /**
+   * Returns the number of connections that the pool opened.
+   */
+  public long getOpenedConnections() {
+    return opened.get();
+  }
+
+  private void retain() throws SQLException {
+    synchronized (POOLS) {
+      if (references == 0) {
+        throw new SQLException("The connection pool is closed.");
+      }
+      references++;
+    }
+  }
+
+  /**
+   * Waits until fewer than {@link #MAX_ACTIVE} connections are leased, and counts the connection about to be leased.
+   */
+  private synchronized void reserve() throws SQLException {
+    long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+    while (active >= MAX_ACTIVE) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new SQLException(String.format("Timed out after %d ms waiting for one of the %d connections in use to " +
+                                               "be returned to the pool.", MAX_WAIT_MILLIS, MAX_ACTIVE));
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a connection.", e);
+      }
+    }
+    active++;
+  }
+
+  private synchronized void unreserve() {
+    active--;
+    notifyAll();
+  }
+
+  private synchronized PooledConnection poll() {
+    return idle.pollFirst();
+  }
+
+  private boolean isUsable(PooledConnection pooled) {
+    long idleMillis = TimeUnit.NANOSECONDS.toMillis(ticker.read() - pooled.releasedAt);
+    if (idleMillis >= IDLE_TIMEOUT_MILLIS) {
+      return false;
+    }
+    if (idleMillis < VALIDATION_INTERVAL_MILLIS) {
+      return true;
+    }
+    try {
+      return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      LOG.debug("Failed to validate pooled connection. It will be closed.", e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns a leased connection to the pool, and releases the reference that it held.
+   */
+  private void recycle(PooledConnection pooled) {
+    try {
+      reset(pooled);
+    } finally {
+      unreserve();
+      release();
+    }
+  }
+
+  private void reset(PooledConnection pooled) {
+    try {
+      if (pooled.physical.isClosed()) {
+        return;
+      }
+      if (!pooled.physical.getAutoCommit()) {
+        pooled.physical.rollback();
+        pooled.physical.setAutoCommit(pooled.autoCommit);
+      }
+      if (pooled.physical.getTransactionIsolation() != pooled.isolation) {
+        pooled.physical.setTransactionIsolation(pooled.isolation);
+      }
+    } catch (SQLException e) {
+      LOG.debug("Failed to reset pooled connection. It will be closed.", e);
+      pooled.closePhysical();
+      return;
+    }
+    pooled.releasedAt = ticker.read();
+    PooledConnection evicted = pooled;
+    synchronized (this) {
+      if (!closed) {
+        // reuse the most recently used connections first, so that the others time out
+        idle.addFirst(pooled);
+        evicted = idle.size() > MAX_IDLE ? idle.pollLast() : null;
+      }
+    }
+    if (evicted != null) {
+      evicted.closePhysical();
+    }
+    scheduleEviction();
+  }
+
+  /**
+   * Closes the connections that have been idle for longer than the idle timeout, and returns the number of
+   * connections that are still idle.
+   */
+  @VisibleForTesting
+  int evictIdle() {
+    List<PooledConnection> evicted = new ArrayList<>();
+    int remaining;
+    synchronized (this) {
+      Iterator<PooledConnection> iterator = idle.iterator();
+      while (iterator.hasNext()) {
+        PooledConnection pooled = iterator.next();
+        if (TimeUnit.NANOSECONDS.toMillis(ticker.read() - pooled.releasedAt) >= IDLE_TIMEOUT_MILLIS) {
+          iterator.remove();
+          evicted.add(pooled);
+        }
+      }
+      remaining = idle.size();
+    }
+    for (PooledConnection pooled : evicted) {
+      pooled.closePhysical();
+    }
+    return remaining;
+  }
+
+  /**
+   * Starts the thread that closes idle connections, if it is not running. The thread stops once there are no idle
+   * connections left.
+   */
+  private static synchronized void scheduleEviction() {
+    if (evictor != null) {
+      return;
+    }
+    evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "jdbc-connection-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    evictor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        int remaining = 0;
+        for (ConnectionPool pool : getPools()) {
+          remaining += pool.evictIdle();
+        }
+        if (remaining == 0) {
+          stopEviction();
+        }
+      }
+    }, IDLE_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private static List<ConnectionPool> getPools() {
+    synchronized (POOLS) {
+      return new ArrayList<>(POOLS.values());
+    }
+  }
+
+  private static synchronized void stopEviction() {
+    for (ConnectionPool pool : getPools()) {
+      synchronized (pool) {
+        if (!pool.idle.isEmpty()) {
+          // a connection was released after the check
+          return;
+        }
+      }
+    }
+    evictor.shutdown();
+    evictor = null;
+  }
+
+  /**
+   * Opens new connections for a {@link ConnectionPool}.
+   */
+  @VisibleForTesting
+  interface ConnectionFactory {
+    Connection connect() throws SQLException;
+  }
+
+  /**
+   * A physical connection of the pool, with the statements prepared on it.
+   */
+  private final class PooledConnection {
+    private final Connection physical;
+    private final boolean autoCommit;
+    private final int isolation;
+    private final Map<String, CachedStatement> statements;
+    private long releasedAt;
+
+    PooledConnection(Connection physical) throws SQLException {
+      this.physical = physical;
+      this.autoCommit = physical.getAutoCommit();
+      this.isolation = physical.getTransactionIsolation();
+      this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+          if (size() <= MAX_CACHED_STATEMENTS || eldest.getValue().inUse) {
+            return false;
+          }
+          closeQuietly(eldest.getValue().statement);
+          return true;
+        }
+      };
+    }
+
+    Connection lease() {
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { Connection.class },
+                                                 new ConnectionHandler(this));
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+      CachedStatement cached = statements.get(sql);
+      if (cached == null || cached.statement.isClosed()) {
+        cached = new CachedStatement(physical.prepareStatement(sql));
+        statements.put(sql, cached);
+      } else if (cached.inUse) {
+        // the same statement is prepared twice on the connection, so the second one cannot be shared
+        return physical.prepareStatement(sql);
+      }
+      cached.inUse = true;
+      return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                        new Class[] { PreparedStatement.class },
+                                                        new StatementHandler(cached));
+    }
+
+    void closePhysical() {
+      for (CachedStatement cached : statements.values()) {
+        closeQuietly(cached.statement);
+      }
+      statements.clear();
+      try {
+        physical.close();
+      } catch (SQLException e) {
+        LOG.debug("Failed to close pooled connection.", e);
+      }
+    }
+  }
+
+  /**
+   * A prepared statement kept open by a {@link PooledConnection}.
+   */
+  private static final class CachedStatement {
+    private final PreparedStatement statement;
+    private boolean inUse;
+
+    CachedStatement(PreparedStatement statement) {
+      this.statement = statement;
+    }
+  }
+
+  /**
+   * Handles the calls to a connection leased from the pool. Closing it returns the physical connection to the pool.
+   */
+  private final class ConnectionHandler implements InvocationHandler {
+    private final PooledConnection pooled;
+    private boolean closed;
+
+    ConnectionHandler(PooledConnection pooled) {
+      this.pooled = pooled;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      switch (name) {
+        case "close":
+          if (!closed) {
+            closed = true;
+            recycle(pooled);
+          }
+          return null;
+        case "isClosed":
+          return closed || pooled.physical.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Pooled " + pooled.physical;
+        default:
+          break;
+      }
+      if (closed) {
+        throw new SQLException("Connection is closed.");
+      }
+      if ("prepareStatement".equals(name) && args.length == 1) {
+        return pooled.prepare((String) args[0]);
+      }
+      return invokeOn(pooled.physical, method, args);
+    }
+  }
+
+  /**
+   * Handles the calls to a cached prepared statement. Closing it clears its parameters and batch, and makes it
+   * available to the next {@link Connection#prepareStatement(String)} of the same query.
+   */
+  private static final class StatementHandler implements InvocationHandler {
+    private final CachedStatement cached;
+    private boolean closed;
+
+    StatementHandler(CachedStatement cached) {
+      this.cached = cached;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      switch (name) {
+        case "close":
+          if (!closed) {
+            closed = true;
+            try {
+              cached.statement.clearParameters();
+              cached.statement.clearBatch();
+            } finally {
+              cached.inUse = false;
+            }
+          }
+          return null;
+        case "isClosed":
+          return closed || cached.statement.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        default:
+          break;
+      }
+      if (closed) {
+        throw new SQLException("Statement is closed.");
+      }
+      return invokeOn(cached.statement, method, args);
+    }
+  }
+
+  private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      LOG.debug("Failed to close cached statement.", e);
+    }
+  }
+}
@@ -19,6 +19,7 @@ package co.cask.hydrator.plugin;
 import co.cask.cdap.api.plugin.PluginProperties;
 import co.cask.cdap.etl.api.Destroyable;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import org.slf4j.Logger;
@@ -30,15 +31,19 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class to manage common database operations for Database source and sink plugins.
  */
 public class DBManager implements Destroyable {
+  public static final String CONNECTION_WAIT_METRIC = "db.connection.wait.ms";
+  public static final String CONNECTIONS_OPENED_METRIC = "db.connections.opened";
   private static final Logger LOG = LoggerFactory.getLogger(DBManager.class);
   private final ConnectionConfig config;
   private DriverCleanup driverCleanup;
+  private String stageName;
+  private ConnectionPool pool;
 
   public DBManager(ConnectionConfig config) {
     this.config = config;
@@ -67,8 +72,7 @@ public class DBManager implements Destroyable {
       throw Throwables.propagate(e);
     }
 
-    try (Connection connection = DriverManager.getConnection(config.connectionString,
-                                                             config.getConnectionArguments())) {
+    try (Connection connection = getConnection()) {
       DatabaseMetaData metadata = connection.getMetaData();
       try (ResultSet rs = metadata.getTables(null, null, tableName, null)) {
         return rs.next();
@@ -90,8 +94,43 @@ public class DBManager implements Destroyable {
                                                         config.jdbcPluginType, config.jdbcPluginName);
   }
 
+  /**
+   * Acquires the {@link ConnectionPool} of the given stage, which keeps the connections that the stage and its input
+   * or output format open in this JVM for reuse until {@link #destroy()}.
+   */
+  public void acquireConnectionPool(String stageName) {
+    if (pool == null) {
+      this.stageName = stageName;
+      pool = ConnectionPool.acquire(stageName, config.connectionString, config.getConnectionArguments());
+    }
+  }
+
+  /**
+   * Returns a connection from the {@link ConnectionPool} of the stage, if it was acquired, or of the configured
+   * database. The JDBC driver must be available, see {@link #ensureJDBCDriverIsAvailable(Class)}.
+   */
+  public Connection getConnection() throws SQLException {
+    return ConnectionPool.getConnection(stageName, config.connectionString, config.getConnectionArguments());
+  }
+
+  /**
+   * Emits the time that the connection pool of the stage spent waiting for, opening and validating connections,
+   * and the number of connections it opened, since it was acquired in this JVM.
+   */
+  public void emitConnectionMetrics(StageMetrics metrics) {
+    if (pool == null) {
+      return;
+    }
+    metrics.gauge(CONNECTION_WAIT_METRIC, TimeUnit.NANOSECONDS.toMillis(pool.getWaitTimeNanos()));
+    metrics.gauge(CONNECTIONS_OPENED_METRIC, pool.getOpenedConnections());
+  }
+
   @Override
   public void destroy() {
+    if (pool != null) {
+      pool.release();
+      pool = null;
+    }
     if (driverCleanup != null) {
       driverCleanup.destroy();
     }
@@ -54,6 +54,8 @@ public final class DBUtils {
   private static final Logger LOG = LoggerFactory.getLogger(DBUtils.class);
   public static final String OVERRIDE_SCHEMA = "co.cask.hydrator.db.override.schema";
   public static final String CONNECTION_ARGUMENTS = "co.cask.hydrator.db.connection.arguments";
+  // name of the stage, whose connection pool the input and output formats use
+  public static final String STAGE_NAME = "co.cask.hydrator.db.stage.name";
 
   /**
    * Performs any Database related cleanup
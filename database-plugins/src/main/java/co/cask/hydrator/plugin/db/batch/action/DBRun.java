@@ -21,10 +21,8 @@ import co.cask.hydrator.plugin.DBManager;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Properties;
 
 /**
  * Class used by database action plugins to run database commands
@@ -48,7 +46,7 @@ public class DBRun {
     try {
       dbManager.ensureJDBCDriverIsAvailable(driverClass);
 
-      try (Connection connection = getConnection()) {
+      try (Connection connection = dbManager.getConnection()) {
         if (!config.enableAutoCommit) {
           connection.setAutoCommit(false);
         }
@@ -63,8 +61,4 @@ public class DBRun {
       dbManager.destroy();
     }
   }
-
-  private Connection getConnection() throws SQLException {
-    return DriverManager.getConnection(config.connectionString, config.getConnectionArguments());
-  }
 }
@@ -28,6 +28,7 @@ import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.batch.BatchRuntimeContext;
 import co.cask.cdap.etl.api.batch.BatchSink;
 import co.cask.cdap.etl.api.batch.BatchSinkContext;
@@ -43,6 +44,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.lib.db.DBConfiguration;
 import org.slf4j.Logger;
@@ -50,7 +52,6 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.Statement;
@@ -58,7 +59,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import javax.annotation.Nullable;
 
 
@@ -76,6 +79,7 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
   private Class<? extends Driver> driverClass;
   private int [] columnTypes;
   private List<String> columns;
+  private StageMetrics metrics;
 
   public DBSink(DBSinkConfig dbSinkConfig) {
     super(new ReferencePluginConfig(dbSinkConfig.referenceName));
@@ -91,10 +95,12 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
     dbManager.validateJDBCPluginPipeline(pipelineConfigurer, getJDBCPluginId());
+    dbSinkConfig.validate();
   }
 
   @Override
   public void prepareRun(BatchSinkContext context) {
+    dbSinkConfig.validate();
     LOG.debug("tableName = {}; pluginType = {}; pluginName = {}; connectionString = {}; columns = {}; " +
                 "transaction isolation level: {}",
               dbSinkConfig.tableName, dbSinkConfig.jdbcPluginType, dbSinkConfig.jdbcPluginName,
@@ -112,13 +118,16 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
     } finally {
       DBUtils.cleanup(driverClass);
     }
-    context.addOutput(Output.of(dbSinkConfig.referenceName, new DBOutputFormatProvider(dbSinkConfig, driverClass)));
+    context.addOutput(Output.of(dbSinkConfig.referenceName,
+                                new DBOutputFormatProvider(dbSinkConfig, driverClass, context.getStageName())));
   }
 
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
     driverClass = context.loadPluginClass(getJDBCPluginId());
+    metrics = context.getMetrics();
+    dbManager.acquireConnectionPool(context.getStageName());
     setResultSetMetadata();
   }
 
@@ -142,8 +151,12 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
 
   @Override
   public void destroy() {
-    DBUtils.cleanup(driverClass);
+    if (metrics != null) {
+      dbManager.emitConnectionMetrics(metrics);
+    }
+    // close the pooled connections before cleaning up after the driver
     dbManager.destroy();
+    DBUtils.cleanup(driverClass);
   }
 
   @VisibleForTesting
@@ -155,8 +168,7 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
     Map<String, Integer> columnToType = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     dbManager.ensureJDBCDriverIsAvailable(driverClass);
 
-    try (Connection connection = DriverManager.getConnection(dbSinkConfig.connectionString,
-                                                             dbSinkConfig.getConnectionArguments())) {
+    try (Connection connection = dbManager.getConnection()) {
       try (Statement statement = connection.createStatement();
            // Run a query against the DB table that returns 0 records, but returns valid ResultSetMetadata
            // that can be used to construct DBRecord objects to sink to the database table.
@@ -195,6 +207,8 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
     public static final String COLUMNS = "columns";
     public static final String TABLE_NAME = "tableName";
     public static final String TRANSACTION_ISOLATION_LEVEL = "transactionIsolationLevel";
+    public static final String UPSERT_KEYS = "upsertKeys";
+    public static final String BATCH_SIZE = "batchSize";
 
     @Name(COLUMNS)
     @Description("Comma-separated list of columns in the specified table to export to.")
@@ -214,12 +228,44 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
       "and this setting is set to true. For drivers like that, this should be set to TRANSACTION_NONE.")
     @Macro
     public String transactionIsolationLevel;
+
+    @Nullable
+    @Name(UPSERT_KEYS)
+    @Description("Comma-separated list of the columns that identify a row, which must be a primary or unique key of " +
+      "the table. If set, rows with the same key as a row in the table update that row instead of being inserted. " +
+      "Every batch is then committed by itself, so the rows of a task are not written atomically.")
+    @Macro
+    public String upsertKeys;
+
+    @Nullable
+    @Name(BATCH_SIZE)
+    @Description("Number of rows to send to the database in each batch. Defaults to 1000.")
+    @Macro
+    public Integer batchSize;
+
+    public void validate() {
+      if (!containsMacro(BATCH_SIZE) && batchSize != null && batchSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid batchSize %d. The batch size must be at least 1.", batchSize));
+      }
+      if (containsMacro(UPSERT_KEYS) || containsMacro(COLUMNS) || upsertKeys == null || columns == null) {
+        return;
+      }
+      Set<String> columnSet = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+      Iterables.addAll(columnSet, Splitter.on(",").omitEmptyStrings().trimResults().split(columns));
+      for (String key : Splitter.on(",").omitEmptyStrings().trimResults().split(upsertKeys)) {
+        if (!columnSet.contains(key)) {
+          throw new IllegalArgumentException(
+            String.format("Upsert key '%s' is not one of the columns %s.", key, columns));
+        }
+      }
+    }
   }
 
   private static class DBOutputFormatProvider implements OutputFormatProvider {
     private final Map<String, String> conf;
 
-    DBOutputFormatProvider(DBSinkConfig dbSinkConfig, Class<? extends Driver> driverClass) {
+    DBOutputFormatProvider(DBSinkConfig dbSinkConfig, Class<? extends Driver> driverClass, String stageName) {
       this.conf = new HashMap<>();
 
       conf.put(ETLDBOutputFormat.AUTO_COMMIT_ENABLED, String.valueOf(dbSinkConfig.getEnableAutoCommit()));
@@ -231,6 +277,7 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
       }
       conf.put(DBConfiguration.DRIVER_CLASS_PROPERTY, driverClass.getName());
       conf.put(DBConfiguration.URL_PROPERTY, dbSinkConfig.connectionString);
+      conf.put(DBUtils.STAGE_NAME, stageName);
       if (dbSinkConfig.user != null) {
         conf.put(DBConfiguration.USERNAME_PROPERTY, dbSinkConfig.user);
       }
@@ -239,6 +286,12 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
       }
       conf.put(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, dbSinkConfig.tableName);
       conf.put(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, dbSinkConfig.columns);
+      if (dbSinkConfig.upsertKeys != null) {
+        conf.put(ETLDBOutputFormat.UPSERT_KEYS, dbSinkConfig.upsertKeys);
+      }
+      if (dbSinkConfig.batchSize != null) {
+        conf.put(ETLDBOutputFormat.BATCH_SIZE, String.valueOf(dbSinkConfig.batchSize));
+      }
     }
 
     @Override
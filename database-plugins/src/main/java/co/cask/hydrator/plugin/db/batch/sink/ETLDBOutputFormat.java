@@ -16,13 +16,19 @@
 
 package co.cask.hydrator.plugin.db.batch.sink;
 
+import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.hydrator.plugin.ConnectionConfig;
+import co.cask.hydrator.plugin.ConnectionPool;
+import co.cask.hydrator.plugin.DBRecord;
 import co.cask.hydrator.plugin.DBUtils;
 import co.cask.hydrator.plugin.JDBCDriverShim;
 import co.cask.hydrator.plugin.db.batch.NoOpCommitConnection;
 import co.cask.hydrator.plugin.db.batch.TransactionIsolationLevel;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -34,11 +40,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -50,6 +61,9 @@ import java.util.Properties;
  */
 public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<K, V> {
   public static final String AUTO_COMMIT_ENABLED = "co.cask.hydrator.db.output.autocommit.enabled";
+  public static final String UPSERT_KEYS = "co.cask.hydrator.db.output.upsert.keys";
+  public static final String BATCH_SIZE = "co.cask.hydrator.db.output.batch.size";
+  public static final int DEFAULT_BATCH_SIZE = 1000;
 
   private static final Logger LOG = LoggerFactory.getLogger(ETLDBOutputFormat.class);
   private Configuration conf;
@@ -70,9 +84,14 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
     try {
       Connection connection = getConnection(conf);
       PreparedStatement statement = connection.prepareStatement(constructQuery(tableName, fieldNames));
+      final int batchSize = conf.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+      final List<String> keys = getUpsertKeys(conf);
       return new DBRecordWriter(connection, statement) {
 
+        private final List<K> batch = new ArrayList<>();
         private boolean emptyData = true;
+        // set when a batch failed, after which the task is only rolled back, even though close is still called
+        private boolean failed;
 
         //Implementation of the close method below is the exact implementation in DBOutputFormat except that
         //we check if there is any data to be written and if not, we skip executeBatch call.
@@ -81,9 +100,14 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
         @Override
         public void close(TaskAttemptContext context) throws IOException {
           try {
-            if (!emptyData) {
-              getStatement().executeBatch();
-              getConnection().commit();
+            if (failed) {
+              getConnection().rollback();
+            } else if (!emptyData) {
+              executeBatch();
+              // when upserting, every batch was already committed by itself
+              if (keys.isEmpty()) {
+                getConnection().commit();
+              }
             }
           } catch (SQLException e) {
             try {
@@ -110,8 +134,72 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
 
         @Override
         public void write(K key, V value) throws IOException {
-          super.write(key, value);
+          batch.add(key);
           emptyData = false;
+          if (batch.size() < batchSize) {
+            return;
+          }
+          try {
+            executeBatch();
+          } catch (SQLException e) {
+            batch.clear();
+            failed = true;
+            try {
+              getConnection().rollback();
+            } catch (SQLException ex) {
+              LOG.warn(StringUtils.stringifyException(ex));
+            }
+            throw new IOException(e);
+          }
+        }
+
+        /**
+         * Executes the buffered statements in one batch, and checks the result of every statement of the batch.
+         * When upserting, the rows of the batch are written in the order of their keys and every batch is
+         * committed by itself, so that a task only holds the locks of one batch, which it takes in key order.
+         * Concurrent tasks then cannot deadlock on the rows they share. Upserts are idempotent, so a task that
+         * fails after some of its batches were committed can be retried.
+         */
+        private void executeBatch() throws SQLException {
+          if (batch.isEmpty()) {
+            return;
+          }
+          if (!keys.isEmpty()) {
+            Collections.sort(batch, new KeyComparator<K>(keys));
+          }
+          PreparedStatement statement = getStatement();
+          for (K key : batch) {
+            key.write(statement);
+            statement.addBatch();
+          }
+          int[] counts;
+          try {
+            counts = statement.executeBatch();
+          } catch (BatchUpdateException e) {
+            // drivers either stop at the first failed statement or mark every failed statement
+            int[] partialCounts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+            throw new SQLException(getFailureMessage(getFirstFailed(partialCounts)), e);
+          }
+          int failedIndex = getFirstFailed(counts);
+          if (failedIndex < batch.size()) {
+            throw new SQLException(getFailureMessage(failedIndex));
+          }
+          if (!keys.isEmpty()) {
+            getConnection().commit();
+          }
+          batch.clear();
+        }
+
+        /**
+         * Returns the message for a failed batch. The index of the failed statement is only known if the driver
+         * marked it or stopped at it, otherwise the message does not point at a record.
+         */
+        private String getFailureMessage(int index) {
+          if (index >= batch.size()) {
+            return String.format("Failed to write a batch of %d records.", batch.size());
+          }
+          return String.format("Failed to write record %d of a batch of %d records%s.", index + 1, batch.size(),
+                               describe(batch.get(index), keys));
         }
       };
     } catch (Exception ex) {
@@ -119,6 +207,39 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
     }
   }
 
+  /**
+   * Returns the index of the first failed statement of a batch with the given update counts, which is the number
+   * of counts if no statement failed.
+   */
+  private static int getFirstFailed(int[] counts) {
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] == Statement.EXECUTE_FAILED) {
+        return i;
+      }
+    }
+    return counts.length;
+  }
+
+  private static String describe(DBWritable key, List<String> keys) {
+    if (!(key instanceof DBRecord) || keys.isEmpty()) {
+      return "";
+    }
+    StructuredRecord record = ((DBRecord) key).getRecord();
+    List<String> values = new ArrayList<>();
+    for (String name : keys) {
+      values.add(String.format("%s=%s", name, record.get(name)));
+    }
+    return String.format(" with key (%s)", Joiner.on(", ").join(values));
+  }
+
+  private static List<String> getUpsertKeys(Configuration conf) {
+    String keys = conf.get(UPSERT_KEYS);
+    if (keys == null) {
+      return Collections.emptyList();
+    }
+    return ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(keys));
+  }
+
   private Connection getConnection(Configuration conf) {
     Connection connection;
     try {
@@ -149,7 +270,7 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
         ConnectionConfig.getConnectionArguments(conf.get(DBUtils.CONNECTION_ARGUMENTS),
                                                 conf.get(DBConfiguration.USERNAME_PROPERTY),
                                                 conf.get(DBConfiguration.PASSWORD_PROPERTY));
-      connection = DriverManager.getConnection(url, properties);
+      connection = ConnectionPool.getConnection(conf.get(DBUtils.STAGE_NAME), url, properties);
 
       boolean autoCommitEnabled = conf.getBoolean(AUTO_COMMIT_ENABLED, false);
       if (autoCommitEnabled) {
@@ -169,6 +290,16 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
 
   @Override
   public String constructQuery(String table, String[] fieldNames) {
+    List<String> keys = getUpsertKeys(conf);
+    if (!keys.isEmpty()) {
+      String[] trimmedNames = new String[fieldNames.length];
+      for (int i = 0; i < fieldNames.length; i++) {
+        trimmedNames[i] = fieldNames[i].trim();
+      }
+      UpsertDialect dialect = UpsertDialect.fromConnectionString(conf.get(DBConfiguration.URL_PROPERTY));
+      LOG.debug("Upserting rows with keys {} using the {} dialect.", keys, dialect);
+      return dialect.constructQuery(table, trimmedNames, keys);
+    }
     String query = super.constructQuery(table, fieldNames);
     // Strip the ';' at the end since Oracle doesn't like it.
     // TODO: Perhaps do a conditional if we can find a way to tell that this is going to Oracle
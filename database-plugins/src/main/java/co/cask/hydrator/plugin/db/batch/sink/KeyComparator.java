@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.db.batch.sink;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.hydrator.plugin.DBRecord;
+import com.google.common.primitives.UnsignedBytes;
+import org.apache.hadoop.mapreduce.lib.db.DBWritable;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders {@link DBRecord DBRecords} by the values of their key fields, with nulls first. Values that are not
+ * comparable with each other are ordered by their string representation. Other {@link DBWritable DBWritables}
+ * are considered equal, which keeps them in their original order when sorted.
+ *
+ * @param <K> type of the records
+ */
+class KeyComparator<K extends DBWritable> implements Comparator<K> {
+  private final List<String> keys;
+
+  KeyComparator(List<String> keys) {
+    this.keys = keys;
+  }
+
+  @Override
+  public int compare(K left, K right) {
+    if (!(left instanceof DBRecord) || !(right instanceof DBRecord)) {
+      return 0;
+    }
+    StructuredRecord leftRecord = ((DBRecord) left).getRecord();
+    StructuredRecord rightRecord = ((DBRecord) right).getRecord();
+    for (String key : keys) {
+      int result = compareValues(leftRecord.get(key), rightRecord.get(key));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compareValues(Object left, Object right) {
+    if (left == null || right == null) {
+      return left == null ? (right == null ? 0 : -1) : 1;
+    }
+    if (left instanceof byte[] && right instanceof byte[]) {
+      return UnsignedBytes.lexicographicalComparator().compare((byte[]) left, (byte[]) right);
+    }
+    if (left instanceof ByteBuffer && right instanceof ByteBuffer) {
+      return ((ByteBuffer) left).compareTo((ByteBuffer) right);
+    }
+    if (left instanceof Comparable && left.getClass().equals(right.getClass())) {
+      return ((Comparable<Object>) left).compareTo(right);
+    }
+    return left.toString().compareTo(right.toString());
+  }
+}
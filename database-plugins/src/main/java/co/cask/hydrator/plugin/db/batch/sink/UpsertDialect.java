@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.db.batch.sink;
+
+import com.google.common.base.Joiner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The statements used by the {@link DBSink} to insert a row or update the row with the same key, for the
+ * databases that support it. The dialect is chosen based on the JDBC connection string.
+ */
+enum UpsertDialect {
+  POSTGRESQL {
+    @Override
+    String constructQuery(String table, String[] fieldNames, Collection<String> keys) {
+      List<String> updates = getUpdateFields(fieldNames, keys);
+      String conflict = String.format("%s ON CONFLICT (%s) DO ", insert(table, fieldNames), JOINER.join(keys));
+      if (updates.isEmpty()) {
+        return conflict + "NOTHING";
+      }
+      List<String> assignments = new ArrayList<>();
+      for (String field : updates) {
+        assignments.add(String.format("%s = EXCLUDED.%s", field, field));
+      }
+      return conflict + "UPDATE SET " + JOINER.join(assignments);
+    }
+  },
+  MYSQL {
+    @Override
+    String constructQuery(String table, String[] fieldNames, Collection<String> keys) {
+      List<String> updates = getUpdateFields(fieldNames, keys);
+      if (updates.isEmpty()) {
+        // assigning a key to itself keeps the existing row
+        updates = new ArrayList<>(keys);
+      }
+      List<String> assignments = new ArrayList<>();
+      for (String field : updates) {
+        assignments.add(String.format("%s = VALUES(%s)", field, field));
+      }
+      return String.format("%s ON DUPLICATE KEY UPDATE %s", insert(table, fieldNames), JOINER.join(assignments));
+    }
+  },
+  PHOENIX {
+    @Override
+    String constructQuery(String table, String[] fieldNames, Collection<String> keys) {
+      // Phoenix always upserts on the primary key
+      return "UPSERT" + insert(table, fieldNames).substring("INSERT".length());
+    }
+  },
+  ORACLE {
+    @Override
+    String constructQuery(String table, String[] fieldNames, Collection<String> keys) {
+      List<String> values = new ArrayList<>();
+      for (String field : fieldNames) {
+        values.add("? " + field);
+      }
+      return merge(table, fieldNames, keys, String.format("(SELECT %s FROM DUAL) s", JOINER.join(values)));
+    }
+  },
+  SQLSERVER {
+    @Override
+    String constructQuery(String table, String[] fieldNames, Collection<String> keys) {
+      // SQL Server requires MERGE statements to be terminated
+      return STANDARD.constructQuery(table, fieldNames, keys) + ";";
+    }
+  },
+  STANDARD {
+    @Override
+    String constructQuery(String table, String[] fieldNames, Collection<String> keys) {
+      return merge(table, fieldNames, keys, String.format("(VALUES (%s)) s (%s)", placeholders(fieldNames.length),
+                                                          JOINER.join(fieldNames)));
+    }
+  };
+
+  private static final Joiner JOINER = Joiner.on(", ");
+
+  /**
+   * Returns the statement that inserts the given fields into a table, or updates the row with the same keys.
+   * The statement has one parameter for each field, in the order of the fields.
+   */
+  abstract String constructQuery(String table, String[] fieldNames, Collection<String> keys);
+
+  /**
+   * Returns the dialect of the database at the given JDBC connection string. Databases that are not recognized
+   * are expected to support the SQL standard MERGE statement.
+   */
+  static UpsertDialect fromConnectionString(String connectionString) {
+    if (connectionString.startsWith("jdbc:postgresql")) {
+      return POSTGRESQL;
+    }
+    if (connectionString.startsWith("jdbc:mysql") || connectionString.startsWith("jdbc:mariadb")) {
+      return MYSQL;
+    }
+    if (connectionString.startsWith("jdbc:phoenix")) {
+      return PHOENIX;
+    }
+    if (connectionString.startsWith("jdbc:oracle")) {
+      return ORACLE;
+    }
+    if (connectionString.startsWith("jdbc:sqlserver") || connectionString.startsWith("jdbc:jtds:sqlserver")) {
+      return SQLSERVER;
+    }
+    return STANDARD;
+  }
+
+  private static String insert(String table, String[] fieldNames) {
+    return String.format("INSERT INTO %s (%s) VALUES (%s)", table, JOINER.join(fieldNames),
+                         placeholders(fieldNames.length));
+  }
+
+  private static String merge(String table, String[] fieldNames, Collection<String> keys, String source) {
+    List<String> conditions = new ArrayList<>();
+    for (String key : keys) {
+      conditions.add(String.format("t.%s = s.%s", key, key));
+    }
+    StringBuilder query = new StringBuilder(String.format("MERGE INTO %s t USING %s ON (%s)", table, source,
+                                                          Joiner.on(" AND ").join(conditions)));
+    List<String> updates = getUpdateFields(fieldNames, keys);
+    if (!updates.isEmpty()) {
+      List<String> assignments = new ArrayList<>();
+      for (String field : updates) {
+        assignments.add(String.format("t.%s = s.%s", field, field));
+      }
+      query.append(" WHEN MATCHED THEN UPDATE SET ").append(JOINER.join(assignments));
+    }
+    List<String> values = new ArrayList<>();
+    for (String field : fieldNames) {
+      values.add("s." + field);
+    }
+    return query.append(String.format(" WHEN NOT MATCHED THEN INSERT (%s) VALUES (%s)", JOINER.join(fieldNames),
+                                      JOINER.join(values))).toString();
+  }
+
+  private static List<String> getUpdateFields(String[] fieldNames, Collection<String> keys) {
+    Set<String> keySet = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    keySet.addAll(keys);
+    List<String> updates = new ArrayList<>();
+    for (String field : fieldNames) {
+      if (!keySet.contains(field)) {
+        updates.add(field);
+      }
+    }
+    return updates;
+  }
+
+  private static String placeholders(int count) {
+    String[] placeholders = new String[count];
+    Arrays.fill(placeholders, "?");
+    return JOINER.join(placeholders);
+  }
+}
@@ -20,15 +20,19 @@ import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Input;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.plugin.EndpointPluginContext;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.api.plugin.PluginProperties;
 import co.cask.cdap.etl.api.Emitter;
 import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.batch.BatchRuntimeContext;
 import co.cask.cdap.etl.api.batch.BatchSourceContext;
 import co.cask.hydrator.common.LineageRecorder;
@@ -76,6 +80,9 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
   private final DBSourceConfig sourceConfig;
   private final DBManager dbManager;
   private Class<? extends Driver> driverClass;
+  // high watermark of the rows read by the current run, which is persisted if the run succeeds
+  private String highWatermark;
+  private StageMetrics metrics;
 
   public DBSource(DBSourceConfig sourceConfig) {
     super(new ReferencePluginConfig(sourceConfig.referenceName));
@@ -91,6 +98,10 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     if (!Strings.isNullOrEmpty(sourceConfig.schema)) {
       pipelineConfigurer.getStageConfigurer().setOutputSchema(sourceConfig.getSchema());
     }
+    if (!sourceConfig.containsMacro(DBSourceConfig.WATERMARK_TABLE) &&
+      !Strings.isNullOrEmpty(sourceConfig.watermarkTable)) {
+      pipelineConfigurer.createDataset(sourceConfig.watermarkTable, KeyValueTable.class);
+    }
   }
 
   class GetSchemaRequest {
@@ -206,8 +217,20 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
       DBConfiguration.configureDB(hConf, driverClass.getName(), sourceConfig.connectionString,
                                   sourceConfig.user, sourceConfig.password);
     }
-    DataDrivenETLDBInputFormat.setInput(hConf, DBRecord.class,
-                                        sourceConfig.getImportQuery(), sourceConfig.getBoundingQuery(),
+    String importQuery = sourceConfig.getImportQuery();
+    String boundingQuery = sourceConfig.getBoundingQuery();
+    if (!Strings.isNullOrEmpty(sourceConfig.incrementalColumn)) {
+      String column = sourceConfig.incrementalColumn;
+      String lowWatermark = readWatermark(context);
+      highWatermark = queryHighWatermark(driverClass, importQuery, lowWatermark);
+      LOG.info("Reading rows with {} after {} up to {}.", column, lowWatermark, highWatermark);
+      importQuery = IncrementalQueries.narrow(importQuery, column, lowWatermark, highWatermark);
+      if (column.equalsIgnoreCase(sourceConfig.splitBy)) {
+        // only look for split bounds within the new rows
+        boundingQuery = IncrementalQueries.getBoundingQuery(importQuery, sourceConfig.splitBy);
+      }
+    }
+    DataDrivenETLDBInputFormat.setInput(hConf, DBRecord.class, importQuery, boundingQuery,
                                         sourceConfig.getEnableAutoCommit());
     if (sourceConfig.transactionIsolationLevel != null) {
       hConf.set(TransactionIsolationLevel.CONF_KEY, sourceConfig.transactionIsolationLevel);
@@ -215,6 +238,7 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     if (sourceConfig.connectionArguments != null) {
       hConf.set(DBUtils.CONNECTION_ARGUMENTS, sourceConfig.connectionArguments);
     }
+    hConf.set(DBUtils.STAGE_NAME, context.getStageName());
     if (sourceConfig.numSplits == null || sourceConfig.numSplits != 1) {
       if (!sourceConfig.getImportQuery().contains("$CONDITIONS")) {
         throw new IllegalArgumentException(String.format("Import Query %s must contain the string '$CONDITIONS'.",
@@ -234,10 +258,52 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
                               new SourceInputFormatProvider(DataDrivenETLDBInputFormat.class, hConf)));
   }
 
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    super.onRunFinish(succeeded, context);
+    if (succeeded && highWatermark != null) {
+      KeyValueTable watermarks = context.getDataset(sourceConfig.watermarkTable);
+      watermarks.write(Bytes.toBytes(sourceConfig.referenceName), Bytes.toBytes(highWatermark));
+    }
+  }
+
+  /**
+   * Returns the high watermark of the last successful run, or {@code null} if there was none.
+   */
+  @Nullable
+  private String readWatermark(BatchSourceContext context) throws Exception {
+    if (!context.datasetExists(sourceConfig.watermarkTable)) {
+      context.createDataset(sourceConfig.watermarkTable, KeyValueTable.class.getName(), DatasetProperties.EMPTY);
+      return null;
+    }
+    KeyValueTable watermarks = context.getDataset(sourceConfig.watermarkTable);
+    byte[] watermark = watermarks.read(Bytes.toBytes(sourceConfig.referenceName));
+    return watermark == null ? null : Bytes.toString(watermark);
+  }
+
+  /**
+   * Returns the maximum value of the incremental column in the rows after the given watermark, or {@code null} if
+   * there are no such rows.
+   */
+  @Nullable
+  private String queryHighWatermark(Class<? extends Driver> driverClass, String importQuery,
+                                    @Nullable String lowWatermark) throws Exception {
+    dbManager.ensureJDBCDriverIsAvailable(driverClass);
+    String query = IncrementalQueries.getHighWatermarkQuery(importQuery, sourceConfig.incrementalColumn,
+                                                            lowWatermark);
+    try (Connection connection = dbManager.getConnection();
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(query)) {
+      return resultSet.next() ? IncrementalQueries.toLiteral(resultSet, 1) : null;
+    }
+  }
+
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
     driverClass = context.loadPluginClass(getJDBCPluginId());
+    metrics = context.getMetrics();
+    dbManager.acquireConnectionPool(context.getStageName());
   }
 
   @Override
@@ -249,9 +315,13 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
   @Override
   public void destroy() {
     try {
-      DBUtils.cleanup(driverClass);
-    } finally {
+      if (metrics != null) {
+        dbManager.emitConnectionMetrics(metrics);
+      }
+      // close the pooled connections before cleaning up after the driver
       dbManager.destroy();
+    } finally {
+      DBUtils.cleanup(driverClass);
     }
   }
 
@@ -269,6 +339,8 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     public static final String NUM_SPLITS = "numSplits";
     public static final String SCHEMA = "schema";
     public static final String TRANSACTION_ISOLATION_LEVEL = "transactionIsolationLevel";
+    public static final String INCREMENTAL_COLUMN = "incrementalColumn";
+    public static final String WATERMARK_TABLE = "watermarkTable";
 
     @Name(IMPORT_QUERY)
     @Description("The SELECT query to use to import data from the specified table. " +
@@ -317,6 +389,21 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
       "is not correctly getting marked as nullable.")
     String schema;
 
+    @Nullable
+    @Name(INCREMENTAL_COLUMN)
+    @Description("Column whose value increases for every new row, such as an auto-incremented id or an insertion " +
+      "timestamp. If set, each run only reads the rows with a value greater than the largest value read by the " +
+      "last successful run. The column must be returned by the import query.")
+    @Macro
+    String incrementalColumn;
+
+    @Nullable
+    @Name(WATERMARK_TABLE)
+    @Description("Name of the KeyValueTable that stores the largest value of the incremental column read by the last " +
+      "successful run, keyed by reference name. Required if the incremental column is set.")
+    @Macro
+    String watermarkTable;
+
     private String getImportQuery() {
       return cleanQuery(importQuery);
     }
@@ -354,6 +441,17 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
         throw new IllegalArgumentException("The boundingQuery must be specified if numSplits is not set to 1.");
       }
 
+      if (!containsMacro(INCREMENTAL_COLUMN) && !Strings.isNullOrEmpty(incrementalColumn)) {
+        if (!containsMacro(WATERMARK_TABLE) && Strings.isNullOrEmpty(watermarkTable)) {
+          throw new IllegalArgumentException("The watermarkTable must be specified if incrementalColumn is set.");
+        }
+        if (!containsMacro("importQuery") && !getImportQuery().contains("$CONDITIONS")) {
+          throw new IllegalArgumentException(
+            String.format("Import Query %s must contain the string '$CONDITIONS' if incrementalColumn is set.",
+                          importQuery));
+        }
+      }
+
     }
 
     @Nullable
@@ -17,6 +17,7 @@
 package co.cask.hydrator.plugin.db.batch.source;
 
 import co.cask.hydrator.plugin.ConnectionConfig;
+import co.cask.hydrator.plugin.ConnectionPool;
 import co.cask.hydrator.plugin.DBUtils;
 import co.cask.hydrator.plugin.JDBCDriverShim;
 import co.cask.hydrator.plugin.db.batch.NoOpCommitConnection;
@@ -93,7 +94,7 @@ public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
           ConnectionConfig.getConnectionArguments(conf.get(DBUtils.CONNECTION_ARGUMENTS),
                                                   conf.get(DBConfiguration.USERNAME_PROPERTY),
                                                   conf.get(DBConfiguration.PASSWORD_PROPERTY));
-        connection = DriverManager.getConnection(url, properties);
+        connection = ConnectionPool.getConnection(conf.get(DBUtils.STAGE_NAME), url, properties);
 
 
         boolean autoCommitEnabled = conf.getBoolean(AUTO_COMMIT_ENABLED, false);
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.db.batch.source;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import javax.annotation.Nullable;
+
+/**
+ * Builds the queries that the {@link DBSource} runs in incremental mode, where each run only reads the rows with a
+ * value of the incremental column that is greater than the high watermark of the previous run.
+ *
+ * Watermarks are kept as SQL literals, so that they can be put into queries as they are.
+ */
+final class IncrementalQueries {
+  private static final String CONDITIONS = "$CONDITIONS";
+  private static final String ALIAS = "incremental_source";
+
+  private IncrementalQueries() {
+    // no-op
+  }
+
+  /**
+   * Returns the import query, restricted to the rows between the given watermarks. If there is no high watermark,
+   * there are no rows to read, and the query is restricted to no rows.
+   */
+  static String narrow(String importQuery, String column, @Nullable String lowWatermark,
+                       @Nullable String highWatermark) {
+    String condition;
+    if (highWatermark == null) {
+      condition = "(1 = 0)";
+    } else if (lowWatermark == null) {
+      condition = String.format("(%s <= %s)", column, highWatermark);
+    } else {
+      condition = String.format("(%s > %s AND %s <= %s)", column, lowWatermark, column, highWatermark);
+    }
+    return importQuery.replace(CONDITIONS, condition + " AND " + CONDITIONS);
+  }
+
+  /**
+   * Returns the query for the maximum value of the incremental column in the rows after the given watermark.
+   */
+  static String getHighWatermarkQuery(String importQuery, String column, @Nullable String lowWatermark) {
+    String condition = lowWatermark == null ? "(1 = 1)" : String.format("(%s > %s)", column, lowWatermark);
+    return String.format("SELECT MAX(%s) FROM (%s) %s", column, importQuery.replace(CONDITIONS, condition), ALIAS);
+  }
+
+  /**
+   * Returns the bounding query for the split-by column over the rows returned by the given narrowed import query.
+   */
+  static String getBoundingQuery(String narrowedImportQuery, String splitBy) {
+    return String.format("SELECT MIN(%s), MAX(%s) FROM (%s) %s", splitBy, splitBy,
+                         narrowedImportQuery.replace(CONDITIONS, "(1 = 1)"), ALIAS);
+  }
+
+  /**
+   * Returns the value of a column of the current row as a SQL literal, or {@code null} if the value is null.
+   */
+  @Nullable
+  static String toLiteral(ResultSet resultSet, int column) throws SQLException {
+    ResultSetMetaData metadata = resultSet.getMetaData();
+    int type = metadata.getColumnType(column);
+    switch (type) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+        long longValue = resultSet.getLong(column);
+        return resultSet.wasNull() ? null : String.valueOf(longValue);
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        BigDecimal decimal = resultSet.getBigDecimal(column);
+        return decimal == null ? null : decimal.toPlainString();
+      case Types.DATE:
+        java.sql.Date date = resultSet.getDate(column);
+        return date == null ? null : String.format("{d '%s'}", date);
+      case Types.TIMESTAMP:
+        Timestamp timestamp = resultSet.getTimestamp(column);
+        return timestamp == null ? null : String.format("{ts '%s'}", timestamp);
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.NCHAR:
+      case Types.NVARCHAR:
+        String string = resultSet.getString(column);
+        return string == null ? null : "'" + string.replace("'", "''") + "'";
+      default:
+        throw new IllegalArgumentException(
+          String.format("Column '%s' of type '%s' cannot be used as the incremental column. It must be a number, " +
+                          "date, timestamp or string column.",
+                        metadata.getColumnName(column), metadata.getColumnTypeName(column)));
+    }
+  }
+}
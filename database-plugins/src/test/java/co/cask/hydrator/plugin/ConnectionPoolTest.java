@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for {@link ConnectionPool}, with connections that only record the calls made to them.
+ */
+public class ConnectionPoolTest {
+  private final AtomicLong nanos = new AtomicLong();
+  private final List<FakeConnection> opened = new ArrayList<>();
+  private ConnectionPool pool;
+
+  @Before
+  public void setUp() {
+    nanos.set(0);
+    opened.clear();
+    pool = new ConnectionPool(null, new ConnectionPool.ConnectionFactory() {
+      @Override
+      public Connection connect() {
+        FakeConnection connection = new FakeConnection();
+        opened.add(connection);
+        return connection.proxy;
+      }
+    }, new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    });
+  }
+
+  @Test
+  public void testReuse() throws SQLException {
+    Connection connection = pool.getConnection();
+    connection.setAutoCommit(false);
+    connection.close();
+    Assert.assertTrue(connection.isClosed());
+    Assert.assertEquals(1, opened.get(0).rollbacks);
+    Assert.assertTrue(opened.get(0).autoCommit);
+
+    Connection first = pool.getConnection();
+    Connection second = pool.getConnection();
+    Assert.assertEquals(2, opened.size());
+    Assert.assertEquals(2, pool.getOpenedConnections());
+    first.close();
+    second.close();
+    Assert.assertFalse(opened.get(0).closed);
+    Assert.assertFalse(opened.get(1).closed);
+    try {
+      first.createStatement();
+      Assert.fail("Expected the closed connection to fail");
+    } catch (SQLException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testValidation() throws SQLException {
+    pool.getConnection().close();
+    // recently used connections are not validated
+    pool.getConnection().close();
+    Assert.assertEquals(0, opened.get(0).validations);
+
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(ConnectionPool.VALIDATION_INTERVAL_MILLIS));
+    opened.get(0).valid = false;
+    pool.getConnection().close();
+    Assert.assertEquals(1, opened.get(0).validations);
+    Assert.assertTrue(opened.get(0).closed);
+    Assert.assertEquals(2, opened.size());
+
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(ConnectionPool.IDLE_TIMEOUT_MILLIS));
+    Assert.assertEquals(0, pool.evictIdle());
+    Assert.assertTrue(opened.get(1).closed);
+  }
+
+  @Test
+  public void testStatementCache() throws SQLException {
+    Connection connection = pool.getConnection();
+    PreparedStatement statement = connection.prepareStatement("SELECT 1");
+    // the statement is in use, so it cannot be shared
+    connection.prepareStatement("SELECT 1").close();
+    statement.close();
+    connection.prepareStatement("SELECT 1").close();
+    connection.close();
+    pool.getConnection().prepareStatement("SELECT 1").close();
+    Assert.assertEquals(2, opened.get(0).prepared);
+  }
+
+  @Test
+  public void testMaxIdle() throws SQLException {
+    List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i <= ConnectionPool.MAX_IDLE; i++) {
+      connections.add(pool.getConnection());
+    }
+    for (Connection connection : connections) {
+      connection.close();
+    }
+    int closed = 0;
+    for (FakeConnection connection : opened) {
+      closed += connection.closed ? 1 : 0;
+    }
+    Assert.assertEquals(1, closed);
+  }
+
+  @Test
+  public void testRelease() throws SQLException {
+    pool.getConnection().close();
+    Connection leased = pool.getConnection();
+    Connection other = pool.getConnection();
+    other.close();
+    pool.release();
+    // the leased connection keeps the pool open, until it is returned
+    Assert.assertFalse(opened.get(0).closed);
+    Assert.assertFalse(opened.get(1).closed);
+    leased.close();
+    Assert.assertTrue(opened.get(0).closed);
+    Assert.assertTrue(opened.get(1).closed);
+    try {
+      pool.getConnection();
+      Assert.fail("Expected the released pool to be closed");
+    } catch (SQLException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMaxActive() throws Exception {
+    List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i < ConnectionPool.MAX_ACTIVE; i++) {
+      connections.add(pool.getConnection());
+    }
+    final BlockingQueue<Connection> waiting = new LinkedBlockingQueue<>();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          waiting.add(pool.getConnection());
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    thread.start();
+    Assert.assertNull(waiting.poll(200, TimeUnit.MILLISECONDS));
+    connections.get(0).close();
+    Assert.assertNotNull(waiting.poll(10, TimeUnit.SECONDS));
+    thread.join();
+    // the returned connection was reused
+    Assert.assertEquals(ConnectionPool.MAX_ACTIVE, opened.size());
+  }
+
+  @Test
+  public void testAcquire() {
+    Properties properties = new Properties();
+    ConnectionPool first = ConnectionPool.acquire("stage", "jdbc:test", properties);
+    ConnectionPool second = ConnectionPool.acquire("stage", "jdbc:test", properties);
+    ConnectionPool other = ConnectionPool.acquire("other", "jdbc:test", properties);
+    Assert.assertSame(first, second);
+    Assert.assertNotSame(first, other);
+    first.release();
+    Assert.assertSame(second, ConnectionPool.acquire("stage", "jdbc:test", properties));
+    second.release();
+    second.release();
+    // the last reference closed the pool, so a new one is created
+    Assert.assertNotSame(second, ConnectionPool.acquire("stage", "jdbc:test", properties));
+    other.release();
+  }
+
+  /**
+   * Records the calls to a {@link Connection}.
+   */
+  private static final class FakeConnection implements InvocationHandler {
+    private final Connection proxy = (Connection) Proxy.newProxyInstance(
+      Connection.class.getClassLoader(), new Class[] { Connection.class }, this);
+    private boolean autoCommit = true;
+    private boolean closed;
+    private boolean valid = true;
+    private int rollbacks;
+    private int validations;
+    private int prepared;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "getAutoCommit":
+          return autoCommit;
+        case "setAutoCommit":
+          autoCommit = (Boolean) args[0];
+          return null;
+        case "rollback":
+          rollbacks++;
+          return null;
+        case "getTransactionIsolation":
+          return Connection.TRANSACTION_READ_COMMITTED;
+        case "isValid":
+          validations++;
+          return valid;
+        case "isClosed":
+          return closed;
+        case "close":
+          closed = true;
+          return null;
+        case "prepareStatement":
+          prepared++;
+          return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                        new Class[] { PreparedStatement.class }, new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getReturnType() == boolean.class ? false : null;
+              }
+            });
+        default:
+          return null;
+      }
+    }
+  }
+}
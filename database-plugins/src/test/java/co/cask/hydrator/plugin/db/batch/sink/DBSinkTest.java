@@ -29,6 +29,9 @@ import org.apache.hadoop.io.NullWritable;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -130,6 +133,58 @@ public class DBSinkTest {
     }
   }
 
+  @Test
+  public void testUpsertQueries() {
+    String[] fields = {"id", "name", "score"};
+    List<String> keys = ImmutableList.of("id");
+    Assert.assertEquals("INSERT INTO t (id, name, score) VALUES (?, ?, ?) ON CONFLICT (id) DO UPDATE SET " +
+                          "name = EXCLUDED.name, score = EXCLUDED.score",
+                        UpsertDialect.fromConnectionString("jdbc:postgresql://localhost/db")
+                          .constructQuery("t", fields, keys));
+    Assert.assertEquals("INSERT INTO t (id, name, score) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                          "name = VALUES(name), score = VALUES(score)",
+                        UpsertDialect.fromConnectionString("jdbc:mysql://localhost/db")
+                          .constructQuery("t", fields, keys));
+    Assert.assertEquals("MERGE INTO t t USING (VALUES (?, ?, ?)) s (id, name, score) ON (t.id = s.id) " +
+                          "WHEN MATCHED THEN UPDATE SET t.name = s.name, t.score = s.score " +
+                          "WHEN NOT MATCHED THEN INSERT (id, name, score) VALUES (s.id, s.name, s.score)",
+                        UpsertDialect.fromConnectionString("jdbc:hsqldb:mem:db").constructQuery("t", fields, keys));
+    Assert.assertEquals("MERGE INTO t t USING (SELECT ? id, ? name FROM DUAL) s ON (t.id = s.id AND t.name = s.name) " +
+                          "WHEN NOT MATCHED THEN INSERT (id, name) VALUES (s.id, s.name)",
+                        UpsertDialect.fromConnectionString("jdbc:oracle:thin:@localhost:1521:db")
+                          .constructQuery("t", new String[] {"id", "name"}, ImmutableList.of("id", "name")));
+    Assert.assertEquals("INSERT INTO t (id, name) VALUES (?, ?) ON CONFLICT (id, name) DO NOTHING",
+                        UpsertDialect.POSTGRESQL.constructQuery("t", new String[] {"id", "name"},
+                                                                ImmutableList.of("id", "name")));
+  }
+
+  @Test
+  public void testKeyOrder() {
+    Schema schema = Schema.recordOf("foo",
+                                    Schema.Field.of("id", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+                                    Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    List<DBRecord> records = new ArrayList<>();
+    for (Object[] values : new Object[][] {{2, "b"}, {1, "b"}, {null, "c"}, {2, "a"}}) {
+      StructuredRecord record = StructuredRecord.builder(schema).set("id", values[0]).set("name", values[1]).build();
+      records.add(new DBRecord(record, new int[0]));
+    }
+    Collections.sort(records, new KeyComparator<DBRecord>(ImmutableList.of("id", "name")));
+    List<String> ordered = new ArrayList<>();
+    for (DBRecord record : records) {
+      ordered.add(record.getRecord().get("id") + record.getRecord().<String>get("name"));
+    }
+    Assert.assertEquals(ImmutableList.of("nullc", "1b", "2a", "2b"), ordered);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidUpsertKeys() {
+    DBSink.DBSinkConfig config = new DBSink.DBSinkConfig();
+    config.columns = "id,name";
+    config.tableName = "foo";
+    config.upsertKeys = "id,missing";
+    config.validate();
+  }
+
   public Map<String, Object> getRecordFields(StructuredRecord record) {
     Map<String, Object> fields = Maps.newHashMap();
     for (Schema.Field field : record.getSchema().getFields()) {
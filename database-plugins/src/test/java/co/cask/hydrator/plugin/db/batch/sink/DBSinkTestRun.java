@@ -30,6 +30,7 @@ import co.cask.hydrator.plugin.DBConfig;
 import co.cask.hydrator.plugin.DatabasePluginTestBase;
 import co.cask.hydrator.plugin.db.batch.source.DBSource;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Assert;
@@ -131,6 +132,58 @@ public class DBSinkTestRun extends DatabasePluginTestBase {
     runETLOnce(appManager);
   }
 
+  @Test
+  public void testUpsert() throws Exception {
+    try (Connection conn = getConnection();
+         Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE UPSERT_TABLE (ID INT NOT NULL PRIMARY KEY, NAME VARCHAR(40))");
+    }
+    Schema schema = Schema.recordOf("upsertRecord",
+                                    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("NAME", Schema.of(Schema.Type.STRING)));
+    ETLPlugin sinkConfig = new ETLPlugin("Database",
+                                         BatchSink.PLUGIN_TYPE,
+                                         ImmutableMap.<String, String>builder()
+                                           .put(DBConfig.CONNECTION_STRING, getConnectionURL())
+                                           .put(DBSink.DBSinkConfig.TABLE_NAME, "UPSERT_TABLE")
+                                           .put(DBSink.DBSinkConfig.COLUMNS, "ID, NAME")
+                                           .put(DBSink.DBSinkConfig.UPSERT_KEYS, "ID")
+                                           .put(DBConfig.JDBC_PLUGIN_NAME, "hypersql")
+                                           .put(Constants.Reference.REFERENCE_NAME, "DBUpsertTest")
+                                           .build(),
+                                         null);
+
+    // the first run inserts both keys, the second one writes the second key again
+    StructuredRecord user1 = StructuredRecord.builder(schema).set("ID", 1).set("NAME", "user1").build();
+    StructuredRecord user2 = StructuredRecord.builder(schema).set("ID", 2).set("NAME", "user2").build();
+    StructuredRecord user2Update = StructuredRecord.builder(schema).set("ID", 2).set("NAME", "user22").build();
+    ApplicationManager insertManager = deployETL(MockSource.getPlugin("input-dbupsert1"), sinkConfig,
+                                                 "testDBUpsertInsert");
+    MockSource.writeInput(getDataset("input-dbupsert1"), ImmutableList.of(user1, user2));
+    runETLOnce(insertManager);
+    ApplicationManager updateManager = deployETL(MockSource.getPlugin("input-dbupsert2"), sinkConfig,
+                                                 "testDBUpsertUpdate");
+    MockSource.writeInput(getDataset("input-dbupsert2"), ImmutableList.of(user2Update));
+    runETLOnce(updateManager);
+
+    try (Connection conn = getConnection();
+         Statement stmt = conn.createStatement();
+         ResultSet resultSet = stmt.executeQuery("SELECT ID, NAME FROM UPSERT_TABLE ORDER BY ID")) {
+      Assert.assertTrue(resultSet.next());
+      Assert.assertEquals(1, resultSet.getInt("ID"));
+      Assert.assertEquals("user1", resultSet.getString("NAME"));
+      Assert.assertTrue(resultSet.next());
+      Assert.assertEquals(2, resultSet.getInt("ID"));
+      Assert.assertEquals("user22", resultSet.getString("NAME"));
+      Assert.assertFalse(resultSet.next());
+    } finally {
+      try (Connection conn = getConnection();
+           Statement stmt = conn.createStatement()) {
+        stmt.execute("DROP TABLE UPSERT_TABLE");
+      }
+    }
+  }
+
   private void createInputData(String inputDatasetName) throws Exception {
     // add some data to the input table
     DataSetManager<Table> inputManager = getDataset(inputDatasetName);
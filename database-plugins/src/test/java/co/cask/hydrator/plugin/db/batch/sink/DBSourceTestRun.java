@@ -18,28 +18,35 @@ package co.cask.hydrator.plugin.db.batch.sink;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.datapipeline.SmartWorkflow;
 import co.cask.cdap.etl.api.batch.BatchSource;
 import co.cask.cdap.etl.mock.batch.MockSink;
 import co.cask.cdap.etl.proto.v2.ETLBatchConfig;
 import co.cask.cdap.etl.proto.v2.ETLPlugin;
 import co.cask.cdap.etl.proto.v2.ETLStage;
+import co.cask.cdap.proto.ProgramRunStatus;
 import co.cask.cdap.proto.artifact.AppRequest;
 import co.cask.cdap.proto.id.ApplicationId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.test.ApplicationManager;
 import co.cask.cdap.test.DataSetManager;
+import co.cask.cdap.test.WorkflowManager;
 import co.cask.hydrator.common.Constants;
 import co.cask.hydrator.plugin.ConnectionConfig;
 import co.cask.hydrator.plugin.DBConfig;
 import co.cask.hydrator.plugin.DatabasePluginTestBase;
 import co.cask.hydrator.plugin.db.batch.source.DBSource;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.sql.Connection;
 import java.sql.Date;
+import java.sql.Statement;
 import java.sql.Time;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
@@ -48,8 +55,11 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test for ETL using databases.
@@ -376,4 +386,70 @@ public class DBSourceTestRun extends DatabasePluginTestBase {
     assertRuntimeFailure(appId, etlConfig, "ETL Application with DB Source should have failed because of a " +
       "non-existent source database.", 2);
   }
+
+  @Test
+  public void testDBSourceIncremental() throws Exception {
+    try (Connection conn = getConnection();
+         Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE \"incremental_table\" (ID INT NOT NULL, NAME VARCHAR(40) NOT NULL)");
+      stmt.execute("INSERT INTO \"incremental_table\" VALUES (1, 'user1'), (2, 'user2'), (3, 'user3')");
+    }
+
+    ETLPlugin sourceConfig = new ETLPlugin(
+      "Database",
+      BatchSource.PLUGIN_TYPE,
+      ImmutableMap.<String, String>builder()
+        .put(DBConfig.CONNECTION_STRING, getConnectionURL())
+        .put(DBSource.DBSourceConfig.IMPORT_QUERY, "SELECT ID, NAME FROM \"incremental_table\" WHERE $CONDITIONS")
+        .put(DBSource.DBSourceConfig.SPLIT_BY, "ID")
+        .put(DBSource.DBSourceConfig.NUM_SPLITS, "2")
+        .put(DBSource.DBSourceConfig.INCREMENTAL_COLUMN, "ID")
+        .put(DBSource.DBSourceConfig.WATERMARK_TABLE, "incrementalWatermarks")
+        .put(DBConfig.JDBC_PLUGIN_NAME, "hypersql")
+        .put(Constants.Reference.REFERENCE_NAME, "DBIncrementalTest")
+        .build(),
+      null
+    );
+
+    String outputDatasetName = "output-dbsourceincremental";
+    ETLPlugin sinkConfig = MockSink.getPlugin(outputDatasetName);
+    ApplicationManager appManager = deployETL(sourceConfig, sinkConfig, "testDBSourceIncremental");
+    WorkflowManager workflowManager = appManager.getWorkflowManager(SmartWorkflow.NAME);
+
+    // the first run reads all the rows
+    workflowManager.start();
+    workflowManager.waitForRuns(ProgramRunStatus.COMPLETED, 1, 5, TimeUnit.MINUTES);
+    DataSetManager<Table> outputManager = getDataset(outputDatasetName);
+    Assert.assertEquals(ImmutableSet.of(1, 2, 3), getIds(MockSink.readOutput(outputManager)));
+    DataSetManager<KeyValueTable> watermarkManager = getDataset("incrementalWatermarks");
+    Assert.assertEquals("3", Bytes.toString(watermarkManager.get().read("DBIncrementalTest")));
+
+    try (Connection conn = getConnection();
+         Statement stmt = conn.createStatement()) {
+      stmt.execute("INSERT INTO \"incremental_table\" VALUES (4, 'user4'), (5, 'user5')");
+    }
+
+    // the second run only reads the new rows, which the mock sink adds to the rows of the first run
+    workflowManager.start();
+    workflowManager.waitForRuns(ProgramRunStatus.COMPLETED, 2, 5, TimeUnit.MINUTES);
+    outputManager.flush();
+    List<StructuredRecord> outputRecords = MockSink.readOutput(outputManager);
+    Assert.assertEquals(5, outputRecords.size());
+    Assert.assertEquals(ImmutableSet.of(1, 2, 3, 4, 5), getIds(outputRecords));
+    watermarkManager.flush();
+    Assert.assertEquals("5", Bytes.toString(watermarkManager.get().read("DBIncrementalTest")));
+
+    try (Connection conn = getConnection();
+         Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TABLE \"incremental_table\"");
+    }
+  }
+
+  private static Set<Integer> getIds(List<StructuredRecord> records) {
+    Set<Integer> ids = new HashSet<>();
+    for (StructuredRecord record : records) {
+      ids.add(record.<Integer>get("ID"));
+    }
+    return ids;
+  }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.db.batch.sink;
+
+import co.cask.hydrator.plugin.DBUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.apache.hadoop.mapreduce.lib.db.DBWritable;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Tests for {@link ETLDBOutputFormat}, with a driver whose connections only record the calls made to them.
+ */
+public class ETLDBOutputFormatTest {
+  private static final String URL = "jdbc:fake:test";
+  private static final FakeDriver DRIVER = new FakeDriver();
+
+  private static int commits;
+  private static int executedBatches;
+  // the number of the executed batch that fails, or 0 if no batch fails
+  private static int failingBatch;
+
+  @BeforeClass
+  public static void registerDriver() throws SQLException {
+    DriverManager.registerDriver(DRIVER);
+  }
+
+  @AfterClass
+  public static void deregisterDriver() throws SQLException {
+    DriverManager.deregisterDriver(DRIVER);
+  }
+
+  @Before
+  public void setUp() {
+    commits = 0;
+    executedBatches = 0;
+    failingBatch = 0;
+  }
+
+  @Test
+  public void testFailedBatchIsNotCommitted() throws Exception {
+    failingBatch = 2;
+    TaskAttemptContext context = createContext(null);
+    RecordWriter<Row, Object> writer = new ETLDBOutputFormat<Row, Object>().getRecordWriter(context);
+    writer.write(new Row(1), null);
+    writer.write(new Row(2), null);
+    writer.write(new Row(3), null);
+    try {
+      writer.write(new Row(4), null);
+      Assert.fail("The second batch should have failed.");
+    } catch (IOException e) {
+      // expected
+    }
+    // the task still closes the writer after the failure, which must neither write the batch again nor commit
+    writer.close(context);
+    Assert.assertEquals(2, executedBatches);
+    Assert.assertEquals(0, commits);
+  }
+
+  @Test
+  public void testUpsertCommitsEveryBatch() throws Exception {
+    TaskAttemptContext context = createContext("id");
+    RecordWriter<Row, Object> writer = new ETLDBOutputFormat<Row, Object>().getRecordWriter(context);
+    for (int i = 0; i < 5; i++) {
+      writer.write(new Row(i), null);
+    }
+    Assert.assertEquals(2, executedBatches);
+    Assert.assertEquals(2, commits);
+    writer.close(context);
+    Assert.assertEquals(3, executedBatches);
+    Assert.assertEquals(3, commits);
+  }
+
+  @Test
+  public void testInsertCommitsOnClose() throws Exception {
+    TaskAttemptContext context = createContext(null);
+    RecordWriter<Row, Object> writer = new ETLDBOutputFormat<Row, Object>().getRecordWriter(context);
+    for (int i = 0; i < 5; i++) {
+      writer.write(new Row(i), null);
+    }
+    Assert.assertEquals(2, executedBatches);
+    Assert.assertEquals(0, commits);
+    writer.close(context);
+    Assert.assertEquals(3, executedBatches);
+    Assert.assertEquals(1, commits);
+  }
+
+  private TaskAttemptContext createContext(String upsertKeys) {
+    Configuration conf = new Configuration();
+    conf.set(DBConfiguration.URL_PROPERTY, URL);
+    conf.set(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, "test");
+    conf.setStrings(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, "id");
+    // every test uses its own connection pool
+    conf.set(DBUtils.STAGE_NAME, UUID.randomUUID().toString());
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 2);
+    if (upsertKeys != null) {
+      conf.set(ETLDBOutputFormat.UPSERT_KEYS, upsertKeys);
+    }
+    return new TaskAttemptContextImpl(conf, new TaskAttemptID());
+  }
+
+  /**
+   * A row with a single column.
+   */
+  private static final class Row implements DBWritable {
+    private final int id;
+
+    private Row(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public void write(PreparedStatement statement) throws SQLException {
+      statement.setInt(1, id);
+    }
+
+    @Override
+    public void readFields(ResultSet resultSet) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static Object defaultValue(Method method) {
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    }
+    return type == int.class ? 0 : null;
+  }
+
+  /**
+   * Records the calls to the statements that are executed.
+   */
+  private static final class FakeStatement implements InvocationHandler {
+    private int added;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+      switch (method.getName()) {
+        case "addBatch":
+          added++;
+          return null;
+        case "executeBatch":
+          executedBatches++;
+          int[] counts = new int[added];
+          added = 0;
+          if (executedBatches == failingBatch) {
+            throw new SQLException("Deadlock found when trying to get lock");
+          }
+          Arrays.fill(counts, 1);
+          return counts;
+        default:
+          return defaultValue(method);
+      }
+    }
+  }
+
+  /**
+   * Records the commits of a connection.
+   */
+  private static final class FakeConnection implements InvocationHandler {
+    private boolean autoCommit = true;
+    private boolean closed;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "getAutoCommit":
+          return autoCommit;
+        case "setAutoCommit":
+          autoCommit = (Boolean) args[0];
+          return null;
+        case "commit":
+          commits++;
+          return null;
+        case "isValid":
+          return true;
+        case "isClosed":
+          return closed;
+        case "close":
+          closed = true;
+          return null;
+        case "prepareStatement":
+          return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                        new Class[] { PreparedStatement.class }, new FakeStatement());
+        default:
+          return defaultValue(method);
+      }
+    }
+  }
+
+  /**
+   * Opens {@link FakeConnection FakeConnections} for the test url.
+   */
+  private static final class FakeDriver implements Driver {
+    @Override
+    public Connection connect(String url, Properties info) {
+      if (!acceptsURL(url)) {
+        return null;
+      }
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { Connection.class },
+                                                 new FakeConnection());
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return URL.equals(url);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+  }
+}
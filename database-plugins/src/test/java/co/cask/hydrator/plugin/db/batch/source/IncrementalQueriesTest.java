@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.db.batch.source;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the queries of the incremental mode of the {@link DBSource}.
+ */
+public class IncrementalQueriesTest {
+  private static final String QUERY = "SELECT id, name FROM users WHERE $CONDITIONS";
+
+  @Test
+  public void testNarrow() {
+    Assert.assertEquals("SELECT id, name FROM users WHERE (id <= 10) AND $CONDITIONS",
+                        IncrementalQueries.narrow(QUERY, "id", null, "10"));
+    Assert.assertEquals("SELECT id, name FROM users WHERE (id > 10 AND id <= 20) AND $CONDITIONS",
+                        IncrementalQueries.narrow(QUERY, "id", "10", "20"));
+    Assert.assertEquals("SELECT id, name FROM users WHERE (1 = 0) AND $CONDITIONS",
+                        IncrementalQueries.narrow(QUERY, "id", "10", null));
+  }
+
+  @Test
+  public void testHighWatermarkQuery() {
+    Assert.assertEquals("SELECT MAX(id) FROM (SELECT id, name FROM users WHERE (1 = 1)) incremental_source",
+                        IncrementalQueries.getHighWatermarkQuery(QUERY, "id", null));
+    Assert.assertEquals("SELECT MAX(id) FROM (SELECT id, name FROM users WHERE (id > 10)) incremental_source",
+                        IncrementalQueries.getHighWatermarkQuery(QUERY, "id", "10"));
+  }
+
+  @Test
+  public void testBoundingQuery() {
+    String narrowed = IncrementalQueries.narrow(QUERY, "id", "10", "20");
+    Assert.assertEquals("SELECT MIN(id), MAX(id) FROM " +
+                          "(SELECT id, name FROM users WHERE (id > 10 AND id <= 20) AND (1 = 1)) incremental_source",
+                        IncrementalQueries.getBoundingQuery(narrowed, "id"));
+  }
+}
@@ -19,19 +19,28 @@ package co.cask.format.avro;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.hydrator.common.RecordConverter;
-import com.google.common.collect.Maps;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import org.apache.avro.generic.GenericRecord;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
- * Create StructuredRecords from GenericRecords
+ * Create StructuredRecords from GenericRecords.
+ *
+ * For each pair of output schema and Avro schema, the field positions in the Avro schema and the converters
+ * for the field values are computed once and cached, so that converting a record only needs positional access
+ * to its fields.
  */
 public class AvroToStructuredTransformer extends RecordConverter<GenericRecord, StructuredRecord> {
 
-  private final Map<Integer, Schema> schemaCache = Maps.newHashMap();
+  private final Map<org.apache.avro.Schema, Schema> schemaCache = new HashMap<>();
+  private final Table<Schema, org.apache.avro.Schema, RecordDecoder> decoders = HashBasedTable.create();
+  private RecordDecoder lastDecoder;
 
   public StructuredRecord transform(GenericRecord genericRecord) throws IOException {
     org.apache.avro.Schema genericRecordSchema = genericRecord.getSchema();
@@ -40,37 +49,92 @@ public class AvroToStructuredTransformer extends RecordConverter<GenericRecord,
 
   @Override
   public StructuredRecord transform(GenericRecord genericRecord, Schema structuredSchema) throws IOException {
-    StructuredRecord.Builder builder = StructuredRecord.builder(structuredSchema);
-    for (Schema.Field field : structuredSchema.getFields()) {
-      String fieldName = field.getName();
-      builder.set(fieldName, convertField(genericRecord.get(fieldName), field.getSchema()));
-    }
-    return builder.build();
+    return getDecoder(structuredSchema, genericRecord.getSchema()).decode(genericRecord, null).build();
   }
 
   public StructuredRecord.Builder transform(GenericRecord genericRecord, Schema structuredSchema,
                                             @Nullable String skipField) throws IOException {
-    StructuredRecord.Builder builder = StructuredRecord.builder(structuredSchema);
-    for (Schema.Field field : structuredSchema.getFields()) {
-      String fieldName = field.getName();
-      if (!fieldName.equals(skipField)) {
-        builder.set(fieldName, convertField(genericRecord.get(fieldName), field.getSchema()));
-      }
-    }
-
-    return builder;
+    return getDecoder(structuredSchema, genericRecord.getSchema()).decode(genericRecord, skipField);
   }
 
   public Schema convertSchema(org.apache.avro.Schema schema) throws IOException {
-    int hashCode = schema.hashCode();
-    Schema structuredSchema;
-
-    if (schemaCache.containsKey(hashCode)) {
-      structuredSchema = schemaCache.get(hashCode);
-    } else {
+    Schema structuredSchema = schemaCache.get(schema);
+    if (structuredSchema == null) {
       structuredSchema = Schema.parseJson(schema.toString());
-      schemaCache.put(hashCode, structuredSchema);
+      schemaCache.put(schema, structuredSchema);
     }
     return structuredSchema;
   }
+
+  @Override
+  protected FieldConverter compileRecord(Schema recordSchema) {
+    return new FieldConverter() {
+      private RecordDecoder decoder;
+
+      @Override
+      public Object convert(@Nullable Object value) throws IOException {
+        GenericRecord genericRecord = (GenericRecord) value;
+        org.apache.avro.Schema avroSchema = genericRecord.getSchema();
+        if (decoder == null || decoder.avroSchema != avroSchema) {
+          decoder = getDecoder(recordSchema, avroSchema);
+        }
+        return decoder.decode(genericRecord, null).build();
+      }
+    };
+  }
+
+  private RecordDecoder getDecoder(Schema structuredSchema, org.apache.avro.Schema avroSchema) {
+    // records read from the same file or written by the same stage share their schema objects
+    RecordDecoder decoder = lastDecoder;
+    if (decoder != null && decoder.schema == structuredSchema && decoder.avroSchema == avroSchema) {
+      return decoder;
+    }
+    decoder = decoders.get(structuredSchema, avroSchema);
+    if (decoder == null) {
+      decoder = new RecordDecoder(structuredSchema, avroSchema);
+      decoders.put(structuredSchema, avroSchema, decoder);
+    }
+    lastDecoder = decoder;
+    return decoder;
+  }
+
+  /**
+   * Converts GenericRecords of one Avro schema into StructuredRecords of one schema.
+   */
+  private final class RecordDecoder {
+    private final Schema schema;
+    private final org.apache.avro.Schema avroSchema;
+    private final String[] names;
+    // position of each field in the Avro schema, or -1 if the Avro schema doesn't have the field
+    private final int[] positions;
+    private final FieldConverter[] converters;
+
+    private RecordDecoder(Schema schema, org.apache.avro.Schema avroSchema) {
+      this.schema = schema;
+      this.avroSchema = avroSchema;
+      List<Schema.Field> fields = schema.getFields();
+      this.names = new String[fields.size()];
+      this.positions = new int[fields.size()];
+      this.converters = new FieldConverter[fields.size()];
+      for (int i = 0; i < names.length; i++) {
+        Schema.Field field = fields.get(i);
+        org.apache.avro.Schema.Field avroField = avroSchema.getField(field.getName());
+        names[i] = field.getName();
+        positions[i] = avroField == null ? -1 : avroField.pos();
+        converters[i] = compile(field.getSchema());
+      }
+    }
+
+    private StructuredRecord.Builder decode(GenericRecord genericRecord, @Nullable String skipField)
+      throws IOException {
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      for (int i = 0; i < names.length; i++) {
+        if (!names[i].equals(skipField)) {
+          Object value = positions[i] < 0 ? null : genericRecord.get(positions[i]);
+          builder.set(names[i], converters[i].convert(value));
+        }
+      }
+      return builder;
+    }
+  }
 }
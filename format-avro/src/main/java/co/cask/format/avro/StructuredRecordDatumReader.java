@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.format.avro;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.ResolvingDecoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes Avro binary data directly into {@link StructuredRecord StructuredRecords}, without creating an intermediate
+ * GenericRecord. Top level records are returned as builders so that callers can add fields that are not in the data,
+ * nested records are built.
+ *
+ * When the writer schema is set, it is projected onto the fields of the output schema so that the decoder skips over
+ * the values of all other fields. Values are decoded the same way as the {@link AvroToStructuredTransformer}, except
+ * that enum values are decoded into their symbol.
+ */
+public class StructuredRecordDatumReader extends GenericDatumReader<StructuredRecord.Builder> {
+  private final Schema outputSchema;
+  private final String skipField;
+  // output schema of every record schema of the projected reader schema
+  private final Map<org.apache.avro.Schema, RecordPlan> plans = new IdentityHashMap<>();
+  private final AvroToStructuredTransformer transformer = new AvroToStructuredTransformer();
+  private org.apache.avro.Schema writerSchema;
+
+  /**
+   * @param outputSchema schema of the records to read, or {@code null} to use the schema of the data
+   * @param skipField field of the output schema that is never read from the data, such as the path field of a
+   *                  source. If there is no output schema, it is added to the schema of the data as a string field.
+   */
+  public StructuredRecordDatumReader(@Nullable Schema outputSchema, @Nullable String skipField) {
+    this.outputSchema = outputSchema;
+    this.skipField = skipField;
+  }
+
+  @Override
+  public void setSchema(org.apache.avro.Schema writer) {
+    super.setSchema(writer);
+    if (writer != writerSchema) {
+      writerSchema = writer;
+      plans.clear();
+      try {
+        Schema schema = outputSchema == null ? withSkipField(transformer.convertSchema(writer)) : outputSchema;
+        setExpected(project(writer, schema, skipField));
+      } catch (IOException e) {
+        throw new IllegalArgumentException(String.format("Unable to convert Avro schema '%s'.", writer), e);
+      }
+    }
+  }
+
+  @Override
+  protected Object readRecord(Object old, org.apache.avro.Schema expected, ResolvingDecoder in) throws IOException {
+    RecordPlan plan = plans.get(expected);
+    if (plan == null) {
+      // a record that is not in the output schema, which is read with the schema of the data
+      plan = new RecordPlan(transformer.convertSchema(expected), expected.getFields(),
+                            Collections.nCopies(expected.getFields().size(), false));
+      plans.put(expected, plan);
+    }
+    StructuredRecord.Builder builder = StructuredRecord.builder(plan.schema);
+    for (org.apache.avro.Schema.Field field : in.readFieldOrder()) {
+      int pos = field.pos();
+      Object value = read(null, field.schema(), in);
+      builder.set(plan.names[pos], plan.stringify[pos] && value != null ? value.toString() : value);
+    }
+    // only the top level record is returned as a builder
+    return expected == getExpected() ? builder : builder.build();
+  }
+
+  @Override
+  protected Object readString(Object old, org.apache.avro.Schema expected, Decoder in) throws IOException {
+    return in.readString();
+  }
+
+  @Override
+  protected Object createEnum(String symbol, org.apache.avro.Schema schema) {
+    return symbol;
+  }
+
+  @Override
+  protected Object newArray(Object old, int size, org.apache.avro.Schema schema) {
+    return new ArrayList<>(size);
+  }
+
+  @Override
+  protected void addToArray(Object array, long pos, Object e) {
+    ((Collection<Object>) array).add(e);
+  }
+
+  private Schema withSkipField(Schema schema) {
+    if (skipField == null) {
+      return schema;
+    }
+    List<Schema.Field> fields = new ArrayList<>(schema.getFields().size() + 1);
+    fields.addAll(schema.getFields());
+    fields.add(Schema.Field.of(skipField, Schema.of(Schema.Type.STRING)));
+    return Schema.recordOf(schema.getRecordName(), fields);
+  }
+
+  /**
+   * Returns the schema of the given writer schema with only the fields that are in the given output schema,
+   * and records the output schema of every record schema in it.
+   */
+  private org.apache.avro.Schema project(org.apache.avro.Schema writer, Schema schema,
+                                         @Nullable String skipField) throws IOException {
+    Schema nonNullable = schema.isNullable() ? schema.getNonNullable() : schema;
+    switch (writer.getType()) {
+      case RECORD:
+        return projectRecord(writer, nonNullable, skipField);
+      case ARRAY:
+        if (nonNullable.getType() != Schema.Type.ARRAY) {
+          return writer;
+        }
+        return org.apache.avro.Schema.createArray(project(writer.getElementType(),
+                                                          nonNullable.getComponentSchema(), null));
+      case MAP:
+        if (nonNullable.getType() != Schema.Type.MAP) {
+          return writer;
+        }
+        return org.apache.avro.Schema.createMap(project(writer.getValueType(),
+                                                        nonNullable.getMapSchema().getValue(), null));
+      case UNION:
+        List<org.apache.avro.Schema> branches = new ArrayList<>(writer.getTypes().size());
+        for (org.apache.avro.Schema branch : writer.getTypes()) {
+          branches.add(project(branch, findBranch(nonNullable, branch), null));
+        }
+        return org.apache.avro.Schema.createUnion(branches);
+      default:
+        return writer;
+    }
+  }
+
+  private org.apache.avro.Schema projectRecord(org.apache.avro.Schema writer, Schema schema,
+                                               @Nullable String skipField) throws IOException {
+    if (schema.getType() != Schema.Type.RECORD) {
+      // the values are read with the schema of the data, as the AvroToStructuredTransformer would
+      schema = transformer.convertSchema(writer);
+    }
+    List<org.apache.avro.Schema.Field> fields = new ArrayList<>();
+    List<Boolean> stringify = new ArrayList<>();
+    for (org.apache.avro.Schema.Field writerField : writer.getFields()) {
+      Schema.Field field = schema.getField(writerField.name());
+      if (field == null || field.getName().equals(skipField)) {
+        continue;
+      }
+      Schema fieldSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+      fields.add(new org.apache.avro.Schema.Field(writerField.name(),
+                                                  project(writerField.schema(), field.getSchema(), null),
+                                                  writerField.doc(), writerField.defaultValue()));
+      stringify.add(fieldSchema.getType() == Schema.Type.STRING
+                      && writerField.schema().getType() != org.apache.avro.Schema.Type.STRING);
+    }
+    org.apache.avro.Schema projected = org.apache.avro.Schema.createRecord(writer.getName(), writer.getDoc(),
+                                                                           writer.getNamespace(), writer.isError());
+    projected.setFields(fields);
+    plans.put(projected, new RecordPlan(schema, fields, stringify));
+    return projected;
+  }
+
+  /**
+   * Returns the branch of a union output schema that matches the type of an Avro union branch.
+   */
+  private static Schema findBranch(Schema schema, org.apache.avro.Schema avroBranch) {
+    if (schema.getType() != Schema.Type.UNION) {
+      return schema;
+    }
+    for (Schema branch : schema.getUnionSchemas()) {
+      if (branch.getType().name().equals(avroBranch.getType().name())) {
+        return branch;
+      }
+    }
+    return schema;
+  }
+
+  /**
+   * Output schema and field names of a projected record schema, indexed by field position.
+   */
+  private static final class RecordPlan {
+    private final Schema schema;
+    private final String[] names;
+    // whether the value needs to be converted to a string, for string fields that are not strings in the data
+    private final boolean[] stringify;
+
+    private RecordPlan(Schema schema, List<org.apache.avro.Schema.Field> fields, List<Boolean> stringify) {
+      this.schema = schema;
+      this.names = new String[fields.size()];
+      this.stringify = new boolean[fields.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = fields.get(i).name();
+        this.stringify[i] = stringify.get(i);
+      }
+    }
+  }
+}
@@ -1,4 +1,3 @@
-
 /*
  * Copyright © 2018 Cask Data, Inc.
  *
@@ -19,26 +18,37 @@ package co.cask.format.avro;
 
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.hydrator.common.RecordConverter;
-import com.google.common.collect.Maps;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
- * Creates GenericRecords from StructuredRecords
+ * Creates GenericRecords from StructuredRecords.
+ *
+ * For each pair of output schema and input record schema, the Avro schema and the converters for the field values
+ * are computed once and cached, so that converting a record only needs positional access to the Avro fields.
  */
 public class StructuredToAvroTransformer extends RecordConverter<StructuredRecord, GenericRecord> {
 
-  private final Map<Integer, Schema> schemaCache;
+  private final Map<co.cask.cdap.api.data.schema.Schema, Schema> schemaCache;
+  private final Table<co.cask.cdap.api.data.schema.Schema, co.cask.cdap.api.data.schema.Schema,
+    RecordEncoder> encoders;
   private final co.cask.cdap.api.data.schema.Schema outputCDAPSchema;
+  private RecordEncoder lastEncoder;
 
   public StructuredToAvroTransformer(@Nullable co.cask.cdap.api.data.schema.Schema outputSchema) {
-    this.schemaCache = Maps.newHashMap();
+    this.schemaCache = new HashMap<>();
+    this.encoders = HashBasedTable.create();
     this.outputCDAPSchema = outputSchema;
   }
 
@@ -50,20 +60,7 @@ public class StructuredToAvroTransformer extends RecordConverter<StructuredRecor
   @Override
   public GenericRecord transform(StructuredRecord structuredRecord,
                                  co.cask.cdap.api.data.schema.Schema schema) throws IOException {
-    co.cask.cdap.api.data.schema.Schema structuredRecordSchema = structuredRecord.getSchema();
-
-    Schema avroSchema = getAvroSchema(schema);
-
-    GenericRecordBuilder recordBuilder = new GenericRecordBuilder(avroSchema);
-    for (Schema.Field field : avroSchema.getFields()) {
-      String fieldName = field.name();
-      co.cask.cdap.api.data.schema.Schema.Field schemaField = structuredRecordSchema.getField(fieldName);
-      if (schemaField == null) {
-        throw new IllegalArgumentException("Input record does not contain the " + fieldName + " field.");
-      }
-      recordBuilder.set(fieldName, convertField(structuredRecord.get(fieldName), schemaField.getSchema()));
-    }
-    return recordBuilder.build();
+    return getEncoder(schema, structuredRecord.getSchema()).encode(structuredRecord);
   }
 
   @Override
@@ -74,14 +71,110 @@ public class StructuredToAvroTransformer extends RecordConverter<StructuredRecor
     return ByteBuffer.wrap((byte[]) field);
   }
 
+  @Override
+  protected FieldConverter compileRecord(co.cask.cdap.api.data.schema.Schema recordSchema) {
+    return new FieldConverter() {
+      private RecordEncoder encoder;
+
+      @Override
+      public Object convert(@Nullable Object value) throws IOException {
+        StructuredRecord structuredRecord = (StructuredRecord) value;
+        co.cask.cdap.api.data.schema.Schema structuredRecordSchema = structuredRecord.getSchema();
+        if (encoder == null || encoder.inputSchema != structuredRecordSchema) {
+          encoder = getEncoder(recordSchema, structuredRecordSchema);
+        }
+        return encoder.encode(structuredRecord);
+      }
+    };
+  }
+
+  private RecordEncoder getEncoder(co.cask.cdap.api.data.schema.Schema schema,
+                                   co.cask.cdap.api.data.schema.Schema inputSchema) {
+    // records written by the same stage usually share their schema objects
+    RecordEncoder encoder = lastEncoder;
+    if (encoder != null && encoder.schema == schema && encoder.inputSchema == inputSchema) {
+      return encoder;
+    }
+    encoder = encoders.get(schema, inputSchema);
+    if (encoder == null) {
+      encoder = new RecordEncoder(schema, inputSchema);
+      encoders.put(schema, inputSchema, encoder);
+    }
+    lastEncoder = encoder;
+    return encoder;
+  }
+
   private Schema getAvroSchema(co.cask.cdap.api.data.schema.Schema cdapSchema) {
-    int hashCode = cdapSchema.hashCode();
-    if (schemaCache.containsKey(hashCode)) {
-      return schemaCache.get(hashCode);
-    } else {
-      Schema avroSchema = new Schema.Parser().parse(cdapSchema.toString());
-      schemaCache.put(hashCode, avroSchema);
-      return avroSchema;
+    Schema avroSchema = schemaCache.get(cdapSchema);
+    if (avroSchema == null) {
+      avroSchema = new Schema.Parser().parse(cdapSchema.toString());
+      schemaCache.put(cdapSchema, avroSchema);
+    }
+    return avroSchema;
+  }
+
+  /**
+   * Converts StructuredRecords of one schema into GenericRecords of the Avro schema of an output schema.
+   */
+  private final class RecordEncoder {
+    private final co.cask.cdap.api.data.schema.Schema schema;
+    private final co.cask.cdap.api.data.schema.Schema inputSchema;
+    private final Schema avroSchema;
+    private final List<Schema.Field> avroFields;
+    private final String[] names;
+    private final FieldConverter[] converters;
+    private final boolean[] acceptsNull;
+
+    private RecordEncoder(co.cask.cdap.api.data.schema.Schema schema,
+                          co.cask.cdap.api.data.schema.Schema inputSchema) {
+      this.schema = schema;
+      this.inputSchema = inputSchema;
+      this.avroSchema = getAvroSchema(schema);
+      this.avroFields = avroSchema.getFields();
+      this.names = new String[avroFields.size()];
+      this.converters = new FieldConverter[avroFields.size()];
+      this.acceptsNull = new boolean[avroFields.size()];
+      for (Schema.Field field : avroFields) {
+        String fieldName = field.name();
+        co.cask.cdap.api.data.schema.Schema.Field schemaField = inputSchema.getField(fieldName);
+        if (schemaField == null) {
+          throw new IllegalArgumentException("Input record does not contain the " + fieldName + " field.");
+        }
+        names[field.pos()] = fieldName;
+        converters[field.pos()] = compile(schemaField.getSchema());
+        acceptsNull[field.pos()] = acceptsNull(field);
+      }
+    }
+
+    private GenericRecord encode(StructuredRecord structuredRecord) throws IOException {
+      GenericData.Record record = new GenericData.Record(avroSchema);
+      for (int i = 0; i < names.length; i++) {
+        Object value = converters[i].convert(structuredRecord.get(names[i]));
+        if (value == null && !acceptsNull[i]) {
+          throw new AvroRuntimeException("Field " + avroFields.get(i) + " does not accept null values");
+        }
+        record.put(i, value);
+      }
+      return record;
+    }
+  }
+
+  /**
+   * Same check as the {@link org.apache.avro.generic.GenericRecordBuilder}, which allows null for fields
+   * with a null type, a union with null, or a default value.
+   */
+  private static boolean acceptsNull(Schema.Field field) {
+    Schema fieldSchema = field.schema();
+    if (fieldSchema.getType() == Schema.Type.NULL || field.defaultValue() != null) {
+      return true;
+    }
+    if (fieldSchema.getType() == Schema.Type.UNION) {
+      for (Schema unionSchema : fieldSchema.getTypes()) {
+        if (unionSchema.getType() == Schema.Type.NULL) {
+          return true;
+        }
+      }
     }
+    return false;
   }
 }
@@ -19,9 +19,12 @@ package co.cask.format.avro.input;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.format.avro.AvroToStructuredTransformer;
+import co.cask.format.avro.StructuredRecordDatumReader;
 import co.cask.hydrator.format.input.PathTrackingInputFormat;
+import org.apache.avro.file.DataFileReader;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.mapred.AvroKey;
+import org.apache.avro.mapred.FsInput;
 import org.apache.avro.mapreduce.AvroKeyInputFormat;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -36,14 +39,21 @@ import javax.annotation.Nullable;
 
 /**
  * Avro format that tracks which file each record was read from.
+ *
+ * If {@link #DIRECT_DECODE} is set to true in the configuration, the data is decoded directly into StructuredRecords
+ * with a {@link StructuredRecordDatumReader} instead of going through GenericRecords.
  */
 public class PathTrackingAvroInputFormat extends PathTrackingInputFormat {
+  public static final String DIRECT_DECODE = "avro.decode.direct";
 
   @Override
   protected RecordReader<NullWritable, StructuredRecord.Builder> createRecordReader(
     FileSplit split, TaskAttemptContext context,
     @Nullable String pathField, @Nullable Schema schema) throws IOException, InterruptedException {
 
+    if (context.getConfiguration().getBoolean(DIRECT_DECODE, false)) {
+      return new DirectAvroRecordReader(new StructuredRecordDatumReader(schema, pathField));
+    }
     RecordReader<AvroKey<GenericRecord>, NullWritable> delegate = (new AvroKeyInputFormat<GenericRecord>())
       .createRecordReader(split, context);
     return new AvroRecordReader(delegate, schema, pathField);
@@ -111,4 +121,65 @@ public class PathTrackingAvroInputFormat extends PathTrackingInputFormat {
       delegate.close();
     }
   }
+
+  /**
+   * Decodes StructuredRecords from the Avro data file of a split, in the same way as the
+   * {@link org.apache.avro.mapreduce.AvroKeyRecordReader}.
+   */
+  static class DirectAvroRecordReader extends RecordReader<NullWritable, StructuredRecord.Builder> {
+    private final StructuredRecordDatumReader datumReader;
+    private DataFileReader<StructuredRecord.Builder> fileReader;
+    private StructuredRecord.Builder value;
+    private long start;
+    private long end;
+
+    DirectAvroRecordReader(StructuredRecordDatumReader datumReader) {
+      this.datumReader = datumReader;
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+      FileSplit fileSplit = (FileSplit) split;
+      fileReader = new DataFileReader<>(new FsInput(fileSplit.getPath(), context.getConfiguration()), datumReader);
+      // start at the first sync point after the split start, and read until the first one after its end
+      fileReader.sync(fileSplit.getStart());
+      start = fileReader.previousSync();
+      end = fileSplit.getStart() + fileSplit.getLength();
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      if (fileReader.hasNext() && !fileReader.pastSync(end)) {
+        value = fileReader.next();
+        return true;
+      }
+      value = null;
+      return false;
+    }
+
+    @Override
+    public NullWritable getCurrentKey() {
+      return NullWritable.get();
+    }
+
+    @Override
+    public StructuredRecord.Builder getCurrentValue() {
+      return value;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      if (end == start) {
+        return 0.0f;
+      }
+      return Math.min(1.0f, (fileReader.previousSync() - start) / (float) (end - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (fileReader != null) {
+        fileReader.close();
+      }
+    }
+  }
 }
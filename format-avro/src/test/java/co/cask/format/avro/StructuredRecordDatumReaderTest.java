@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.format.avro;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link StructuredRecordDatumReader}, comparing the decoded records with the ones of the
+ * {@link AvroToStructuredTransformer}.
+ */
+public class StructuredRecordDatumReaderTest {
+
+  private static final Schema INNER = Schema.recordOf(
+    "inner",
+    Schema.Field.of("x", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("y", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  private static final Schema DATA_SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("i", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("l", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("unused", Schema.arrayOf(INNER)),
+    Schema.Field.of("d", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("s", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("bytes", Schema.of(Schema.Type.BYTES)),
+    Schema.Field.of("strings", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("map", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("inner", Schema.nullableOf(INNER)),
+    Schema.Field.of("inners", Schema.arrayOf(INNER)));
+
+  @Test
+  public void testSameAsTransformer() throws IOException {
+    byte[] data = write(ImmutableList.of(createRecord(0), createRecord(1), createRecord(2)));
+
+    // read all fields, a projection that changes the field order, and a projection of nested records
+    Schema innerY = Schema.recordOf("inner", Schema.Field.of("y", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    Schema innerX = Schema.recordOf("inner", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    List<Schema> schemas = ImmutableList.of(
+      DATA_SCHEMA,
+      Schema.recordOf("record",
+                      Schema.Field.of("map", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.LONG))),
+                      Schema.Field.of("s", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                      Schema.Field.of("i", Schema.of(Schema.Type.INT)),
+                      Schema.Field.of("missing", Schema.nullableOf(Schema.of(Schema.Type.STRING)))),
+      Schema.recordOf("record",
+                      Schema.Field.of("i", Schema.of(Schema.Type.STRING)),
+                      Schema.Field.of("inner", Schema.nullableOf(innerY)),
+                      Schema.Field.of("inners", Schema.arrayOf(innerX))));
+
+    AvroToStructuredTransformer transformer = new AvroToStructuredTransformer();
+    for (Schema schema : schemas) {
+      List<StructuredRecord> expected = new ArrayList<>();
+      try (DataFileReader<GenericRecord> reader =
+             new DataFileReader<>(new SeekableByteArrayInput(data), new GenericDatumReader<GenericRecord>())) {
+        for (GenericRecord record : reader) {
+          expected.add(transformer.transform(record, schema));
+        }
+      }
+      List<StructuredRecord> actual = new ArrayList<>();
+      try (DataFileReader<StructuredRecord.Builder> reader =
+             new DataFileReader<>(new SeekableByteArrayInput(data), new StructuredRecordDatumReader(schema, null))) {
+        for (StructuredRecord.Builder builder : reader) {
+          actual.add(builder.build());
+        }
+      }
+      Assert.assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void testSchemaFromData() throws IOException {
+    byte[] data = write(ImmutableList.of(createRecord(0)));
+    try (DataFileReader<StructuredRecord.Builder> reader =
+           new DataFileReader<>(new SeekableByteArrayInput(data), new StructuredRecordDatumReader(null, "path"))) {
+      StructuredRecord record = reader.next().set("path", "/a/b").build();
+      Assert.assertEquals(DATA_SCHEMA.getFields().size() + 1, record.getSchema().getFields().size());
+      Assert.assertEquals("/a/b", record.get("path"));
+      Assert.assertEquals("s0", record.get("s"));
+      Assert.assertEquals(ImmutableList.of("a", "b"), record.get("strings"));
+    }
+  }
+
+  private static GenericRecord createRecord(int i) {
+    org.apache.avro.Schema avroSchema = toAvro(DATA_SCHEMA);
+    org.apache.avro.Schema avroInner = toAvro(INNER);
+    GenericRecord inner = new GenericRecordBuilder(avroInner).set("x", i).set("y", i % 2 == 0 ? null : "y").build();
+    return new GenericRecordBuilder(avroSchema)
+      .set("i", i)
+      .set("l", i % 2 == 0 ? null : 10000000000L * i)
+      .set("unused", ImmutableList.of(inner, inner))
+      .set("d", i * 0.5d)
+      .set("s", i % 2 == 0 ? "s" + i : null)
+      .set("bytes", ByteBuffer.wrap(new byte[] { (byte) i, 2, 3 }))
+      .set("strings", ImmutableList.of("a", "b"))
+      .set("map", ImmutableMap.of("k" + i, (long) i))
+      .set("inner", i == 1 ? null : inner)
+      .set("inners", ImmutableList.of(inner))
+      .build();
+  }
+
+  private static byte[] write(List<GenericRecord> records) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>())) {
+      writer.create(toAvro(DATA_SCHEMA), bytes);
+      for (GenericRecord record : records) {
+        writer.append(record);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static org.apache.avro.Schema toAvro(Schema schema) {
+    return new org.apache.avro.Schema.Parser().parse(schema.toString());
+  }
+}
@@ -18,6 +18,7 @@ package co.cask.hydrator.format;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
@@ -51,6 +52,20 @@ public class RegexPathFilter extends Configured implements PathFilter {
     }
   }
 
+  /**
+   * Same as {@link #accept(Path)}, but uses the given status instead of looking up the path in the FileSystem.
+   */
+  public boolean accept(FileStatus status) {
+    if (status.isSymlink()) {
+      return accept(status.getPath());
+    } else if (status.isDirectory()) {
+      return true;
+    } else if (status.isFile()) {
+      return pattern == null || pattern.matcher(status.getPath().toUri().getPath()).matches();
+    }
+    return false;
+  }
+
   @Override
   public void setConf(Configuration conf) {
     super.setConf(conf);
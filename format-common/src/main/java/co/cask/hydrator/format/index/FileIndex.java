@@ -0,0 +1,362 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.format.index;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Charsets;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.bloom.Key;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Index of a single output file, with the minimum and maximum value of every simple column and a bloom filter
+ * for a number of key columns. The index is written next to the file it describes as a hidden sidecar file,
+ * so that it is ignored by input formats but can be used to skip the file when planning the splits of a read.
+ */
+public final class FileIndex {
+  private static final int VERSION = 2;
+  // the bloom filter starts with room for 10000 keys, and grows with the number of keys while its false positive
+  // rate stays below 1%
+  private static final int BLOOM_INITIAL_CAPACITY = 10000;
+  private static final double BLOOM_ERROR_RATE = 0.01d;
+
+  private final Set<String> bloomFilterFields;
+  private final Map<String, Column> columns;
+  // columns that can't be indexed, because they are not of a simple type or their type changed between records
+  private final Set<String> skippedColumns;
+  private long numRecords;
+  private long fileLength;
+  private Schema schema;
+  private List<Schema.Field> indexedFields;
+
+  /**
+   * Creates an empty index.
+   *
+   * @param bloomFilterFields the fields to add bloom filters for
+   */
+  public FileIndex(Collection<String> bloomFilterFields) {
+    this.bloomFilterFields = new HashSet<>(bloomFilterFields);
+    this.columns = new LinkedHashMap<>();
+    this.skippedColumns = new HashSet<>();
+  }
+
+  /**
+   * Returns the path of the index of the given file.
+   */
+  public static Path getIndexPath(Path file) {
+    return new Path(file.getParent(), "." + file.getName() + ".index");
+  }
+
+  /**
+   * Returns whether a field of the given schema can be indexed.
+   */
+  public static boolean isIndexable(Schema schema) {
+    return getIndexedType(schema) != null;
+  }
+
+  /**
+   * Adds the values of a record to the index.
+   */
+  public void add(StructuredRecord record) {
+    numRecords++;
+    // records usually share the same schema instance, so the indexed fields only need to be looked up once
+    if (record.getSchema() != schema) {
+      schema = record.getSchema();
+      indexedFields = getIndexedFields(schema);
+    }
+    for (Schema.Field field : indexedFields) {
+      Column column = columns.get(field.getName());
+      if (column != null) {
+        column.add(record.get(field.getName()));
+      }
+    }
+  }
+
+  /**
+   * Returns the number of records in the file.
+   */
+  public long getNumRecords() {
+    return numRecords;
+  }
+
+  /**
+   * Returns the length of the file at the time the index was written, which is used to detect stale indexes.
+   */
+  public long getFileLength() {
+    return fileLength;
+  }
+
+  /**
+   * Returns the index of the given column, or null if the column is not indexed.
+   */
+  @Nullable
+  Column getColumn(String name) {
+    return columns.get(name);
+  }
+
+  /**
+   * Writes the index.
+   *
+   * @param out the output to write to
+   * @param fileLength the length of the file that the index describes
+   */
+  public void write(DataOutput out, long fileLength) throws IOException {
+    out.writeInt(VERSION);
+    out.writeLong(numRecords);
+    out.writeLong(fileLength);
+    out.writeInt(columns.size());
+    for (Map.Entry<String, Column> entry : columns.entrySet()) {
+      Column column = entry.getValue();
+      Text.writeString(out, entry.getKey());
+      Text.writeString(out, column.type.name());
+      out.writeBoolean(column.min != null);
+      if (column.min != null) {
+        column.writeValue(out, column.min);
+        column.writeValue(out, column.max);
+      }
+      out.writeBoolean(column.bloomFilter != null);
+      if (column.bloomFilter != null) {
+        column.bloomFilter.write(out);
+      }
+    }
+  }
+
+  /**
+   * Reads an index that was written with {@link #write(DataOutput, long)}.
+   */
+  public static FileIndex read(DataInput in) throws IOException {
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format("Unsupported index version %d.", version));
+    }
+    FileIndex index = new FileIndex(new HashSet<>());
+    index.numRecords = in.readLong();
+    index.fileLength = in.readLong();
+    int numColumns = in.readInt();
+    for (int i = 0; i < numColumns; i++) {
+      String name = Text.readString(in);
+      Schema.Type type;
+      try {
+        type = Schema.Type.valueOf(Text.readString(in));
+      } catch (IllegalArgumentException e) {
+        throw new IOException(String.format("Invalid type for column '%s' in the index.", name), e);
+      }
+      Column column = new Column(type, false);
+      if (in.readBoolean()) {
+        column.min = column.readValue(in);
+        column.max = column.readValue(in);
+      }
+      if (in.readBoolean()) {
+        column.bloomFilter = new ScalableBloomFilter();
+        column.bloomFilter.readFields(in);
+      }
+      index.columns.put(name, column);
+    }
+    return index;
+  }
+
+  private List<Schema.Field> getIndexedFields(Schema schema) {
+    List<Schema.Field> fields = new ArrayList<>();
+    for (Schema.Field field : schema.getFields()) {
+      String name = field.getName();
+      if (skippedColumns.contains(name)) {
+        continue;
+      }
+      Schema.Type type = getIndexedType(field.getSchema());
+      Column column = columns.get(name);
+      if (type == null || (column != null && column.type != type)) {
+        // the values so far can't be compared with the ones that follow, so the column can't be indexed at all
+        skippedColumns.add(name);
+        columns.remove(name);
+        continue;
+      }
+      if (column == null) {
+        columns.put(name, new Column(type, bloomFilterFields.contains(name)));
+      }
+      fields.add(field);
+    }
+    return fields;
+  }
+
+  @Nullable
+  private static Schema.Type getIndexedType(Schema schema) {
+    Schema nonNullable = schema.isNullable() ? schema.getNonNullable() : schema;
+    switch (nonNullable.getType()) {
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case STRING:
+        return nonNullable.getType();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Minimum and maximum value of a column, and the bloom filter of its values if the column is a key.
+   */
+  static final class Column {
+    private final Schema.Type type;
+    private Comparable<Object> min;
+    private Comparable<Object> max;
+    private ScalableBloomFilter bloomFilter;
+
+    private Column(Schema.Type type, boolean withBloomFilter) {
+      this.type = type;
+      if (withBloomFilter) {
+        bloomFilter = new ScalableBloomFilter(BLOOM_INITIAL_CAPACITY, BLOOM_ERROR_RATE);
+      }
+    }
+
+    /**
+     * Returns whether the column contains any non-null value.
+     */
+    boolean hasValues() {
+      return min != null;
+    }
+
+    @Nullable
+    Comparable<Object> getMin() {
+      return min;
+    }
+
+    @Nullable
+    Comparable<Object> getMax() {
+      return max;
+    }
+
+    /**
+     * Returns whether the column may contain the given value. Values that are not in the bloom filter are
+     * definitely not in the column, while values that are in it might be.
+     */
+    boolean mightContain(Object value) {
+      return bloomFilter == null || bloomFilter.membershipTest(toKey(value));
+    }
+
+    /**
+     * Parses a value of the column type from a string, returning null if the string is not a valid value.
+     */
+    @Nullable
+    Comparable<Object> parse(String value) {
+      try {
+        switch (type) {
+          case INT:
+            return cast(Integer.parseInt(value));
+          case LONG:
+            return cast(Long.parseLong(value));
+          case FLOAT:
+            return cast(Float.parseFloat(value));
+          case DOUBLE:
+            return cast(Double.parseDouble(value));
+          default:
+            return cast(value);
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    private void add(@Nullable Object value) {
+      if (value == null) {
+        return;
+      }
+      Comparable<Object> comparable = normalize(value);
+      if (min == null || comparable.compareTo(min) < 0) {
+        min = comparable;
+      }
+      if (max == null || comparable.compareTo(max) > 0) {
+        max = comparable;
+      }
+      if (bloomFilter != null) {
+        bloomFilter.add(toKey(comparable));
+      }
+    }
+
+    private Comparable<Object> normalize(Object value) {
+      switch (type) {
+        case INT:
+          return cast(((Number) value).intValue());
+        case LONG:
+          return cast(((Number) value).longValue());
+        case FLOAT:
+          return cast(((Number) value).floatValue());
+        case DOUBLE:
+          return cast(((Number) value).doubleValue());
+        default:
+          return cast(value.toString());
+      }
+    }
+
+    private void writeValue(DataOutput out, Object value) throws IOException {
+      switch (type) {
+        case INT:
+          out.writeInt((Integer) value);
+          break;
+        case LONG:
+          out.writeLong((Long) value);
+          break;
+        case FLOAT:
+          out.writeFloat((Float) value);
+          break;
+        case DOUBLE:
+          out.writeDouble((Double) value);
+          break;
+        default:
+          Text.writeString(out, (String) value);
+      }
+    }
+
+    private Comparable<Object> readValue(DataInput in) throws IOException {
+      switch (type) {
+        case INT:
+          return cast(in.readInt());
+        case LONG:
+          return cast(in.readLong());
+        case FLOAT:
+          return cast(in.readFloat());
+        case DOUBLE:
+          return cast(in.readDouble());
+        default:
+          return cast(Text.readString(in));
+      }
+    }
+
+    private static Key toKey(Object value) {
+      return new Key(value.toString().getBytes(Charsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> cast(Comparable<?> value) {
+      return (Comparable<Object>) value;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.format.index;
+
+import com.google.common.base.Splitter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * A filter on the values of the records in a file, which is used to skip files whose {@link FileIndex} shows
+ * that they can't contain a matching record. The filter is a comma separated list of conditions of the form
+ * 'field operator value', where the operator is one of '=', '<', '<=', '>' or '>=', all of which must be true
+ * for a record to match. Values may be quoted with single quotes.
+ *
+ * The filter is only used to skip files. Files without an index are always read, and the records of files that
+ * are read are not filtered.
+ */
+public final class IndexFilter {
+  public static final String CONF_KEY = "file.index.filter";
+  private static final Logger LOG = LoggerFactory.getLogger(IndexFilter.class);
+  private static final Pattern CONDITION = Pattern.compile("\\s*([^<>=\\s]+)\\s*(<=|>=|=|<|>)\\s*(.*?)\\s*");
+
+  private final List<Condition> conditions;
+
+  private IndexFilter(List<Condition> conditions) {
+    this.conditions = conditions;
+  }
+
+  /**
+   * Parses a filter.
+   *
+   * @throws IllegalArgumentException if the filter is invalid
+   */
+  public static IndexFilter parse(String filter) {
+    List<Condition> conditions = new ArrayList<>();
+    for (String condition : Splitter.on(',').omitEmptyStrings().split(filter)) {
+      Matcher matcher = CONDITION.matcher(condition);
+      if (!matcher.matches()) {
+        throw new IllegalArgumentException(String.format(
+          "Invalid filter condition '%s'. Conditions must be of the form 'field operator value', where the "
+            + "operator is one of '=', '<', '<=', '>' or '>='.", condition.trim()));
+      }
+      String value = matcher.group(3);
+      if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+        value = value.substring(1, value.length() - 1);
+      }
+      conditions.add(new Condition(matcher.group(1), Operator.of(matcher.group(2)), value));
+    }
+    if (conditions.isEmpty()) {
+      throw new IllegalArgumentException(String.format("Filter '%s' does not contain any condition.", filter));
+    }
+    return new IndexFilter(conditions);
+  }
+
+  /**
+   * Sets the filter in the given configuration, so that the input files of the job are filtered with it.
+   */
+  public static void configure(Configuration conf, String filter) {
+    parse(filter);
+    conf.set(CONF_KEY, filter);
+  }
+
+  /**
+   * Returns the filter in the given configuration, or null if no filter is configured.
+   */
+  @Nullable
+  public static IndexFilter fromConf(Configuration conf) {
+    String filter = conf.get(CONF_KEY);
+    return filter == null || filter.trim().isEmpty() ? null : parse(filter);
+  }
+
+  /**
+   * Returns the fields that the filter has conditions on.
+   */
+  public List<String> getFields() {
+    List<String> fields = new ArrayList<>(conditions.size());
+    for (Condition condition : conditions) {
+      fields.add(condition.field);
+    }
+    return Collections.unmodifiableList(fields);
+  }
+
+  /**
+   * Returns whether the given file might contain a record that matches the filter, based on its index. Returns true
+   * if the file does not have an index, or if its index can't be read or was written for a different version of
+   * the file.
+   */
+  public boolean mightMatch(FileSystem fs, FileStatus file) {
+    Path indexPath = FileIndex.getIndexPath(file.getPath());
+    FileIndex index;
+    try (FSDataInputStream in = fs.open(indexPath)) {
+      index = FileIndex.read(in);
+    } catch (FileNotFoundException e) {
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Could not read the index '{}'. The file will be read.", indexPath, e);
+      return true;
+    }
+    if (index.getFileLength() != file.getLen()) {
+      LOG.debug("Ignoring the index '{}', since it was written for a file of a different length.", indexPath);
+      return true;
+    }
+    return mightMatch(index);
+  }
+
+  /**
+   * Returns whether a file with the given index might contain a record that matches the filter.
+   */
+  public boolean mightMatch(FileIndex index) {
+    if (index.getNumRecords() == 0) {
+      return false;
+    }
+    for (Condition condition : conditions) {
+      FileIndex.Column column = index.getColumn(condition.field);
+      if (column == null) {
+        continue;
+      }
+      Comparable<Object> value = column.parse(condition.value);
+      if (value == null) {
+        // the value can't be compared with the values of the column, so the index can't tell anything
+        continue;
+      }
+      if (!column.hasValues()) {
+        // null values never satisfy a condition
+        return false;
+      }
+      int minComparison = value.compareTo(column.getMin());
+      int maxComparison = value.compareTo(column.getMax());
+      switch (condition.operator) {
+        case EQ:
+          if (minComparison < 0 || maxComparison > 0 || !column.mightContain(value)) {
+            return false;
+          }
+          break;
+        case LT:
+          if (minComparison <= 0) {
+            return false;
+          }
+          break;
+        case LE:
+          if (minComparison < 0) {
+            return false;
+          }
+          break;
+        case GT:
+          if (maxComparison >= 0) {
+            return false;
+          }
+          break;
+        case GE:
+          if (maxComparison > 0) {
+            return false;
+          }
+          break;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Comparison operator of a condition.
+   */
+  private enum Operator {
+    EQ("="),
+    LT("<"),
+    LE("<="),
+    GT(">"),
+    GE(">=");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+      this.symbol = symbol;
+    }
+
+    private static Operator of(String symbol) {
+      for (Operator operator : values()) {
+        if (operator.symbol.equals(symbol)) {
+          return operator;
+        }
+      }
+      throw new IllegalArgumentException(String.format("Invalid operator '%s'.", symbol));
+    }
+  }
+
+  /**
+   * A condition on the value of a single field.
+   */
+  private static final class Condition {
+    private final String field;
+    private final Operator operator;
+    private final String value;
+
+    private Condition(String field, Operator operator, String value) {
+      this.field = field;
+      this.operator = operator;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.format.index;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wraps a file output format to write a {@link FileIndex} next to each file written by a task. The index is
+ * written to the work directory of the task before the task is committed, so it is committed together with the
+ * file it describes.
+ */
+public class IndexingOutputFormat extends OutputFormat<NullWritable, StructuredRecord> {
+  static final String DELEGATE = "file.index.delegate.output.format";
+  static final String BLOOM_FILTER_FIELDS = "file.index.bloom.filter.fields";
+  private static final Logger LOG = LoggerFactory.getLogger(IndexingOutputFormat.class);
+
+  private OutputFormat<NullWritable, StructuredRecord> delegate;
+
+  /**
+   * Returns the configuration that makes this format write through the given output format.
+   *
+   * @param delegate the class name of the output format that writes the files
+   * @param bloomFilterFields the fields to add bloom filters to the index for
+   */
+  public static Map<String, String> getConfiguration(String delegate, Collection<String> bloomFilterFields) {
+    Map<String, String> configuration = new HashMap<>();
+    configuration.put(DELEGATE, delegate);
+    configuration.put(BLOOM_FILTER_FIELDS, Joiner.on(',').join(bloomFilterFields));
+    return configuration;
+  }
+
+  @Override
+  public RecordWriter<NullWritable, StructuredRecord> getRecordWriter(TaskAttemptContext context)
+    throws IOException, InterruptedException {
+    Configuration conf = context.getConfiguration();
+    List<String> bloomFilterFields = new ArrayList<>();
+    Iterables.addAll(bloomFilterFields,
+                     Splitter.on(',').trimResults().omitEmptyStrings().split(conf.get(BLOOM_FILTER_FIELDS, "")));
+    OutputFormat<NullWritable, StructuredRecord> outputFormat = getDelegate(conf);
+    return new IndexingRecordWriter(outputFormat, outputFormat.getRecordWriter(context),
+                                    new FileIndex(bloomFilterFields));
+  }
+
+  @Override
+  public void checkOutputSpecs(JobContext context) throws IOException, InterruptedException {
+    getDelegate(context.getConfiguration()).checkOutputSpecs(context);
+  }
+
+  @Override
+  public OutputCommitter getOutputCommitter(TaskAttemptContext context) throws IOException, InterruptedException {
+    return getDelegate(context.getConfiguration()).getOutputCommitter(context);
+  }
+
+  @SuppressWarnings("unchecked")
+  private OutputFormat<NullWritable, StructuredRecord> getDelegate(Configuration conf) throws IOException {
+    // file output formats keep their committer, which knows the work directory, so the same delegate has to be used
+    if (delegate == null) {
+      try {
+        delegate = (OutputFormat<NullWritable, StructuredRecord>)
+          ReflectionUtils.newInstance(conf.getClassByName(conf.get(DELEGATE)), conf);
+      } catch (ClassNotFoundException e) {
+        throw new IOException(String.format("Could not load the output format '%s'.", conf.get(DELEGATE)), e);
+      }
+    }
+    return delegate;
+  }
+
+  /**
+   * Adds every record to the index, and writes the index for the files of the task when it is closed.
+   */
+  private static final class IndexingRecordWriter extends RecordWriter<NullWritable, StructuredRecord> {
+    private final OutputFormat<NullWritable, StructuredRecord> outputFormat;
+    private final RecordWriter<NullWritable, StructuredRecord> delegate;
+    private final FileIndex index;
+
+    private IndexingRecordWriter(OutputFormat<NullWritable, StructuredRecord> outputFormat,
+                                 RecordWriter<NullWritable, StructuredRecord> delegate, FileIndex index) {
+      this.outputFormat = outputFormat;
+      this.delegate = delegate;
+      this.index = index;
+    }
+
+    @Override
+    public void write(NullWritable key, StructuredRecord value) throws IOException, InterruptedException {
+      delegate.write(key, value);
+      index.add(value);
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+      delegate.close(context);
+
+      OutputCommitter committer = outputFormat.getOutputCommitter(context);
+      if (!(committer instanceof FileOutputCommitter)) {
+        LOG.warn("Not writing file indexes, since the output committer {} does not write files.",
+                 committer.getClass().getName());
+        return;
+      }
+      Path workPath = ((FileOutputCommitter) committer).getWorkPath();
+      if (workPath == null) {
+        return;
+      }
+      FileSystem fs = workPath.getFileSystem(context.getConfiguration());
+      if (!fs.exists(workPath)) {
+        return;
+      }
+      writeIndexes(fs, workPath);
+    }
+
+    /**
+     * Writes the index next to every file in the given directory and its subdirectories, since output formats
+     * such as those that partition their output write files below the work directory. Every file in the work
+     * directory was written by this task, and the index covers all of its records.
+     */
+    private void writeIndexes(FileSystem fs, Path dir) throws IOException {
+      for (FileStatus status : fs.listStatus(dir)) {
+        String name = status.getPath().getName();
+        if (name.startsWith("_") || name.startsWith(".")) {
+          continue;
+        }
+        if (status.isDirectory()) {
+          writeIndexes(fs, status.getPath());
+          continue;
+        }
+        try (FSDataOutputStream out = fs.create(FileIndex.getIndexPath(status.getPath()), true)) {
+          index.write(out, status.getLen());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.format.index;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bloom filter that grows with the number of keys added to it, while its false positive rate stays bounded.
+ * Keys are added to the last of a list of bloom filters, and a new one is started when it is full. Every new filter
+ * holds twice as many keys as the one before, with half its false positive rate, so the false positive rates of all
+ * of them add up to at most twice the rate of the first one, however many keys are added. The first filter is
+ * sized for a quarter of the error rate of the whole filter, which leaves room for hash functions that are not
+ * ideal.
+ */
+final class ScalableBloomFilter implements Writable {
+  private int initialCapacity;
+  private double errorRate;
+  private final List<BloomFilter> filters;
+  // number of keys in the last filter
+  private int numKeys;
+
+  /**
+   * Creates an empty filter.
+   *
+   * @param initialCapacity the number of keys of the first filter
+   * @param errorRate the false positive rate that the whole filter stays below
+   */
+  ScalableBloomFilter(int initialCapacity, double errorRate) {
+    this.initialCapacity = initialCapacity;
+    this.errorRate = errorRate;
+    this.filters = new ArrayList<>();
+  }
+
+  /**
+   * Creates a filter to read with {@link #readFields(DataInput)}.
+   */
+  ScalableBloomFilter() {
+    this(0, 0d);
+  }
+
+  void add(Key key) {
+    if (filters.isEmpty() || numKeys >= getCapacity(filters.size() - 1)) {
+      filters.add(createFilter(filters.size()));
+      numKeys = 0;
+    }
+    filters.get(filters.size() - 1).add(key);
+    numKeys++;
+  }
+
+  /**
+   * Returns whether the key might have been added. Keys that were added are always found, while other keys are
+   * found with a probability below the error rate.
+   */
+  boolean membershipTest(Key key) {
+    for (BloomFilter filter : filters) {
+      if (filter.membershipTest(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(initialCapacity);
+    out.writeDouble(errorRate);
+    out.writeInt(numKeys);
+    out.writeInt(filters.size());
+    for (BloomFilter filter : filters) {
+      filter.write(out);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    initialCapacity = in.readInt();
+    errorRate = in.readDouble();
+    numKeys = in.readInt();
+    int numFilters = in.readInt();
+    filters.clear();
+    for (int i = 0; i < numFilters; i++) {
+      BloomFilter filter = new BloomFilter();
+      filter.readFields(in);
+      filters.add(filter);
+    }
+  }
+
+  private long getCapacity(int filter) {
+    return (long) initialCapacity << filter;
+  }
+
+  /**
+   * Creates the filter with the given position, sized for its capacity and false positive rate.
+   */
+  private BloomFilter createFilter(int filter) {
+    long capacity = getCapacity(filter);
+    double rate = errorRate / 4 / (1L << filter);
+    // the optimal number of bits is -n * ln(p) / ln(2)^2, with ln(2) * bits / n hash functions
+    int vectorSize = (int) Math.ceil(-capacity * Math.log(rate) / (Math.log(2) * Math.log(2)));
+    int numHashes = Math.max(1, (int) Math.round(Math.log(2) * vectorSize / capacity));
+    return new BloomFilter(vectorSize, numHashes, Hash.MURMUR_HASH);
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.format.input;
+
+import co.cask.hydrator.format.RegexPathFilter;
+import co.cask.hydrator.format.index.IndexFilter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.mapred.InvalidInputException;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.security.TokenCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the input files of a job the same way as {@link FileInputFormat#listStatus(JobContext)}, but lists
+ * directories and looks up the block locations of files with multiple threads. All returned statuses are
+ * {@link LocatedFileStatus LocatedFileStatuses}, so that split computation doesn't need to look up block locations
+ * one file at a time.
+ *
+ * A listing can also be done ahead of time with {@link #prefetch(Job)}, which caches it in this JVM for the
+ * split computation of the job.
+ *
+ * If an {@link IndexFilter} is configured, files whose index shows that they don't contain any matching record are
+ * left out of the listing.
+ */
+public final class InputFileLister {
+  /**
+   * Number of threads to use for listing, which is the same property as later Hadoop versions use.
+   */
+  public static final String NUM_THREADS = "mapreduce.input.fileinputformat.list-status.num-threads";
+  static final String LISTING_ID = "path.tracking.listing.id";
+  private static final int DEFAULT_NUM_THREADS = 16;
+  private static final Logger LOG = LoggerFactory.getLogger(InputFileLister.class);
+  private static final PathFilter HIDDEN_FILE_FILTER = path -> {
+    String name = path.getName();
+    return !name.startsWith("_") && !name.startsWith(".");
+  };
+  // listings done by prefetch, only kept until they are used or for a few minutes
+  private static final Cache<String, Listing> LISTINGS = CacheBuilder.newBuilder()
+    .expireAfterWrite(10, TimeUnit.MINUTES)
+    .softValues()
+    .build();
+
+  private InputFileLister() {
+    // no-op
+  }
+
+  /**
+   * Lists the input files of the given job and caches the listing, so that {@link #listStatus(JobContext)} can
+   * return it if it is called in the same JVM with the same input paths.
+   */
+  public static void prefetch(Job job) throws IOException {
+    Configuration conf = job.getConfiguration();
+    List<FileStatus> files = list(job);
+    String id = UUID.randomUUID().toString();
+    LISTINGS.put(id, new Listing(conf.get(FileInputFormat.INPUT_DIR), files));
+    conf.set(LISTING_ID, id);
+  }
+
+  /**
+   * Returns the input files of the given job, from the listing cached by {@link #prefetch(Job)} if there is one.
+   */
+  public static List<FileStatus> listStatus(JobContext job) throws IOException {
+    Configuration conf = job.getConfiguration();
+    String id = conf.get(LISTING_ID);
+    Listing listing = id == null ? null : LISTINGS.asMap().remove(id);
+    if (listing != null && listing.inputDirs.equals(conf.get(FileInputFormat.INPUT_DIR))) {
+      LOG.debug("Using the cached listing of {} input files.", listing.files.size());
+      return listing.files;
+    }
+    return list(job);
+  }
+
+  private static List<FileStatus> list(JobContext job) throws IOException {
+    Configuration conf = job.getConfiguration();
+    Path[] dirs = FileInputFormat.getInputPaths(job);
+    if (dirs.length == 0) {
+      throw new IOException("No input paths specified in job");
+    }
+    TokenCache.obtainTokensForNamenodes(job.getCredentials(), dirs, conf);
+    boolean recursive = FileInputFormat.getInputDirRecursive(job);
+    PathFilter jobFilter = FileInputFormat.getInputPathFilter(job);
+    PathFilter inputFilter = path -> HIDDEN_FILE_FILTER.accept(path) && (jobFilter == null || jobFilter.accept(path));
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, conf.getInt(NUM_THREADS, DEFAULT_NUM_THREADS)),
+      new ThreadFactoryBuilder().setNameFormat("input-file-lister-%d").setDaemon(true).build());
+    try {
+      List<IOException> errors = new ArrayList<>();
+      Map<Path, FileSystem> fileSystems = new HashMap<>();
+      List<FileStatus> matches = new ArrayList<>();
+      for (Path dir : dirs) {
+        FileSystem fs = dir.getFileSystem(conf);
+        FileStatus[] globMatches = fs.globStatus(dir, inputFilter);
+        if (globMatches == null) {
+          errors.add(new IOException("Input path does not exist: " + dir));
+        } else if (globMatches.length == 0) {
+          errors.add(new IOException("Input Pattern " + dir + " matches 0 files"));
+        } else {
+          for (FileStatus match : globMatches) {
+            matches.add(match);
+            fileSystems.put(match.getPath(), fs);
+          }
+        }
+      }
+      if (!errors.isEmpty()) {
+        throw new InvalidInputException(errors);
+      }
+
+      // list all directories, one level at a time
+      Map<Path, Future<List<LocatedFileStatus>>> listings = new HashMap<>();
+      List<FileStatus> level = new ArrayList<>();
+      for (FileStatus match : matches) {
+        if (match.isDirectory()) {
+          level.add(match);
+        }
+      }
+      while (!level.isEmpty()) {
+        Map<Path, Future<List<LocatedFileStatus>>> levelListings = new HashMap<>();
+        for (FileStatus dir : level) {
+          FileSystem fs = fileSystems.get(dir.getPath());
+          levelListings.put(dir.getPath(), executor.submit(() -> listDirectory(fs, dir.getPath(), jobFilter)));
+        }
+        List<FileStatus> nextLevel = new ArrayList<>();
+        if (recursive) {
+          for (Map.Entry<Path, Future<List<LocatedFileStatus>>> entry : levelListings.entrySet()) {
+            FileSystem fs = fileSystems.get(entry.getKey());
+            for (LocatedFileStatus status : getUnchecked(entry.getValue())) {
+              if (status.isDirectory()) {
+                nextLevel.add(status);
+                fileSystems.put(status.getPath(), fs);
+              }
+            }
+          }
+        }
+        listings.putAll(levelListings);
+        level = nextLevel;
+      }
+
+      // files that are matched directly by the input paths don't have their block locations yet
+      Map<Path, Future<LocatedFileStatus>> locatedMatches = new HashMap<>();
+      for (FileStatus match : matches) {
+        if (!match.isDirectory() && !(match instanceof LocatedFileStatus)) {
+          FileSystem fs = fileSystems.get(match.getPath());
+          locatedMatches.put(match.getPath(), executor.submit(
+            () -> new LocatedFileStatus(match, fs.getFileBlockLocations(match, 0, match.getLen()))));
+        }
+      }
+
+      // add the files in the same order as the FileInputFormat
+      List<FileStatus> result = new ArrayList<>();
+      for (FileStatus match : matches) {
+        if (match.isDirectory()) {
+          addListing(result, listings, match.getPath(), recursive);
+        } else if (locatedMatches.containsKey(match.getPath())) {
+          result.add(getUnchecked(locatedMatches.get(match.getPath())));
+        } else {
+          result.add(match);
+        }
+      }
+      IndexFilter indexFilter = IndexFilter.fromConf(conf);
+      if (indexFilter != null) {
+        result = filter(result, indexFilter, conf, executor);
+      }
+      LOG.info("Total input paths to process : {}", result.size());
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<FileStatus> filter(List<FileStatus> files, IndexFilter indexFilter, Configuration conf,
+                                         ExecutorService executor) throws IOException {
+    List<Future<Boolean>> matches = new ArrayList<>(files.size());
+    for (FileStatus file : files) {
+      matches.add(executor.submit(() -> indexFilter.mightMatch(file.getPath().getFileSystem(conf), file)));
+    }
+    List<FileStatus> result = new ArrayList<>();
+    for (int i = 0; i < files.size(); i++) {
+      if (getUnchecked(matches.get(i))) {
+        result.add(files.get(i));
+      }
+    }
+    LOG.info("Skipped {} of {} input files, since their indexes show that they don't match the filter.",
+             files.size() - result.size(), files.size());
+    return result;
+  }
+
+  private static List<LocatedFileStatus> listDirectory(FileSystem fs, Path dir,
+                                                       PathFilter jobFilter) throws IOException {
+    List<LocatedFileStatus> statuses = new ArrayList<>();
+    RemoteIterator<LocatedFileStatus> iter = fs.listLocatedStatus(dir);
+    while (iter.hasNext()) {
+      LocatedFileStatus status = iter.next();
+      if (HIDDEN_FILE_FILTER.accept(status.getPath()) && accept(jobFilter, status)) {
+        statuses.add(status);
+      }
+    }
+    return statuses;
+  }
+
+  private static boolean accept(PathFilter jobFilter, FileStatus status) {
+    if (jobFilter == null) {
+      return true;
+    }
+    // avoid the file system calls of the regex filter, since the status is already known
+    if (jobFilter instanceof RegexPathFilter) {
+      return ((RegexPathFilter) jobFilter).accept(status);
+    }
+    return jobFilter.accept(status.getPath());
+  }
+
+  private static void addListing(List<FileStatus> result, Map<Path, Future<List<LocatedFileStatus>>> listings,
+                                 Path dir, boolean recursive) throws IOException {
+    for (LocatedFileStatus status : getUnchecked(listings.get(dir))) {
+      if (recursive && status.isDirectory()) {
+        addListing(result, listings, status.getPath(), true);
+      } else {
+        result.add(status);
+      }
+    }
+  }
+
+  private static <T> T getUnchecked(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while listing input files.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to list input files.", e.getCause());
+    }
+  }
+
+  /**
+   * Input files of a job, and the input paths they were listed for.
+   */
+  private static final class Listing {
+    private final String inputDirs;
+    private final List<FileStatus> files;
+
+    private Listing(String inputDirs, List<FileStatus> files) {
+      this.inputDirs = inputDirs;
+      this.files = files;
+    }
+  }
+}
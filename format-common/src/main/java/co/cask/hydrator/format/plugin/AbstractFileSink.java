@@ -29,6 +29,7 @@ import co.cask.cdap.etl.api.batch.BatchSinkContext;
 import co.cask.hydrator.common.LineageRecorder;
 import co.cask.hydrator.common.batch.sink.SinkOutputFormatProvider;
 import co.cask.hydrator.format.FileFormat;
+import co.cask.hydrator.format.index.IndexingOutputFormat;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 
@@ -90,9 +91,15 @@ public abstract class AbstractFileSink<T extends PluginConfig & FileSinkProperti
     outputProperties.putAll(getFileSystemProperties(context));
     outputProperties.put(FileOutputFormat.OUTDIR, getOutputDir(context.getLogicalStartTime()));
 
+    String outputFormatClass = outputFormatProvider.getOutputFormatClassName();
+    if (config.shouldWriteIndex()) {
+      outputProperties.putAll(IndexingOutputFormat.getConfiguration(outputFormatClass,
+                                                                    config.getBloomFilterFields()));
+      outputFormatClass = IndexingOutputFormat.class.getName();
+    }
+
     context.addOutput(Output.of(config.getReferenceName(),
-                                new SinkOutputFormatProvider(outputFormatProvider.getOutputFormatClassName(),
-                                                             outputProperties)));
+                                new SinkOutputFormatProvider(outputFormatClass, outputProperties)));
   }
 
   @Override
@@ -22,9 +22,14 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.hydrator.common.IdUtils;
 import co.cask.hydrator.format.FileFormat;
+import co.cask.hydrator.format.index.FileIndex;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
@@ -57,6 +62,18 @@ public abstract class AbstractFileSinkConfig extends PluginConfig implements Fil
   @Description("The schema of the data to write.")
   private String schema;
 
+  @Nullable
+  @Description("Whether to write an index next to each output file, with the minimum and maximum value of every "
+    + "column of a simple type. Sources with an index filter use the indexes to skip files that can't contain "
+    + "matching records. The default value is false.")
+  private Boolean writeIndex;
+
+  @Macro
+  @Nullable
+  @Description("Comma separated list of fields to add bloom filters to the index for, so that files that don't "
+    + "contain a given value of these fields can be skipped. Setting this implies that an index is written.")
+  private String bloomFilterFields;
+
   public void validate() {
     IdUtils.validateId(referenceName);
     if (suffix != null && !containsMacro("suffix")) {
@@ -65,7 +82,20 @@ public abstract class AbstractFileSinkConfig extends PluginConfig implements Fil
     if (!containsMacro("format")) {
       getFormat();
     }
-    getSchema();
+    Schema schema = getSchema();
+    if (schema != null && !containsMacro("bloomFilterFields")) {
+      for (String fieldName : getBloomFilterFields()) {
+        Schema.Field field = schema.getField(fieldName);
+        if (field == null) {
+          throw new IllegalArgumentException(
+            String.format("Bloom filter field '%s' does not exist in the schema.", fieldName));
+        }
+        if (!FileIndex.isIndexable(field.getSchema())) {
+          throw new IllegalArgumentException(
+            String.format("Bloom filter field '%s' must be of type int, long, float, double or string.", fieldName));
+        }
+      }
+    }
   }
 
   @Override
@@ -91,6 +121,20 @@ public abstract class AbstractFileSinkConfig extends PluginConfig implements Fil
     }
   }
 
+  @Override
+  public boolean shouldWriteIndex() {
+    return (writeIndex != null && writeIndex) || !getBloomFilterFields().isEmpty();
+  }
+
+  @Override
+  public List<String> getBloomFilterFields() {
+    List<String> fields = new ArrayList<>();
+    if (bloomFilterFields != null && !containsMacro("bloomFilterFields")) {
+      Iterables.addAll(fields, Splitter.on(',').trimResults().omitEmptyStrings().split(bloomFilterFields));
+    }
+    return fields;
+  }
+
   /**
    * Logically equivalent to valueOf except it throws an exception with a message that indicates what the valid
    * enum values are.
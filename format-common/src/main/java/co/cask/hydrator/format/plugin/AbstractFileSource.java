@@ -31,7 +31,9 @@ import co.cask.hydrator.common.SourceInputFormatProvider;
 import co.cask.hydrator.common.batch.JobUtils;
 import co.cask.hydrator.format.FileFormat;
 import co.cask.hydrator.format.RegexPathFilter;
+import co.cask.hydrator.format.index.IndexFilter;
 import co.cask.hydrator.format.input.EmptyInputFormat;
+import co.cask.hydrator.format.input.InputFileLister;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -101,6 +103,16 @@ public abstract class AbstractFileSource<T extends PluginConfig & FileSourceProp
       }
     }
 
+    String indexFilter = config.getIndexFilter();
+    if (indexFilter != null && schema != null) {
+      for (String field : IndexFilter.parse(indexFilter).getFields()) {
+        if (schema.getField(field) == null) {
+          throw new IllegalArgumentException(
+            String.format("Index filter field '%s' is not present in the schema.", field));
+        }
+      }
+    }
+
     pipelineConfigurer.getStageConfigurer().setOutputSchema(config.getSchema());
   }
 
@@ -119,6 +131,10 @@ public abstract class AbstractFileSource<T extends PluginConfig & FileSourceProp
       FileInputFormat.setInputPathFilter(job, RegexPathFilter.class);
     }
     FileInputFormat.setInputDirRecursive(job, config.shouldReadRecursively());
+    String indexFilter = config.getIndexFilter();
+    if (indexFilter != null) {
+      IndexFilter.configure(conf, indexFilter);
+    }
 
     Schema schema = config.getSchema();
     LineageRecorder lineageRecorder = new LineageRecorder(context, config.getReferenceName());
@@ -161,6 +177,11 @@ public abstract class AbstractFileSource<T extends PluginConfig & FileSourceProp
       conf.set(entry.getKey(), entry.getValue());
     }
 
+    if (fileStatus != null) {
+      // list the input files now, so that computing the splits can reuse the listing
+      InputFileLister.prefetch(job);
+    }
+
     context.setInput(Input.of(config.getReferenceName(), new SourceInputFormatProvider(inputFormatClass, conf)));
   }
 
@@ -23,6 +23,7 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.hydrator.common.IdUtils;
 import co.cask.hydrator.format.FileFormat;
+import co.cask.hydrator.format.index.IndexFilter;
 
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -90,6 +91,21 @@ public abstract class AbstractFileSourceConfig extends PluginConfig implements F
     + "is anything other than 'delimited'.")
   private String delimiter;
 
+  @Macro
+  @Nullable
+  @Description("Whether JSON objects can span multiple lines if the format is 'json'. When true, each file is read "
+    + "as a sequence of JSON objects or as a JSON array of objects, and files are not split. When false, each line "
+    + "must contain one JSON object. This will be ignored for other formats. The default value is false.")
+  private Boolean multiLine;
+
+  @Macro
+  @Nullable
+  @Description("Filter used to skip files that were written with an index and can't contain matching records. "
+    + "The filter is a comma separated list of conditions of the form 'field operator value', where the operator "
+    + "is one of '=', '<', '<=', '>' or '>='. Files without an index are always read, and the records of the files "
+    + "that are read are not filtered.")
+  private String indexFilter;
+
   // this is a hidden property that only exists for wrangler's parse-as-csv that uses the header as the schema
   // when this is true and the format is text, the header will be the first record returned by every record reader
   @Nullable
@@ -116,6 +132,10 @@ public abstract class AbstractFileSourceConfig extends PluginConfig implements F
     if (!containsMacro("schema")) {
       getSchema();
     }
+
+    if (indexFilter != null && !containsMacro("indexFilter")) {
+      IndexFilter.parse(indexFilter);
+    }
   }
 
   @Override
@@ -169,6 +189,12 @@ public abstract class AbstractFileSourceConfig extends PluginConfig implements F
     }
   }
 
+  @Nullable
+  @Override
+  public String getIndexFilter() {
+    return indexFilter == null || indexFilter.trim().isEmpty() ? null : indexFilter;
+  }
+
   public boolean shouldCopyHeader() {
     return copyHeader;
   }
@@ -19,6 +19,8 @@ package co.cask.hydrator.format.plugin;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.hydrator.format.FileFormat;
 
+import java.util.Collections;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
@@ -65,4 +67,19 @@ public interface FileSinkProperties {
    */
   @Nullable
   String getSuffix();
+
+  /**
+   * Whether to write an index next to each output file, with the minimum and maximum value of each column and
+   * bloom filters for the {@link #getBloomFilterFields() bloom filter fields}.
+   */
+  default boolean shouldWriteIndex() {
+    return false;
+  }
+
+  /**
+   * Get the fields to add bloom filters to the index for, if an index is written.
+   */
+  default List<String> getBloomFilterFields() {
+    return Collections.emptyList();
+  }
 }
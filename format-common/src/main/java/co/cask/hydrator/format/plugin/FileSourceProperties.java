@@ -91,4 +91,13 @@ public interface FileSourceProperties {
    */
   @Nullable
   Schema getSchema();
+
+  /**
+   * Get the filter used to skip files whose index shows that they don't contain any matching record,
+   * or null if files should not be skipped.
+   */
+  @Nullable
+  default String getIndexFilter() {
+    return null;
+  }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.format.index;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.hydrator.format.input.InputFileLister;
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link IndexFilter}, {@link FileIndex} and {@link IndexingOutputFormat}.
+ */
+public class IndexFilterTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("score", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+    Schema.Field.of("missing", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))));
+
+  @Test
+  public void testFilter() throws Exception {
+    FileIndex index = new FileIndex(ImmutableList.of("name"));
+    for (int i = 100; i < 200; i++) {
+      index.add(createRecord(i));
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    index.write(new DataOutputStream(bytes), 1234L);
+    index = FileIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(100L, index.getNumRecords());
+    Assert.assertEquals(1234L, index.getFileLength());
+
+    Assert.assertTrue(mightMatch(index, "id = 150"));
+    Assert.assertTrue(mightMatch(index, "id=100, id <= 100"));
+    Assert.assertFalse(mightMatch(index, "id = 99"));
+    Assert.assertFalse(mightMatch(index, "id > 199"));
+    Assert.assertTrue(mightMatch(index, "id >= 199"));
+    Assert.assertFalse(mightMatch(index, "id < 100"));
+    Assert.assertFalse(mightMatch(index, "id >= 150, id < 50"));
+    Assert.assertTrue(mightMatch(index, "score > 199.0"));
+    Assert.assertFalse(mightMatch(index, "score > 199.5"));
+
+    // names are in the bloom filter, so names within the range that were not written are skipped
+    Assert.assertTrue(mightMatch(index, "name = n150"));
+    Assert.assertTrue(mightMatch(index, "name = 'n150'"));
+    Assert.assertFalse(mightMatch(index, "name = n15"));
+    Assert.assertFalse(mightMatch(index, "name = n2"));
+
+    // conditions on columns without values never match, while unknown columns and values can't be used to skip
+    Assert.assertFalse(mightMatch(index, "missing = 1"));
+    Assert.assertTrue(mightMatch(index, "tags = a, unknown = 1, id = abc"));
+
+    try {
+      IndexFilter.parse("id ! 5");
+      Assert.fail("Invalid filter should fail to parse.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSkipFiles() throws Exception {
+    File outputDir = new File(TEMP_FOLDER.newFolder(), "output");
+    writeFiles(outputDir, TextOutputFormat.class, 3);
+
+    Assert.assertEquals(ImmutableList.of("part-r-00001"), listFiles(outputDir, "id >= 150, id < 200"));
+    Assert.assertEquals(ImmutableList.of("part-r-00001", "part-r-00002"), listFiles(outputDir, "id > 150"));
+    Assert.assertEquals(ImmutableList.of(), listFiles(outputDir, "id < 50, id > 210"));
+    Assert.assertEquals(ImmutableList.of("part-r-00002"), listFiles(outputDir, "name = n250"));
+    Assert.assertEquals(ImmutableList.of(), listFiles(outputDir, "name = n1000"));
+
+    // an index that does not belong to the file is ignored
+    File file = new File(outputDir, "part-r-00002");
+    Assert.assertTrue(file.delete());
+    Assert.assertTrue(file.createNewFile());
+    Assert.assertEquals(ImmutableList.of("part-r-00002"), listFiles(outputDir, "name = n1000"));
+  }
+
+  @Test
+  public void testNestedFiles() throws Exception {
+    File outputDir = new File(TEMP_FOLDER.newFolder(), "output");
+    writeFiles(outputDir, NestedTextOutputFormat.class, 2);
+
+    File nestedDir = new File(outputDir, NestedTextOutputFormat.SUBDIRECTORY);
+    Assert.assertTrue(new File(nestedDir, ".part-r-00000.index").isFile());
+    Assert.assertTrue(new File(nestedDir, ".part-r-00001.index").isFile());
+    Assert.assertEquals(ImmutableList.of("part-r-00001"), listFiles(nestedDir, "id >= 150"));
+  }
+
+  /**
+   * Writes 100 records with every task through the indexing format, which writes through the given format.
+   */
+  private static void writeFiles(File outputDir, Class<?> outputFormatClass, int numTasks) throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(FileOutputFormat.OUTDIR, outputDir.getAbsolutePath());
+    Map<String, String> configuration = IndexingOutputFormat.getConfiguration(outputFormatClass.getName(),
+                                                                              ImmutableList.of("name"));
+    for (Map.Entry<String, String> entry : configuration.entrySet()) {
+      conf.set(entry.getKey(), entry.getValue());
+    }
+
+    JobID jobId = new JobID("test", 0);
+    JobContext jobContext = new JobContextImpl(conf, jobId);
+    IndexingOutputFormat outputFormat = new IndexingOutputFormat();
+    OutputCommitter jobCommitter = null;
+    for (int task = 0; task < numTasks; task++) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID(jobId.getJtIdentifier(),
+                                                                                      jobId.getId(), TaskType.REDUCE,
+                                                                                      task, 0));
+      // a new format for every task, like in a real job
+      outputFormat = new IndexingOutputFormat();
+      OutputCommitter committer = outputFormat.getOutputCommitter(context);
+      if (jobCommitter == null) {
+        jobCommitter = committer;
+        committer.setupJob(jobContext);
+      }
+      committer.setupTask(context);
+      RecordWriter<NullWritable, StructuredRecord> writer = outputFormat.getRecordWriter(context);
+      for (int i = task * 100; i < task * 100 + 100; i++) {
+        writer.write(NullWritable.get(), createRecord(i));
+      }
+      writer.close(context);
+      committer.commitTask(context);
+    }
+    jobCommitter.commitJob(jobContext);
+  }
+
+  private static boolean mightMatch(FileIndex index, String filter) {
+    return IndexFilter.parse(filter).mightMatch(index);
+  }
+
+  private static List<String> listFiles(File dir, String filter) throws Exception {
+    Job job = Job.getInstance();
+    FileInputFormat.addInputPath(job, new Path(dir.toURI()));
+    IndexFilter.configure(job.getConfiguration(), filter);
+    List<String> names = new ArrayList<>();
+    for (FileStatus status : InputFileLister.listStatus(job)) {
+      names.add(status.getPath().getName());
+    }
+    Collections.sort(names);
+    return names;
+  }
+
+  private static StructuredRecord createRecord(int i) {
+    return StructuredRecord.builder(SCHEMA)
+      .set("id", i)
+      .set("name", "n" + i)
+      .set("score", i % 2 == 0 ? null : i + 0.5)
+      .set("tags", ImmutableList.of("t"))
+      .build();
+  }
+
+  /**
+   * Writes the files of a task to a subdirectory of its work directory.
+   */
+  public static final class NestedTextOutputFormat extends TextOutputFormat<NullWritable, StructuredRecord> {
+    static final String SUBDIRECTORY = "nested";
+
+    @Override
+    public Path getDefaultWorkFile(TaskAttemptContext context, String extension) throws IOException {
+      Path file = super.getDefaultWorkFile(context, extension);
+      return new Path(new Path(file.getParent(), SUBDIRECTORY), file.getName());
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.format.index;
+
+import com.google.common.base.Charsets;
+import org.apache.hadoop.util.bloom.Key;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+/**
+ * Tests for {@link ScalableBloomFilter}.
+ */
+public class ScalableBloomFilterTest {
+
+  @Test
+  public void testFalsePositiveRate() throws Exception {
+    ScalableBloomFilter filter = new ScalableBloomFilter(10000, 0.01d);
+    int numKeys = 1000000;
+    for (int i = 0; i < numKeys; i++) {
+      filter.add(toKey("key" + i));
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    filter.write(new DataOutputStream(bytes));
+    filter = new ScalableBloomFilter();
+    filter.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    for (int i = 0; i < numKeys; i++) {
+      Assert.assertTrue(filter.membershipTest(toKey("key" + i)));
+    }
+    int falsePositives = 0;
+    int numTests = 100000;
+    for (int i = 0; i < numTests; i++) {
+      if (filter.membershipTest(toKey("other" + i))) {
+        falsePositives++;
+      }
+    }
+    // rows of 10000 keys with a false positive rate of 1% each would find almost two thirds of the other keys
+    Assert.assertTrue("False positive rate was " + (double) falsePositives / numTests,
+                      falsePositives < numTests * 0.01d);
+  }
+
+  private static Key toKey(String value) {
+    return new Key(value.getBytes(Charsets.UTF_8));
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.format.input;
+
+import co.cask.hydrator.format.RegexPathFilter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for {@link InputFileLister}.
+ */
+public class InputFileListerTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testSameAsFileInputFormat() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    createFiles(dir, 100, ".txt");
+    createFiles(new File(dir, "a"), 50, ".txt");
+    createFiles(new File(dir, "a/b"), 50, ".csv");
+    createFiles(new File(dir, "c"), 50, ".txt");
+    createFiles(new File(dir, "_hidden"), 10, ".txt");
+    Assert.assertTrue(new File(dir, ".hidden.txt").createNewFile());
+
+    for (boolean recursive : new boolean[] { true, false }) {
+      for (Pattern pattern : new Pattern[] { null, Pattern.compile(".*\\.txt") }) {
+        for (String path : new String[] { dir.getAbsolutePath(), dir.getAbsolutePath() + "/*" }) {
+          Job job = createJob(path, recursive, pattern);
+          List<FileStatus> expected = new TextInputFormat().listStatus(job);
+          List<FileStatus> actual = InputFileLister.listStatus(job);
+          Assert.assertEquals(getPaths(expected), getPaths(actual));
+          for (FileStatus status : actual) {
+            Assert.assertTrue(status.isDirectory() || status instanceof LocatedFileStatus);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    createFiles(dir, 10, ".txt");
+
+    Job job = createJob(dir.getAbsolutePath(), false, null);
+    InputFileLister.prefetch(job);
+    Assert.assertNotNull(job.getConfiguration().get(InputFileLister.LISTING_ID));
+    createFiles(new File(dir, "new"), 1, ".txt");
+
+    // the first listing comes from the cache, and doesn't contain files added after the prefetch
+    Assert.assertEquals(10, InputFileLister.listStatus(job).size());
+    Assert.assertEquals(11, InputFileLister.listStatus(job).size());
+
+    // a listing is not used for different input paths
+    job = createJob(dir.getAbsolutePath(), false, null);
+    InputFileLister.prefetch(job);
+    FileInputFormat.setInputPaths(job, new Path(new File(dir, "new").getAbsolutePath()));
+    Assert.assertEquals(1, InputFileLister.listStatus(job).size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingPath() throws Exception {
+    InputFileLister.listStatus(createJob(new File(TEMP_FOLDER.getRoot(), "missing").getAbsolutePath(), false, null));
+  }
+
+  private static Job createJob(String path, boolean recursive, Pattern pattern) throws IOException {
+    Job job = Job.getInstance(new Configuration());
+    FileInputFormat.addInputPath(job, new Path(path));
+    FileInputFormat.setInputDirRecursive(job, recursive);
+    if (pattern != null) {
+      RegexPathFilter.configure(job.getConfiguration(), pattern);
+      FileInputFormat.setInputPathFilter(job, RegexPathFilter.class);
+    }
+    return job;
+  }
+
+  private static List<String> getPaths(List<FileStatus> statuses) {
+    List<String> paths = new ArrayList<>();
+    for (FileStatus status : statuses) {
+      paths.add(status.getPath().toString());
+    }
+    return paths;
+  }
+
+  private static void createFiles(File dir, int count, String extension) throws IOException {
+    Assert.assertTrue(dir.isDirectory() || dir.mkdirs());
+    for (int i = 0; i < count; i++) {
+      Assert.assertTrue(new File(dir, "file" + i + extension).createNewFile());
+    }
+  }
+
+  /**
+   * Exposes the listing of the {@link FileInputFormat}.
+   */
+  private static class TextInputFormat extends org.apache.hadoop.mapreduce.lib.input.TextInputFormat {
+    @Override
+    public List<FileStatus> listStatus(org.apache.hadoop.mapreduce.JobContext job) throws IOException {
+      return super.listStatus(job);
+    }
+  }
+}
@@ -18,9 +18,12 @@ package co.cask.format.delimited.input;
 
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.hydrator.format.input.CombinePathTrackingInputFormat;
+import co.cask.hydrator.format.input.InputFileLister;
 import co.cask.hydrator.format.input.PathTrackingInputFormat;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
@@ -29,12 +32,21 @@ import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReaderWrapper;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Delimited text input format that tracks which file each record was read from.
  */
 public class CombineDelimitedInputFormat extends CombineFileInputFormat<NullWritable, StructuredRecord> {
 
+  /**
+   * Lists the input files with multiple threads, or returns the listing cached when the run was prepared.
+   */
+  @Override
+  protected List<FileStatus> listStatus(JobContext job) throws IOException {
+    return InputFileLister.listStatus(job);
+  }
+
   /**
    * Creates a RecordReader that delegates to some other RecordReader for each path in the input split.
    */
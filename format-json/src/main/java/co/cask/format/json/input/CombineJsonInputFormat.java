@@ -17,9 +17,13 @@
 package co.cask.format.json.input;
 
 import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.hydrator.format.input.InputFileLister;
 import co.cask.hydrator.format.input.PathTrackingInputFormat;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
@@ -28,12 +32,21 @@ import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReaderWrapper;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Combined input format that tracks which file each json record was read from.
  */
 public class CombineJsonInputFormat extends CombineFileInputFormat<NullWritable, StructuredRecord> {
 
+  /**
+   * Lists the input files with multiple threads, or returns the listing cached when the run was prepared.
+   */
+  @Override
+  protected List<FileStatus> listStatus(JobContext job) throws IOException {
+    return InputFileLister.listStatus(job);
+  }
+
   /**
    * Creates a RecordReader that delegates to some other RecordReader for each path in the input split.
    */
@@ -43,6 +56,14 @@ public class CombineJsonInputFormat extends CombineFileInputFormat<NullWritable,
     return new CombineFileRecordReader<>((CombineFileSplit) split, context, WrapperReader.class);
   }
 
+  /**
+   * Files with multi-line JSON objects are not split, since a split could start in the middle of an object.
+   */
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    return !PathTrackingJsonInputFormat.isMultiLine(context.getConfiguration()) && super.isSplitable(context, file);
+  }
+
   /**
    * A wrapper class that's responsible for delegating to a corresponding RecordReader in
    * {@link PathTrackingInputFormat}. All it does is pick the i'th path in the CombineFileSplit to create a
@@ -17,26 +17,30 @@
 package co.cask.format.json.input;
 
 import co.cask.cdap.api.annotation.Description;
+import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
 import co.cask.cdap.api.plugin.PluginClass;
+import co.cask.cdap.api.plugin.PluginPropertyField;
 import co.cask.hydrator.format.input.PathTrackingConfig;
 import co.cask.hydrator.format.input.PathTrackingInputFormatProvider;
 
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * Reads json into StructuredRecords.
  */
 @Plugin(type = "inputformat")
 @Name(JsonInputFormatProvider.NAME)
 @Description(JsonInputFormatProvider.DESC)
-public class JsonInputFormatProvider extends PathTrackingInputFormatProvider<PathTrackingConfig> {
+public class JsonInputFormatProvider extends PathTrackingInputFormatProvider<JsonInputFormatProvider.Conf> {
   static final String NAME = "json";
   static final String DESC = "Plugin for reading files in json format.";
-  public static final PluginClass PLUGIN_CLASS =
-    new PluginClass("inputformat", NAME, DESC, JsonInputFormatProvider.class.getName(),
-                    "conf", PathTrackingConfig.FIELDS);
+  public static final PluginClass PLUGIN_CLASS = getPluginClass();
 
-  public JsonInputFormatProvider(PathTrackingConfig conf) {
+  public JsonInputFormatProvider(Conf conf) {
     super(conf);
   }
 
@@ -51,4 +55,34 @@ public class JsonInputFormatProvider extends PathTrackingInputFormatProvider<Pat
       throw new IllegalArgumentException("Json format cannot be used without specifying a schema.");
     }
   }
+
+  @Override
+  protected void addFormatProperties(Map<String, String> properties) {
+    properties.put(PathTrackingJsonInputFormat.MULTI_LINE, String.valueOf(conf.isMultiLine()));
+  }
+
+  /**
+   * Plugin config for json input format
+   */
+  public static class Conf extends PathTrackingConfig {
+    private static final String MULTI_LINE_DESC = "Whether JSON objects can span multiple lines. When true, each " +
+      "file is read as a sequence of JSON objects or as a JSON array of objects, and files are not split. When " +
+      "false, each line must contain one JSON object. The default value is false.";
+
+    @Macro
+    @Nullable
+    @Description(MULTI_LINE_DESC)
+    private Boolean multiLine;
+
+    boolean isMultiLine() {
+      return multiLine != null && multiLine;
+    }
+  }
+
+  private static PluginClass getPluginClass() {
+    Map<String, PluginPropertyField> properties = new HashMap<>(PathTrackingConfig.FIELDS);
+    properties.put("multiLine", new PluginPropertyField("multiLine", Conf.MULTI_LINE_DESC, "boolean", false, true));
+    return new PluginClass("inputformat", NAME, DESC, JsonInputFormatProvider.class.getName(),
+                           "conf", properties);
+  }
 }
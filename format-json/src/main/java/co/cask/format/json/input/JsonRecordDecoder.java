@@ -0,0 +1,516 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.format.json.input;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes JSON objects into {@link StructuredRecord StructuredRecords} of a schema with a streaming parser.
+ *
+ * <p>
+ * A decoder for every field of the schema is created once, so decoding a record only looks up the field name in a
+ * map. Values of fields that are not in the schema are skipped by the parser without being materialized, which makes
+ * reading a few fields of wide JSON objects cheap. The values are decoded in the same way as
+ * {@link co.cask.cdap.format.StructuredRecordStringConverter#fromJsonString(String, Schema)} decodes them.
+ * </p>
+ */
+final class JsonRecordDecoder {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final IntDecoder INT_DECODER = new IntDecoder();
+  private static final LongDecoder LONG_DECODER = new LongDecoder();
+
+  private final Schema schema;
+  private final RecordDecoder recordDecoder;
+
+  JsonRecordDecoder(Schema schema) {
+    this.schema = schema;
+    this.recordDecoder = new RecordDecoder(schema);
+  }
+
+  /**
+   * Decodes the JSON object in the given bytes.
+   *
+   * @return a builder with the fields of the object that are in the schema set
+   */
+  StructuredRecord.Builder decode(byte[] bytes, int offset, int length) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createJsonParser(bytes, offset, length)) {
+      parser.nextToken();
+      return decode(parser);
+    }
+  }
+
+  /**
+   * Decodes the JSON object at the current token of the parser. When the method returns, the current token of the
+   * parser is the end of the object.
+   *
+   * @return a builder with the fields of the object that are in the schema set
+   */
+  StructuredRecord.Builder decode(JsonParser parser) throws IOException {
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+    recordDecoder.decodeFields(parser, builder);
+    return builder;
+  }
+
+  /**
+   * Creates a parser for a stream of JSON values.
+   */
+  static JsonParser createParser(InputStream input) throws IOException {
+    return JSON_FACTORY.createJsonParser(input);
+  }
+
+  private static ValueDecoder createDecoder(Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+        return new NullDecoder();
+      case BOOLEAN:
+        return new BooleanDecoder();
+      case INT:
+        return INT_DECODER;
+      case LONG:
+        return LONG_DECODER;
+      case FLOAT:
+        return new FloatDecoder();
+      case DOUBLE:
+        return new DoubleDecoder();
+      case BYTES:
+        return new BytesDecoder();
+      case STRING:
+      case ENUM:
+        return new StringDecoder();
+      case ARRAY:
+        return new ArrayDecoder(schema.getComponentSchema());
+      case MAP:
+        return new MapDecoder(schema.getMapSchema().getKey(), schema.getMapSchema().getValue());
+      case RECORD:
+        return new RecordDecoder(schema);
+      case UNION:
+        return new UnionDecoder(schema);
+      default:
+        throw new IllegalArgumentException("Unsupported schema: " + schema);
+    }
+  }
+
+  private static IOException unexpectedToken(JsonParser parser, String expected) {
+    return new IOException(String.format("Expected %s but was %s at %s", expected, parser.getCurrentToken(),
+                                         parser.getCurrentLocation()));
+  }
+
+  /**
+   * Decodes a value that starts at the current token of the parser, leaving the parser at the last token of the
+   * value.
+   */
+  private abstract static class ValueDecoder {
+    abstract Object decode(JsonParser parser) throws IOException;
+  }
+
+  private static final class NullDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      if (parser.getCurrentToken() != JsonToken.VALUE_NULL) {
+        throw unexpectedToken(parser, "null");
+      }
+      return null;
+    }
+  }
+
+  private static final class BooleanDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      switch (parser.getCurrentToken()) {
+        case VALUE_TRUE:
+          return true;
+        case VALUE_FALSE:
+          return false;
+        default:
+          throw unexpectedToken(parser, "a boolean");
+      }
+    }
+  }
+
+  private static final class IntDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      long value = (Long) LONG_DECODER.decode(parser);
+      if (value != (int) value) {
+        throw new IOException(String.format("Expected an int but was %s at %s", parser.getText(),
+                                            parser.getCurrentLocation()));
+      }
+      return (int) value;
+    }
+  }
+
+  private static final class LongDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      JsonToken token = parser.getCurrentToken();
+      if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+        return parser.getLongValue();
+      }
+      double value;
+      if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+        value = parser.getDoubleValue();
+      } else if (token == JsonToken.VALUE_STRING) {
+        // quoted numbers are accepted, as they are by the Gson reader used by StructuredRecordStringConverter
+        String text = parser.getText();
+        try {
+          return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+          value = parseDouble(parser);
+        }
+      } else {
+        throw unexpectedToken(parser, "a number");
+      }
+      if (value != (long) value) {
+        throw new IOException(String.format("Expected a long but was %s at %s", parser.getText(),
+                                            parser.getCurrentLocation()));
+      }
+      return (long) value;
+    }
+  }
+
+  private static final class FloatDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      return (float) DoubleDecoder.decodeDouble(parser);
+    }
+  }
+
+  private static final class DoubleDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      return decodeDouble(parser);
+    }
+
+    static double decodeDouble(JsonParser parser) throws IOException {
+      switch (parser.getCurrentToken()) {
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+          return parser.getDoubleValue();
+        case VALUE_STRING:
+          return parseDouble(parser);
+        default:
+          throw unexpectedToken(parser, "a number");
+      }
+    }
+  }
+
+  private static double parseDouble(JsonParser parser) throws IOException {
+    try {
+      double value = Double.parseDouble(parser.getText());
+      if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to the exception below
+    }
+    throw new IOException(String.format("Expected a number but was %s at %s", parser.getText(),
+                                        parser.getCurrentLocation()));
+  }
+
+  private static final class StringDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      switch (parser.getCurrentToken()) {
+        case VALUE_STRING:
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+          return parser.getText();
+        default:
+          throw unexpectedToken(parser, "a string");
+      }
+    }
+  }
+
+  /**
+   * Decodes bytes from an array of numbers.
+   */
+  private static final class BytesDecoder extends ValueDecoder {
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+        throw unexpectedToken(parser, "an array");
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        bytes.write((Integer) INT_DECODER.decode(parser));
+      }
+      return ByteBuffer.wrap(bytes.toByteArray());
+    }
+  }
+
+  private static final class ArrayDecoder extends ValueDecoder {
+    private final ValueDecoder elementDecoder;
+
+    ArrayDecoder(Schema elementSchema) {
+      this.elementDecoder = createDecoder(elementSchema);
+    }
+
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+        throw unexpectedToken(parser, "an array");
+      }
+      List<Object> array = new ArrayList<>();
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        array.add(elementDecoder.decode(parser));
+      }
+      return array;
+    }
+  }
+
+  private static final class MapDecoder extends ValueDecoder {
+    private final Schema keySchema;
+    private final ValueDecoder valueDecoder;
+
+    MapDecoder(Schema keySchema, Schema valueSchema) {
+      this.keySchema = keySchema;
+      this.valueDecoder = createDecoder(valueSchema);
+    }
+
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      if (!keySchema.isCompatible(Schema.of(Schema.Type.STRING))) {
+        throw new IOException("Complex key type in maps are not supported: " + keySchema);
+      }
+      if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+        throw unexpectedToken(parser, "an object");
+      }
+      Map<Object, Object> map = new HashMap<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        Object key = convertKey(parser.getCurrentName(), keySchema.getType());
+        parser.nextToken();
+        map.put(key, valueDecoder.decode(parser));
+      }
+      return map;
+    }
+
+    private static Object convertKey(String key, Schema.Type type) throws IOException {
+      switch (type) {
+        case STRING:
+          return key;
+        case BOOLEAN:
+          return Boolean.valueOf(key);
+        case INT:
+          return Integer.valueOf(key);
+        case LONG:
+          return Long.valueOf(key);
+        case FLOAT:
+          return Float.valueOf(key);
+        case DOUBLE:
+          return Double.valueOf(key);
+        default:
+          throw new IOException("Unable to convert string to type " + type);
+      }
+    }
+  }
+
+  private static final class RecordDecoder extends ValueDecoder {
+    private final Schema schema;
+    private final Map<String, FieldDecoder> fieldDecoders;
+
+    RecordDecoder(Schema schema) {
+      this.schema = schema;
+      this.fieldDecoders = new HashMap<>();
+      for (Schema.Field field : schema.getFields()) {
+        fieldDecoders.put(field.getName(), new FieldDecoder(field.getName(), createDecoder(field.getSchema())));
+      }
+    }
+
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      decodeFields(parser, builder);
+      return builder.build();
+    }
+
+    void decodeFields(JsonParser parser, StructuredRecord.Builder builder) throws IOException {
+      if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+        throw unexpectedToken(parser, "an object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        // field names are interned by the parser, so looking them up does not create new strings
+        FieldDecoder fieldDecoder = fieldDecoders.get(parser.getCurrentName());
+        parser.nextToken();
+        if (fieldDecoder == null) {
+          parser.skipChildren();
+          continue;
+        }
+        builder.set(fieldDecoder.name, fieldDecoder.decoder.decode(parser));
+      }
+      if (parser.getCurrentToken() != JsonToken.END_OBJECT) {
+        throw unexpectedToken(parser, "the end of an object");
+      }
+    }
+  }
+
+  private static final class FieldDecoder {
+    private final String name;
+    private final ValueDecoder decoder;
+
+    FieldDecoder(String name, ValueDecoder decoder) {
+      this.name = name;
+      this.decoder = decoder;
+    }
+  }
+
+  /**
+   * Decodes a value with the first schema of the union that matches the type of the JSON value. Integral numbers
+   * are decoded with the first int or long schema that can hold the value, and numbers with a fraction or an
+   * exponent with the first float or double schema. A number is only decoded with a schema of the other kind if the
+   * union has no schema of the matching kind.
+   */
+  private static final class UnionDecoder extends ValueDecoder {
+    private final Schema schema;
+    private final ValueDecoder nullDecoder;
+    private final ValueDecoder booleanDecoder;
+    private final ValueDecoder intDecoder;
+    private final ValueDecoder longDecoder;
+    // whether the union has an int schema which comes before any long schema
+    private final boolean intFirst;
+    private final ValueDecoder floatingDecoder;
+    private final ValueDecoder stringDecoder;
+    private final ValueDecoder arrayDecoder;
+    private final ValueDecoder objectDecoder;
+
+    UnionDecoder(Schema schema) {
+      this.schema = schema;
+      ValueDecoder nullDecoder = null;
+      ValueDecoder booleanDecoder = null;
+      ValueDecoder intDecoder = null;
+      ValueDecoder longDecoder = null;
+      boolean intFirst = false;
+      ValueDecoder floatingDecoder = null;
+      ValueDecoder stringDecoder = null;
+      ValueDecoder arrayDecoder = null;
+      ValueDecoder objectDecoder = null;
+      for (Schema unionSchema : schema.getUnionSchemas()) {
+        switch (unionSchema.getType()) {
+          case NULL:
+            nullDecoder = nullDecoder == null ? createDecoder(unionSchema) : nullDecoder;
+            break;
+          case BOOLEAN:
+            booleanDecoder = booleanDecoder == null ? createDecoder(unionSchema) : booleanDecoder;
+            break;
+          case INT:
+            if (intDecoder == null) {
+              intDecoder = createDecoder(unionSchema);
+              intFirst = longDecoder == null;
+            }
+            break;
+          case LONG:
+            longDecoder = longDecoder == null ? createDecoder(unionSchema) : longDecoder;
+            break;
+          case FLOAT:
+          case DOUBLE:
+            floatingDecoder = floatingDecoder == null ? createDecoder(unionSchema) : floatingDecoder;
+            break;
+          case STRING:
+            stringDecoder = stringDecoder == null ? createDecoder(unionSchema) : stringDecoder;
+            break;
+          case BYTES:
+          case ARRAY:
+            arrayDecoder = arrayDecoder == null ? createDecoder(unionSchema) : arrayDecoder;
+            break;
+          case MAP:
+          case RECORD:
+            objectDecoder = objectDecoder == null ? createDecoder(unionSchema) : objectDecoder;
+            break;
+          default:
+            // other types never match a JSON value, in the same way as for StructuredRecordStringConverter
+            break;
+        }
+      }
+      this.nullDecoder = nullDecoder;
+      this.booleanDecoder = booleanDecoder;
+      this.intDecoder = intDecoder;
+      this.longDecoder = longDecoder;
+      this.intFirst = intFirst;
+      this.floatingDecoder = floatingDecoder;
+      this.stringDecoder = stringDecoder;
+      this.arrayDecoder = arrayDecoder;
+      this.objectDecoder = objectDecoder;
+    }
+
+    @Override
+    Object decode(JsonParser parser) throws IOException {
+      JsonToken token = parser.getCurrentToken();
+      ValueDecoder decoder;
+      switch (token) {
+        case VALUE_NULL:
+          decoder = nullDecoder;
+          break;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+          decoder = booleanDecoder;
+          break;
+        case VALUE_NUMBER_INT:
+          decoder = getIntegralNumberDecoder(parser);
+          break;
+        case VALUE_NUMBER_FLOAT:
+          decoder = floatingDecoder != null ? floatingDecoder : longDecoder != null ? longDecoder : intDecoder;
+          break;
+        case VALUE_STRING:
+          decoder = stringDecoder;
+          break;
+        case START_ARRAY:
+          decoder = arrayDecoder;
+          break;
+        case START_OBJECT:
+          decoder = objectDecoder;
+          break;
+        default:
+          decoder = null;
+          break;
+      }
+      if (decoder == null) {
+        throw new IOException(String.format("No matching schema found for union type: %s for token: %s",
+                                            schema, token));
+      }
+      return decoder.decode(parser);
+    }
+
+    private ValueDecoder getIntegralNumberDecoder(JsonParser parser) throws IOException {
+      JsonParser.NumberType numberType = parser.getNumberType();
+      boolean fitsInt = numberType == JsonParser.NumberType.INT;
+      boolean fitsLong = fitsInt || numberType == JsonParser.NumberType.LONG;
+      if (intFirst && fitsInt) {
+        return intDecoder;
+      }
+      if (longDecoder != null && fitsLong) {
+        return longDecoder;
+      }
+      if (floatingDecoder != null) {
+        return floatingDecoder;
+      }
+      // none of the schemas can hold the value, so it is decoded with an integral schema that fails with its error
+      return longDecoder != null ? longDecoder : intDecoder;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.format.json.input;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a whole file as a stream of JSON objects, where each object can span multiple lines. The objects can either
+ * be top level values of the file, separated by whitespace, or the elements of top level JSON arrays.
+ */
+class MultiLineJsonRecordReader extends RecordReader<NullWritable, StructuredRecord.Builder> {
+  private final JsonRecordDecoder decoder;
+  private FSDataInputStream fileIn;
+  private JsonParser parser;
+  private long length;
+  private boolean inArray;
+  private StructuredRecord.Builder value;
+
+  MultiLineJsonRecordReader(JsonRecordDecoder decoder) {
+    this.decoder = decoder;
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+    FileSplit fileSplit = (FileSplit) split;
+    Configuration conf = context.getConfiguration();
+    Path file = fileSplit.getPath();
+    length = fileSplit.getLength();
+    fileIn = file.getFileSystem(conf).open(file);
+    CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+    InputStream input = codec == null ? fileIn : codec.createInputStream(fileIn);
+    parser = JsonRecordDecoder.createParser(input);
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    JsonToken token = parser.nextToken();
+    while (token == JsonToken.START_ARRAY && !inArray || token == JsonToken.END_ARRAY && inArray) {
+      inArray = !inArray;
+      token = parser.nextToken();
+    }
+    if (token == null) {
+      value = null;
+      return false;
+    }
+    value = decoder.decode(parser);
+    return true;
+  }
+
+  @Override
+  public NullWritable getCurrentKey() {
+    return NullWritable.get();
+  }
+
+  @Override
+  public StructuredRecord.Builder getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    if (length == 0 || fileIn == null) {
+      return 0.0f;
+    }
+    // the position in the file is ahead of the parser by the buffered bytes, which is close enough for progress
+    return Math.min(1.0f, fileIn.getPos() / (float) length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (parser != null) {
+        parser.close();
+      }
+    } finally {
+      if (fileIn != null) {
+        fileIn.close();
+      }
+    }
+  }
+}
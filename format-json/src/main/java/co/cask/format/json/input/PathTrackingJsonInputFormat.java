@@ -18,55 +18,52 @@ package co.cask.format.json.input;
 
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
-import co.cask.cdap.format.StructuredRecordStringConverter;
 import co.cask.hydrator.format.input.PathTrackingInputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import javax.annotation.Nullable;
 
 /**
  * Json format that tracks which file each record was read from.
+ *
+ * By default, every line of a file is a JSON object. If {@link #MULTI_LINE} is set, every file is read as a sequence
+ * of JSON objects or as a JSON array of objects, where each object can span multiple lines. Files are not split in
+ * that case. The objects are decoded with a {@link JsonRecordDecoder} that only decodes the fields in the schema.
  */
 public class PathTrackingJsonInputFormat extends PathTrackingInputFormat {
+  static final String MULTI_LINE = "json.multi.line";
 
-
-  private Schema getModifiedSchema(Schema schema, @Nullable String pathField) {
-    // if the path field is set, it might not be nullable
-    // if it's not nullable, decoding a string into a StructuredRecord will fail because a non-nullable
-    // field will have a null value.
-    // so in these cases, a modified schema is used where the path field is nullable
-    if (pathField == null) {
-      return schema;
-    }
-    List<Schema.Field> fieldCopies = new ArrayList<>(schema.getFields().size());
-    for (Schema.Field field : schema.getFields()) {
-      if (field.getName().equals(pathField) && !field.getSchema().isNullable()) {
-        fieldCopies.add(Schema.Field.of(field.getName(), Schema.nullableOf(field.getSchema())));
-      } else {
-        fieldCopies.add(field);
-      }
-    }
-    return Schema.recordOf(schema.getRecordName(), fieldCopies);
+  static boolean isMultiLine(Configuration conf) {
+    return conf.getBoolean(MULTI_LINE, false);
   }
 
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    return !isMultiLine(context.getConfiguration()) && super.isSplitable(context, file);
+  }
 
   @Override
   protected RecordReader<NullWritable, StructuredRecord.Builder> createRecordReader(FileSplit split,
                                                                                     TaskAttemptContext context,
                                                                                     @Nullable String pathField,
                                                                                     @Nullable Schema schema) {
+    JsonRecordDecoder decoder = new JsonRecordDecoder(schema);
+    if (isMultiLine(context.getConfiguration())) {
+      return new MultiLineJsonRecordReader(decoder);
+    }
+
     RecordReader<LongWritable, Text> delegate = (new TextInputFormat()).createRecordReader(split, context);
-    Schema modifiedSchema = getModifiedSchema(schema, pathField);
 
     return new RecordReader<NullWritable, StructuredRecord.Builder>() {
 
@@ -87,13 +84,9 @@ public class PathTrackingJsonInputFormat extends PathTrackingInputFormat {
 
       @Override
       public StructuredRecord.Builder getCurrentValue() throws IOException, InterruptedException {
-        String json = delegate.getCurrentValue().toString();
-        StructuredRecord record = StructuredRecordStringConverter.fromJsonString(json, modifiedSchema);
-        StructuredRecord.Builder builder = StructuredRecord.builder(schema);
-        for (Schema.Field field : schema.getFields()) {
-          builder.set(field.getName(), record.get(field.getName()));
-        }
-        return builder;
+        // decode the bytes of the line directly, without converting them to a String first
+        Text json = delegate.getCurrentValue();
+        return decoder.decode(json.getBytes(), 0, json.getLength());
       }
 
       @Override
@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.format.json.input;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.format.StructuredRecordStringConverter;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link JsonRecordDecoder}, comparing the decoded records with the ones of
+ * {@link StructuredRecordStringConverter#fromJsonString(String, Schema)}.
+ */
+public class JsonRecordDecoderTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static final Schema INNER = Schema.recordOf(
+    "inner",
+    Schema.Field.of("x", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("y", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("i", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+    Schema.Field.of("l", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("f", Schema.nullableOf(Schema.of(Schema.Type.FLOAT))),
+    Schema.Field.of("d", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+    Schema.Field.of("b", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+    Schema.Field.of("s", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("bytes", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+    Schema.Field.of("ints", Schema.nullableOf(Schema.arrayOf(Schema.of(Schema.Type.INT)))),
+    Schema.Field.of("map", Schema.nullableOf(Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                          Schema.of(Schema.Type.LONG)))),
+    Schema.Field.of("inner", Schema.nullableOf(INNER)),
+    Schema.Field.of("required", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("requiredInt", Schema.of(Schema.Type.INT)));
+
+  private static final List<String> INPUTS = ImmutableList.of(
+    "{\"required\":\"r\",\"requiredInt\":1}",
+    "{\"i\":1,\"l\":10000000000,\"f\":1.5,\"d\":-2.25e10,\"b\":true,\"s\":\"str\",\"bytes\":[1,2,3]," +
+      "\"ints\":[1,2],\"map\":{\"a\":1,\"b\":2},\"inner\":{\"x\":1,\"y\":\"why\"},\"required\":\"r\"," +
+      "\"requiredInt\":2}",
+    "{\"i\":null,\"l\":null,\"f\":null,\"d\":null,\"b\":null,\"s\":null,\"bytes\":null,\"ints\":null," +
+      "\"map\":null,\"inner\":null,\"required\":\"r\",\"requiredInt\":-3}",
+    "{\"unknown\":{\"deep\":[1,{\"a\":\"b\"},[]]},\"required\":\"r\",\"other\":[1,2],\"requiredInt\":\"4\"," +
+      "\"x\":null}",
+    "{\"required\":12.50,\"requiredInt\":5.0,\"s\":\"unicode \\u00e9\\n\"}",
+    "{\"required\":\"first\",\"required\":\"second\",\"requiredInt\":1}",
+    "{\"i\":2.5,\"required\":\"r\",\"requiredInt\":1}",
+    "{\"i\":\"1\",\"required\":\"r\",\"requiredInt\":1}",
+    "{\"s\":1,\"required\":\"r\",\"requiredInt\":1}",
+    "{\"required\":\"r\",\"requiredInt\":10000000000}",
+    "{\"required\":\"r\",\"requiredInt\":null}",
+    "{\"required\":\"r\",\"requiredInt\":true}",
+    "{\"required\":\"r\"}",
+    "{\"inner\":{\"y\":\"y\"},\"required\":\"r\",\"requiredInt\":1}",
+    "{\"required\":\"r\",\"requiredInt\":1",
+    "[1]",
+    "");
+
+  @Test
+  public void testSameAsConverter() {
+    JsonRecordDecoder decoder = new JsonRecordDecoder(SCHEMA);
+    for (String input : INPUTS) {
+      StructuredRecord expected = null;
+      try {
+        expected = StructuredRecordStringConverter.fromJsonString(input, SCHEMA);
+      } catch (Exception e) {
+        // expected is null if the converter fails
+      }
+
+      StructuredRecord actual = null;
+      try {
+        byte[] bytes = input.getBytes(Charsets.UTF_8);
+        actual = decoder.decode(bytes, 0, bytes.length).build();
+      } catch (Exception e) {
+        Assert.assertNull(String.format("Decoding '%s' failed with %s", input, e.getMessage()), expected);
+      }
+      if (expected != null) {
+        Assert.assertNotNull(String.format("Decoding '%s' should fail", input), actual);
+        for (Schema.Field field : SCHEMA.getFields()) {
+          Object expectedValue = expected.get(field.getName());
+          Object actualValue = actual.get(field.getName());
+          Assert.assertEquals(input, expectedValue, actualValue);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNumericUnions() throws Exception {
+    Schema schema = Schema.recordOf(
+      "unions",
+      Schema.Field.of("intDouble", Schema.unionOf(Schema.of(Schema.Type.INT), Schema.of(Schema.Type.DOUBLE))),
+      Schema.Field.of("doubleLong", Schema.unionOf(Schema.of(Schema.Type.DOUBLE), Schema.of(Schema.Type.LONG),
+                                                   Schema.of(Schema.Type.NULL))),
+      Schema.Field.of("longInt", Schema.unionOf(Schema.of(Schema.Type.LONG), Schema.of(Schema.Type.INT))),
+      Schema.Field.of("intLong", Schema.unionOf(Schema.of(Schema.Type.INT), Schema.of(Schema.Type.LONG))),
+      Schema.Field.of("int", Schema.unionOf(Schema.of(Schema.Type.INT), Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("float", Schema.unionOf(Schema.of(Schema.Type.FLOAT), Schema.of(Schema.Type.BOOLEAN))));
+    JsonRecordDecoder decoder = new JsonRecordDecoder(schema);
+
+    StructuredRecord record = decode(decoder, "{\"intDouble\":1.5,\"doubleLong\":2,\"longInt\":3,\"intLong\":4," +
+      "\"int\":5.0,\"float\":6}");
+    Assert.assertEquals((Object) 1.5d, record.get("intDouble"));
+    Assert.assertEquals((Object) 2L, record.get("doubleLong"));
+    Assert.assertEquals((Object) 3L, record.get("longInt"));
+    Assert.assertEquals((Object) 4, record.get("intLong"));
+    Assert.assertEquals((Object) 5, record.get("int"));
+    Assert.assertEquals((Object) 6.0f, record.get("float"));
+
+    record = decode(decoder, "{\"intDouble\":1,\"doubleLong\":2.5,\"longInt\":10000000000," +
+      "\"intLong\":10000000000,\"int\":\"5\",\"float\":true}");
+    Assert.assertEquals((Object) 1, record.get("intDouble"));
+    Assert.assertEquals((Object) 2.5d, record.get("doubleLong"));
+    Assert.assertEquals((Object) 10000000000L, record.get("longInt"));
+    Assert.assertEquals((Object) 10000000000L, record.get("intLong"));
+    Assert.assertEquals((Object) "5", record.get("int"));
+    Assert.assertEquals((Object) true, record.get("float"));
+
+    // integral values that do not fit the integral schemas are decoded with the floating point schema
+    record = decode(decoder, "{\"intDouble\":10000000000,\"doubleLong\":null,\"longInt\":3,\"intLong\":4," +
+      "\"int\":5,\"float\":6}");
+    Assert.assertEquals((Object) 1e10d, record.get("intDouble"));
+    Assert.assertNull(record.get("doubleLong"));
+
+    try {
+      decode(decoder, "{\"int\":10000000000}");
+      Assert.fail("Expected a value that does not fit any schema of the union to fail.");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMultiLine() throws Exception {
+    File file = new File(TEMP_FOLDER.newFolder(), "records.json");
+    Files.write("[\n  {\"required\": \"a\",\n   \"requiredInt\": 1},\n" +
+                  "  {\"required\": \"b\", \"requiredInt\": 2}\n]\n" +
+                  "{\"required\": \"c\",\n \"requiredInt\": 3}\n" +
+                  "{\"required\": \"d\", \"requiredInt\": 4}\n", file, Charsets.UTF_8);
+
+    Configuration conf = new Configuration();
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    List<String> values = new ArrayList<>();
+    try (MultiLineJsonRecordReader reader = new MultiLineJsonRecordReader(new JsonRecordDecoder(SCHEMA))) {
+      reader.initialize(new FileSplit(new Path(file.toURI()), 0, file.length(), new String[0]), context);
+      while (reader.nextKeyValue()) {
+        StructuredRecord record = reader.getCurrentValue().build();
+        values.add(record.<String>get("required") + record.<Integer>get("requiredInt"));
+      }
+      Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+    }
+    Assert.assertEquals(ImmutableList.of("a1", "b2", "c3", "d4"), values);
+  }
+
+  private static StructuredRecord decode(JsonRecordDecoder decoder, String json) throws IOException {
+    byte[] bytes = json.getBytes(Charsets.UTF_8);
+    return decoder.decode(bytes, 0, bytes.length).build();
+  }
+}
@@ -22,44 +22,95 @@ import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
- * A {@link CombineFileSplit} that also contains the header for the files in the split. This must extend
+ * A {@link CombineFileSplit} that also contains the header for each of the files in the split. This must extend
  * CombineFileSplit because {@link CombineFileRecordReader} expects a CombineFileSplit.
  */
 public class CombineHeaderFileSplit extends CombineFileSplit {
-  private String header;
+  private String[] headers;
 
   public CombineHeaderFileSplit() {
     // exists for Hadoop deserialization
   }
 
+  /**
+   * Creates a split where all files have the same header.
+   */
   public CombineHeaderFileSplit(CombineFileSplit split, @Nullable String header) throws IOException {
+    this(split, sameHeaders(split.getNumPaths(), header));
+  }
+
+  /**
+   * Creates a split with the header of each file, where the header at an index is null if the file at the same
+   * index doesn't have a header.
+   */
+  public CombineHeaderFileSplit(CombineFileSplit split, String[] headers) throws IOException {
     super(split.getPaths(), split.getStartOffsets(), split.getLengths(), split.getLocations());
-    this.header = header;
+    if (headers.length != split.getNumPaths()) {
+      throw new IllegalArgumentException(String.format("Expected %d headers, but found %d.",
+                                                       split.getNumPaths(), headers.length));
+    }
+    this.headers = headers;
   }
 
+  /**
+   * Returns the header of the first file in the split.
+   */
   @Nullable
   public String getHeader() {
-    return header;
+    return headers.length == 0 ? null : headers[0];
+  }
+
+  /**
+   * Returns the header of the file at the given index in the split.
+   */
+  @Nullable
+  public String getHeader(int idx) {
+    return headers[idx];
   }
 
   @Override
   public void write(DataOutput out) throws IOException {
     super.write(out);
-    out.writeBoolean(header != null);
-    if (header != null) {
-      out.writeUTF(header);
+    // files usually share their header, so each distinct header is only written once
+    Map<String, Integer> written = new HashMap<>();
+    for (String header : headers) {
+      if (header == null) {
+        out.writeInt(-1);
+      } else if (written.containsKey(header)) {
+        out.writeInt(written.get(header));
+      } else {
+        written.put(header, written.size());
+        out.writeInt(written.size() - 1);
+        out.writeUTF(header);
+      }
     }
   }
 
   @Override
   public void readFields(DataInput in) throws IOException {
     super.readFields(in);
-    if (in.readBoolean()) {
-      header = in.readUTF();
+    headers = new String[getNumPaths()];
+    List<String> read = new ArrayList<>();
+    for (int i = 0; i < headers.length; i++) {
+      int headerIdx = in.readInt();
+      if (headerIdx == read.size()) {
+        read.add(in.readUTF());
+      }
+      headers[i] = headerIdx < 0 ? null : read.get(headerIdx);
     }
   }
 
+  private static String[] sameHeaders(int numPaths, @Nullable String header) {
+    String[] headers = new String[numPaths];
+    Arrays.fill(headers, header);
+    return headers;
+  }
 }
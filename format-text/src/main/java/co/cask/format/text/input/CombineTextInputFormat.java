@@ -17,8 +17,12 @@
 package co.cask.format.text.input;
 
 import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.hydrator.format.input.InputFileLister;
 import co.cask.hydrator.format.input.PathTrackingInputFormat;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
@@ -34,9 +38,21 @@ import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.Nullable;
 
 /**
@@ -45,14 +61,22 @@ import javax.annotation.Nullable;
  */
 public class CombineTextInputFormat extends CombineFileInputFormat<NullWritable, StructuredRecord> {
   static final String HEADER = "combine.path.tracking.header";
+  private static final int DEFAULT_NUM_THREADS = 16;
+
+  /**
+   * Lists the input files with multiple threads, or returns the listing cached when the run was prepared.
+   */
+  @Override
+  protected List<FileStatus> listStatus(JobContext job) throws IOException {
+    return InputFileLister.listStatus(job);
+  }
 
   /**
    * Converts the CombineFileSplits derived by CombineFileInputFormat into CombineHeaderFileSplits
    * that optionally keep track of the header for each file.
    *
-   * It is assumed that every file has the same header. It would be possible to read the header for each individual
-   * file, but the use case for that is unclear and it could potentially add a decent amount of overhead if there
-   * are a bunch of small files.
+   * Headers are read with multiple threads, since there can be many small files. Files that are in multiple splits
+   * are only read once, and equal headers are shared between files.
    */
   @Override
   public List<InputSplit> getSplits(JobContext job) throws IOException {
@@ -60,60 +84,93 @@ public class CombineTextInputFormat extends CombineFileInputFormat<NullWritable,
     Configuration hConf = job.getConfiguration();
 
     boolean shouldCopyHeader = hConf.getBoolean(PathTrackingInputFormat.COPY_HEADER, false);
+    Map<Path, String> headers = shouldCopyHeader ? getHeaders(hConf, fileSplits) : Collections.emptyMap();
     List<InputSplit> splits = new ArrayList<>(fileSplits.size());
-
-    String header = null;
     for (InputSplit split : fileSplits) {
       CombineFileSplit combineFileSplit = (CombineFileSplit) split;
-
-      if (shouldCopyHeader && header == null) {
-        header = getHeader(hConf, combineFileSplit);
+      String[] splitHeaders = new String[combineFileSplit.getNumPaths()];
+      for (int i = 0; i < splitHeaders.length; i++) {
+        splitHeaders[i] = headers.get(combineFileSplit.getPath(i));
       }
-      splits.add(new CombineHeaderFileSplit(combineFileSplit, header));
+      splits.add(new CombineHeaderFileSplit(combineFileSplit, splitHeaders));
     }
 
     return splits;
   }
 
-  @Nullable
-  private String getHeader(Configuration hConf, CombineFileSplit split) throws IOException {
-    String header = null;
-    for (Path path : split.getPaths()) {
-      try (FileSystem fs = path.getFileSystem(hConf);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
-        header = reader.readLine();
+  private Map<Path, String> getHeaders(Configuration hConf, List<InputSplit> splits) throws IOException {
+    Set<Path> paths = new LinkedHashSet<>();
+    for (InputSplit split : splits) {
+      paths.addAll(Arrays.asList(((CombineFileSplit) split).getPaths()));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(paths.size(), hConf.getInt(InputFileLister.NUM_THREADS, DEFAULT_NUM_THREADS))),
+      new ThreadFactoryBuilder().setNameFormat("header-reader-%d").setDaemon(true).build());
+    try {
+      Map<Path, Future<String>> futures = new LinkedHashMap<>();
+      for (Path path : paths) {
+        futures.put(path, executor.submit(() -> getHeader(hConf, path)));
+      }
+      Map<Path, String> headers = new HashMap<>();
+      Map<String, String> distinctHeaders = new HashMap<>();
+      for (Map.Entry<Path, Future<String>> entry : futures.entrySet()) {
+        String header = entry.getValue().get();
         if (header != null) {
-          break;
+          String distinctHeader = distinctHeaders.putIfAbsent(header, header);
+          headers.put(entry.getKey(), distinctHeader == null ? header : distinctHeader);
         }
       }
+      return headers;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading file headers.");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Nullable
+  private static String getHeader(Configuration hConf, Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(hConf);
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
+      return reader.readLine();
     }
-    return header;
   }
 
   /**
    * Creates a RecordReader that delegates to some other RecordReader for each path in the input split.
-   * The header for each file is set in the context Configuration to make it available to the delegate RecordReaders.
    */
   @Override
   public RecordReader<NullWritable, StructuredRecord> createRecordReader(InputSplit split, TaskAttemptContext context)
     throws IOException {
-    CombineHeaderFileSplit combineSplit = (CombineHeaderFileSplit) split;
-    if (combineSplit.getHeader() != null) {
-      context.getConfiguration().set(HEADER, combineSplit.getHeader());
-    }
-    return new CombineFileRecordReader<>(combineSplit, context, WrapperReader.class);
+    return new CombineFileRecordReader<>((CombineHeaderFileSplit) split, context, WrapperReader.class);
   }
 
   /**
    * A wrapper class that's responsible for delegating to a corresponding RecordReader in
    * {@link PathTrackingInputFormat}. All it does is pick the i'th path in the CombineFileSplit to create a
    * FileSplit and use the delegate RecordReader to read that split.
+   * The header of the file is set in the context Configuration to make it available to the delegate RecordReader.
    */
   public static class WrapperReader extends CombineFileRecordReaderWrapper<NullWritable, StructuredRecord> {
 
     public WrapperReader(CombineFileSplit split, TaskAttemptContext context,
                          Integer idx) throws IOException, InterruptedException {
-      super(new PathTrackingTextInputFormat(), split, context, idx);
+      super(new PathTrackingTextInputFormat(), setHeader(split, context, idx), context, idx);
+    }
+
+    private static CombineFileSplit setHeader(CombineFileSplit split, TaskAttemptContext context, int idx) {
+      String header = ((CombineHeaderFileSplit) split).getHeader(idx);
+      if (header == null) {
+        context.getConfiguration().unset(HEADER);
+      } else {
+        context.getConfiguration().set(HEADER, header);
+      }
+      return split;
     }
   }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.format.text.input;
+
+import co.cask.hydrator.format.input.PathTrackingInputFormat;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests for {@link CombineTextInputFormat}.
+ */
+public class CombineTextInputFormatTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testHeaderPerFile() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    for (int i = 0; i < 200; i++) {
+      // files have one of three headers, and some don't have any
+      String content = i % 10 == 0 ? "" : "header" + (i % 3) + "\nvalue" + i + "\n";
+      Files.write(content, new File(dir, "file" + i + ".txt"), Charsets.UTF_8);
+    }
+
+    Job job = Job.getInstance(new Configuration());
+    job.getConfiguration().setBoolean(PathTrackingInputFormat.COPY_HEADER, true);
+    FileInputFormat.addInputPath(job, new Path(dir.getAbsolutePath()));
+    FileInputFormat.setMaxInputSplitSize(job, 200);
+
+    List<InputSplit> splits = new CombineTextInputFormat().getSplits(job);
+    Assert.assertTrue(splits.size() > 1);
+    int numFiles = 0;
+    for (InputSplit split : splits) {
+      CombineHeaderFileSplit headerSplit = copy((CombineHeaderFileSplit) split);
+      Assert.assertEquals(((CombineHeaderFileSplit) split).getNumPaths(), headerSplit.getNumPaths());
+      for (int i = 0; i < headerSplit.getNumPaths(); i++) {
+        int fileNum = Integer.parseInt(headerSplit.getPath(i).getName().replaceAll("[^0-9]", ""));
+        String expected = fileNum % 10 == 0 ? null : "header" + (fileNum % 3);
+        Assert.assertEquals(expected, headerSplit.getHeader(i));
+        numFiles++;
+      }
+    }
+    Assert.assertEquals(200, numFiles);
+  }
+
+  @Test
+  public void testNoHeader() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    Files.write("header\nvalue\n", new File(dir, "file.txt"), Charsets.UTF_8);
+
+    Job job = Job.getInstance(new Configuration());
+    FileInputFormat.addInputPath(job, new Path(dir.getAbsolutePath()));
+    List<InputSplit> splits = new CombineTextInputFormat().getSplits(job);
+    Assert.assertEquals(1, splits.size());
+    Assert.assertNull(copy((CombineHeaderFileSplit) splits.get(0)).getHeader());
+  }
+
+  private static CombineHeaderFileSplit copy(CombineHeaderFileSplit split) throws Exception {
+    DataOutputBuffer out = new DataOutputBuffer();
+    split.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    CombineHeaderFileSplit copy = new CombineHeaderFileSplit();
+    copy.readFields(in);
+    return copy;
+  }
+}
@@ -63,5 +63,6 @@ public class HiveConfig extends ReferencePluginConfig {
     public static final String TABLE_NAME = "tableName";
     public static final String PARTITIONS = "partitions";
     public static final String SCHEMA = "schema";
+    public static final String FILTER = "filter";
   }
 }
@@ -31,10 +31,12 @@ import co.cask.hydrator.common.LineageRecorder;
 import co.cask.hydrator.common.ReferenceBatchSource;
 import co.cask.hydrator.common.SourceInputFormatProvider;
 import co.cask.hydrator.common.batch.JobUtils;
+import co.cask.hydrator.plugin.batch.HiveConfig;
 import co.cask.hydrator.plugin.batch.commons.HiveSchemaConverter;
 import com.google.gson.Gson;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -45,6 +47,8 @@ import org.apache.hive.service.auth.HiveAuthFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Batch source for Hive.
@@ -56,8 +60,11 @@ public class HiveBatchSource extends ReferenceBatchSource<WritableComparable, HC
 
   private static final Logger LOG = LoggerFactory.getLogger(HiveBatchSource.class);
   private static final Gson GSON = new Gson();
+  // the configuration key from which ORC reads the serialized search argument, see OrcInputFormat
+  private static final String SARG_PUSHDOWN = "sarg.pushdown";
   private HiveSourceConfig config;
   private HCatRecordTransformer hCatRecordTransformer;
+  private HiveFilter.RecordMatcher filterMatcher;
 
   public HiveBatchSource(HiveSourceConfig config) {
     super(config);
@@ -66,6 +73,10 @@ public class HiveBatchSource extends ReferenceBatchSource<WritableComparable, HC
 
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+    if (!config.containsMacro(HiveConfig.Hive.FILTER)) {
+      // validates the filter syntax
+      config.getFilter();
+    }
     if (config.schema != null) {
       try {
         pipelineConfigurer.getStageConfigurer().setOutputSchema(Schema.parseJson(config.schema));
@@ -92,12 +103,35 @@ public class HiveBatchSource extends ReferenceBatchSource<WritableComparable, HC
       }
       HCatInputFormat.setInput(conf, config.dbName, config.tableName, config.partitions);
 
-      HCatSchema hCatSchema = HCatInputFormat.getTableSchema(conf);
+      HCatSchema tableSchema = HCatInputFormat.getTableSchema(conf);
+      HCatSchema dataColumns = HCatInputFormat.getDataColumns(conf);
+      HCatSchema hCatSchema = tableSchema;
+      HiveFilter filter = config.getFilter();
+      if (filter != null) {
+        filter.validate(tableSchema, dataColumns);
+      }
       if (config.getSchema() != null) {
         // if the user provided a schema then we should use that schema to read the table. This will allow user to
         // drop non-primitive types and read the table.
-        hCatSchema = HiveSchemaConverter.toHiveSchema(config.getSchema(), hCatSchema);
+        hCatSchema = HiveSchemaConverter.toHiveSchema(config.getSchema(), tableSchema);
+        if (filter != null) {
+          // columns referenced by the filter must be read to evaluate it, even if they are not in the output
+          for (String column : filter.getColumns()) {
+            if (hCatSchema.getPosition(column) == null) {
+              hCatSchema.append(tableSchema.get(column));
+            }
+          }
+        }
         HCatInputFormat.setOutputSchema(job, hCatSchema);
+        setReadColumns(conf, hCatSchema, dataColumns);
+      }
+      if (filter != null) {
+        if (config.getSchema() == null) {
+          // ORC only applies the search argument if the names of the columns read are set
+          setReadColumns(conf, hCatSchema, dataColumns);
+        }
+        conf.set(SARG_PUSHDOWN, filter.toSearchArgument(hCatSchema).toKryo());
+        conf.setBoolean(HiveConf.ConfVars.HIVEOPTINDEXFILTER.varname, true);
       }
       context.getArguments().set(config.getDBTable(), GSON.toJson(hCatSchema));
       LineageRecorder lineageRecorder = new LineageRecorder(context, config.referenceName);
@@ -108,6 +142,23 @@ public class HiveBatchSource extends ReferenceBatchSource<WritableComparable, HC
     }
   }
 
+  /**
+   * Sets the data columns that are read, so that columnar formats such as ORC and Parquet only read the columns of
+   * the output schema from the files. Partition columns are not stored in the files and are skipped.
+   */
+  private void setReadColumns(Configuration conf, HCatSchema hCatSchema, HCatSchema dataColumns) {
+    List<Integer> ids = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (String name : hCatSchema.getFieldNames()) {
+      Integer position = dataColumns.getPosition(name);
+      if (position != null) {
+        ids.add(position);
+        names.add(name);
+      }
+    }
+    ColumnProjectionUtils.appendReadColumns(conf, ids, names);
+  }
+
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
@@ -120,12 +171,18 @@ public class HiveBatchSource extends ReferenceBatchSource<WritableComparable, HC
       schema = config.getSchema();
     }
     hCatRecordTransformer = new HCatRecordTransformer(hCatSchema, schema);
+    HiveFilter filter = config.getFilter();
+    filterMatcher = filter == null ? null : filter.getMatcher(hCatSchema);
   }
 
   @Override
   public void transform(KeyValue<WritableComparable, HCatRecord> input,
                         Emitter<StructuredRecord> emitter) throws Exception {
-    StructuredRecord record = hCatRecordTransformer.toRecord(input.getValue());
+    HCatRecord hCatRecord = input.getValue();
+    if (filterMatcher != null && !filterMatcher.matches(hCatRecord)) {
+      return;
+    }
+    StructuredRecord record = hCatRecordTransformer.toRecord(hCatRecord);
     emitter.emit(record);
   }
 }
@@ -0,0 +1,363 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.source;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.hive.common.type.HiveChar;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hive.hcatalog.data.HCatRecord;
+import org.apache.hive.hcatalog.data.schema.HCatFieldSchema;
+import org.apache.hive.hcatalog.data.schema.HCatSchema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * <p>A conjunction of conditions on non-partition columns of a Hive table, for example
+ * {@code price > 10.5 and country = 'US' and discount is not null}.</p>
+ * The conditions are pushed down to the storage format as a {@link SearchArgument}, which allows formats such as ORC
+ * to skip stripes and row groups that cannot match. Since the search argument is only a hint to the format, the
+ * conditions are also evaluated on each record that is read to drop the remaining records that do not match.
+ */
+public class HiveFilter {
+  private static final Pattern CONDITION = Pattern.compile(
+    "\\s*(\\w+)\\s*(?:(=|!=|<>|<=|>=|<|>)\\s*('(?:[^']|'')*'|[^\\s']+)|(?i:is\\s+(not\\s+)?null))\\s*");
+  private static final Pattern AND = Pattern.compile("(?i)and\\b");
+
+  private final List<Condition> conditions;
+
+  private HiveFilter(List<Condition> conditions) {
+    this.conditions = conditions;
+  }
+
+  /**
+   * Parses a filter expression.
+   *
+   * @param expression conditions of the form {@code column op value} or {@code column is [not] null}, joined by
+   *                   {@code and}. Supported operators are =, !=, <>, <, <=, > and >=. String values must be quoted
+   *                   with single quotes.
+   * @return the parsed {@link HiveFilter}
+   * @throws IllegalArgumentException if the expression is invalid
+   */
+  public static HiveFilter parse(String expression) {
+    List<Condition> conditions = new ArrayList<>();
+    Matcher condition = CONDITION.matcher(expression);
+    Matcher and = AND.matcher(expression);
+    int position = 0;
+    while (true) {
+      condition.region(position, expression.length());
+      if (!condition.lookingAt()) {
+        throw new IllegalArgumentException(
+          String.format("Invalid filter '%s'. Expected a condition at position %d.", expression, position));
+      }
+      conditions.add(toCondition(condition));
+      position = condition.end();
+      if (position == expression.length()) {
+        return new HiveFilter(conditions);
+      }
+      and.region(position, expression.length());
+      if (!and.lookingAt()) {
+        throw new IllegalArgumentException(
+          String.format("Invalid filter '%s'. Expected 'and' at position %d.", expression, position));
+      }
+      position = and.end();
+    }
+  }
+
+  private static Condition toCondition(Matcher matcher) {
+    String column = matcher.group(1).toLowerCase();
+    if (matcher.group(2) == null) {
+      return new Condition(column, matcher.group(4) == null ? Operator.IS_NULL : Operator.IS_NOT_NULL, null);
+    }
+    String literal = matcher.group(3);
+    boolean quoted = literal.startsWith("'");
+    if (quoted) {
+      literal = literal.substring(1, literal.length() - 1).replace("''", "'");
+    }
+    return new Condition(column, Operator.fromSymbol(matcher.group(2)), literal, quoted);
+  }
+
+  /**
+   * @return the names of the columns referenced by this filter
+   */
+  public List<String> getColumns() {
+    ImmutableList.Builder<String> columns = ImmutableList.builder();
+    for (Condition condition : conditions) {
+      columns.add(condition.column);
+    }
+    return columns.build();
+  }
+
+  /**
+   * Validates that this filter only references data columns of the table with types that can be compared.
+   *
+   * @param tableSchema the schema of the table, including partition columns
+   * @param dataColumns the schema of the data columns of the table
+   * @throws IllegalArgumentException if the filter is not valid for the table
+   */
+  public void validate(HCatSchema tableSchema, HCatSchema dataColumns) {
+    for (Condition condition : conditions) {
+      if (dataColumns.getPosition(condition.column) == null) {
+        if (tableSchema.getPosition(condition.column) != null) {
+          throw new IllegalArgumentException(String.format(
+            "Filter references partition column '%s'. Conditions on partition columns must be specified with the " +
+              "partitions property.", condition.column));
+        }
+        throw new IllegalArgumentException(
+          String.format("Filter references column '%s' which does not exist in the table.", condition.column));
+      }
+      condition.getLiteral(dataColumns);
+    }
+  }
+
+  /**
+   * Creates the {@link SearchArgument} for this filter that can be pushed down to the storage format.
+   *
+   * @param hCatSchema the {@link HCatSchema} of the records read, which must contain all columns in the filter
+   */
+  public SearchArgument toSearchArgument(HCatSchema hCatSchema) {
+    SearchArgument.Builder builder = SearchArgumentFactory.newBuilder().startAnd();
+    for (Condition condition : conditions) {
+      Object literal = condition.getLiteral(hCatSchema);
+      switch (condition.operator) {
+        case EQ:
+          builder.equals(condition.column, literal);
+          break;
+        case NE:
+          builder.startNot().equals(condition.column, literal).end();
+          break;
+        case LT:
+          builder.lessThan(condition.column, literal);
+          break;
+        case LE:
+          builder.lessThanEquals(condition.column, literal);
+          break;
+        case GT:
+          builder.startNot().lessThanEquals(condition.column, literal).end();
+          break;
+        case GE:
+          builder.startNot().lessThan(condition.column, literal).end();
+          break;
+        case IS_NULL:
+          builder.isNull(condition.column);
+          break;
+        case IS_NOT_NULL:
+          builder.startNot().isNull(condition.column).end();
+          break;
+      }
+    }
+    return builder.end().build();
+  }
+
+  /**
+   * Returns a {@link RecordMatcher} which evaluates this filter on records of the given {@link HCatSchema}. The column
+   * positions and values are resolved once so that evaluating a record does not require any lookups by name.
+   */
+  public RecordMatcher getMatcher(HCatSchema hCatSchema) {
+    int size = conditions.size();
+    int[] positions = new int[size];
+    Object[] literals = new Object[size];
+    for (int i = 0; i < size; i++) {
+      Condition condition = conditions.get(i);
+      Integer position = hCatSchema.getPosition(condition.column);
+      if (position == null) {
+        throw new IllegalArgumentException(
+          String.format("Filter references column '%s' which is not read from the table.", condition.column));
+      }
+      positions[i] = position;
+      literals[i] = condition.getLiteral(hCatSchema);
+    }
+    return new RecordMatcher(conditions, positions, literals);
+  }
+
+  /**
+   * Evaluates a {@link HiveFilter} on {@link HCatRecord HCatRecords}.
+   */
+  public static final class RecordMatcher {
+    private final Operator[] operators;
+    private final int[] positions;
+    private final Object[] literals;
+
+    private RecordMatcher(List<Condition> conditions, int[] positions, Object[] literals) {
+      this.operators = new Operator[conditions.size()];
+      for (int i = 0; i < operators.length; i++) {
+        operators[i] = conditions.get(i).operator;
+      }
+      this.positions = positions;
+      this.literals = literals;
+    }
+
+    /**
+     * @return whether the record satisfies all conditions of the filter. Comparisons with null values are false.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean matches(HCatRecord record) {
+      for (int i = 0; i < operators.length; i++) {
+        Object value = normalize(record.get(positions[i]));
+        Operator operator = operators[i];
+        if (operator == Operator.IS_NULL || operator == Operator.IS_NOT_NULL) {
+          if ((value == null) != (operator == Operator.IS_NULL)) {
+            return false;
+          }
+          continue;
+        }
+        if (value == null) {
+          return false;
+        }
+        int comparison = ((Comparable<Object>) value).compareTo(literals[i]);
+        if (!operator.accepts(comparison)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Nullable
+    private static Object normalize(@Nullable Object value) {
+      if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+        return ((Number) value).longValue();
+      }
+      if (value instanceof Float) {
+        return ((Float) value).doubleValue();
+      }
+      if (value instanceof HiveChar || value instanceof HiveVarchar) {
+        return value.toString();
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Comparison operators supported in a filter.
+   */
+  private enum Operator {
+    EQ, NE, LT, LE, GT, GE, IS_NULL, IS_NOT_NULL;
+
+    private static Operator fromSymbol(String symbol) {
+      switch (symbol) {
+        case "=":
+          return EQ;
+        case "!=":
+        case "<>":
+          return NE;
+        case "<":
+          return LT;
+        case "<=":
+          return LE;
+        case ">":
+          return GT;
+        case ">=":
+          return GE;
+        default:
+          throw new IllegalArgumentException("Unsupported operator " + symbol);
+      }
+    }
+
+    private boolean accepts(int comparison) {
+      switch (this) {
+        case EQ:
+          return comparison == 0;
+        case NE:
+          return comparison != 0;
+        case LT:
+          return comparison < 0;
+        case LE:
+          return comparison <= 0;
+        case GT:
+          return comparison > 0;
+        case GE:
+          return comparison >= 0;
+        default:
+          return false;
+      }
+    }
+  }
+
+  /**
+   * A single condition of a filter.
+   */
+  private static final class Condition {
+    private final String column;
+    private final Operator operator;
+    private final String literal;
+    private final boolean quoted;
+
+    private Condition(String column, Operator operator, @Nullable String literal) {
+      this(column, operator, literal, false);
+    }
+
+    private Condition(String column, Operator operator, @Nullable String literal, boolean quoted) {
+      this.column = column;
+      this.operator = operator;
+      this.literal = literal;
+      this.quoted = quoted;
+    }
+
+    /**
+     * Converts the literal of this condition to the type used to compare it with the column values. Integral
+     * values are compared as longs, floating point values as doubles and character values as strings. Literals for
+     * float columns are rounded to float precision first, since the float values of the column widened to doubles
+     * would otherwise never equal a literal such as 0.1.
+     */
+    @Nullable
+    private Object getLiteral(HCatSchema hCatSchema) {
+      if (literal == null) {
+        return null;
+      }
+      HCatFieldSchema field = hCatSchema.get(hCatSchema.getPosition(column));
+      PrimitiveObjectInspector.PrimitiveCategory category = field.getTypeInfo().getPrimitiveCategory();
+      try {
+        switch (category) {
+          case BOOLEAN:
+            if (!"true".equalsIgnoreCase(literal) && !"false".equalsIgnoreCase(literal)) {
+              throw new IllegalArgumentException("Expected 'true' or 'false'.");
+            }
+            return Boolean.parseBoolean(literal);
+          case BYTE:
+          case SHORT:
+          case INT:
+          case LONG:
+            return Long.parseLong(literal);
+          case FLOAT:
+            return (double) Float.parseFloat(literal);
+          case DOUBLE:
+            return Double.parseDouble(literal);
+          case CHAR:
+          case VARCHAR:
+          case STRING:
+            if (!quoted) {
+              throw new IllegalArgumentException("String values must be enclosed in single quotes.");
+            }
+            return literal;
+          default:
+            throw new IllegalArgumentException(
+              String.format("Filtering on columns of type %s is not supported.", category.name()));
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value '%s' in the filter on column '%s' of type %s. %s",
+                        literal, column, category.name(), e.getMessage()), e);
+      }
+    }
+  }
+}
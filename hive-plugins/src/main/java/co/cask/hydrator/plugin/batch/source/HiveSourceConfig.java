@@ -17,9 +17,11 @@
 package co.cask.hydrator.plugin.batch.source;
 
 import co.cask.cdap.api.annotation.Description;
+import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.hydrator.plugin.batch.HiveConfig;
+import com.google.common.base.Strings;
 
 import java.io.IOException;
 import javax.annotation.Nullable;
@@ -42,6 +44,15 @@ public class HiveSourceConfig extends HiveConfig {
   @Nullable
   public String schema;
 
+  @Name(Hive.FILTER)
+  @Description("Optional conditions on non-partition columns, joined by 'and'. For example: " +
+    "'price > 10.5 and country = 'US' and discount is not null'. The conditions are pushed down to the " +
+    "storage format, which allows formats like ORC to skip data that cannot match. Records that do not match the " +
+    "conditions are dropped.")
+  @Nullable
+  @Macro
+  public String filter;
+
   /**
    * @return {@link Schema} of the dataset if one was given else null
    */
@@ -54,4 +65,12 @@ public class HiveSourceConfig extends HiveConfig {
                                                        schema, e.getMessage()), e);
     }
   }
+
+  /**
+   * @return the {@link HiveFilter} if a filter was given else null
+   */
+  @Nullable
+  public HiveFilter getFilter() {
+    return Strings.isNullOrEmpty(filter) ? null : HiveFilter.parse(filter);
+  }
 }
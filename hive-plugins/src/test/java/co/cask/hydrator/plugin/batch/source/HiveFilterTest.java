@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hive.hcatalog.data.DefaultHCatRecord;
+import org.apache.hive.hcatalog.data.HCatRecord;
+import org.apache.hive.hcatalog.data.schema.HCatFieldSchema;
+import org.apache.hive.hcatalog.data.schema.HCatSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link HiveFilter}.
+ */
+public class HiveFilterTest {
+  private static final HCatSchema SCHEMA;
+
+  static {
+    try {
+      SCHEMA = new HCatSchema(ImmutableList.of(
+        new HCatFieldSchema("id", TypeInfoFactory.intTypeInfo, null),
+        new HCatFieldSchema("price", TypeInfoFactory.doubleTypeInfo, null),
+        new HCatFieldSchema("name", TypeInfoFactory.stringTypeInfo, null),
+        new HCatFieldSchema("country", TypeInfoFactory.getVarcharTypeInfo(10), null),
+        new HCatFieldSchema("active", TypeInfoFactory.booleanTypeInfo, null),
+        new HCatFieldSchema("created", TypeInfoFactory.dateTypeInfo, null)));
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Test
+  public void testComparisons() {
+    HCatRecord record = record(5, 10.5d, "it's", "US", true);
+    assertMatches(true, "id = 5", record);
+    assertMatches(false, "id = 6", record);
+    assertMatches(true, "id != 6", record);
+    assertMatches(false, "id <> 5", record);
+    assertMatches(true, "id < 6", record);
+    assertMatches(false, "id < 5", record);
+    assertMatches(true, "id <= 5", record);
+    assertMatches(false, "id <= 4", record);
+    assertMatches(true, "id > 4", record);
+    assertMatches(false, "id > 5", record);
+    assertMatches(true, "id >= 5", record);
+    assertMatches(false, "id >= 6", record);
+
+    assertMatches(true, "price > 10", record);
+    assertMatches(true, "price = 10.5", record);
+    assertMatches(false, "price >= 1e2", record);
+    assertMatches(true, "name = 'it''s'", record);
+    assertMatches(true, "name > 'abc'", record);
+    assertMatches(true, "country = 'US'", record);
+    assertMatches(false, "country != 'US'", record);
+    assertMatches(true, "active = true", record);
+    assertMatches(false, "active = FALSE", record);
+  }
+
+  @Test
+  public void testFloatColumn() throws Exception {
+    HCatSchema schema = new HCatSchema(ImmutableList.of(
+      new HCatFieldSchema("weight", TypeInfoFactory.floatTypeInfo, null)));
+    HCatRecord record = new DefaultHCatRecord(Arrays.<Object>asList(0.1f));
+    // the literal is compared at float precision, as the value was written
+    Assert.assertTrue(HiveFilter.parse("weight = 0.1").getMatcher(schema).matches(record));
+    Assert.assertTrue(HiveFilter.parse("weight <= 0.1").getMatcher(schema).matches(record));
+    Assert.assertTrue(HiveFilter.parse("weight >= 0.1").getMatcher(schema).matches(record));
+    Assert.assertFalse(HiveFilter.parse("weight != 0.1").getMatcher(schema).matches(record));
+    Assert.assertFalse(HiveFilter.parse("weight > 0.1").getMatcher(schema).matches(record));
+    Assert.assertFalse(HiveFilter.parse("weight = 0.2").getMatcher(schema).matches(record));
+    Assert.assertTrue(HiveFilter.parse("weight < 0.2").getMatcher(schema).matches(record));
+  }
+
+  @Test
+  public void testNullConditions() {
+    HCatRecord record = record(5, null, "abc", null, false);
+    assertMatches(true, "price is null", record);
+    assertMatches(false, "price is not null", record);
+    assertMatches(true, "name IS NOT NULL", record);
+    assertMatches(false, "name is null", record);
+    // comparisons with null values never match
+    assertMatches(false, "price = 1", record);
+    assertMatches(false, "price != 1", record);
+    assertMatches(false, "country < 'ZZ'", record);
+  }
+
+  @Test
+  public void testConjunction() {
+    HiveFilter filter = HiveFilter.parse("ID > 1 AND price<=20 and name = 'a and b'  and country is not null ");
+    Assert.assertEquals(ImmutableList.of("id", "price", "name", "country"), filter.getColumns());
+    HiveFilter.RecordMatcher matcher = filter.getMatcher(SCHEMA);
+    Assert.assertTrue(matcher.matches(record(2, 20d, "a and b", "US", true)));
+    Assert.assertFalse(matcher.matches(record(1, 20d, "a and b", "US", true)));
+    Assert.assertFalse(matcher.matches(record(2, 20.1d, "a and b", "US", true)));
+    Assert.assertFalse(matcher.matches(record(2, 20d, "a", "US", true)));
+    Assert.assertFalse(matcher.matches(record(2, 20d, "a and b", null, true)));
+  }
+
+  @Test
+  public void testSearchArgument() {
+    HiveFilter filter = HiveFilter.parse("id = 1 and id != 2 and id < 3 and id <= 4 and id > 5 and id >= 6 " +
+                                           "and name is null and price is not null");
+    SearchArgument searchArgument = filter.toSearchArgument(SCHEMA);
+    List<PredicateLeaf.Operator> operators = Arrays.asList(
+      PredicateLeaf.Operator.EQUALS, PredicateLeaf.Operator.EQUALS, PredicateLeaf.Operator.LESS_THAN,
+      PredicateLeaf.Operator.LESS_THAN_EQUALS, PredicateLeaf.Operator.LESS_THAN_EQUALS,
+      PredicateLeaf.Operator.LESS_THAN, PredicateLeaf.Operator.IS_NULL, PredicateLeaf.Operator.IS_NULL);
+    List<String> columns = Arrays.asList("id", "id", "id", "id", "id", "id", "name", "price");
+    List<PredicateLeaf> leaves = searchArgument.getLeaves();
+    Assert.assertEquals(operators.size(), leaves.size());
+    for (int i = 0; i < leaves.size(); i++) {
+      Assert.assertEquals(operators.get(i), leaves.get(i).getOperator());
+      Assert.assertEquals(columns.get(i), leaves.get(i).getColumnName());
+    }
+  }
+
+  @Test
+  public void testInvalidExpressions() {
+    assertInvalid("");
+    assertInvalid("id");
+    assertInvalid("id >");
+    assertInvalid("id ~ 5");
+    assertInvalid("id == 5");
+    assertInvalid("id > 5 and");
+    assertInvalid("id > 5 or price < 3");
+    assertInvalid("id > 5 price < 3");
+    assertInvalid("name = 'abc");
+    assertInvalid("price is not");
+    assertInvalid("(id > 5)");
+  }
+
+  @Test
+  public void testInvalidValues() {
+    assertInvalidForSchema("id = abc");
+    assertInvalidForSchema("id = 1.5");
+    assertInvalidForSchema("price < 'x'");
+    assertInvalidForSchema("name = abc");
+    assertInvalidForSchema("active = yes");
+    assertInvalidForSchema("created > '2018-01-01'");
+  }
+
+  @Test
+  public void testValidate() throws Exception {
+    HCatSchema tableSchema = new HCatSchema(ImmutableList.<HCatFieldSchema>builder()
+                                              .addAll(SCHEMA.getFields())
+                                              .add(new HCatFieldSchema("dt", TypeInfoFactory.stringTypeInfo, null))
+                                              .build());
+    HiveFilter.parse("id > 1 and country = 'US'").validate(tableSchema, SCHEMA);
+    try {
+      HiveFilter.parse("dt = '2018-01-01'").validate(tableSchema, SCHEMA);
+      Assert.fail("Expected a filter on a partition column to be rejected.");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().contains("partition column 'dt'"));
+    }
+    try {
+      HiveFilter.parse("missing = 1").validate(tableSchema, SCHEMA);
+      Assert.fail("Expected a filter on an unknown column to be rejected.");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().contains("'missing'"));
+    }
+    try {
+      HiveFilter.parse("id = 'x'").validate(tableSchema, SCHEMA);
+      Assert.fail("Expected a string value on an integral column to be rejected.");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().contains("column 'id'"));
+    }
+  }
+
+  private static void assertMatches(boolean expected, String expression, HCatRecord record) {
+    Assert.assertEquals(expression, expected, HiveFilter.parse(expression).getMatcher(SCHEMA).matches(record));
+  }
+
+  private static void assertInvalid(String expression) {
+    try {
+      HiveFilter.parse(expression);
+      Assert.fail(String.format("Expected filter '%s' to be invalid.", expression));
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void assertInvalidForSchema(String expression) {
+    HiveFilter filter = HiveFilter.parse(expression);
+    try {
+      filter.getMatcher(SCHEMA);
+      Assert.fail(String.format("Expected filter '%s' to be invalid for the schema.", expression));
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static HCatRecord record(Integer id, Double price, String name, String country, Boolean active) {
+    return new DefaultHCatRecord(Arrays.<Object>asList(
+      id, price, name, country == null ? null : new HiveVarchar(country, 10), active, null));
+  }
+}
@@ -23,14 +23,21 @@ import com.google.common.collect.Maps;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Converts an object with a schema into another type of object with the same schema.
  * For example, child implementations could convert a StructuredRecord to a GenericRecord and vice versa
  * as can be seen in AvroToStructuredTransformer and StructuredToAvroTransformer
  *
+ * Converters that convert many records with the same schema can {@link #compile(Schema)} each field schema once
+ * into a {@link FieldConverter}, which converts values the same way as {@link #convertField(Object, Schema)}
+ * without looking at the schema for every value.
+ *
  * @param <INPUT> type of input record
  * @param <OUTPUT> type of output record
  */
@@ -119,4 +126,116 @@ public abstract class RecordConverter<INPUT, OUTPUT> {
   protected Object convertBytes(Object field) {
     return field;
   }
+
+  /**
+   * Creates a {@link FieldConverter} for values of the given schema, which converts values the same way as
+   * {@link #convertField(Object, Schema)}.
+   */
+  protected FieldConverter compile(Schema fieldSchema) {
+    Schema.Type fieldType = fieldSchema.getType();
+    switch (fieldType) {
+      case RECORD:
+        return compileRecord(fieldSchema);
+      case ARRAY:
+        return compileArray(compile(fieldSchema.getComponentSchema()));
+      case MAP:
+        Map.Entry<Schema, Schema> mapSchema = fieldSchema.getMapSchema();
+        return compileMap(compile(mapSchema.getKey()), compile(mapSchema.getValue()));
+      case UNION:
+        return compileUnion(fieldSchema.getUnionSchemas());
+      case NULL:
+        return value -> null;
+      case STRING:
+        return Object::toString;
+      case BYTES:
+        return this::convertBytes;
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case BOOLEAN:
+        return value -> value;
+      default:
+        return value -> {
+          throw new UnexpectedFormatException("field type " + fieldType + " is not supported.");
+        };
+    }
+  }
+
+  /**
+   * Creates a {@link FieldConverter} for records of the given schema. Defaults to calling
+   * {@link #transform(Object, Schema)} for each record.
+   */
+  protected FieldConverter compileRecord(Schema recordSchema) {
+    return value -> transform((INPUT) value, recordSchema);
+  }
+
+  private FieldConverter compileUnion(List<Schema> schemas) {
+    // a null converter marks the null schema
+    FieldConverter[] converters = new FieldConverter[schemas.size()];
+    for (int i = 0; i < converters.length; i++) {
+      Schema possibleSchema = schemas.get(i);
+      converters[i] = possibleSchema.getType() == Schema.Type.NULL ? null : compile(possibleSchema);
+    }
+    return value -> {
+      boolean isNullable = false;
+      for (FieldConverter converter : converters) {
+        if (converter == null) {
+          isNullable = true;
+          if (value == null) {
+            return null;
+          }
+        } else {
+          try {
+            return converter.convert(value);
+          } catch (Exception e) {
+            // if we couldn't convert, move to the next possibility
+          }
+        }
+      }
+      if (isNullable) {
+        return null;
+      }
+      throw new UnexpectedFormatException("unable to determine union type.");
+    };
+  }
+
+  private static FieldConverter compileArray(FieldConverter elementConverter) {
+    return values -> {
+      List<Object> output;
+      if (values instanceof List) {
+        List<Object> valuesList = (List<Object>) values;
+        output = new ArrayList<>(valuesList.size());
+        for (Object value : valuesList) {
+          output.add(elementConverter.convert(value));
+        }
+      } else {
+        int length = Array.getLength(values);
+        output = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+          output.add(elementConverter.convert(Array.get(values, i)));
+        }
+      }
+      return output;
+    };
+  }
+
+  private static FieldConverter compileMap(FieldConverter keyConverter, FieldConverter valueConverter) {
+    return value -> {
+      Map<Object, Object> map = (Map<Object, Object>) value;
+      Map<Object, Object> converted = new HashMap<>();
+      for (Map.Entry<Object, Object> entry : map.entrySet()) {
+        converted.put(keyConverter.convert(entry.getKey()), valueConverter.convert(entry.getValue()));
+      }
+      return converted;
+    };
+  }
+
+  /**
+   * Converts values of a single schema, as created by {@link #compile(Schema)}.
+   */
+  @FunctionalInterface
+  protected interface FieldConverter {
+    Object convert(@Nullable Object value) throws IOException;
+  }
 }
@@ -35,7 +35,7 @@ import co.cask.hydrator.common.ReferencePluginConfig;
 import co.cask.hydrator.common.SourceInputFormatProvider;
 import co.cask.hydrator.plugin.BSONConverter;
 import com.google.common.base.Strings;
-import com.mongodb.hadoop.MongoInputFormat;
+import com.mongodb.BasicDBObject;
 import com.mongodb.hadoop.splitter.MongoSplitter;
 import com.mongodb.hadoop.splitter.StandaloneMongoSplitter;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -66,6 +66,7 @@ public class MongoDBBatchSource extends ReferenceBatchSource<Object, BSONObject,
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
+    config.validate();
     Schema schema = config.getSchema();
     BSONConverter.validateSchema(schema);
     pipelineConfigurer.getStageConfigurer().setOutputSchema(schema);
@@ -76,7 +77,7 @@ public class MongoDBBatchSource extends ReferenceBatchSource<Object, BSONObject,
     Configuration conf = new Configuration();
     conf.clear();
 
-    MongoConfigUtil.setInputFormat(conf, MongoInputFormat.class);
+    MongoConfigUtil.setInputFormat(conf, MongoDBInputFormat.class);
     MongoConfigUtil.setInputURI(conf, config.connectionString);
     if (!Strings.isNullOrEmpty(config.inputQuery)) {
       MongoConfigUtil.setQuery(conf, config.inputQuery);
@@ -84,16 +85,25 @@ public class MongoDBBatchSource extends ReferenceBatchSource<Object, BSONObject,
     if (!Strings.isNullOrEmpty(config.authConnectionString)) {
       MongoConfigUtil.setAuthURI(conf, config.authConnectionString);
     }
-    if (!Strings.isNullOrEmpty(config.inputFields)) {
-      MongoConfigUtil.setFields(conf, config.inputFields);
-    }
-    if (!Strings.isNullOrEmpty(config.splitterClass)) {
+    MongoConfigUtil.setFields(conf, config.getInputFields());
+    if (MongoRangeSplitter.class.getSimpleName().equals(config.splitterClass)) {
+      MongoConfigUtil.setSplitterClass(conf, MongoRangeSplitter.class);
+    } else if (!Strings.isNullOrEmpty(config.splitterClass)) {
       String className = String.format("%s.%s", StandaloneMongoSplitter.class.getPackage().getName(),
                                        config.splitterClass);
       Class<? extends MongoSplitter> klass = getClass().getClassLoader().loadClass(
         className).asSubclass(MongoSplitter.class);
       MongoConfigUtil.setSplitterClass(conf, klass);
     }
+    if (!Strings.isNullOrEmpty(config.splitKey)) {
+      MongoConfigUtil.setInputSplitKey(conf, new BasicDBObject(config.splitKey, 1));
+    }
+    if (config.splitSize != null) {
+      MongoConfigUtil.setSplitSize(conf, config.splitSize);
+    }
+    if (config.batchSize != null) {
+      MongoDBInputFormat.setCursorBatchSize(conf, config.batchSize);
+    }
     LineageRecorder lineageRecorder = new LineageRecorder(context, config.referenceName);
     lineageRecorder.createExternalDataset(config.getSchema());
     context.setInput(Input.of(config.referenceName,
@@ -157,19 +167,46 @@ public class MongoDBBatchSource extends ReferenceBatchSource<Object, BSONObject,
     @Name(Properties.INPUT_FIELDS)
     @Nullable
     @Description("A projection document limiting the fields that appear in each document. " +
-      "If no projection document is provided, all fields will be read.")
+      "If no projection document is provided, only the fields in the schema will be read.")
     @Macro
     private String inputFields;
 
     @Name(Properties.SPLITTER_CLASS)
     @Nullable
     @Description("The name of the Splitter class to use. If left empty, the MongoDB Hadoop Connector will attempt " +
-      "to make a best guess as to what Splitter to use.")
+      "to make a best guess as to what Splitter to use. Use 'MongoRangeSplitter' to split the range of the split key " +
+      "into splits of the configured size without running the 'splitVector' command.")
     @Macro
     private String splitterClass;
 
+    @Name(Properties.SPLIT_KEY)
+    @Nullable
+    @Description("The indexed field used by the splitter to divide the collection into splits. Defaults to '_id'.")
+    @Macro
+    private String splitKey;
+
+    @Name(Properties.SPLIT_SIZE)
+    @Nullable
+    @Description("The target size of each split in megabytes. Defaults to 8.")
+    @Macro
+    private Integer splitSize;
+
+    @Name(Properties.BATCH_SIZE)
+    @Nullable
+    @Description("The number of documents the cursor of each split fetches from MongoDB per round trip. " +
+      "If not specified, the MongoDB server default is used.")
+    @Macro
+    private Integer batchSize;
+
     public MongoDBConfig(String referenceName, String connectionString, String authConnectionString,
                          String schema, String inputQuery, String inputFields, String splitterClass) {
+      this(referenceName, connectionString, authConnectionString, schema, inputQuery, inputFields, splitterClass,
+           null, null, null);
+    }
+
+    public MongoDBConfig(String referenceName, String connectionString, String authConnectionString,
+                         String schema, String inputQuery, String inputFields, String splitterClass,
+                         @Nullable String splitKey, @Nullable Integer splitSize, @Nullable Integer batchSize) {
       super(referenceName);
       this.connectionString = connectionString;
       this.authConnectionString = authConnectionString;
@@ -177,6 +214,34 @@ public class MongoDBBatchSource extends ReferenceBatchSource<Object, BSONObject,
       this.inputQuery = inputQuery;
       this.inputFields = inputFields;
       this.splitterClass = splitterClass;
+      this.splitKey = splitKey;
+      this.splitSize = splitSize;
+      this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the configured projection document, or one that includes only the fields of the schema
+     */
+    public String getInputFields() {
+      if (!Strings.isNullOrEmpty(inputFields)) {
+        return inputFields;
+      }
+      BasicDBObject projection = new BasicDBObject();
+      for (Schema.Field field : getSchema().getFields()) {
+        projection.put(field.getName(), 1);
+      }
+      return projection.toString();
+    }
+
+    public void validate() {
+      if (!containsMacro(Properties.SPLIT_SIZE) && splitSize != null && splitSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid splitSize %d. Must be at least 1.", splitSize));
+      }
+      if (!containsMacro(Properties.BATCH_SIZE) && batchSize != null && batchSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid batchSize %d. Must be at least 1.", batchSize));
+      }
     }
 
     /**
@@ -206,5 +271,8 @@ public class MongoDBBatchSource extends ReferenceBatchSource<Object, BSONObject,
     public static final String INPUT_QUERY = "inputQuery";
     public static final String INPUT_FIELDS = "inputFields";
     public static final String SPLITTER_CLASS = "splitterClass";
+    public static final String SPLIT_KEY = "splitKey";
+    public static final String SPLIT_SIZE = "splitSize";
+    public static final String BATCH_SIZE = "batchSize";
   }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.source;
+
+import com.mongodb.DBCursor;
+import com.mongodb.hadoop.MongoInputFormat;
+import com.mongodb.hadoop.input.MongoInputSplit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link MongoInputFormat} that applies a cursor batch size to the splits computed by the configured splitter.
+ */
+public class MongoDBInputFormat extends MongoInputFormat {
+  public static final String CURSOR_BATCH_SIZE = "cdap.mongo.input.cursor.batch.size";
+
+  public static void setCursorBatchSize(Configuration conf, int batchSize) {
+    conf.setInt(CURSOR_BATCH_SIZE, batchSize);
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext context) throws IOException {
+    List<InputSplit> splits = super.getSplits(context);
+    int batchSize = context.getConfiguration().getInt(CURSOR_BATCH_SIZE, 0);
+    if (batchSize <= 0) {
+      return splits;
+    }
+    List<InputSplit> batchedSplits = new ArrayList<>(splits.size());
+    for (InputSplit split : splits) {
+      batchedSplits.add(split instanceof MongoInputSplit ?
+                          new BatchedMongoInputSplit((MongoInputSplit) split, batchSize) : split);
+    }
+    return batchedSplits;
+  }
+
+  /**
+   * A {@link MongoInputSplit} that sets the number of documents the cursor fetches per round trip.
+   */
+  public static class BatchedMongoInputSplit extends MongoInputSplit {
+    private int batchSize;
+
+    // used by Hadoop to deserialize the split
+    public BatchedMongoInputSplit() {
+    }
+
+    BatchedMongoInputSplit(MongoInputSplit split, int batchSize) {
+      setInputURI(split.getInputURI());
+      setAuthURI(split.getAuthURI());
+      setKeyField(split.getKeyField());
+      setFields(split.getFields());
+      setQuery(split.getQuery());
+      setSort(split.getSort());
+      setMin(split.getMin());
+      setMax(split.getMax());
+      setNoTimeout(split.getNoTimeout());
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public DBCursor getCursor() {
+      boolean created = cursor == null;
+      DBCursor dbCursor = super.getCursor();
+      if (created) {
+        dbCursor.batchSize(batchSize);
+      }
+      return dbCursor;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      super.write(out);
+      out.writeInt(batchSize);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      super.readFields(in);
+      batchSize = in.readInt();
+    }
+  }
+}
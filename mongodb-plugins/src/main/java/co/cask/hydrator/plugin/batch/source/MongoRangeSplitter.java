@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.source;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClientURI;
+import com.mongodb.hadoop.splitter.MongoCollectionSplitter;
+import com.mongodb.hadoop.splitter.SplitFailedException;
+import com.mongodb.hadoop.splitter.StandaloneMongoSplitter;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.bson.BSONObject;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MongoCollectionSplitter} that divides the key range of an indexed field into splits of roughly
+ * the configured split size. Unlike {@link StandaloneMongoSplitter}, it does not need the privileges to run the
+ * {@code splitVector} command: the boundaries are interpolated between the smallest and largest value of the split
+ * key that match the input query, and the number of splits is derived from the collection size. Interpolation is
+ * supported for numeric, date and ObjectId keys. For any other key type, this falls back to
+ * {@link StandaloneMongoSplitter}.
+ */
+public class MongoRangeSplitter extends MongoCollectionSplitter {
+  private static final Logger LOG = LoggerFactory.getLogger(MongoRangeSplitter.class);
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+
+  public MongoRangeSplitter() {
+  }
+
+  public MongoRangeSplitter(Configuration conf) {
+    super(conf);
+  }
+
+  @Override
+  public List<InputSplit> calculateSplits() throws SplitFailedException {
+    Configuration conf = getConfiguration();
+    String splitKey = MongoConfigUtil.getInputSplitKey(conf).keySet().iterator().next();
+    DBCollection collection = getInputCollection(conf);
+    try {
+      DBObject query = MongoConfigUtil.getQuery(conf);
+      Object min = getBoundaryValue(collection, query, splitKey, 1);
+      Object max = getBoundaryValue(collection, query, splitKey, -1);
+      List<InputSplit> splits = new ArrayList<>();
+      if (min == null || max == null) {
+        // no documents match the query, or the key is missing on the boundary documents
+        splits.add(createSplitFromBounds(null, null));
+        return splits;
+      }
+
+      CommandResult stats = collection.getStats();
+      long collectionSize = stats.containsField("size") ? ((Number) stats.get("size")).longValue() : 0L;
+      long splitSize = MongoConfigUtil.getSplitSize(conf) * BYTES_PER_MB;
+      int numSplits = (int) Math.max(1L, (collectionSize + splitSize - 1) / splitSize);
+
+      List<Object> boundaries = interpolate(min, max, numSplits);
+      if (boundaries == null) {
+        LOG.info("Cannot interpolate split boundaries for key '{}' with values of type {} and {}. " +
+                   "Falling back to {}.", splitKey, min.getClass().getName(), max.getClass().getName(),
+                 StandaloneMongoSplitter.class.getSimpleName());
+        return new StandaloneMongoSplitter(conf).calculateSplits();
+      }
+
+      // The first and last splits are left open so that documents inserted outside of the computed range while
+      // the job runs, as well as documents without the key, are still read.
+      BasicDBObject lower = null;
+      for (Object boundary : boundaries) {
+        BasicDBObject upper = new BasicDBObject(splitKey, boundary);
+        splits.add(createSplitFromBounds(lower, upper));
+        lower = upper;
+      }
+      splits.add(createSplitFromBounds(lower, null));
+      LOG.debug("Created {} splits on key '{}' for a collection of {} bytes.", splits.size(), splitKey,
+                collectionSize);
+      return splits;
+    } finally {
+      MongoConfigUtil.close(collection.getDB().getMongo());
+    }
+  }
+
+  private DBCollection getInputCollection(Configuration conf) {
+    MongoClientURI inputURI = MongoConfigUtil.getInputURI(conf);
+    MongoClientURI authURI = MongoConfigUtil.getAuthURI(conf);
+    return authURI == null ?
+      MongoConfigUtil.getCollection(inputURI) : MongoConfigUtil.getCollectionWithAuth(inputURI, authURI);
+  }
+
+  /**
+   * Returns the smallest (order 1) or largest (order -1) value of the key among the documents matching the query.
+   */
+  @Nullable
+  private Object getBoundaryValue(DBCollection collection, DBObject query, String key, int order) {
+    BasicDBObject fields = new BasicDBObject(key, 1);
+    if (!"_id".equals(key)) {
+      fields.put("_id", 0);
+    }
+    DBObject document = collection.findOne(query, fields, new BasicDBObject(key, order));
+    return document == null ? null : getValue(document, key);
+  }
+
+  @Nullable
+  private static Object getValue(BSONObject document, String path) {
+    Object value = document;
+    for (String part : path.split("\\.")) {
+      if (!(value instanceof BSONObject)) {
+        return null;
+      }
+      value = ((BSONObject) value).get(part);
+    }
+    return value;
+  }
+
+  /**
+   * Computes the inner boundaries that divide [min, max] into the given number of ranges. Boundaries that collapse
+   * onto the same value are dropped, so fewer ranges than requested can be returned.
+   *
+   * @return the strictly increasing list of inner boundaries, or {@code null} if the values cannot be interpolated
+   */
+  @Nullable
+  static List<Object> interpolate(Object min, Object max, int numSplits) {
+    List<Object> boundaries = new ArrayList<>();
+    if (isIntegral(min) && isIntegral(max)) {
+      long lower = ((Number) min).longValue();
+      long upper = ((Number) max).longValue();
+      long last = lower;
+      for (int i = 1; i < numSplits; i++) {
+        long boundary = lower + (long) ((double) (upper - lower) * i / numSplits);
+        if (boundary > last && boundary <= upper) {
+          boundaries.add(boundary);
+          last = boundary;
+        }
+      }
+    } else if (min instanceof Number && max instanceof Number) {
+      double lower = ((Number) min).doubleValue();
+      double upper = ((Number) max).doubleValue();
+      double last = lower;
+      for (int i = 1; i < numSplits; i++) {
+        double boundary = lower + (upper - lower) * i / numSplits;
+        if (boundary > last && boundary <= upper) {
+          boundaries.add(boundary);
+          last = boundary;
+        }
+      }
+    } else if (min instanceof Date && max instanceof Date) {
+      for (Object boundary : interpolate(((Date) min).getTime(), ((Date) max).getTime(), numSplits)) {
+        boundaries.add(new Date((Long) boundary));
+      }
+    } else if (min instanceof ObjectId && max instanceof ObjectId) {
+      // ObjectIds start with their creation time in seconds, which is used to place the boundaries.
+      // The remaining bytes are zero so that each boundary sorts before every id created in that second.
+      long lower = ((ObjectId) min).getTimestamp();
+      long upper = ((ObjectId) max).getTimestamp();
+      for (Object boundary : interpolate(lower, upper, numSplits)) {
+        boundaries.add(new ObjectId(((Long) boundary).intValue(), 0, (short) 0, 0));
+      }
+    } else {
+      return null;
+    }
+    return boundaries;
+  }
+
+  private static boolean isIntegral(Object value) {
+    return value instanceof Integer || value instanceof Long;
+  }
+}
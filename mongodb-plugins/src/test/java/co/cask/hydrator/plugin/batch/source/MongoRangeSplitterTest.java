@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.source;
+
+import com.google.common.collect.ImmutableList;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the boundaries computed by {@link MongoRangeSplitter}.
+ */
+public class MongoRangeSplitterTest {
+
+  @Test
+  public void testIntegralBoundaries() {
+    // range that does not start at zero and is not a multiple of the number of splits
+    Assert.assertEquals(ImmutableList.<Object>of(243L, 493L, 743L), MongoRangeSplitter.interpolate(-7, 993L, 4));
+    Assert.assertEquals(ImmutableList.<Object>of(-67L, -33L), MongoRangeSplitter.interpolate(-100L, 1, 3));
+    // a single split has no inner boundary
+    Assert.assertEquals(ImmutableList.of(), MongoRangeSplitter.interpolate(0L, 1000L, 1));
+    // boundaries that collapse onto the same value are dropped
+    Assert.assertEquals(ImmutableList.<Object>of(1L), MongoRangeSplitter.interpolate(0, 2, 5));
+    Assert.assertEquals(ImmutableList.of(), MongoRangeSplitter.interpolate(5L, 5L, 4));
+  }
+
+  @Test
+  public void testFloatingPointBoundaries() {
+    List<Object> boundaries = MongoRangeSplitter.interpolate(0.5d, 10.5d, 4);
+    Assert.assertEquals(ImmutableList.<Object>of(3.0d, 5.5d, 8.0d), boundaries);
+    // mixed integral and floating point keys are interpolated as doubles
+    Assert.assertEquals(ImmutableList.<Object>of(2.5d), MongoRangeSplitter.interpolate(0, 5.0d, 2));
+  }
+
+  @Test
+  public void testDateBoundaries() {
+    List<Object> boundaries = MongoRangeSplitter.interpolate(new Date(1000L), new Date(1900L), 3);
+    Assert.assertEquals(ImmutableList.<Object>of(new Date(1300L), new Date(1600L)), boundaries);
+  }
+
+  @Test
+  public void testObjectIdBoundaries() {
+    ObjectId min = new ObjectId(1500000000, 1, (short) 1, 1);
+    ObjectId max = new ObjectId(1500000400, 2, (short) 2, 2);
+    List<Object> boundaries = MongoRangeSplitter.interpolate(min, max, 4);
+    Assert.assertEquals(3, boundaries.size());
+    int[] expected = {1500000100, 1500000200, 1500000300};
+    for (int i = 0; i < expected.length; i++) {
+      ObjectId boundary = (ObjectId) boundaries.get(i);
+      Assert.assertEquals(expected[i], boundary.getTimestamp());
+      // each boundary sorts before every id created in the same second
+      Assert.assertTrue(boundary.compareTo(new ObjectId(expected[i], 0, (short) 0, 1)) < 0);
+    }
+    Assert.assertTrue(min.compareTo((ObjectId) boundaries.get(0)) < 0);
+    Assert.assertTrue(max.compareTo((ObjectId) boundaries.get(2)) > 0);
+  }
+
+  @Test
+  public void testUnsupportedBoundaries() {
+    Assert.assertNull(MongoRangeSplitter.interpolate("a", "z", 4));
+    Assert.assertNull(MongoRangeSplitter.interpolate(1L, new Date(10L), 4));
+  }
+}
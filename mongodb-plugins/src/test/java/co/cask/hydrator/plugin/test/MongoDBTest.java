@@ -43,6 +43,7 @@ import co.cask.cdap.test.WorkflowManager;
 import co.cask.hydrator.common.Constants;
 import co.cask.hydrator.plugin.batch.sink.MongoDBBatchSink;
 import co.cask.hydrator.plugin.batch.source.MongoDBBatchSource;
+import co.cask.hydrator.plugin.batch.source.MongoRangeSplitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -66,6 +67,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -301,6 +303,47 @@ public class MongoDBTest extends HydratorTestBase {
     Assert.assertEquals(10.10, (double) row2.get("price"), 0.00001);
   }
 
+  @Test
+  public void testMongoDBSourceWithRangeSplitter() throws Exception {
+    ETLStage source = new ETLStage("MongoDB", new ETLPlugin(
+      "MongoDB",
+      BatchSource.PLUGIN_TYPE,
+      new ImmutableMap.Builder<String, String>()
+        .put(MongoDBBatchSource.Properties.CONNECTION_STRING,
+             String.format("mongodb://localhost:%d/%s.%s",
+                           mongoPort, MONGO_DB, MONGO_SOURCE_COLLECTIONS))
+        .put(MongoDBBatchSource.Properties.SCHEMA, SOURCE_BODY_SCHEMA.toString())
+        .put(MongoDBBatchSource.Properties.SPLITTER_CLASS, MongoRangeSplitter.class.getSimpleName())
+        .put(MongoDBBatchSource.Properties.SPLIT_SIZE, "1")
+        .put(MongoDBBatchSource.Properties.BATCH_SIZE, "1")
+        .put(Constants.Reference.REFERENCE_NAME, "RangeSplitterMongoTest").build(),
+      null));
+    String outputDatasetName = "output-rangesplittertest";
+    ETLStage sink = new ETLStage("sink", MockSink.getPlugin(outputDatasetName));
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
+    ApplicationId appId = NamespaceId.DEFAULT.app("MongoRangeSplitterTest");
+    ApplicationManager appManager = deployApplication(appId, appRequest);
+
+    WorkflowManager workflowManager = appManager.getWorkflowManager(SmartWorkflow.NAME);
+    workflowManager.start();
+    workflowManager.waitForRuns(ProgramRunStatus.COMPLETED, 1, 5, TimeUnit.MINUTES);
+
+    DataSetManager<Table> outputManager = getDataset(outputDatasetName);
+    List<StructuredRecord> outputRecords = MockSink.readOutput(outputManager);
+    Assert.assertEquals(2, outputRecords.size());
+    Set<String> tickers = new HashSet<>();
+    for (StructuredRecord record : outputRecords) {
+      tickers.add(record.<String>get("ticker"));
+    }
+    Assert.assertEquals(ImmutableSet.of("AAPL", "ORCL"), tickers);
+  }
+
   private void verifyMongoSinkData(String collectionName) throws Exception {
     MongoClient mongoClient = factory.newMongo();
     MongoDatabase mongoDatabase = mongoClient.getDatabase(MONGO_DB);
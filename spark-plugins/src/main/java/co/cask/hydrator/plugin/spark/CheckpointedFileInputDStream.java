@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.spark;
+
+import co.cask.cdap.api.data.format.FormatSpecification;
+import co.cask.cdap.api.data.format.RecordFormat;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.format.RecordFormats;
+import com.google.common.collect.Iterators;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.streaming.StreamingContext;
+import org.apache.spark.streaming.Time;
+import org.apache.spark.streaming.dstream.InputDStream;
+import org.apache.spark.streaming.scheduler.StreamingListener;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchSubmitted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverError;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStopped;
+import scala.Option;
+import scala.Tuple2;
+import scala.reflect.ClassTag$;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Input stream that reads the new files of a directory in every batch. Unlike Spark's file stream, it keeps the
+ * files it has already selected in a {@link StreamingFileSelector}, which is saved with the rest of the stream graph
+ * in the Spark Streaming checkpoint. A batch that is recomputed after a restart reads exactly the files it selected
+ * before the restart, and files that were already processed are not selected again.
+ *
+ * Files are read through a Hadoop {@link InputFormat}, so reading is done by the executors, split by split. Input
+ * formats that produce {@link StructuredRecord StructuredRecords} are used as is. For the line based formats, the
+ * lines are read with a {@link TextInputFormat} and parsed with a {@link RecordFormat}.
+ */
+public class CheckpointedFileInputDStream extends InputDStream<StructuredRecord> {
+  private final StreamingFileSelector selector;
+  private final String inputFormatClassName;
+  private final Map<String, String> inputFormatConf;
+  private final String lineFormat;
+  private final String schema;
+  private final long maxSplitSize;
+  private transient ClassLoader classLoader;
+  private transient StreamingListener listener;
+
+  /**
+   * Creates a stream that reads files with the given input format, which must produce {@link NullWritable} keys
+   * and {@link StructuredRecord} values.
+   *
+   * @param ssc the streaming context
+   * @param path the directory to read files from
+   * @param extensions the extensions of the files to read, or an empty set to read all files
+   * @param ignoreMillis files that are older than this are ignored
+   * @param maxSplitSize the maximum size in bytes of the splits the files are read in
+   * @param inputFormatClassName the class name of the input format
+   * @param inputFormatConf the configuration of the input format
+   * @param classLoader the class loader to load the input format with
+   */
+  public CheckpointedFileInputDStream(StreamingContext ssc, String path, Set<String> extensions, long ignoreMillis,
+                                      long maxSplitSize, String inputFormatClassName,
+                                      Map<String, String> inputFormatConf, ClassLoader classLoader) {
+    this(ssc, path, extensions, ignoreMillis, maxSplitSize, inputFormatClassName, inputFormatConf, null, null);
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * Creates a stream that reads the lines of files and parses each of them with a {@link RecordFormat}.
+   *
+   * @param ssc the streaming context
+   * @param path the directory to read files from
+   * @param extensions the extensions of the files to read, or an empty set to read all files
+   * @param ignoreMillis files that are older than this are ignored
+   * @param maxSplitSize the maximum size in bytes of the splits the files are read in
+   * @param lineFormat the name of the record format
+   * @param schema the schema of the records
+   */
+  public CheckpointedFileInputDStream(StreamingContext ssc, String path, Set<String> extensions, long ignoreMillis,
+                                      long maxSplitSize, String lineFormat, String schema) {
+    this(ssc, path, extensions, ignoreMillis, maxSplitSize, TextInputFormat.class.getName(),
+         new HashMap<String, String>(), lineFormat, schema);
+  }
+
+  private CheckpointedFileInputDStream(StreamingContext ssc, String path, Set<String> extensions, long ignoreMillis,
+                                       long maxSplitSize, String inputFormatClassName,
+                                       Map<String, String> inputFormatConf, @Nullable String lineFormat,
+                                       @Nullable String schema) {
+    super(ssc, ClassTag$.MODULE$.<StructuredRecord>apply(StructuredRecord.class));
+    this.selector = new StreamingFileSelector(path, extensions, ignoreMillis);
+    this.inputFormatClassName = inputFormatClassName;
+    this.inputFormatConf = new HashMap<>(inputFormatConf);
+    this.lineFormat = lineFormat;
+    this.schema = schema;
+    this.maxSplitSize = maxSplitSize;
+  }
+
+  @Override
+  public void start() {
+    // also called after recovering from a checkpoint, since the listener is not part of the checkpoint
+    listener = new PendingBatchListener();
+    context().addStreamingListener(listener);
+  }
+
+  @Override
+  public void stop() {
+    // no-op, the listener bus is stopped together with the streaming context
+  }
+
+  @Override
+  public Option<RDD<StructuredRecord>> compute(Time validTime) {
+    String[] files;
+    try {
+      FileSystem fs = new Path(selector.getPath()).getFileSystem(context().sparkContext().hadoopConfiguration());
+      files = selector.getFiles(validTime.milliseconds(), fs);
+    } catch (IOException e) {
+      throw new RuntimeException(String.format("Unable to access directory '%s'.", selector.getPath()), e);
+    }
+
+    JavaSparkContext jsc = new JavaSparkContext(context().sparkContext());
+    if (files.length == 0) {
+      return Option.apply(jsc.<StructuredRecord>emptyRDD().rdd());
+    }
+    return Option.apply(createRDD(jsc, files));
+  }
+
+  private RDD<StructuredRecord> createRDD(JavaSparkContext jsc, String[] files) {
+    Job job;
+    try {
+      job = Job.getInstance(new Configuration(jsc.hadoopConfiguration()));
+    } catch (IOException e) {
+      // cannot happen, creating a job instance only copies the configuration
+      throw new RuntimeException(e);
+    }
+    Configuration conf = job.getConfiguration();
+    for (Map.Entry<String, String> entry : inputFormatConf.entrySet()) {
+      conf.set(entry.getKey(), entry.getValue());
+    }
+    Path[] paths = new Path[files.length];
+    for (int i = 0; i < files.length; i++) {
+      paths[i] = new Path(files[i]);
+    }
+    try {
+      FileInputFormat.setInputPaths(job, paths);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    // the input format plugins combine files into splits, which are only as large as this
+    FileInputFormat.setMaxInputSplitSize(job, maxSplitSize);
+
+    if (lineFormat != null) {
+      return jsc.newAPIHadoopRDD(conf, TextInputFormat.class, LongWritable.class, Text.class)
+        .mapPartitions(new LineFormatFunction(lineFormat, schema))
+        .rdd();
+    }
+    return jsc.newAPIHadoopRDD(conf, getInputFormatClass(), NullWritable.class, StructuredRecord.class).values().rdd();
+  }
+
+  @SuppressWarnings("unchecked")
+  private Class<InputFormat<NullWritable, StructuredRecord>> getInputFormatClass() {
+    ClassLoader loader = classLoader;
+    if (loader == null) {
+      // recovered from a checkpoint
+      loader = Thread.currentThread().getContextClassLoader();
+    }
+    if (loader == null) {
+      loader = getClass().getClassLoader();
+    }
+    try {
+      return (Class<InputFormat<NullWritable, StructuredRecord>>) loader.loadClass(inputFormatClassName);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(String.format("Unable to load input format class '%s'.",
+                                                    inputFormatClassName), e);
+    }
+  }
+
+  /**
+   * Forgets the files selected for a batch once it has completed, since it will not be recomputed anymore.
+   */
+  private final class PendingBatchListener implements StreamingListener {
+
+    @Override
+    public void onBatchCompleted(StreamingListenerBatchCompleted batchCompleted) {
+      selector.batchCompleted(batchCompleted.batchInfo().batchTime().milliseconds());
+    }
+
+    @Override
+    public void onReceiverStarted(StreamingListenerReceiverStarted receiverStarted) {
+      // no-op
+    }
+
+    @Override
+    public void onReceiverError(StreamingListenerReceiverError receiverError) {
+      // no-op
+    }
+
+    @Override
+    public void onReceiverStopped(StreamingListenerReceiverStopped receiverStopped) {
+      // no-op
+    }
+
+    @Override
+    public void onBatchSubmitted(StreamingListenerBatchSubmitted batchSubmitted) {
+      // no-op
+    }
+
+    @Override
+    public void onBatchStarted(StreamingListenerBatchStarted batchStarted) {
+      // no-op
+    }
+
+    @Override
+    public void onOutputOperationStarted(StreamingListenerOutputOperationStarted outputOperationStarted) {
+      // no-op
+    }
+
+    @Override
+    public void onOutputOperationCompleted(StreamingListenerOutputOperationCompleted outputOperationCompleted) {
+      // no-op
+    }
+  }
+
+  /**
+   * Parses the lines of a partition with a {@link RecordFormat}, without copying the bytes of each line.
+   * Everything here should be serializable, as Spark Streaming will serialize all functions.
+   */
+  private static class LineFormatFunction
+    implements FlatMapFunction<Iterator<Tuple2<LongWritable, Text>>, StructuredRecord> {
+    private final String format;
+    private final String schemaStr;
+
+    LineFormatFunction(String format, String schemaStr) {
+      this.format = format;
+      this.schemaStr = schemaStr;
+    }
+
+    @Override
+    public Iterable<StructuredRecord> call(final Iterator<Tuple2<LongWritable, Text>> lines) throws Exception {
+      final Schema schema = Schema.parseJson(schemaStr);
+      FormatSpecification spec = new FormatSpecification(format, schema, new HashMap<String, String>());
+      final RecordFormat<ByteBuffer, StructuredRecord> recordFormat = RecordFormats.createInitializedFormat(spec);
+      return () -> Iterators.transform(lines, line -> {
+        Text text = line._2();
+        StructuredRecord messageRecord = recordFormat.read(ByteBuffer.wrap(text.getBytes(), 0, text.getLength()));
+        StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+        for (Schema.Field messageField : messageRecord.getSchema().getFields()) {
+          String fieldName = messageField.getName();
+          builder.set(fieldName, messageRecord.get(fieldName));
+        }
+        return builder.build();
+      });
+    }
+  }
+}
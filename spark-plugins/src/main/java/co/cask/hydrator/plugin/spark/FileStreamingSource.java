@@ -20,33 +20,25 @@ import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
-import co.cask.cdap.api.data.format.FormatSpecification;
-import co.cask.cdap.api.data.format.RecordFormat;
+import co.cask.cdap.api.data.batch.InputFormatProvider;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.streaming.StreamingContext;
 import co.cask.cdap.etl.api.streaming.StreamingSource;
-import co.cask.cdap.format.RecordFormats;
 import co.cask.hydrator.common.ReferencePluginConfig;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.io.Files;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
-import org.apache.spark.api.java.function.Function;
+import com.google.common.collect.Sets;
 import org.apache.spark.streaming.api.java.JavaDStream;
 import org.apache.spark.streaming.api.java.JavaStreamingContext;
-import scala.Tuple2;
+import scala.reflect.ClassTag$;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -56,6 +48,7 @@ import javax.annotation.Nullable;
 @Name("File")
 @Description("File streaming source. Streams data from files that are atomically moved into a specified directory.")
 public class FileStreamingSource extends ReferenceStreamingSource<StructuredRecord> {
+  private static final String FORMAT_PLUGIN_ID = "format";
   private final Conf conf;
 
   public FileStreamingSource(Conf conf) {
@@ -67,6 +60,20 @@ public class FileStreamingSource extends ReferenceStreamingSource<StructuredReco
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) throws IllegalArgumentException {
     super.configurePipeline(pipelineConfigurer);
     conf.validate();
+    if (!conf.containsMacro("format")) {
+      if (Conf.isPluginFormat(conf.format)) {
+        InputFormatProvider inputFormatProvider = pipelineConfigurer.usePlugin(
+          "inputformat", conf.format, getFormatPluginId(conf.format), conf.getProperties());
+        if (inputFormatProvider == null) {
+          throw new IllegalArgumentException(String.format("Could not find the '%s' input format.", conf.format));
+        }
+      }
+    } else {
+      // the format is only known at runtime, so every input format plugin that is available is registered
+      for (String format : Conf.PLUGIN_FORMATS) {
+        pipelineConfigurer.usePlugin("inputformat", format, getFormatPluginId(format), conf.getProperties());
+      }
+    }
     pipelineConfigurer.getStageConfigurer().setOutputSchema(conf.getSchema());
   }
 
@@ -76,74 +83,32 @@ public class FileStreamingSource extends ReferenceStreamingSource<StructuredReco
     context.registerLineage(conf.referenceName);
 
     JavaStreamingContext jsc = context.getSparkStreamingContext();
-
-    Function<Path, Boolean> filter =
-      conf.extensions == null ? new NoFilter() : new ExtensionFilter(conf.getExtensions());
-
-    jsc.ssc().conf().set("spark.streaming.fileStream.minRememberDuration", conf.ignoreThreshold + "s");
-    return jsc.fileStream(conf.path, LongWritable.class, Text.class,
-                          TextInputFormat.class, filter, false)
-      .map(new FormatFunction(conf.format, conf.schema));
-  }
-
-  /**
-   * Doesn't filter any files.
-   */
-  private static class NoFilter implements Function<Path, Boolean> {
-    @Override
-    public Boolean call(Path path) throws Exception {
-      return true;
+    long ignoreMillis = TimeUnit.SECONDS.toMillis(conf.ignoreThreshold);
+    CheckpointedFileInputDStream stream;
+    if (Conf.isPluginFormat(conf.format)) {
+      InputFormatProvider inputFormatProvider = newInputFormatProvider(context, conf.format);
+      stream = new CheckpointedFileInputDStream(jsc.ssc(), conf.path, conf.getExtensions(), ignoreMillis,
+                                                conf.getMaxSplitSize(), inputFormatProvider.getInputFormatClassName(),
+                                                inputFormatProvider.getInputFormatConfiguration(),
+                                                inputFormatProvider.getClass().getClassLoader());
+    } else {
+      stream = new CheckpointedFileInputDStream(jsc.ssc(), conf.path, conf.getExtensions(), ignoreMillis,
+                                                conf.getMaxSplitSize(), conf.format, conf.schema);
     }
+    return new JavaDStream<>(stream, ClassTag$.MODULE$.<StructuredRecord>apply(StructuredRecord.class));
   }
 
-  /**
-   * Filters out files that don't have one of the supported extensions.
-   */
-  private static class ExtensionFilter implements Function<Path, Boolean> {
-    private final Set<String> extensions;
-
-    ExtensionFilter(Set<String> extensions) {
-      this.extensions = extensions;
-    }
-
-    @Override
-    public Boolean call(Path path) throws Exception {
-      String extension = Files.getFileExtension(path.getName());
-      return extensions.contains(extension);
-    }
+  private static String getFormatPluginId(String format) {
+    return FORMAT_PLUGIN_ID + "." + format;
   }
 
-  /**
-   * Transforms kafka key and message into a structured record when message format and schema are given.
-   * Everything here should be serializable, as Spark Streaming will serialize all functions.
-   */
-  private static class FormatFunction implements Function<Tuple2<LongWritable, Text>, StructuredRecord> {
-    private final String format;
-    private final String schemaStr;
-    private transient Schema schema;
-    private transient RecordFormat<ByteBuffer, StructuredRecord> recordFormat;
-
-    FormatFunction(String format, String schemaStr) {
-      this.format = format;
-      this.schemaStr = schemaStr;
-    }
-
-    @Override
-    public StructuredRecord call(Tuple2<LongWritable, Text> in) throws Exception {
-      // first time this was called, initialize schema and time, key, and message fields.
-      if (recordFormat == null) {
-        schema = Schema.parseJson(schemaStr);
-        FormatSpecification spec = new FormatSpecification(format, schema, new HashMap<String, String>());
-        recordFormat = RecordFormats.createInitializedFormat(spec);
-      }
-
-      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
-      StructuredRecord messageRecord = recordFormat.read(ByteBuffer.wrap(in._2().copyBytes()));
-      for (Schema.Field messageField : messageRecord.getSchema().getFields()) {
-        String fieldName = messageField.getName();
-        builder.set(fieldName, messageRecord.get(fieldName));
-      }
-      return builder.build();
+  private static InputFormatProvider newInputFormatProvider(StreamingContext context, String format)
+    throws InstantiationException {
+    try {
+      return context.newPluginInstance(getFormatPluginId(format));
+    } catch (IllegalArgumentException e) {
+      // the plugin was not registered because it was not available when the pipeline was deployed
+      throw new IllegalArgumentException(String.format("Could not find the '%s' input format.", format), e);
     }
   }
 
@@ -151,10 +116,15 @@ public class FileStreamingSource extends ReferenceStreamingSource<StructuredReco
    * Configuration for the source.
    */
   public static class Conf extends ReferencePluginConfig {
-    private static final Set<String> FORMATS = ImmutableSet.of("text", "csv", "tsv", "clf", "grok", "syslog");
+    private static final long DEFAULT_MAX_SPLIT_SIZE = 128L * 1024 * 1024;
+    // formats that are read with an input format plugin, the others are parsed line by line with a record format
+    private static final Set<String> PLUGIN_FORMATS = ImmutableSet.of("avro", "blob", "json", "parquet");
+    private static final Set<String> FORMATS =
+      Sets.union(ImmutableSet.of("text", "csv", "tsv", "clf", "grok", "syslog"), PLUGIN_FORMATS).immutableCopy();
 
     @Macro
-    @Description("The format of the source files. Must be text, csv, tsv, clf, grok, or syslog. Defaults to text.")
+    @Description("The format of the source files. Must be text, csv, tsv, clf, grok, syslog, json, avro, parquet, " +
+      "or blob. Defaults to text.")
     @Nullable
     private String format;
 
@@ -176,6 +146,13 @@ public class FileStreamingSource extends ReferenceStreamingSource<StructuredReco
     @Nullable
     private String extensions;
 
+    @Macro
+    @Description("Maximum size in bytes of each partition used to read the files of a batch. Smaller partitions " +
+      "will increase the level of parallelism, but will require more resources and overhead. " +
+      "Defaults to 134217728 (128 MB).")
+    @Nullable
+    private Long maxSplitSize;
+
     public Conf() {
       super(null);
       this.path = "";
@@ -191,6 +168,18 @@ public class FileStreamingSource extends ReferenceStreamingSource<StructuredReco
           String.format("Invalid format '%s'. Must be one of %s", format, Joiner.on(',').join(FORMATS)));
       }
       getSchema();
+      if (!containsMacro("maxSplitSize") && maxSplitSize != null && maxSplitSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid maximum split size %d. Must be at least 1.", maxSplitSize));
+      }
+    }
+
+    private long getMaxSplitSize() {
+      return maxSplitSize == null ? DEFAULT_MAX_SPLIT_SIZE : maxSplitSize;
+    }
+
+    private static boolean isPluginFormat(String format) {
+      return PLUGIN_FORMATS.contains(format);
     }
 
     private Schema getSchema() {
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.spark;
+
+import com.google.common.io.Files;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Selects the new files of a directory for each batch of a {@link CheckpointedFileInputDStream}. It remembers the
+ * files selected for batches that have not completed and the files that were selected recently, and is saved with the
+ * stream in the Spark Streaming checkpoint. After recovering from a checkpoint, a pending batch is recomputed from
+ * the files it selected before, and files that were already selected are not selected again.
+ */
+final class StreamingFileSelector implements Serializable {
+  private static final Logger LOG = LoggerFactory.getLogger(StreamingFileSelector.class);
+  private static final long serialVersionUID = 4365921739402740146L;
+
+  private final String path;
+  private final Set<String> extensions;
+  private final long ignoreMillis;
+  // files selected for batches that have not completed yet, so that they can be recomputed on recovery
+  private final TreeMap<Long, String[]> pending;
+  // files that were selected and whose modification time is still within the ignore threshold
+  private final Map<String, Long> recent;
+  // files modified before this time are ignored
+  private long threshold;
+
+  /**
+   * @param path the directory to select files from
+   * @param extensions the extensions of the files to select, or an empty set to select all files
+   * @param ignoreMillis files that are older than this are ignored
+   */
+  StreamingFileSelector(String path, Set<String> extensions, long ignoreMillis) {
+    this.path = path;
+    this.extensions = extensions;
+    this.ignoreMillis = ignoreMillis;
+    this.pending = new TreeMap<>();
+    this.recent = new HashMap<>();
+    this.threshold = -1L;
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the files of the batch with the given time. If files were already selected for the batch, the same files
+   * are returned. Otherwise the directory is listed and the new files are selected.
+   */
+  synchronized String[] getFiles(long time, FileSystem fs) {
+    String[] files = pending.get(time);
+    if (files == null) {
+      files = selectFiles(time, fs);
+      pending.put(time, files);
+    } else {
+      LOG.info("Recomputing batch {} from {} previously selected files.", time, files.length);
+    }
+    return files;
+  }
+
+  /**
+   * Forgets the files selected for the batches up to the given time, since they will not be recomputed anymore.
+   */
+  synchronized void batchCompleted(long time) {
+    pending.headMap(time, true).clear();
+  }
+
+  /**
+   * Lists the directory and returns the files that were modified after the threshold and have not been selected
+   * before. Also advances the threshold and forgets about the files that were modified before it.
+   */
+  private String[] selectFiles(long time, FileSystem fs) {
+    if (threshold < 0) {
+      threshold = time - ignoreMillis;
+    }
+    List<String> selected = new ArrayList<>();
+    try {
+      for (FileStatus status : fs.listStatus(new Path(path))) {
+        Path file = status.getPath();
+        String name = file.getName();
+        if (status.isDirectory() || name.startsWith(".") || name.startsWith("_")
+          || (!extensions.isEmpty() && !extensions.contains(Files.getFileExtension(name)))) {
+          continue;
+        }
+        String fileName = file.toString();
+        if (status.getModificationTime() >= threshold && !recent.containsKey(fileName)) {
+          selected.add(fileName);
+          recent.put(fileName, status.getModificationTime());
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(String.format("Unable to list files in directory '%s'.", path), e);
+    }
+
+    threshold = Math.max(threshold, time - ignoreMillis);
+    Iterator<Long> modificationTimes = recent.values().iterator();
+    while (modificationTimes.hasNext()) {
+      if (modificationTimes.next() < threshold) {
+        modificationTimes.remove();
+      }
+    }
+    LOG.debug("Selected {} new files in '{}' for batch time {}.", selected.size(), path, time);
+    return selected.toArray(new String[selected.size()]);
+  }
+
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    // the checkpoint is written while the next batch can already be computed
+    out.defaultWriteObject();
+  }
+}
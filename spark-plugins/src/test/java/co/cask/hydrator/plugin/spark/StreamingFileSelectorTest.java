@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.spark;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link StreamingFileSelector}, the state of the {@link CheckpointedFileInputDStream}.
+ */
+public class StreamingFileSelectorTest {
+  private static final long IGNORE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final long START = 1500000000000L;
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private File dir;
+  private FileSystem fs;
+
+  @Before
+  public void setup() throws IOException {
+    dir = tmpFolder.newFolder();
+    fs = FileSystem.getLocal(new Configuration());
+  }
+
+  @Test
+  public void testSelectNewFiles() throws IOException {
+    StreamingFileSelector selector = new StreamingFileSelector(dir.getAbsolutePath(), ImmutableSet.of("txt", "csv"),
+                                                               IGNORE_MILLIS);
+    createFile("a.txt", START - 1000);
+    createFile("b.csv", START);
+    // too old, hidden, or with another extension
+    createFile("old.txt", START - IGNORE_MILLIS - 1);
+    createFile(".hidden.txt", START);
+    createFile("_SUCCESS", START);
+    createFile("c.done", START);
+
+    assertFiles(selector.getFiles(START, fs), "a.txt", "b.csv");
+    Assert.assertEquals(0, selector.getFiles(START + 1000, fs).length);
+
+    createFile("d.txt", START + 1500);
+    assertFiles(selector.getFiles(START + 2000, fs), "d.txt");
+
+    // files are not selected again after they have been forgotten, since they are older than the threshold then
+    selector.batchCompleted(START + 2000);
+    Assert.assertEquals(0, selector.getFiles(START + IGNORE_MILLIS + 5000, fs).length);
+  }
+
+  @Test
+  public void testRecoveryFromCheckpoint() throws Exception {
+    StreamingFileSelector selector = new StreamingFileSelector(dir.getAbsolutePath(), ImmutableSet.<String>of(),
+                                                               IGNORE_MILLIS);
+    createFile("a.txt", START);
+    createFile("b.txt", START);
+    assertFiles(selector.getFiles(START, fs), "a.txt", "b.txt");
+    selector.batchCompleted(START);
+
+    createFile("c.txt", START + 500);
+    assertFiles(selector.getFiles(START + 1000, fs), "c.txt");
+
+    // the checkpoint is written while the batch that reads c.txt has not completed
+    StreamingFileSelector recovered = checkpoint(selector);
+
+    // files written before the restart, while the stream was down
+    createFile("d.txt", START + 1500);
+    createFile("e.txt", START + 2500);
+
+    // the pending batch is recomputed from the same files, even though more files are in the directory now
+    assertFiles(recovered.getFiles(START + 1000, fs), "c.txt");
+    // the completed batch is not recomputed, and files that were already processed are not selected again
+    assertFiles(recovered.getFiles(START + 2000, fs), "d.txt", "e.txt");
+    Assert.assertEquals(0, recovered.getFiles(START + 3000, fs).length);
+
+    // a checkpoint taken after all batches completed does not replay anything
+    recovered.batchCompleted(START + 3000);
+    StreamingFileSelector recoveredAgain = checkpoint(recovered);
+    Assert.assertEquals(0, recoveredAgain.getFiles(START + 1000, fs).length);
+    Assert.assertEquals(0, recoveredAgain.getFiles(START + 4000, fs).length);
+    createFile("f.txt", START + 4500);
+    assertFiles(recoveredAgain.getFiles(START + 5000, fs), "f.txt");
+  }
+
+  private void createFile(String name, long modificationTime) throws IOException {
+    File file = new File(dir, name);
+    Files.write(new byte[] { 1 }, file);
+    Assert.assertTrue(file.setLastModified(modificationTime));
+  }
+
+  private void assertFiles(String[] files, String... expectedNames) {
+    Set<String> names = new HashSet<>();
+    for (String file : files) {
+      names.add(new Path(file).getName());
+    }
+    Assert.assertEquals(files.length, names.size());
+    Assert.assertEquals(new HashSet<>(Arrays.asList(expectedNames)), names);
+  }
+
+  /**
+   * Serializes and deserializes the selector, in the same way as it is written to and read from the checkpoint.
+   */
+  private static StreamingFileSelector checkpoint(StreamingFileSelector selector) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(selector);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (StreamingFileSelector) in.readObject();
+    }
+  }
+}
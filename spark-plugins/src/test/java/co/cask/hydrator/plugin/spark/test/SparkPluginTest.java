@@ -44,6 +44,7 @@ import co.cask.cdap.test.DataSetManager;
 import co.cask.cdap.test.SparkManager;
 import co.cask.cdap.test.TestConfiguration;
 import co.cask.http.HttpHandler;
+import co.cask.format.json.input.JsonInputFormatProvider;
 import co.cask.http.NettyHttpService;
 import co.cask.hydrator.common.http.HTTPPollConfig;
 import co.cask.hydrator.plugin.spark.FileStreamingSource;
@@ -115,6 +116,9 @@ public class SparkPluginTest extends HydratorTestBase {
     addPluginArtifact(NamespaceId.DEFAULT.artifact("spark-plugins", "1.0.0"), parents,
                       TwitterStreamingSource.class, FileStreamingSource.class,
                       HTTPPollerSource.class, HTTPPollConfig.class);
+    // add the format plugins read by the file source
+    addPluginArtifact(NamespaceId.DEFAULT.artifact("formats-json", "4.0.0"), parents,
+                      ImmutableSet.of(JsonInputFormatProvider.PLUGIN_CLASS), JsonInputFormatProvider.class);
 
     List<HttpHandler> handlers = new ArrayList<>();
     handlers.add(new MockFeedHandler());
@@ -278,6 +282,80 @@ public class SparkPluginTest extends HydratorTestBase {
     sparkManager.stop();
   }
 
+  @Test
+  public void testFileSourceRecoveryWithFormatPlugin() throws Exception {
+    Schema schema = Schema.recordOf(
+      "user",
+      Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("first", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("last", Schema.of(Schema.Type.STRING)));
+
+    File folder = tmpFolder.newFolder("fileSourceRecoveryTest");
+    File checkpointFolder = tmpFolder.newFolder("fileSourceRecoveryCheckpoint");
+
+    CharStreams.write("{\"id\":1,\"first\":\"samuel\",\"last\":\"jackson\"}\n" +
+                        "{\"id\":2,\"first\":\"dwayne\",\"last\":\"johnson\"}",
+                      Files.newWriterSupplier(new File(folder, "input1.json"), Charsets.UTF_8));
+
+    Map<String, String> properties = ImmutableMap.<String, String>builder()
+      .put("path", folder.getAbsolutePath())
+      .put("format", "json")
+      .put("schema", schema.toString())
+      .put("referenceName", "fileSourceRecoveryTestInput")
+      .put("ignoreThreshold", "300")
+      .put("maxSplitSize", "1024")
+      .build();
+
+    DataStreamsConfig pipelineCfg = DataStreamsConfig.builder()
+      .addStage(new ETLStage("source", new ETLPlugin("File", StreamingSource.PLUGIN_TYPE, properties, null)))
+      .addStage(new ETLStage("sink", MockSink.getPlugin("fileRecoveryOutput")))
+      .addConnection("source", "sink")
+      .setBatchInterval("1s")
+      .setCheckpointDir(checkpointFolder.toURI().toString())
+      .build();
+
+    AppRequest<DataStreamsConfig> appRequest = new AppRequest<>(DATASTREAMS_ARTIFACT, pipelineCfg);
+    ApplicationManager appManager = deployApplication(NamespaceId.DEFAULT.app("FileSourceRecoveryApp"), appRequest);
+
+    SparkManager sparkManager = appManager.getSparkManager(DataStreamsSparkLauncher.NAME);
+    sparkManager.start();
+    sparkManager.waitForRun(ProgramRunStatus.RUNNING, 1, TimeUnit.MINUTES);
+
+    DataSetManager<Table> outputManager = getDataset("fileRecoveryOutput");
+    waitForUsers(outputManager, ImmutableMap.of(1L, "samuel jackson", 2L, "dwayne johnson"));
+
+    sparkManager.stop();
+    sparkManager.waitForRuns(ProgramRunStatus.KILLED, 1, 1, TimeUnit.MINUTES);
+
+    // the restarted run recovers the stream from the checkpoint, which does not restore the class loader of the
+    // format plugin, so the input format has to be loaded through the context class loader
+    CharStreams.write("{\"id\":3,\"first\":\"christopher\",\"last\":\"walken\"}",
+                      Files.newWriterSupplier(new File(folder, "input2.json"), Charsets.UTF_8));
+
+    sparkManager.start();
+    sparkManager.waitForRuns(ProgramRunStatus.RUNNING, 1, 1, TimeUnit.MINUTES);
+
+    waitForUsers(outputManager, ImmutableMap.of(1L, "samuel jackson", 2L, "dwayne johnson",
+                                                3L, "christopher walken"));
+
+    sparkManager.stop();
+  }
+
+  private void waitForUsers(DataSetManager<Table> outputManager, Map<Long, String> expected) throws Exception {
+    Tasks.waitFor(
+      true,
+      () -> {
+        outputManager.flush();
+        Map<Long, String> actual = new HashMap<>();
+        for (StructuredRecord outputRecord : MockSink.readOutput(outputManager)) {
+          actual.put(outputRecord.get("id"), outputRecord.get("first") + " " + outputRecord.get("last"));
+        }
+        return expected.equals(actual);
+      },
+      4,
+      TimeUnit.MINUTES);
+  }
+
 
   private int resetFeeds() throws IOException {
     URL url = new URL(httpBase + "/feeds");
@@ -28,15 +28,12 @@ import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
 import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.List;
 import java.util.Map;
 
@@ -76,6 +73,16 @@ public final class CSVFormatter extends Transform<StructuredRecord, StructuredRe
   // Format of CSV File.
   private CSVFormat csvFileFormat;
 
+  // Codec that formats the records into a reused buffer.
+  private CSVLineCodec codec;
+
+  // Values of the record being formatted, reused across records.
+  private Object[] values;
+
+  // Fields of the input schema the values were read from.
+  private Schema inputSchema;
+  private List<Field> inputFields;
+
   // This is used only for tests, otherwise this is being injected by the ingestion framework.
   public CSVFormatter(Config config) {
     this.config = config;
@@ -168,24 +175,24 @@ public final class CSVFormatter extends Transform<StructuredRecord, StructuredRe
       default:
         throw new RuntimeException("Unknown format specified for CSV. Please check the format.");
     }
-
+    codec = new CSVLineCodec(csvFileFormat);
   }
 
   @Override
   public void transform(StructuredRecord record, Emitter<StructuredRecord> emitter) throws Exception {
-    List<Object> values = Lists.newArrayList();
-    for (Schema.Field field : record.getSchema().getFields()) {
-      values.add(record.get(field.getName()));
+    Schema schema = record.getSchema();
+    if (schema != inputSchema) {
+      inputSchema = schema;
+      inputFields = schema.getFields();
+      values = new Object[inputFields.size()];
     }
-
-    CSVPrinter printer = new CSVPrinter(new StringWriter(), csvFileFormat);
-    if (printer != null) {
-      printer.printRecord(values);
-      emitter.emit(StructuredRecord.builder(outSchema)
-                     .set(outSchema.getFields().get(0).getName(), printer.getOut().toString())
-                     .build());
-      printer.close();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = record.get(inputFields.get(i).getName());
     }
+
+    emitter.emit(StructuredRecord.builder(outSchema)
+                   .set(fields.get(0).getName(), codec.format(values))
+                   .build());
   }
 
   /**
@@ -0,0 +1,440 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.QuoteMode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Formats and parses CSV records of a {@link CSVFormat} without creating a {@link org.apache.commons.csv.CSVPrinter}
+ * or {@link org.apache.commons.csv.CSVParser} for every record.
+ *
+ * <p>
+ * The output of {@link #format(Object[])} and the values returned by {@link #nextRecord()} are the same as the ones
+ * of the commons-csv printer and parser for the format. Records are formatted into a buffer and parsed into an array
+ * that are both reused, so a codec instance must not be shared between threads. Comment markers and headers of the
+ * format are not supported.
+ * </p>
+ */
+public final class CSVLineCodec {
+  private static final int END_OF_STREAM = -1;
+  private static final int UNDEFINED = -2;
+  private static final char CR = '\r';
+  private static final char LF = '\n';
+  private static final char TAB = '\t';
+  private static final char BACKSPACE = '\b';
+  private static final char FF = '\f';
+  private static final char SP = ' ';
+  private static final char COMMENT = '#';
+
+  private final char delimiter;
+  private final int quote;
+  private final int escape;
+  private final QuoteMode quoteMode;
+  private final String nullString;
+  private final String recordSeparator;
+  private final boolean ignoreSurroundingSpaces;
+  private final boolean ignoreEmptyLines;
+
+  // Buffer for formatted records.
+  private final StringBuilder output = new StringBuilder();
+
+  // State of the parser: the input, the position of the next char, the last char read and the number of lines read.
+  private final StringBuilder token = new StringBuilder();
+  private String input = "";
+  private int position;
+  private int lastChar = UNDEFINED;
+  private long lineCount;
+
+  // Values of the last parsed record.
+  private String[] values = new String[16];
+  private int size;
+
+  public CSVLineCodec(CSVFormat format) {
+    if (format.isCommentMarkerSet() || format.getHeader() != null) {
+      throw new IllegalArgumentException("CSV formats with comment markers or headers are not supported.");
+    }
+    this.delimiter = format.getDelimiter();
+    this.quote = format.isQuoteCharacterSet() ? format.getQuoteCharacter() : UNDEFINED;
+    this.escape = format.isEscapeCharacterSet() ? format.getEscapeCharacter() : UNDEFINED;
+    this.quoteMode = format.getQuoteMode() == null ? QuoteMode.MINIMAL : format.getQuoteMode();
+    this.nullString = format.getNullString();
+    this.recordSeparator = format.getRecordSeparator();
+    this.ignoreSurroundingSpaces = format.getIgnoreSurroundingSpaces();
+    this.ignoreEmptyLines = format.getIgnoreEmptyLines();
+  }
+
+  /**
+   * Formats the values as one CSV record, followed by the record separator of the format.
+   *
+   * @param values the values of the record. Null values are formatted as the null string of the format.
+   * @return the formatted record
+   */
+  public String format(Object[] values) {
+    output.setLength(0);
+    for (int i = 0; i < values.length; i++) {
+      Object value = values[i];
+      CharSequence chars;
+      if (value == null) {
+        chars = nullString == null ? "" : nullString;
+      } else {
+        chars = value instanceof CharSequence ? (CharSequence) value : value.toString();
+      }
+      if (i > 0) {
+        output.append(delimiter);
+      }
+      if (quote != UNDEFINED) {
+        appendQuoted(value, chars, i == 0);
+      } else if (escape != UNDEFINED) {
+        appendEscaped(chars);
+      } else {
+        output.append(chars);
+      }
+    }
+    if (recordSeparator != null) {
+      output.append(recordSeparator);
+    }
+    return output.toString();
+  }
+
+  private void appendQuoted(@Nullable Object value, CharSequence chars, boolean newRecord) {
+    int length = chars.length();
+    boolean quoted;
+    switch (quoteMode) {
+      case ALL:
+        quoted = true;
+        break;
+      case NON_NUMERIC:
+        quoted = !(value instanceof Number);
+        break;
+      case NONE:
+        appendEscaped(chars);
+        return;
+      default:
+        quoted = needsQuotes(chars, length, newRecord);
+        break;
+    }
+
+    if (!quoted) {
+      output.append(chars);
+      return;
+    }
+    output.append((char) quote);
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      if (chars.charAt(i) == quote) {
+        // the quote is appended twice: once with the run that ends with it and once at the start of the next run
+        output.append(chars, start, i + 1);
+        start = i;
+      }
+    }
+    output.append(chars, start, length);
+    output.append((char) quote);
+  }
+
+  private boolean needsQuotes(CharSequence chars, int length, boolean newRecord) {
+    if (length == 0) {
+      // an empty first value is quoted, since a record with a single empty value would be an empty line otherwise
+      return newRecord;
+    }
+    char c = chars.charAt(0);
+    if (newRecord && (c < '0' || c > '9' && c < 'A' || c > 'Z' && c < 'a' || c > 'z')) {
+      return true;
+    }
+    if (c <= COMMENT) {
+      return true;
+    }
+    for (int i = 0; i < length; i++) {
+      c = chars.charAt(i);
+      if (c == LF || c == CR || c == quote || c == delimiter) {
+        return true;
+      }
+    }
+    return chars.charAt(length - 1) <= SP;
+  }
+
+  private void appendEscaped(CharSequence chars) {
+    int length = chars.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = chars.charAt(i);
+      if (c == CR || c == LF || c == delimiter || c == escape) {
+        output.append(chars, start, i);
+        output.append((char) escape);
+        output.append(c == LF ? 'n' : c == CR ? 'r' : c);
+        start = i + 1;
+      }
+    }
+    output.append(chars, start, length);
+  }
+
+  /**
+   * Sets the text to parse with {@link #nextRecord()}.
+   */
+  public void reset(String input) {
+    this.input = input;
+    this.position = 0;
+    this.lastChar = UNDEFINED;
+    this.lineCount = 0;
+    this.size = 0;
+  }
+
+  /**
+   * Parses the next record of the input.
+   *
+   * @return false if there are no more records in the input
+   * @throws IOException if the input is not valid for the format
+   */
+  public boolean nextRecord() throws IOException {
+    size = 0;
+    TokenType type;
+    do {
+      token.setLength(0);
+      type = nextToken();
+      if (type != TokenType.EOF_EMPTY) {
+        addValue();
+      }
+    } while (type == TokenType.TOKEN);
+    return size > 0;
+  }
+
+  /**
+   * @return the number of values in the last parsed record
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the value at the given index of the last parsed record. Values equal to the null string of the format
+   *         are returned as null.
+   * @throws ArrayIndexOutOfBoundsException if the record does not have a value at the index
+   */
+  @Nullable
+  public String get(int index) {
+    if (index >= size) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    return values[index];
+  }
+
+  /**
+   * @return the values of the last parsed record, for error messages
+   */
+  public String recordToString() {
+    return Arrays.toString(Arrays.copyOf(values, size));
+  }
+
+  private void addValue() {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size * 2);
+    }
+    String value = token.toString();
+    values[size++] = value.equals(nullString) ? null : value;
+  }
+
+  /**
+   * Result of reading a token. EOF_EMPTY is the end of the input without a value, which does not add a value to
+   * the record.
+   */
+  private enum TokenType {
+    TOKEN, EORECORD, EOF, EOF_EMPTY
+  }
+
+  private TokenType nextToken() throws IOException {
+    int previous = lastChar;
+    int c = read();
+    boolean eol = readEndOfLine(c);
+
+    if (ignoreEmptyLines) {
+      while (eol && isStartOfLine(previous)) {
+        previous = c;
+        c = read();
+        eol = readEndOfLine(c);
+        if (c == END_OF_STREAM) {
+          return TokenType.EOF_EMPTY;
+        }
+      }
+    }
+
+    if (previous == END_OF_STREAM || (previous != delimiter && c == END_OF_STREAM)) {
+      return TokenType.EOF_EMPTY;
+    }
+
+    if (ignoreSurroundingSpaces) {
+      while (isWhitespace(c) && !eol) {
+        c = read();
+        eol = readEndOfLine(c);
+      }
+    }
+    if (c == delimiter) {
+      return TokenType.TOKEN;
+    }
+    if (eol) {
+      return TokenType.EORECORD;
+    }
+    if (c == quote) {
+      return parseEncapsulatedToken();
+    }
+    if (c == END_OF_STREAM) {
+      return TokenType.EOF;
+    }
+    return parseSimpleToken(c);
+  }
+
+  private TokenType parseSimpleToken(int c) throws IOException {
+    TokenType type;
+    while (true) {
+      if (readEndOfLine(c)) {
+        type = TokenType.EORECORD;
+        break;
+      } else if (c == END_OF_STREAM) {
+        type = TokenType.EOF;
+        break;
+      } else if (c == delimiter) {
+        type = TokenType.TOKEN;
+        break;
+      } else if (c == escape) {
+        appendEscape(c);
+        c = read();
+      } else {
+        token.append((char) c);
+        c = read();
+      }
+    }
+    if (ignoreSurroundingSpaces) {
+      int length = token.length();
+      while (length > 0 && Character.isWhitespace(token.charAt(length - 1))) {
+        length--;
+      }
+      token.setLength(length);
+    }
+    return type;
+  }
+
+  private TokenType parseEncapsulatedToken() throws IOException {
+    long startLine = getCurrentLineNumber();
+    while (true) {
+      int c = read();
+      if (c == escape) {
+        appendEscape(c);
+      } else if (c == quote) {
+        if (peek() == quote) {
+          token.append((char) read());
+        } else {
+          while (true) {
+            c = read();
+            if (c == delimiter) {
+              return TokenType.TOKEN;
+            } else if (c == END_OF_STREAM) {
+              return TokenType.EOF;
+            } else if (readEndOfLine(c)) {
+              return TokenType.EORECORD;
+            } else if (!isWhitespace(c)) {
+              throw new IOException("(line " + getCurrentLineNumber() +
+                                      ") invalid char between encapsulated token and delimiter");
+            }
+          }
+        }
+      } else if (c == END_OF_STREAM) {
+        throw new IOException("(startline " + startLine + ") EOF reached before encapsulated token finished");
+      } else {
+        token.append((char) c);
+      }
+    }
+  }
+
+  /**
+   * Appends the char escaped by the escape char that was just read. Unknown escape sequences are kept as is.
+   */
+  private void appendEscape(int escapeChar) throws IOException {
+    int c = read();
+    switch (c) {
+      case 'r':
+        token.append(CR);
+        break;
+      case 'n':
+        token.append(LF);
+        break;
+      case 't':
+        token.append(TAB);
+        break;
+      case 'b':
+        token.append(BACKSPACE);
+        break;
+      case 'f':
+        token.append(FF);
+        break;
+      case CR:
+      case LF:
+      case FF:
+      case TAB:
+      case BACKSPACE:
+        token.append((char) c);
+        break;
+      case END_OF_STREAM:
+        throw new IOException("EOF whilst processing escape sequence");
+      default:
+        if (c == delimiter || c == escape || c == quote) {
+          token.append((char) c);
+        } else {
+          token.append((char) escapeChar).append((char) c);
+        }
+        break;
+    }
+  }
+
+  private int read() {
+    int c = position < input.length() ? input.charAt(position++) : END_OF_STREAM;
+    if (c == CR || (c == LF && lastChar != CR)) {
+      lineCount++;
+    }
+    lastChar = c;
+    return c;
+  }
+
+  private int peek() {
+    return position < input.length() ? input.charAt(position) : END_OF_STREAM;
+  }
+
+  private boolean readEndOfLine(int c) {
+    if (c == CR && peek() == LF) {
+      read();
+      return true;
+    }
+    return c == LF || c == CR;
+  }
+
+  private boolean isStartOfLine(int c) {
+    return c == LF || c == CR || c == UNDEFINED;
+  }
+
+  private boolean isWhitespace(int c) {
+    return c != delimiter && c >= 0 && Character.isWhitespace((char) c);
+  }
+
+  private long getCurrentLineNumber() {
+    if (lastChar == CR || lastChar == LF || lastChar == UNDEFINED || lastChar == END_OF_STREAM) {
+      return lineCount;
+    }
+    return lineCount + 1;
+  }
+}
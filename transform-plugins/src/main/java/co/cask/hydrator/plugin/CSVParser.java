@@ -34,9 +34,9 @@ import co.cask.cdap.etl.api.lineage.field.FieldTransformOperation;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -80,6 +80,12 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
   // Format of CSV.
   private CSVFormat csvFormat = CSVFormat.DEFAULT;
 
+  // Codec that parses the field into reused buffers.
+  private CSVLineCodec codec;
+
+  // Records parsed from the current input, emitted only once the whole field is parsed.
+  private final List<StructuredRecord> parsed = new ArrayList<>();
+
   // Format of PDL.
   public static final CSVFormat PDL;
 
@@ -217,6 +223,7 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
     } catch (IOException e) {
       throw new IllegalArgumentException("Format of schema specified is invalid. Please check the format.");
     }
+    codec = new CSVLineCodec(csvFormat);
   }
 
   @Override
@@ -229,18 +236,23 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
       if (body == null) {
         emitter.emit(createStructuredRecord(null, in));
       } else {
-        org.apache.commons.csv.CSVParser parser = org.apache.commons.csv.CSVParser.parse(body, csvFormat);
-        List<CSVRecord> records = parser.getRecords();
-        for (CSVRecord record : records) {
-          emitter.emit(createStructuredRecord(record, in));
+        parsed.clear();
+        codec.reset(body);
+        while (codec.nextRecord()) {
+          parsed.add(createStructuredRecord(codec, in));
+        }
+        for (StructuredRecord record : parsed) {
+          emitter.emit(record);
         }
       }
     } catch (IOException e) {
       emitter.emitError(new InvalidEntry<>(31, e.getStackTrace()[0].toString() + " : " + e.getMessage(), in));
+    } finally {
+      parsed.clear();
     }
   }
 
-  private StructuredRecord createStructuredRecord(@Nullable CSVRecord record, StructuredRecord in) {
+  private StructuredRecord createStructuredRecord(@Nullable CSVLineCodec record, StructuredRecord in) {
     StructuredRecord.Builder builder = StructuredRecord.builder(outSchema);
     int i = 0;
     for (Field field : fields) {
@@ -257,7 +269,7 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
         String val = record.get(i);
         Schema fieldSchema = field.getSchema();
 
-        if (val.isEmpty()) {
+        if (val == null || val.isEmpty()) {
           boolean isNullable = fieldSchema.isNullable();
           Schema.Type fieldType = isNullable ? fieldSchema.getNonNullable().getType() : fieldSchema.getType();
           // if the field is a string or a nullable string, set the value to the empty string
@@ -268,7 +280,7 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
             throw new IllegalArgumentException(String.format(
               "Field #%d (named '%s') is of non-nullable type '%s', " +
                 "but was parsed as an empty string for CSV record '%s'",
-              i, field.getName(), field.getSchema().getType(), record));
+              i, field.getName(), field.getSchema().getType(), record.recordToString()));
           }
         } else {
           builder.convertAndSet(field.getName(), val);
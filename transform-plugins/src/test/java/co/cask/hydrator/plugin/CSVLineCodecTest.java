@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.csv.QuoteMode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link CSVLineCodec}, comparing its output with the commons-csv printer and parser.
+ */
+public class CSVLineCodecTest {
+
+  private static final List<CSVFormat> FORMATS = ImmutableList.of(
+    CSVFormat.DEFAULT, CSVFormat.EXCEL, CSVFormat.MYSQL, CSVFormat.RFC4180, CSVFormat.TDF, CSVParser.PDL,
+    CSVFormat.newFormat('|').withQuote('"').withRecordSeparator("\r\n").withIgnoreEmptyLines(),
+    CSVFormat.DEFAULT.withDelimiter(';').withEscape('\\').withIgnoreEmptyLines(false)
+      .withAllowMissingColumnNames().withQuote(null).withRecordSeparator('\n').withIgnoreSurroundingSpaces(),
+    CSVFormat.DEFAULT.withQuoteMode(QuoteMode.ALL),
+    CSVFormat.DEFAULT.withQuoteMode(QuoteMode.NON_NUMERIC));
+
+  private static final List<Object[]> RECORDS = ImmutableList.of(
+    new Object[] { "a", "b", "c" },
+    new Object[] { 1, -2.5, true, 10L },
+    new Object[] { "", "x", "" },
+    new Object[] { null, "x", null },
+    new Object[] { "with space ", " leading", "tab\tinside" },
+    new Object[] { "quote\"inside", "\"quoted\"", "comma,inside" },
+    new Object[] { "line\nbreak", "carriage\rreturn", "both\r\n" },
+    new Object[] { "#comment", "!bang", "pipe|inside", "semi;colon" },
+    new Object[] { "back\\slash", "\\N", "unicode é中" },
+    new Object[] { "" });
+
+  private static final List<String> INPUTS = ImmutableList.of(
+    "a,b,c",
+    "a,b,c\n",
+    "a,b,c\r\nd,e,f",
+    "a,,c,",
+    ",",
+    "",
+    "\n",
+    "\n\na,b\n\nc,d\n",
+    "\"a\",\"b,c\",\"d\"\"e\"",
+    "\"multi\nline\",x",
+    "  a  ,  \"b\"  , c ",
+    "a\tb\t\\N\tc\\td",
+    "a|b\\|c|d\\\\e|\\x",
+    "a;b\\;c;d",
+    "\"a\" ,b",
+    "\"a\"b,c",
+    "\"unterminated,x",
+    "a,b\\",
+    "\r\n\r\na\r\n");
+
+  @Test
+  public void testFormat() throws IOException {
+    for (CSVFormat format : FORMATS) {
+      CSVLineCodec codec = new CSVLineCodec(format);
+      for (Object[] record : RECORDS) {
+        StringWriter writer = new StringWriter();
+        try (CSVPrinter printer = new CSVPrinter(writer, format)) {
+          printer.printRecord(record);
+        }
+        Assert.assertEquals(String.format("Format %s, record %s", format, Arrays.toString(record)),
+                            writer.toString(), codec.format(record));
+      }
+    }
+  }
+
+  @Test
+  public void testParse() throws IOException {
+    for (CSVFormat format : FORMATS) {
+      CSVLineCodec codec = new CSVLineCodec(format);
+      for (String input : INPUTS) {
+        String message = String.format("Format %s, input '%s'", format, input);
+        List<List<String>> expected = new ArrayList<>();
+        String expectedError = null;
+        try {
+          for (CSVRecord record : org.apache.commons.csv.CSVParser.parse(input, format)) {
+            List<String> values = new ArrayList<>();
+            for (String value : record) {
+              values.add(value);
+            }
+            expected.add(values);
+          }
+        } catch (IOException | RuntimeException e) {
+          expectedError = e.getMessage();
+        }
+
+        List<List<String>> actual = new ArrayList<>();
+        codec.reset(input);
+        try {
+          while (codec.nextRecord()) {
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < codec.size(); i++) {
+              values.add(codec.get(i));
+            }
+            actual.add(values);
+          }
+          Assert.assertNull(message + " should fail with " + expectedError, expectedError);
+          Assert.assertEquals(message, expected, actual);
+        } catch (IOException e) {
+          Assert.assertNotNull(message + " failed with " + e.getMessage(), expectedError);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    CSVLineCodec codec = new CSVLineCodec(CSVFormat.DEFAULT);
+    codec.reset(codec.format(new Object[] { "a \"quoted\" value", "x,y", "line\nbreak", "" }));
+    Assert.assertTrue(codec.nextRecord());
+    Assert.assertEquals(4, codec.size());
+    Assert.assertEquals("a \"quoted\" value", codec.get(0));
+    Assert.assertEquals("x,y", codec.get(1));
+    Assert.assertEquals("line\nbreak", codec.get(2));
+    Assert.assertEquals("", codec.get(3));
+    Assert.assertFalse(codec.nextRecord());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCommentMarkerNotSupported() {
+    new CSVLineCodec(CSVFormat.DEFAULT.withCommentMarker('#'));
+  }
+}